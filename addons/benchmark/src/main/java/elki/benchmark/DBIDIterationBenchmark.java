@@ -0,0 +1,122 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import elki.database.ids.*;
+
+/**
+ * Benchmark iterating over the different DBID collections.
+ * <p>
+ * Each invocation visits all {@link #n} DBIDs once.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DBIDIterationBenchmark {
+  /**
+   * Number of DBIDs.
+   */
+  @Param({ "1000", "1000000" })
+  int n;
+
+  /**
+   * Range of DBIDs.
+   */
+  DBIDRange range;
+
+  /**
+   * Shuffled array of DBIDs.
+   */
+  ArrayModifiableDBIDs array;
+
+  /**
+   * Hash set of DBIDs.
+   */
+  HashSetModifiableDBIDs set;
+
+  /**
+   * Generate the DBIDs.
+   */
+  @Setup
+  public void setup() {
+    range = DBIDUtil.generateStaticDBIDRange(n);
+    array = DBIDUtil.newArray(range);
+    DBIDUtil.randomShuffle(array, new Random(SyntheticData.SEED));
+    set = DBIDUtil.newHashSet(range);
+  }
+
+  @Benchmark
+  public long iterateRange() {
+    long sum = 0;
+    for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+      sum += DBIDUtil.asInteger(it);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long iterateArray() {
+    long sum = 0;
+    for(DBIDIter it = array.iter(); it.valid(); it.advance()) {
+      sum += DBIDUtil.asInteger(it);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long seekArray() {
+    long sum = 0;
+    DBIDArrayIter it = array.iter();
+    for(int i = 0, size = array.size(); i < size; i++) {
+      sum += DBIDUtil.asInteger(it.seek(i));
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long iterateHashSet() {
+    long sum = 0;
+    for(DBIDIter it = set.iter(); it.valid(); it.advance()) {
+      sum += DBIDUtil.asInteger(it);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long offsetRange() {
+    long sum = 0;
+    for(DBIDIter it = array.iter(); it.valid(); it.advance()) {
+      sum += range.getOffset(it);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+
+/**
+ * Benchmark the Minkowski distance kernels.
+ * <p>
+ * Each invocation computes the distances of {@link #SIZE} pairs of vectors,
+ * which is reported as {@link #SIZE} operations.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+  /**
+   * Number of vectors, must be a power of two.
+   */
+  private static final int SIZE = 1024;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "16", "128" })
+  int dim;
+
+  /**
+   * Raw data.
+   */
+  double[][] raw;
+
+  /**
+   * Data vectors.
+   */
+  NumberVector[] vecs;
+
+  /**
+   * Non-integer Lp norm.
+   */
+  LPNormDistance lp3 = new LPNormDistance(3);
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    raw = SyntheticData.uniform(SIZE, dim, SyntheticData.SEED);
+    vecs = new NumberVector[SIZE];
+    for(int i = 0; i < SIZE; i++) {
+      vecs[i] = DoubleVector.wrap(raw[i]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double squaredEuclidean() {
+    double sum = 0.;
+    for(int i = 0; i < SIZE; i++) {
+      sum += SquaredEuclideanDistance.STATIC.distance(vecs[i], vecs[(i + 1) & (SIZE - 1)]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double squaredEuclideanArray() {
+    double sum = 0.;
+    for(int i = 0; i < SIZE; i++) {
+      sum += SquaredEuclideanDistance.STATIC.distance(raw[i], raw[(i + 1) & (SIZE - 1)]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double euclidean() {
+    double sum = 0.;
+    for(int i = 0; i < SIZE; i++) {
+      sum += EuclideanDistance.STATIC.distance(vecs[i], vecs[(i + 1) & (SIZE - 1)]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double manhattan() {
+    double sum = 0.;
+    for(int i = 0; i < SIZE; i++) {
+      sum += ManhattanDistance.STATIC.distance(vecs[i], vecs[(i + 1) & (SIZE - 1)]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double lpNorm() {
+    double sum = 0.;
+    for(int i = 0; i < SIZE; i++) {
+      sum += lp3.distance(vecs[i], vecs[(i + 1) & (SIZE - 1)]);
+    }
+    return sum;
+  }
+}
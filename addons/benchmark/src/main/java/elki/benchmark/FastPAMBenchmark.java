@@ -0,0 +1,109 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import elki.clustering.kmedoids.FastPAM;
+import elki.clustering.kmeans.initialization.RandomlyChosen;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.MedoidModel;
+import elki.database.ids.DBIDRange;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.distancematrix.PrecomputedDistanceMatrix;
+import elki.result.Metadata;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Benchmark the swap phase of FastPAM.
+ * <p>
+ * The distance matrix is precomputed once per trial, so only the medoid
+ * swapping is measured, starting from medoids chosen with a fixed seed.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FastPAMBenchmark {
+  /**
+   * Maximum number of iterations.
+   */
+  private static final int MAXITER = 10;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "1000", "5000" })
+  int n;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "16" })
+  int dim;
+
+  /**
+   * Number of clusters.
+   */
+  @Param({ "10", "50" })
+  int k;
+
+  /**
+   * Data relation.
+   */
+  Relation<NumberVector> relation;
+
+  /**
+   * Precomputed distances, referenced to keep them in the relation.
+   */
+  PrecomputedDistanceMatrix<NumberVector> matrix;
+
+  /**
+   * Algorithm.
+   */
+  FastPAM<NumberVector> pam;
+
+  /**
+   * Generate the data and distance matrix.
+   */
+  @Setup
+  public void setup() {
+    relation = SyntheticData.relation(SyntheticData.gaussianClusters(n, dim, k, SyntheticData.SEED));
+    matrix = new PrecomputedDistanceMatrix<>(relation, (DBIDRange) relation.getDBIDs(), EuclideanDistance.STATIC);
+    matrix.initialize();
+    Metadata.hierarchyOf(relation).addChild(matrix);
+    pam = new FastPAM<>(EuclideanDistance.STATIC, k, MAXITER, new RandomlyChosen<>(new RandomFactory(SyntheticData.SEED)));
+  }
+
+  @Benchmark
+  public Clustering<MedoidModel> run() {
+    return pam.run(relation);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import elki.clustering.kmeans.ElkanKMeans;
+import elki.clustering.kmeans.KMeans;
+import elki.clustering.kmeans.LloydKMeans;
+import elki.clustering.kmeans.initialization.RandomlyChosen;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Benchmark the main loop of k-means variants.
+ * <p>
+ * The initial centers are chosen with a fixed seed, and the number of
+ * iterations is bounded by {@link #MAXITER}, so that each invocation performs
+ * the same work.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KMeansBenchmark {
+  /**
+   * Maximum number of iterations.
+   */
+  private static final int MAXITER = 10;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  int n;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "16" })
+  int dim;
+
+  /**
+   * Number of clusters.
+   */
+  @Param({ "10", "100" })
+  int k;
+
+  /**
+   * Algorithm variant.
+   */
+  @Param({ "lloyd", "elkan" })
+  String variant;
+
+  /**
+   * Data relation.
+   */
+  Relation<NumberVector> relation;
+
+  /**
+   * Algorithm.
+   */
+  KMeans<NumberVector, KMeansModel> kmeans;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    relation = SyntheticData.relation(SyntheticData.gaussianClusters(n, dim, k, SyntheticData.SEED));
+    RandomlyChosen<NumberVector> init = new RandomlyChosen<>(new RandomFactory(SyntheticData.SEED));
+    switch(variant){
+    case "lloyd":
+      kmeans = new LloydKMeans<>(SquaredEuclideanDistance.STATIC, k, MAXITER, init);
+      break;
+    case "elkan":
+      kmeans = new ElkanKMeans<>(SquaredEuclideanDistance.STATIC, k, MAXITER, init, false);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown variant: " + variant);
+    }
+  }
+
+  @Benchmark
+  public Clustering<KMeansModel> run() {
+    return kmeans.run(relation);
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.KNNIndex;
+import elki.index.tree.metrical.covertree.CoverTree;
+import elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import elki.index.vafile.VAFile;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Benchmark the kNN searchers of different index structures, on uniform data.
+ * <p>
+ * The index is built once per trial; each invocation runs {@link #QUERIES}
+ * queries with query points not contained in the data set.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KNNSearcherBenchmark {
+  /**
+   * Number of queries per invocation.
+   */
+  private static final int QUERIES = 256;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  int n;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8", "32" })
+  int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  int k;
+
+  /**
+   * Index to use.
+   */
+  @Param({ "linear", "kdtree", "covertree", "rstar", "vafile" })
+  String index;
+
+  /**
+   * kNN searcher.
+   */
+  KNNSearcher<NumberVector> searcher;
+
+  /**
+   * Query points.
+   */
+  NumberVector[] queries;
+
+  /**
+   * Build the data and the index.
+   */
+  @Setup
+  public void setup() {
+    Relation<NumberVector> relation = SyntheticData.relation(SyntheticData.uniform(n, dim, SyntheticData.SEED));
+    DistanceQuery<NumberVector> dq = EuclideanDistance.STATIC.instantiate(relation);
+    KNNIndex<NumberVector> idx;
+    switch(index){
+    case "linear":
+      searcher = new QueryBuilder<>(dq).linearOnly().kNNByObject(k);
+      break;
+    case "kdtree":
+      idx = new SmallMemoryKDTree<>(relation, 5);
+      searcher = initialize(idx).kNNByObject(dq, k, 0);
+      break;
+    case "covertree":
+      idx = new CoverTree<>(relation, EuclideanDistance.STATIC);
+      searcher = initialize(idx).kNNByObject(dq, k, 0);
+      break;
+    case "rstar":
+      RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class).build();
+      idx = factory.instantiate(relation);
+      searcher = initialize(idx).kNNByObject(dq, k, 0);
+      break;
+    case "vafile":
+      idx = new VAFile<>(1024, relation, 8);
+      searcher = initialize(idx).kNNByObject(dq, k, 0);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown index: " + index);
+    }
+    if(searcher == null) {
+      throw new IllegalStateException("Index " + index + " did not provide a kNN searcher.");
+    }
+    double[][] raw = SyntheticData.uniform(QUERIES, dim, SyntheticData.SEED + 1);
+    queries = new NumberVector[QUERIES];
+    for(int i = 0; i < QUERIES; i++) {
+      queries[i] = DoubleVector.wrap(raw[i]);
+    }
+  }
+
+  /**
+   * Initialize an index.
+   *
+   * @param idx Index
+   * @return Index
+   */
+  private static KNNIndex<NumberVector> initialize(KNNIndex<NumberVector> idx) {
+    idx.initialize();
+    return idx;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void knn(Blackhole bh) {
+    for(NumberVector q : queries) {
+      bh.consume(searcher.getKNN(q, k));
+    }
+  }
+}
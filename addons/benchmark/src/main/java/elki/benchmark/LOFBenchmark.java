@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import elki.data.NumberVector;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import elki.outlier.lof.LOF;
+import elki.result.Metadata;
+import elki.result.outlier.OutlierResult;
+
+/**
+ * Benchmark the density computations of LOF.
+ * <p>
+ * The k nearest neighbors are materialized once per trial, so only the
+ * reachability density and LOF score loops are measured.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LOFBenchmark {
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  int n;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8" })
+  int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10", "50" })
+  int k;
+
+  /**
+   * Data relation.
+   */
+  Relation<NumberVector> relation;
+
+  /**
+   * Materialized neighbors, referenced to keep them in the relation.
+   */
+  MaterializeKNNPreprocessor<NumberVector> knn;
+
+  /**
+   * Algorithm.
+   */
+  LOF<NumberVector> lof;
+
+  /**
+   * Generate the data and materialize the neighbors.
+   */
+  @Setup
+  public void setup() {
+    relation = SyntheticData.relation(SyntheticData.gaussianClusters(n, dim, 10, SyntheticData.SEED));
+    // LOF queries k+1 neighbors, including the query point
+    knn = new MaterializeKNNPreprocessor<>(relation, EuclideanDistance.STATIC, k + 1);
+    knn.initialize();
+    Metadata.hierarchyOf(relation).addChild(knn);
+    lof = new LOF<>(k, EuclideanDistance.STATIC);
+  }
+
+  @Benchmark
+  public OutlierResult run() {
+    return lof.run(relation);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.benchmark;
+
+import java.util.Random;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+
+/**
+ * Synthetic data generators for benchmarking, parameterized by the data set
+ * size and dimensionality. All generators are deterministic given the seed.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public final class SyntheticData {
+  /**
+   * Default random seed used by the benchmarks.
+   */
+  public static final long SEED = 0L;
+
+  /**
+   * Fake constructor, static methods only.
+   */
+  private SyntheticData() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate uniformly distributed data in the unit cube.
+   *
+   * @param n Number of points
+   * @param d Dimensionality
+   * @param seed Random seed
+   * @return Data
+   */
+  public static double[][] uniform(int n, int d, long seed) {
+    Random rnd = new Random(seed);
+    double[][] data = new double[n][d];
+    for(double[] row : data) {
+      for(int j = 0; j < d; j++) {
+        row[j] = rnd.nextDouble();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Generate data from k Gaussian clusters, with centers uniformly distributed
+   * in the unit cube and standard deviations between 0.01 and 0.1.
+   *
+   * @param n Number of points
+   * @param d Dimensionality
+   * @param k Number of clusters
+   * @param seed Random seed
+   * @return Data
+   */
+  public static double[][] gaussianClusters(int n, int d, int k, long seed) {
+    Random rnd = new Random(seed);
+    double[][] centers = uniform(k, d, rnd.nextLong());
+    double[] stddev = new double[k];
+    for(int i = 0; i < k; i++) {
+      stddev[i] = 0.01 + 0.09 * rnd.nextDouble();
+    }
+    double[][] data = new double[n][d];
+    for(int i = 0; i < n; i++) {
+      final int c = rnd.nextInt(k);
+      final double[] row = data[i], center = centers[c];
+      for(int j = 0; j < d; j++) {
+        row[j] = center[j] + rnd.nextGaussian() * stddev[c];
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Load data into a static database, and get the vector relation.
+   *
+   * @param data Data
+   * @return Relation
+   */
+  public static Relation<NumberVector> relation(double[][] data) {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+}
@@ -0,0 +1,30 @@
+/**
+ * JMH micro-benchmarks of core kernels: distance functions, kNN searchers,
+ * DBID iteration, and the main loops of selected algorithms.
+ * <p>
+ * All benchmarks use synthetic data from {@link elki.benchmark.SyntheticData}
+ * with fixed random seeds, so that results are reproducible across runs.
+ * Run them with {@code ./gradlew :elki-benchmark:jmh}, optionally selecting
+ * benchmarks with {@code -Pjmh.include=<regexp>}.
+ */
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.benchmark;
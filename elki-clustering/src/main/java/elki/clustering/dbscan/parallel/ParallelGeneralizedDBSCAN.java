@@ -20,27 +20,27 @@
  */
 package elki.clustering.dbscan.parallel;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import elki.clustering.ClusteringAlgorithm;
 import elki.clustering.dbscan.predicates.CorePredicate;
 import elki.clustering.dbscan.predicates.EpsilonNeighborPredicate;
 import elki.clustering.dbscan.predicates.MinPtsCorePredicate;
 import elki.clustering.dbscan.predicates.NeighborPredicate;
-import elki.clustering.dbscan.util.Assignment;
-import elki.clustering.dbscan.util.Border;
-import elki.clustering.dbscan.util.Core;
-import elki.clustering.dbscan.util.MultiBorder;
 import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.data.model.ClusterModel;
+import elki.data.model.CoreObjectsModel;
 import elki.data.model.Model;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
-import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
 import elki.database.ids.DBIDUtil;
@@ -52,6 +52,7 @@ import elki.parallel.Executor;
 import elki.parallel.ParallelExecutor;
 import elki.parallel.processor.Processor;
 import elki.result.Metadata;
+import elki.utilities.datastructures.unionfind.ConcurrentUnionFindInteger;
 import elki.utilities.documentation.Reference;
 import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
@@ -68,10 +69,9 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * sequentially expand a cluster, but processes points in arbitrary order and
  * merges clusters when neighboring core points occur.
  * <p>
- * Because of synchronization when labeling points, the speedup will only be
- * sublinear in the number of cores. But in particular without an index and on
- * large data, the majority of the work is finding the neighbors; not in
- * labeling the points.
+ * Core points are merged concurrently using a lock-free union-find over the
+ * points, so no synchronization is needed when labeling points. Border points
+ * that are reachable from multiple clusters are assigned to one of them.
  * <p>
  * Reference:
  * <p>
@@ -79,9 +79,7 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * <p>
  * Related is the following publication, whose "disjoint set data structure"
  * appears to be a similar union-find approach to ours, and whose DSDBSCAN
- * appears rather similar. The main benefit of our approach is that we avoid
- * using the union-find data structure for every object, but only use it for
- * merging clusters.
+ * appears rather similar.
  * <p>
  * M. Patwary, D. Palsetia, A. Agrawal, W. K. Liao, F. Manne, A. Choudhary<br>
  * A new scalable parallel DBSCAN algorithm using the disjoint-set data
@@ -168,8 +166,19 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
    *
    * @composed - - - CorePredicate.Instance
    * @composed - - - NeighborPredicate.Instance
+   * @composed - - - ConcurrentUnionFindInteger
    */
   public static class Instance<T> implements Processor {
+    /**
+     * State of points that are not (yet) known to be in a cluster.
+     */
+    private static final int NOISE = -1;
+
+    /**
+     * State of core points.
+     */
+    private static final int CORE = -2;
+
     /**
      * The neighborhood predicate
      */
@@ -186,24 +195,20 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
     protected boolean coremodel = false;
 
     /**
-     * Cluster assignment storage.
+     * Object offsets, for the union-find and state arrays.
      */
-    private WritableDataStore<Assignment> clusterids;
+    private WritableIntegerDataStore offsets;
 
     /**
-     * Core objects (shared)
+     * Point state: {@link #NOISE}, {@link #CORE}, or the offset of a core point
+     * this border point was assigned to.
      */
-    private Core[] cores;
+    private AtomicIntegerArray state;
 
     /**
-     * Border objects (shared)
+     * Union-find of core points, by offset.
      */
-    private Border[] borders;
-
-    /**
-     * Next cluster number assigned.
-     */
-    private int nextclus = 0;
+    private ConcurrentUnionFindInteger uf;
 
     /**
      * Database for cloning neighbor predicates.
@@ -235,9 +240,6 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
       this.npreds = npreds;
       this.corepred = corepred.instantiate(database);
       this.coremodel = coremodel;
-      this.clusterids = DataStoreUtil.makeStorage(npred.getIDs(), DataStoreFactory.HINT_TEMP, Assignment.class);
-      this.cores = new Core[100];
-      this.borders = new Border[100];
     }
 
     /**
@@ -247,61 +249,80 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
      */
     public Clustering<Model> run() {
       DBIDs ids = npred.getIDs();
+      final int size = ids.size();
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP);
+      int off = 0;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance(), off++) {
+        offsets.putInt(it, off);
+      }
+      state = new AtomicIntegerArray(size);
+      for(int i = 0; i < size; i++) {
+        state.lazySet(i, NOISE);
+      }
+      uf = new ConcurrentUnionFindInteger(size);
 
-      progress = LOG.isVerbose() ? new FiniteProgress("DBSCAN clustering", ids.size(), LOG) : null;
+      progress = LOG.isVerbose() ? new FiniteProgress("DBSCAN clustering", size, LOG) : null;
       // Do the majority of the work in parallel:
       // (This will call "instantiate".)
       ParallelExecutor.run(ids, this);
       LOG.ensureCompleted(progress);
 
       // Build the final result
-      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", ids.size(), LOG) : null;
-      ModifiableDBIDs[] clusters = new ModifiableDBIDs[nextclus];
+      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", size, LOG) : null;
+      // Cluster number of each union-find root, in order of first occurrence
+      int[] clusternum = new int[size];
+      Arrays.fill(clusternum, -1);
+      List<ModifiableDBIDs> clusters = new ArrayList<>(), cores = coremodel ? new ArrayList<>() : null;
       ModifiableDBIDs noise = DBIDUtil.newArray();
-      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-        Assignment cids = clusterids.get(it);
-        if(cids == null) {
+      off = 0;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance(), off++) {
+        final int s = state.get(off);
+        if(s == NOISE) {
           noise.add(it);
           LOG.incrementProcessed(pprog);
           continue;
         }
-        if(cids instanceof MultiBorder) {
-          cids = ((MultiBorder) cids).getCore();
-        }
-        else if(cids instanceof Border) {
-          cids = ((Border) cids).core;
-        }
-        assert (cids instanceof Core);
-        Core co = (Core) cids;
-        while(cores[co.num].num != co.num) {
-          co = cores[co.num = cores[co.num].num];
+        final int root = uf.find(s == CORE ? off : s);
+        int c = clusternum[root];
+        if(c < 0) {
+          c = clusternum[root] = clusters.size();
+          clusters.add(DBIDUtil.newArray());
+          if(cores != null) {
+            cores.add(DBIDUtil.newArray());
+          }
         }
-        ModifiableDBIDs clu = clusters[co.num];
-        if(clu == null) {
-          clu = clusters[co.num] = DBIDUtil.newArray();
+        clusters.get(c).add(it);
+        if(cores != null && s == CORE) {
+          cores.get(c).add(it);
         }
-        clu.add(it);
         LOG.incrementProcessed(pprog);
       }
       LOG.ensureCompleted(pprog);
-      clusterids.destroy();
+      offsets.destroy();
+      state = null;
+      uf = null;
 
       // Wrap into final format
       Clustering<Model> result = new Clustering<>();
       Metadata.of(result).setLongName("Generalized DBSCAN Clustering");
-      for(int i = 0; i < clusters.length; i++) {
-        if(clusters[i] != null) {
-          result.addToplevelCluster(new Cluster<Model>(clusters[i], ClusterModel.CLUSTER));
-        }
+      for(int i = 0; i < clusters.size(); i++) {
+        Model m = cores != null ? new CoreObjectsModel(cores.get(i)) : ClusterModel.CLUSTER;
+        result.addToplevelCluster(new Cluster<Model>(clusters.get(i), m));
       }
       if(noise.size() > 0) {
-        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+        result.addToplevelCluster(new Cluster<Model>(noise, true, coremodel ? new CoreObjectsModel(DBIDUtil.EMPTYDBIDS) : ClusterModel.CLUSTER));
       }
       return result;
     }
 
     /**
-     * Synchronize function to process the neighbors.
+     * Process the neighbors of a point, concurrently with other threads.
+     * <p>
+     * A core point first marks itself as core, then joins all neighbors that
+     * are marked as core. Because two neighboring core points both mark
+     * themselves before checking the other, at least one of them will see the
+     * other and perform the union. Non-core neighbors are attached as border
+     * points to the first core point that finds them.
      *
      * @param id Current point
      * @param neighbors Neighbors
@@ -311,51 +332,21 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
         LOG.incrementProcessed(progress);
         return;
       }
-      Core core = null;
-      // Find a possible cluster assignment
+      final int off = offsets.intValue(id);
+      state.set(off, CORE);
       for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
-        Assignment cand = clusterids.get(it);
-        if(cand instanceof Core) { // Another core point
-          core = (Core) cand;
-          break;
-        }
-      }
-      synchronized(this) {
-        // Make a new cluster
-        if(core == null) {
-          // Grow arrays when necessary:
-          if(nextclus == cores.length) {
-            cores = Arrays.copyOf(cores, cores.length + (cores.length >> 1));
-            borders = Arrays.copyOf(borders, cores.length);
-          }
-          core = cores[nextclus] = new Core(nextclus);
-          borders[nextclus] = new Border(core);
-          ++nextclus;
-        }
-        Border border = borders[core.num];
-        clusterids.put(id, core);
-        // Label neighbors, execute merges.
-        for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
-          Assignment oclus = clusterids.get(it);
-          if(oclus == core) {
-            continue;
-          }
-          if(oclus == null) { // Neighbor is still noise:
-            clusterids.put(it, border);
-          }
-          else if(oclus instanceof Core) { // Core and core - merge!
-            core.mergeWith((Core) oclus);
-          }
-          else if(oclus instanceof Border) { // Border point -> MultiBorder
-            Border oborder = (Border) oclus;
-            if(border.core.num != oborder.core.num) {
-              clusterids.put(it, new MultiBorder(border, oborder));
-            }
+        final int o = offsets.intValue(it);
+        while(true) {
+          final int s = state.get(o);
+          if(s == CORE) { // Core and core - merge!
+            uf.union(off, o);
+            break;
           }
-          else { // Point is already border for multiple clusters
-            assert (oclus instanceof MultiBorder);
-            clusterids.put(it, ((MultiBorder) oclus).update(border));
+          // Neighbor is still noise, or already a border point:
+          if(s >= 0 || state.compareAndSet(o, NOISE, off)) {
+            break;
           }
+          // Neighbor became a core point concurrently, retry.
         }
       }
       LOG.incrementProcessed(progress);
@@ -379,7 +370,7 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
      */
     private class Mapper implements Processor.Instance {
       /**
-       * Neighbor predicate.
+       * Neighbor predicate, owned by this thread.
        */
       NeighborPredicate.Instance<? extends T> predicate;
 
@@ -394,7 +385,8 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
 
       @Override
       public void map(DBIDRef id) {
-        processNeighbors(id, predicate.getNeighbors(id));
+        // Neighbors are consumed immediately, so the buffer can be reused.
+        processNeighbors(id, predicate.getNeighborsTransient(id));
       }
     }
   }
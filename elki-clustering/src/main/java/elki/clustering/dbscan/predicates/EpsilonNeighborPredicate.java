@@ -123,6 +123,11 @@ public class EpsilonNeighborPredicate<O> implements NeighborPredicate<DoubleDBID
      */
     protected DBIDs ids;
 
+    /**
+     * Reused result buffer for transient neighborhoods.
+     */
+    private ModifiableDoubleDBIDList buffer;
+
     /**
      * Constructor.
      *
@@ -147,6 +152,14 @@ public class EpsilonNeighborPredicate<O> implements NeighborPredicate<DoubleDBID
       return rq.getRange(reference, epsilon, DBIDUtil.newDistanceDBIDList());
     }
 
+    @Override
+    public DoubleDBIDList getNeighborsTransient(DBIDRef reference) {
+      if(buffer == null) {
+        return buffer = rq.getRange(reference, epsilon, DBIDUtil.newDistanceDBIDList());
+      }
+      return rq.getRange(reference, epsilon, buffer.clear());
+    }
+
     @Override
     public DBIDIter iterDBIDs(DoubleDBIDList neighbors) {
       return neighbors.iter();
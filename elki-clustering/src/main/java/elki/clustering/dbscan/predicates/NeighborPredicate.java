@@ -76,6 +76,20 @@ public interface NeighborPredicate<T> {
      */
     T getNeighbors(DBIDRef reference);
 
+    /**
+     * Get the neighbors of a reference object, for callers that consume the
+     * neighborhood before the next call. Implementations may then reuse the
+     * result buffer, which is invalidated by the next call to this method.
+     * <p>
+     * Instances are not shared across threads, so the buffer is per-thread.
+     *
+     * @param reference Reference object
+     * @return Neighborhood, valid until the next call
+     */
+    default T getNeighborsTransient(DBIDRef reference) {
+      return getNeighbors(reference);
+    }
+
     /**
      * Get the IDs the predicate is defined for.
      * 
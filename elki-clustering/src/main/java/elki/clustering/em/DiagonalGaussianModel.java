@@ -141,6 +141,30 @@ public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMMod
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel newPartialE() {
+    DiagonalGaussianModel partial = new DiagonalGaussianModel(1., new double[mean.length]);
+    partial.beginEStep();
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> partial) {
+    DiagonalGaussianModel other = (DiagonalGaussianModel) partial;
+    if(!(other.wsum > 0)) {
+      return;
+    }
+    final double nwsum = wsum + other.wsum;
+    final double f = other.wsum / nwsum, g = wsum * f;
+    // Pairwise combination of the aggregates (Chan et al.):
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = other.mean[i] - mean[i];
+      variances[i] += other.variances[i] + delta * delta * g;
+      mean[i] += delta * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = variances.length;
@@ -237,7 +237,7 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     // initial models
     List<? extends EMClusterModel<? super O, M>> models = mfactory.buildInitialModels(relation, k);
     WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
-    double loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+    double loglikelihood = assignProbabilities(relation, models, probClusterIGivenX);
     DoubleStatistic likestat = new DoubleStatistic(this.getClass().getName() + ".loglikelihood");
     LOG.statistics(likestat.setDouble(loglikelihood));
 
@@ -246,9 +246,9 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     double bestloglikelihood = loglikelihood; // For detecting instabilities.
     for(++it; it < maxiter || maxiter < 0; it++) {
       final double oldloglikelihood = loglikelihood;
-      recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+      updateModels(relation, probClusterIGivenX, models);
       // reassign probabilities
-      loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+      loglikelihood = assignProbabilities(relation, models, probClusterIGivenX);
 
       LOG.statistics(likestat.setDouble(loglikelihood));
       if(loglikelihood - bestloglikelihood > delta) {
@@ -286,6 +286,30 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     return result;
   }
 
+  /**
+   * Update the cluster models, using {@link #recomputeCovarianceMatrices}.
+   *
+   * @param relation Data relation
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   */
+  protected void updateModels(Relation<O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<? super O, M>> models) {
+    recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+  }
+
+  /**
+   * Assign the probabilities to the instances, using
+   * {@link #assignProbabilitiesToInstances}.
+   *
+   * @param relation Data relation
+   * @param models Cluster models
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @return the expectation value of the current mixture of distributions
+   */
+  protected double assignProbabilities(Relation<O> relation, List<? extends EMClusterModel<? super O, M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    return assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+  }
+
   /**
    * Recompute the covariance matrixes.
    * 
@@ -486,12 +510,12 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     /**
      * Prior to enable MAP estimation (use 0 for MLE)
      */
-    double prior = 0.;
+    protected double prior = 0.;
 
     /**
      * Retain soft assignments?
      */
-    boolean soft = false;
+    protected boolean soft = false;
 
     @Override
     public void configure(Parameterization config) {
@@ -75,6 +75,24 @@ public interface EMClusterModel<O, M extends Model> {
    */
   void updateE(O vec, double weight);
 
+  /**
+   * Create an empty model to aggregate a part of the data in the E step, for
+   * parallel processing. The partial model is then combined with this model
+   * using {@link #mergeE}. This is called after {@link #beginEStep()}, and for
+   * two-pass models again after {@link #finalizeFirstPassE()}.
+   *
+   * @return Partial model
+   */
+  EMClusterModel<O, M> newPartialE();
+
+  /**
+   * Merge the aggregates of a partial model obtained from
+   * {@link #newPartialE()} into this model.
+   *
+   * @param partial Partial model
+   */
+  void mergeE(EMClusterModel<O, M> partial);
+
   /**
    * Finalize the E step.
    * 
@@ -150,6 +150,40 @@ public class MultivariateGaussianModel implements EMClusterModel<NumberVector, E
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public MultivariateGaussianModel newPartialE() {
+    MultivariateGaussianModel partial = new MultivariateGaussianModel(1., new double[mean.length]);
+    partial.beginEStep();
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> partial) {
+    MultivariateGaussianModel other = (MultivariateGaussianModel) partial;
+    if(!(other.wsum > 0)) {
+      return;
+    }
+    final int dim = mean.length;
+    final double nwsum = wsum + other.wsum;
+    final double f = other.wsum / nwsum, g = wsum * f;
+    // Pairwise combination of the aggregates (Chan et al.):
+    for(int i = 0; i < dim; i++) {
+      nmea[i] = other.mean[i] - mean[i];
+    }
+    for(int i = 0; i < dim; i++) {
+      final double delta_i = nmea[i] * g;
+      double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] + delta_i * nmea[j];
+      }
+      // Other half is NOT updated here, but in finalizeEStep!
+    }
+    for(int i = 0; i < dim; i++) {
+      mean[i] += nmea[i] * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
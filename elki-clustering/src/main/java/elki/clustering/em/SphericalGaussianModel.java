@@ -131,6 +131,32 @@ public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMMo
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public SphericalGaussianModel newPartialE() {
+    SphericalGaussianModel partial = new SphericalGaussianModel(1., new double[mean.length]);
+    partial.beginEStep();
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> partial) {
+    SphericalGaussianModel other = (SphericalGaussianModel) partial;
+    if(!(other.wsum > 0)) {
+      return;
+    }
+    final double nwsum = wsum + other.wsum;
+    final double f = other.wsum / nwsum, g = wsum * f;
+    // Pairwise combination of the aggregates (Chan et al.):
+    double sqdelta = 0.;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = other.mean[i] - mean[i];
+      sqdelta += delta * delta;
+      mean[i] += delta * f;
+    }
+    variance += other.variance + sqdelta * g;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = mean.length;
@@ -156,6 +156,21 @@ public class TextbookMultivariateGaussianModel implements EMClusterModel<NumberV
     wsum += wei;
   }
 
+  @Override
+  public TextbookMultivariateGaussianModel newPartialE() {
+    TextbookMultivariateGaussianModel partial = new TextbookMultivariateGaussianModel(1., new double[mean.length]);
+    partial.beginEStep();
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> partial) {
+    TextbookMultivariateGaussianModel other = (TextbookMultivariateGaussianModel) partial;
+    plusEquals(mean, other.mean);
+    plusEquals(covariance, other.covariance);
+    wsum += other.wsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
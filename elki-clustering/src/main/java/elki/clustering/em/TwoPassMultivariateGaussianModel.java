@@ -70,6 +70,11 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
    */
   double weight, wsum;
 
+  /**
+   * Whether the first pass of the E step is in progress.
+   */
+  boolean firstPass;
+
   /**
    * Matrix for prior conditioning.
    */
@@ -109,6 +114,7 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     wsum = 0.;
     clear(mean);
     clear(covariance);
+    firstPass = true;
   }
 
   @Override
@@ -142,6 +148,7 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     for(int i = 0; i < mean.length; i++) {
       mean[i] *= s;
     }
+    firstPass = false;
   }
 
   /**
@@ -169,6 +176,28 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     }
   }
 
+  @Override
+  public TwoPassMultivariateGaussianModel newPartialE() {
+    TwoPassMultivariateGaussianModel partial = new TwoPassMultivariateGaussianModel(1., new double[mean.length]);
+    partial.beginEStep();
+    if(!firstPass) { // Second pass needs the mean from the first pass.
+      System.arraycopy(mean, 0, partial.mean, 0, mean.length);
+    }
+    return partial;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> partial) {
+    TwoPassMultivariateGaussianModel other = (TwoPassMultivariateGaussianModel) partial;
+    if(firstPass) {
+      plusEquals(mean, other.mean);
+      wsum += other.wsum;
+    }
+    else {
+      plusEquals(covariance, other.covariance);
+    }
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
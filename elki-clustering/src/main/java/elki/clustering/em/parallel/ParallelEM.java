@@ -0,0 +1,434 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.em.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import elki.clustering.em.EM;
+import elki.clustering.em.EMClusterModel;
+import elki.clustering.em.EMClusterModelFactory;
+import elki.data.model.MeanModel;
+import elki.data.model.Model;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.Relation;
+import elki.parallel.ParallelCore;
+import elki.utilities.exceptions.AbortException;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of clustering by expectation maximization (EM-Algorithm),
+ * also known as Gaussian Mixture Modeling (GMM).
+ * <p>
+ * Both the computation of the cluster probabilities of each point and the
+ * update of the cluster models are distributed across the available cores.
+ * The data is split into fixed blocks. For the model update, each block is
+ * aggregated into partial models (see {@link EMClusterModel#newPartialE()}).
+ * These partial models, as well as the log-likelihoods of the blocks, are then
+ * combined in block order, so that the result does not depend on thread
+ * scheduling. Because the aggregation order differs, the results may differ
+ * from {@link EM} in the last digits.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> object type to analyze
+ * @param <M> model type to produce
+ */
+public class ParallelEM<O, M extends MeanModel> extends EM<O, M> {
+  /**
+   * Minimum number of objects per block.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
+  /**
+   * Number of blocks per thread.
+   */
+  private static final int BLOCKS_PER_THREAD = 4;
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param miniter Minimum number of iterations
+   * @param maxiter Maximum number of iterations
+   * @param prior MAP prior
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<? super O, M> mfactory, int miniter, int maxiter, double prior, boolean soft) {
+    super(k, delta, mfactory, miniter, maxiter, prior, soft);
+  }
+
+  @Override
+  protected void updateModels(Relation<O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<? super O, M>> models) {
+    recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+  }
+
+  @Override
+  protected double assignProbabilities(Relation<O> relation, List<? extends EMClusterModel<? super O, M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    return assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+  }
+
+  /**
+   * Recompute the covariance matrixes, in parallel.
+   *
+   * @param relation Vector data
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   * @param prior MAP prior (use 0 for MLE)
+   * @param <O> Object type
+   */
+  public static <O> void recomputeCovarianceMatrices(Relation<? extends O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<? super O, ?>> models, double prior) {
+    final int k = models.size();
+    boolean needsTwoPass = false;
+    for(EMClusterModel<?, ?> m : models) {
+      m.beginEStep();
+      needsTwoPass |= m.needsTwoPass();
+    }
+    // First pass, only for two-pass models.
+    if(needsTwoPass) {
+      updateBlocks(relation, probClusterIGivenX, models, true);
+      for(EMClusterModel<?, ?> m : models) {
+        m.finalizeFirstPassE();
+      }
+    }
+    final double[] wsum = updateBlocks(relation, probClusterIGivenX, models, false);
+    for(int i = 0; i < k; i++) {
+      // MLE / MAP
+      final double weight = prior <= 0. ? wsum[i] / relation.size() : (wsum[i] + prior - 1) / (relation.size() + prior * k - k);
+      models.get(i).finalizeEStep(weight, prior);
+    }
+  }
+
+  /**
+   * Aggregate fixed blocks of the data into partial models in parallel, and
+   * merge them into the models in block order.
+   *
+   * @param relation Vector data
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   * @param firstPass Perform the first pass of two-pass models
+   * @param <O> Object type
+   * @return Sum of the weights of each cluster
+   */
+  private static <O> double[] updateBlocks(Relation<? extends O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<? super O, ?>> models, boolean firstPass) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), k = models.size();
+    final int nblocks = numBlocks(size);
+    List<UpdateBlock<O>> blocks = new ArrayList<>(nblocks);
+    for(int b = 0; b < nblocks; b++) {
+      blocks.add(new UpdateBlock<>(relation, probClusterIGivenX, models, firstPass, ids, //
+          (int) ((long) size * b / nblocks), (int) ((long) size * (b + 1) / nblocks)));
+    }
+    invokeAll(blocks, "Updating the cluster models");
+    // Merge in block order, for deterministic results.
+    double[] wsum = new double[k];
+    for(UpdateBlock<O> block : blocks) {
+      for(int i = 0; i < k; i++) {
+        merge(models.get(i), block.partials.get(i));
+        wsum[i] += block.wsum[i];
+      }
+    }
+    return wsum;
+  }
+
+  /**
+   * Assigns the current probability values to the instances in the database
+   * and compute the expectation value of the current mixture of
+   * distributions, in parallel.
+   *
+   * @param relation the database used for assignment to instances
+   * @param models Cluster models
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @param <O> Object type
+   * @return the expectation value of the current mixture of distributions
+   */
+  public static <O> double assignProbabilitiesToInstances(Relation<? extends O> relation, List<? extends EMClusterModel<? super O, ?>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), nblocks = numBlocks(size);
+    List<AssignmentBlock<O>> blocks = new ArrayList<>(nblocks);
+    for(int b = 0; b < nblocks; b++) {
+      blocks.add(new AssignmentBlock<>(relation, models, probClusterIGivenX, ids, //
+          (int) ((long) size * b / nblocks), (int) ((long) size * (b + 1) / nblocks)));
+    }
+    invokeAll(blocks, "Assigning the cluster probabilities");
+    // Sum in block order, for deterministic results.
+    double emSum = 0.;
+    for(AssignmentBlock<O> block : blocks) {
+      emSum += block.emSum;
+    }
+    return emSum / size;
+  }
+
+  /**
+   * Choose the number of blocks to split the data into.
+   *
+   * @param size Data size
+   * @return Number of blocks
+   */
+  private static int numBlocks(int size) {
+    final int parallelism = ParallelCore.getCore().getParallelism();
+    return Math.max(1, Math.min((size + MIN_BLOCKSIZE - 1) / MIN_BLOCKSIZE, parallelism * BLOCKS_PER_THREAD));
+  }
+
+  /**
+   * Process all blocks in parallel.
+   *
+   * @param blocks Blocks to process
+   * @param task Task description, for error messages
+   */
+  private static void invokeAll(List<? extends RecursiveAction> blocks, String task) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      core.submit(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(blocks))).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException(task + " failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException(task + " was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Merge a partial model into a model.
+   *
+   * @param model Model to update
+   * @param partial Partial model
+   */
+  @SuppressWarnings("unchecked")
+  private static <P, N extends Model> void merge(EMClusterModel<P, N> model, EMClusterModel<?, ?> partial) {
+    model.mergeE((EMClusterModel<P, N>) partial);
+  }
+
+  /**
+   * Task to compute the cluster probabilities of one block of the data.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class AssignmentBlock<O> extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Data relation.
+     */
+    private Relation<? extends O> relation;
+
+    /**
+     * Cluster models.
+     */
+    private List<? extends EMClusterModel<? super O, ?>> models;
+
+    /**
+     * Output storage for cluster probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Object ids.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Block start (inclusive) and end (exclusive).
+     */
+    private int start, end;
+
+    /**
+     * Partial sum of the log likelihoods.
+     */
+    private double emSum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param models Cluster models
+     * @param probClusterIGivenX Output storage for cluster probabilities
+     * @param ids Object ids
+     * @param start Block start (inclusive)
+     * @param end Block end (exclusive)
+     */
+    AssignmentBlock(Relation<? extends O> relation, List<? extends EMClusterModel<? super O, ?>> models, WritableDataStore<double[]> probClusterIGivenX, ArrayDBIDs ids, int start, int end) {
+      this.relation = relation;
+      this.models = models;
+      this.probClusterIGivenX = probClusterIGivenX;
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      final int k = models.size();
+      double emSum = 0.;
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        O vec = relation.get(it);
+        double[] probs = new double[k];
+        for(int i = 0; i < k; i++) {
+          double v = models.get(i).estimateLogDensity(vec);
+          probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+        }
+        final double logP = logSumExp(probs);
+        for(int i = 0; i < k; i++) {
+          probs[i] = FastMath.exp(probs[i] - logP);
+        }
+        probClusterIGivenX.put(it, probs);
+        emSum += logP;
+      }
+      this.emSum = emSum;
+    }
+  }
+
+  /**
+   * Task to aggregate one block of the data into partial models.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class UpdateBlock<O> extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Data relation.
+     */
+    private Relation<? extends O> relation;
+
+    /**
+     * Object probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Cluster models.
+     */
+    private List<? extends EMClusterModel<? super O, ?>> models;
+
+    /**
+     * Perform the first pass of two-pass models.
+     */
+    private boolean firstPass;
+
+    /**
+     * Object ids.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Block start (inclusive) and end (exclusive).
+     */
+    private int start, end;
+
+    /**
+     * Partial models.
+     */
+    private List<EMClusterModel<? super O, ?>> partials;
+
+    /**
+     * Partial sum of the weights of each cluster.
+     */
+    private double[] wsum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param probClusterIGivenX Object probabilities
+     * @param models Cluster models
+     * @param firstPass Perform the first pass of two-pass models
+     * @param ids Object ids
+     * @param start Block start (inclusive)
+     * @param end Block end (exclusive)
+     */
+    UpdateBlock(Relation<? extends O> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<? super O, ?>> models, boolean firstPass, ArrayDBIDs ids, int start, int end) {
+      this.relation = relation;
+      this.probClusterIGivenX = probClusterIGivenX;
+      this.models = models;
+      this.firstPass = firstPass;
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      final int k = models.size();
+      partials = new ArrayList<>(k);
+      for(int i = 0; i < k; i++) {
+        partials.add(models.get(i).newPartialE());
+      }
+      wsum = new double[k];
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        double[] clusterProbabilities = probClusterIGivenX.get(it);
+        O instance = relation.get(it);
+        for(int i = 0; i < clusterProbabilities.length; i++) {
+          final double prob = clusterProbabilities[i];
+          if(prob > 1e-10) {
+            if(firstPass) {
+              partials.get(i).firstPassE(instance, prob);
+            }
+            else {
+              partials.get(i).updateE(instance, prob);
+            }
+          }
+          wsum[i] += prob;
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> object type
+   * @param <M> model type
+   */
+  public static class Par<O, M extends MeanModel> extends EM.Par<O, M> {
+    @Override
+    public ParallelEM<O, M> make() {
+      return new ParallelEM<>(k, delta, mfactory, miniter, maxiter, prior, soft);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.DoubleDataStore;
 import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.distance.Distance;
@@ -90,6 +91,17 @@ public abstract class AbstractHDBSCAN<O> implements Algorithm {
     this.minPts = minPts;
   }
 
+  /**
+   * Compute the core distances for all objects.
+   *
+   * @param qb Query builder
+   * @param ids Objects
+   * @return Data store with core distances
+   */
+  protected WritableDoubleDataStore computeCoreDists(QueryBuilder<O> qb, ArrayDBIDs ids) {
+    return computeCoreDists(ids, qb.kNNByDBID(minPts), minPts);
+  }
+
   /**
    * Compute the core distances for all objects.
    *
@@ -44,6 +44,7 @@ import elki.utilities.Priority;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -95,6 +96,11 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Store the distance matrix with single precision only.
+   */
+  protected boolean singlePrecision;
+
   /**
    * Constructor.
    *
@@ -102,9 +108,21 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   public Anderberg(Distance<? super O> distance, Linkage linkage) {
+    this(distance, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param linkage Linkage method
+   * @param singlePrecision Store the distance matrix with single precision only
+   */
+  public Anderberg(Distance<? super O> distance, Linkage linkage, boolean singlePrecision) {
     super();
     this.distance = distance;
     this.linkage = linkage;
+    this.singlePrecision = singlePrecision;
   }
 
   /**
@@ -119,7 +137,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     }
     DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
+    MatrixParadigm mat = new MatrixParadigm(ids, singlePrecision);
     final int size = ids.size();
 
     // Position counter - must agree with computeOffset!
@@ -128,7 +146,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     // Arrays used for caching:
     double[] bestd = new double[size];
     int[] besti = new int[size];
-    initializeNNCache(mat.matrix, bestd, besti);
+    initializeNNCache(mat, bestd, besti);
 
     // Initialize space for result:
     PointerHierarchyBuilder builder = new PointerHierarchyBuilder(ids, dq.getDistance().isSquared());
@@ -149,21 +167,21 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
   /**
    * Initialize the NN cache.
    *
-   * @param scratch Scratch space
+   * @param mat Matrix paradigm
    * @param bestd Best distance
    * @param besti Best index
    */
-  protected static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  protected static void initializeNNCache(MatrixParadigm mat, double[] bestd, int[] besti) {
     final int size = bestd.length;
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
     besti[0] = Integer.MAX_VALUE; // invalid, but not deactivated
-    int p = 0;
+    long p = 0;
     for(int x = 1; x < size; x++) {
       double bestdx = Double.POSITIVE_INFINITY;
       int bestix = -1;
       for(int y = 0; y < x; y++) {
-        final double v = scratch[p++];
+        final double v = mat.get(p++);
         if(v < bestdx) {
           bestdx = v;
           bestix = y;
@@ -236,9 +254,9 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     final int sizex = builder.getSize(ix), sizey = builder.getSize(iy);
     builder.setSize(iy, sizex + sizey);
     besti[x] = -1; // Deactivate removed cluster.
-    updateMatrix(size, mat.matrix, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    updateMatrix(size, mat, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
     if(y > 0) {
-      findBest(mat.matrix, bestd, besti, y);
+      findBest(mat, bestd, besti, y);
     }
   }
 
@@ -246,7 +264,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * Update the scratch distance matrix.
    *
    * @param size Data set size
-   * @param scratch Scratch matrix.
+   * @param mat Matrix paradigm
    * @param ij Iterator to reuse
    * @param bestd Best distance
    * @param besti Index of best distance
@@ -257,10 +275,10 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param sizex Old size of first cluster, with {@code x > y}
    * @param sizey Old size of second cluster, with {@code y > x}
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, MatrixParadigm mat, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
+    final long xbase = MatrixParadigm.triangleSize(x);
+    final long ybase = MatrixParadigm.triangleSize(y);
 
     // Write to (y, j), with j < y
     int j = 0;
@@ -269,21 +287,23 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final long yb = ybase + j;
+      final double d = linkage.combine(sizex, mat.get(xbase + j), sizey, mat.get(yb), sizej, mindist);
+      mat.set(yb, d);
+      updateCache(mat, bestd, besti, x, y, j, d);
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
+    long jbase = MatrixParadigm.triangleSize(j);
     for(; j < x; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, mat.get(xbase + j), sizey, mat.get(jb), sizej, mindist);
+      mat.set(jb, d);
+      updateCache(mat, bestd, besti, x, y, j, d);
     }
     jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
@@ -292,16 +312,17 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, mat.get(jbase + x), sizey, mat.get(jb), sizej, mindist);
+      mat.set(jb, d);
+      updateCache(mat, bestd, besti, x, y, j, d);
     }
   }
 
   /**
    * Update the cache.
    *
-   * @param scratch Scratch matrix
+   * @param mat Matrix paradigm
    * @param bestd Best distance
    * @param besti Best index
    * @param x First cluster
@@ -309,7 +330,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param j Updated value d(y, j)
    * @param d New distance
    */
-  protected static void updateCache(double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  protected static void updateCache(MatrixParadigm mat, double[] bestd, int[] besti, int x, int y, int j, double d) {
     assert y < x;
     // New best
     if(y < j && d <= bestd[j]) {
@@ -319,27 +340,28 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     }
     // Needs slow update.
     if(besti[j] == x || besti[j] == y) {
-      findBest(scratch, bestd, besti, j);
+      findBest(mat, bestd, besti, j);
     }
   }
 
   /**
    * Find the best in a row of the triangular matrix.
    *
-   * @param scratch Scratch matrix
+   * @param mat Matrix paradigm
    * @param bestd Best distances cache
    * @param besti Best indexes cache
    * @param j Row to update
    */
-  protected static void findBest(double[] scratch, double[] bestd, int[] besti, int j) {
+  protected static void findBest(MatrixParadigm mat, double[] bestd, int[] besti, int j) {
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
     int bestij = -1;
-    for(int i = 0, o = MatrixParadigm.triangleSize(j); i < j; i++, o++) {
+    long o = MatrixParadigm.triangleSize(j);
+    for(int i = 0; i < j; i++, o++) {
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = mat.get(o);
       if(dist <= bestdj) {
         bestdj = dist;
         bestij = i;
@@ -375,6 +397,11 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Store the distance matrix with single precision only.
+     */
+    protected boolean singlePrecision;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Linkage>(AGNES.Par.LINKAGE_ID, Linkage.class) //
@@ -384,11 +411,12 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
           ? SquaredEuclideanDistance.class : EuclideanDistance.class;
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, defaultD) //
           .grab(config, x -> distance = x);
+      new Flag(AGNES.Par.FLOAT_ID).grab(config, x -> singlePrecision = x);
     }
 
     @Override
     public Anderberg<O> make() {
-      return new Anderberg<>(distance, linkage);
+      return new Anderberg<>(distance, linkage, singlePrecision);
     }
   }
 }
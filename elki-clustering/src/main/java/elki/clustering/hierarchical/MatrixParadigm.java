@@ -20,11 +20,18 @@
  */
 package elki.clustering.hierarchical;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleUnaryOperator;
+
 import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.query.distance.DistanceQuery;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelCore;
 import elki.utilities.exceptions.AbortException;
 
 /**
@@ -37,20 +44,45 @@ import elki.utilities.exceptions.AbortException;
  * <p>
  * While this will usually store (merge-) distances when clustering, it can
  * store arbitrary doubles.
+ * <p>
+ * The lower triangle matrix is stored in pages, and indexed with long
+ * positions, because a single Java array is limited to about 65536 objects.
+ * Optionally, values can be stored with single precision, to halve the memory
+ * usage.
  *
  * @author Erich Schubert
  * @since 0.7.5
  */
 public class MatrixParadigm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MatrixParadigm.class);
+
+  /**
+   * Number of bits per page.
+   */
+  private static final int PAGE_BITS = 24;
+
+  /**
+   * Mask for the offset within a page.
+   */
+  private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
   /**
    * Two iterators to reference to objects.
    */
   public final DBIDArrayIter ix, iy;
 
   /**
-   * Distance matrix (<b>modifiable</b>).
+   * Distance matrix pages with double precision, or {@code null}.
    */
-  public final double[] matrix;
+  private final double[][] dmatrix;
+
+  /**
+   * Distance matrix pages with single precision, or {@code null}.
+   */
+  private final float[][] fmatrix;
 
   /**
    * Number of rows/columns.
@@ -58,21 +90,57 @@ public class MatrixParadigm {
   public final int size;
 
   /**
-   * Constructor.
+   * Object ids.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Constructor, using double precision.
    *
    * @param ids Database ids.
    */
   public MatrixParadigm(DBIDs ids) {
+    this(ids, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids Database ids.
+   * @param singlePrecision Store values with single precision only
+   */
+  public MatrixParadigm(DBIDs ids, boolean singlePrecision) {
     size = ids.size();
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-          0x10000 // = 65535
-          + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
+    this.ids = DBIDUtil.ensureArray(ids);
+    ix = this.ids.iter();
+    iy = this.ids.iter();
+    final long total = triangleSize(size);
+    final int pages = (int) ((total + PAGE_MASK) >>> PAGE_BITS);
+    if(singlePrecision) {
+      dmatrix = null;
+      fmatrix = new float[pages][];
+      for(int i = 0; i < pages; i++) {
+        fmatrix[i] = new float[pageSize(total, i)];
+      }
     }
-    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-    ix = aids.iter();
-    iy = aids.iter();
-    matrix = new double[triangleSize(size)];
+    else {
+      fmatrix = null;
+      dmatrix = new double[pages][];
+      for(int i = 0; i < pages; i++) {
+        dmatrix[i] = new double[pageSize(total, i)];
+      }
+    }
+  }
+
+  /**
+   * Size of a page.
+   *
+   * @param total Total number of values
+   * @param page Page number
+   * @return Page size
+   */
+  private static int pageSize(long total, int page) {
+    return (int) Math.min(PAGE_MASK + 1L, total - ((long) page << PAGE_BITS));
   }
 
   /**
@@ -81,8 +149,17 @@ public class MatrixParadigm {
    * @param x Offset
    * @return Size of complete triangle
    */
-  public static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  public static long triangleSize(int x) {
+    return (x * (long) (x - 1)) >>> 1;
+  }
+
+  /**
+   * Check if the matrix uses single precision.
+   *
+   * @return {@code true} for single precision
+   */
+  public boolean isSinglePrecision() {
+    return fmatrix != null;
   }
 
   /**
@@ -96,7 +173,36 @@ public class MatrixParadigm {
    * @return Distance
    */
   public double get(int x, int y) {
-    return x == y ? 0 : x < y ? matrix[triangleSize(y) + x] : matrix[triangleSize(x) + y];
+    return x == y ? 0 : x < y ? get(triangleSize(y) + x) : get(triangleSize(x) + y);
+  }
+
+  /**
+   * Get a value by its position in the linear matrix, i.e.,
+   * {@code triangleSize(x) + y} for {@code y < x}.
+   *
+   * @param pos Position
+   * @return Value
+   */
+  public double get(long pos) {
+    final int page = (int) (pos >>> PAGE_BITS), off = (int) pos & PAGE_MASK;
+    return dmatrix != null ? dmatrix[page][off] : fmatrix[page][off];
+  }
+
+  /**
+   * Set a value by its position in the linear matrix, i.e.,
+   * {@code triangleSize(x) + y} for {@code y < x}.
+   *
+   * @param pos Position
+   * @param v Value
+   */
+  public void set(long pos, double v) {
+    final int page = (int) (pos >>> PAGE_BITS), off = (int) pos & PAGE_MASK;
+    if(dmatrix != null) {
+      dmatrix[page][off] = v;
+    }
+    else {
+      fmatrix[page][off] = (float) v;
+    }
   }
 
   /**
@@ -106,16 +212,123 @@ public class MatrixParadigm {
    * @return this
    */
   public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
-    final DBIDArrayIter ix = this.ix, iy = this.iy;
-    final double[] matrix = this.matrix;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert pos == triangleSize(x);
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = dq.distance(ix, iy);
-      }
+    return initializeWithDistances(dq, null, null);
+  }
+
+  /**
+   * Initialize a distance matrix.
+   * <p>
+   * The matrix is computed in parallel only if a parallel core with more than
+   * one thread was bound to the current thread, e.g., using the
+   * {@code -parallel.threads} option.
+   *
+   * @param dq Distance query
+   * @param transform Transformation of the distances, may be {@code null}
+   * @param prog Progress (in rows), may be {@code null}
+   * @return this
+   */
+  public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq, DoubleUnaryOperator transform, FiniteProgress prog) {
+    ParallelCore core = ParallelCore.getCore();
+    if(!ParallelCore.isCoreBound() || core.getParallelism() <= 1) {
+      new RowsTask(dq, transform, prog, 0, size, Long.MAX_VALUE).compute();
+      return this;
+    }
+    core.connect();
+    try {
+      final long minwork = Math.max(1024, triangleSize(size) / (core.getParallelism() * 32));
+      core.submit(new RowsTask(dq, transform, prog, 0, size, minwork)).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Computing the distance matrix failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Computing the distance matrix was interrupted.");
+    }
+    finally {
+      core.disconnect();
     }
     return this;
   }
+
+  /**
+   * Parallel computation of a range of matrix rows. Because row x has x
+   * entries, ranges are split to have the same number of entries.
+   *
+   * @author Erich Schubert
+   */
+  private class RowsTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Distance query.
+     */
+    private final DistanceQuery<?> dq;
+
+    /**
+     * Transformation of the distances, may be {@code null}.
+     */
+    private final DoubleUnaryOperator transform;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private final FiniteProgress prog;
+
+    /**
+     * Range of rows.
+     */
+    private final int start, end;
+
+    /**
+     * Minimum number of entries, do not split below.
+     */
+    private final long minwork;
+
+    /**
+     * Constructor.
+     *
+     * @param dq Distance query
+     * @param transform Transformation of the distances, may be {@code null}
+     * @param prog Progress, may be {@code null}
+     * @param start First row
+     * @param end End row (exclusive)
+     * @param minwork Minimum number of entries
+     */
+    RowsTask(DistanceQuery<?> dq, DoubleUnaryOperator transform, FiniteProgress prog, int start, int end, long minwork) {
+      this.dq = dq;
+      this.transform = transform;
+      this.prog = prog;
+      this.start = start;
+      this.end = end;
+      this.minwork = minwork;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > 1 && triangleSize(end) - triangleSize(start) > minwork) {
+        // Split into two halves of the same area:
+        final int mid = Math.max(start + 1, Math.min(end - 1, //
+            (int) Math.sqrt(0.5 * ((double) start * start + (double) end * end))));
+        invokeAll(new RowsTask(dq, transform, prog, start, mid, minwork), //
+            new RowsTask(dq, transform, prog, mid, end, minwork));
+        return;
+      }
+      final DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      long pos = triangleSize(start);
+      for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+        final int x = ix.getOffset();
+        assert pos == triangleSize(x);
+        for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
+          final double d = dq.distance(ix, iy);
+          set(pos++, transform != null ? transform.applyAsDouble(d) : d);
+        }
+      }
+      if(prog != null) {
+        prog.incrementProcessed(end - start, LOG);
+      }
+    }
+  }
 }
@@ -32,8 +32,10 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -80,14 +82,30 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Distance<? super O> distance;
 
+  /**
+   * Store the distance matrix with single precision only.
+   */
+  protected boolean singlePrecision;
+
   /**
    * Constructor.
    *
    * @param distance Distance function to use.
    */
   public MiniMax(Distance<? super O> distance) {
+    this(distance, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use.
+   * @param singlePrecision Store the distance matrix with single precision only
+   */
+  public MiniMax(Distance<? super O> distance, boolean singlePrecision) {
     super();
     this.distance = distance;
+    this.singlePrecision = singlePrecision;
   }
 
   @Override
@@ -111,8 +129,8 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>(size);
 
     // Allocate working space:
-    MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(size));
+    ArrayModifiableDBIDs prots = newPrototypes(size);
+    MatrixParadigm mat = new MatrixParadigm(ids, singlePrecision);
     initializeMatrices(mat, prots, dq);
 
     DBIDArrayMIter protiter = prots.iter();
@@ -134,16 +152,28 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    * @param dq The distance query
    */
   protected static <O> void initializeMatrices(MatrixParadigm mat, ArrayModifiableDBIDs prots, DistanceQuery<O> dq) {
+    mat.initializeWithDistances(dq);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
-    int pos = 0;
     for(ix.seek(0); ix.valid(); ix.advance()) {
       for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        distances[pos++] = dq.distance(ix, iy);
         prots.add(iy);
       }
     }
-    assert (prots.size() == pos);
+    assert (prots.size() == MatrixParadigm.triangleSize(mat.size));
+  }
+
+  /**
+   * Allocate the array for the prototypes of all pairs of objects.
+   *
+   * @param size Number of objects
+   * @return Prototype array
+   */
+  protected static ArrayModifiableDBIDs newPrototypes(int size) {
+    final long total = MatrixParadigm.triangleSize(size);
+    if(total > Integer.MAX_VALUE) {
+      throw new AbortException("MiniMax clustering stores a prototype for each pair of objects, and does not scale to data sets larger than 65536 instances.");
+    }
+    return DBIDUtil.newArray((int) total);
   }
 
   /**
@@ -158,7 +188,6 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    */
   protected static int findMerge(int end, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
 
@@ -167,7 +196,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
       if(builder.isLinked(ix.seek(dx))) {
         continue;
       }
-      final int xoffset = MatrixParadigm.triangleSize(dx);
+      final long xoffset = MatrixParadigm.triangleSize(dx);
 
       for(int dy = 0; dy < dx; dy++) {
         // Skip if object is already linked
@@ -175,7 +204,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
           continue;
         }
 
-        double dist = distances[xoffset + dy];
+        double dist = mat.get(xoffset + dy);
         if(dist < mindist) {
           mindist = dist;
           x = dx;
@@ -205,11 +234,11 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
   protected static void merge(int size, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
-    final double[] distances = mat.matrix;
-    int offset = MatrixParadigm.triangleSize(x) + y;
+    final int offset = (int) (MatrixParadigm.triangleSize(x) + y);
+    final double dist = mat.get(offset);
 
     if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances[offset]);
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + dist);
     }
 
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
@@ -229,7 +258,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     clusters.put(y, cy);
 
     // parent of x is set to y
-    builder.add(ix, distances[offset], iy, prots.seek(offset));
+    builder.add(ix, dist, iy, prots.seek(offset));
 
     updateMatrices(size, mat, prots, builder, clusters, dq, y);
   }
@@ -285,7 +314,6 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
   protected static void updateEntry(MatrixParadigm mat, DBIDArrayMIter prots, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
 
     DBIDVar prototype = DBIDUtil.newVar(ix.seek(x)); // Default prototype
@@ -308,8 +336,8 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
       prototype.set(ix);
     }
 
-    final int offset = MatrixParadigm.triangleSize(x) + y;
-    distances[offset] = minMaxDist;
+    final int offset = (int) (MatrixParadigm.triangleSize(x) + y);
+    mat.set(offset, minMaxDist);
     prots.seek(offset).setDBID(prototype);
   }
 
@@ -419,15 +447,21 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Store the distance matrix with single precision only.
+     */
+    protected boolean singlePrecision;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
           .grab(config, x -> distance = x);
+      new Flag(AGNES.Par.FLOAT_ID).grab(config, x -> singlePrecision = x);
     }
 
     @Override
     public MiniMax<O> make() {
-      return new MiniMax<>(distance);
+      return new MiniMax<>(distance, singlePrecision);
     }
   }
 }
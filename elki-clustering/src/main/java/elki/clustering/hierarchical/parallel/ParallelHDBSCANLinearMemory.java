@@ -0,0 +1,357 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical.parallel;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import elki.clustering.hierarchical.HDBSCANLinearMemory;
+import elki.clustering.hierarchical.PointerDensityHierarchyResult;
+import elki.clustering.hierarchical.PointerHierarchyBuilder;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.math.MathUtil;
+import elki.math.geometry.PrimsMinimumSpanningTree;
+import elki.parallel.ParallelCore;
+import elki.utilities.datastructures.heap.DoubleLongHeap;
+import elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Parallel linear memory implementation of HDBSCAN clustering.
+ * <p>
+ * Core distances are computed with batch kNN queries where available, and with
+ * parallel kNN queries otherwise. In each step of Prim's algorithm, the
+ * distances to the newly added point are updated in parallel blocks, and the
+ * next point is chosen by a parallel arg-min reduction. Ties are broken by the
+ * smaller index, so the result is the same as with {@link HDBSCANLinearMemory}.
+ * <p>
+ * The remaining points are kept in a compact array, so each step only scans
+ * the points not yet connected. Because the mutual reachability distance is
+ * at least the larger core distance, the distance computation is skipped if
+ * this bound cannot improve the current best distance of a point.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelHDBSCANLinearMemory<O> extends HDBSCANLinearMemory<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelHDBSCANLinearMemory.class);
+
+  /**
+   * Minimum number of points per parallel block.
+   */
+  private static final int MIN_BLOCK = 1 << 10;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public ParallelHDBSCANLinearMemory(Distance<? super O> distance, int minPts) {
+    super(distance, minPts);
+  }
+
+  @Override
+  public PointerDensityHierarchyResult run(Relation<O> relation) {
+    final QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    // We need array addressing later.
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+
+    // 1. Compute the core distances
+    final WritableDoubleDataStore coredists = computeCoreDists(qb, ids);
+    final DistanceQuery<O> distQ = qb.distanceQuery();
+
+    final int numedges = ids.size() - 1;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
+    // 2. Build spanning tree.
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
+    new Prim(ids, coredists, distQ).run(new HeapMSTCollector(heap, mprog, LOG));
+    LOG.ensureCompleted(mprog);
+    return convertToPointerRepresentation(ids, heap, //
+        new PointerHierarchyBuilder(ids, distQ.getDistance().isSquared())) //
+            .complete(coredists);
+  }
+
+  @Override
+  protected WritableDoubleDataStore computeCoreDists(QueryBuilder<O> qb, ArrayDBIDs ids) {
+    return ParallelHDBSCANUtil.computeCoreDists(qb, ids, minPts, LOG);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Prim's minimum spanning tree algorithm on the mutual reachability graph,
+   * with parallel updates.
+   *
+   * @author Erich Schubert
+   */
+  private static class Prim {
+    /**
+     * Objects.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Distance query.
+     */
+    final DistanceQuery<?> distQ;
+
+    /**
+     * Core distances, by offset.
+     */
+    final double[] core;
+
+    /**
+     * Best distance to the tree, by offset.
+     */
+    final double[] best;
+
+    /**
+     * Closest point in the tree, by offset.
+     */
+    final int[] src;
+
+    /**
+     * Offsets of the points not yet connected.
+     */
+    final int[] rem;
+
+    /**
+     * Current point.
+     */
+    int current;
+
+    /**
+     * Core distance of the current point.
+     */
+    double ccore;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Objects
+     * @param coredists Core distances
+     * @param distQ Distance query
+     */
+    Prim(ArrayDBIDs ids, DoubleDataStore coredists, DistanceQuery<?> distQ) {
+      final int n = ids.size();
+      this.ids = ids;
+      this.distQ = distQ;
+      this.core = new double[n];
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        core[it.getOffset()] = coredists.doubleValue(it);
+      }
+      this.best = new double[n];
+      Arrays.fill(best, Double.POSITIVE_INFINITY);
+      this.src = new int[n];
+      this.rem = new int[n];
+      for(int i = 0; i < n; i++) {
+        rem[i] = i;
+      }
+    }
+
+    /**
+     * Run Prim's algorithm.
+     *
+     * @param collector Edge collector
+     */
+    void run(PrimsMinimumSpanningTree.Collector collector) {
+      ParallelCore core = ParallelCore.getCore();
+      final int parallelism = core.getParallelism();
+      if(parallelism <= 1 || ids.size() < MIN_BLOCK << 1) {
+        process(collector, Integer.MAX_VALUE);
+        return;
+      }
+      core.connect();
+      try {
+        core.submit(ForkJoinTask.adapt(() -> process(collector, parallelism << 2))).get();
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Computing the minimum spanning tree failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Computing the minimum spanning tree was interrupted.");
+      }
+      finally {
+        core.disconnect();
+      }
+    }
+
+    /**
+     * Main loop of Prim's algorithm.
+     *
+     * @param collector Edge collector
+     * @param blocks Number of blocks to split each step into
+     */
+    private void process(PrimsMinimumSpanningTree.Collector collector, int blocks) {
+      // We always start at "random" node 0, which is the first in rem.
+      int size = rem.length - 1;
+      rem[0] = rem[size];
+      current = 0;
+      best[current] = 0;
+      while(size > 0) {
+        ccore = core[current];
+        final int grain = blocks == Integer.MAX_VALUE ? size : Math.max(MIN_BLOCK, size / blocks);
+        Update u = new Update(0, size, grain);
+        if(size > grain) {
+          u.invoke();
+        }
+        else {
+          u.compute();
+        }
+        final int newbesti = rem[u.bestk];
+        rem[u.bestk] = rem[--size];
+        collector.addEdge(best[newbesti], src[newbesti], newbesti);
+        current = newbesti;
+      }
+    }
+
+    /**
+     * Update the distances to the current point, and find the closest
+     * remaining point.
+     *
+     * @author Erich Schubert
+     */
+    private class Update extends RecursiveAction {
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Range of positions in the remaining points array.
+       */
+      final int start, end;
+
+      /**
+       * Block size.
+       */
+      final int grain;
+
+      /**
+       * Position of the closest point.
+       */
+      int bestk = -1;
+
+      /**
+       * Closest point.
+       */
+      int bestj = Integer.MAX_VALUE;
+
+      /**
+       * Distance of the closest point.
+       */
+      double bestd = Double.POSITIVE_INFINITY;
+
+      /**
+       * Constructor.
+       *
+       * @param start First position
+       * @param end End position (exclusive)
+       * @param grain Block size
+       */
+      Update(int start, int end, int grain) {
+        this.start = start;
+        this.end = end;
+        this.grain = grain;
+      }
+
+      @Override
+      protected void compute() {
+        if(end - start > grain) {
+          final int mid = (start + end) >>> 1;
+          Update left = new Update(start, mid, grain), right = new Update(mid, end, grain);
+          invokeAll(left, right);
+          bestk = left.bestk;
+          bestj = left.bestj;
+          bestd = left.bestd;
+          offer(right.bestd, right.bestj, right.bestk);
+          return;
+        }
+        DBIDArrayIter p = ids.iter().seek(current), q = ids.iter();
+        for(int k = start; k < end; k++) {
+          final int j = rem[k];
+          double bj = best[j];
+          // Mutual reachability is at least the larger core distance:
+          if(ccore < bj && core[j] < bj) {
+            final double d = MathUtil.max(ccore, core[j], distQ.distance(p, q.seek(j)));
+            if(d < bj) {
+              best[j] = bj = d;
+              src[j] = current;
+            }
+          }
+          offer(bj, j, k);
+        }
+      }
+
+      /**
+       * Offer a candidate; ties are broken by the smaller index.
+       *
+       * @param d Distance
+       * @param j Point index
+       * @param k Position
+       */
+      private void offer(double d, int j, int k) {
+        if(d < bestd || (d == bestd && j < bestj) || bestk < 0) {
+          bestd = d;
+          bestj = j;
+          bestk = k;
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends HDBSCANLinearMemory.Par<O> {
+    @Override
+    public ParallelHDBSCANLinearMemory<O> make() {
+      return new ParallelHDBSCANLinearMemory<>(distance, minPts);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical.parallel;
+
+import java.util.List;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.BatchKNNSearcher;
+import elki.database.query.knn.KNNSearcher;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Shared helper functions for parallel HDBSCAN.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+final class ParallelHDBSCANUtil {
+  /**
+   * Number of queries per batch, to bound the memory used for kNN lists.
+   */
+  private static final int BATCH_SIZE = 1 << 14;
+
+  /**
+   * Private constructor. Static methods only.
+   */
+  private ParallelHDBSCANUtil() {
+    // Do not use.
+  }
+
+  /**
+   * Compute the core distances for all objects, using batch kNN queries if
+   * supported by the searcher, and parallel single queries otherwise.
+   *
+   * @param qb Query builder
+   * @param ids Objects
+   * @param minPts Minimum neighborhood size
+   * @param log Logger for progress
+   * @return Data store with core distances
+   */
+  static WritableDoubleDataStore computeCoreDists(QueryBuilder<?> qb, ArrayDBIDs ids, int minPts, Logging log) {
+    final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    FiniteProgress cprog = log.isVerbose() ? new FiniteProgress("Computing core sizes", ids.size(), log) : null;
+    final KNNSearcher<DBIDRef> knnQ = qb.kNNByDBID(minPts);
+    if(knnQ instanceof BatchKNNSearcher) {
+      // The batch searcher parallelizes internally.
+      final BatchKNNSearcher batch = (BatchKNNSearcher) knnQ;
+      DBIDArrayIter iter = ids.iter();
+      for(int start = 0, size = ids.size(); start < size; start += BATCH_SIZE) {
+        final int end = Math.min(start + BATCH_SIZE, size);
+        List<? extends KNNList> knns = batch.getKNNForBulkDBIDs(ids.slice(start, end), minPts);
+        for(KNNList knn : knns) {
+          coredists.putDouble(iter, knn.getKNNDistance());
+          iter.advance();
+        }
+        if(cprog != null) {
+          cprog.setProcessed(end, log);
+        }
+      }
+    }
+    else {
+      ParallelExecutor.run(ids, cprog, log, new Processor() {
+        @Override
+        public Processor.Instance instantiate(Executor executor) {
+          final KNNSearcher<DBIDRef> knnq = qb.kNNByDBID(minPts);
+          return id -> coredists.putDouble(id, knnq.getKNN(id, minPts).getKNNDistance());
+        }
+
+        @Override
+        public void cleanup(Processor.Instance inst) {
+          // Nothing to do.
+        }
+      });
+    }
+    log.ensureCompleted(cprog);
+    return coredists;
+  }
+}
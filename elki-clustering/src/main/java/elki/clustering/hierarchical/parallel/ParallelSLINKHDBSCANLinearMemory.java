@@ -0,0 +1,217 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical.parallel;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
+
+import elki.clustering.hierarchical.SLINKHDBSCANLinearMemory;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRef;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.math.MathUtil;
+import elki.parallel.ParallelCore;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Parallel linear memory implementation of HDBSCAN clustering based on SLINK.
+ * <p>
+ * Core distances are computed with batch kNN queries where available, and with
+ * parallel kNN queries otherwise. The distances from all processed objects to
+ * the newly inserted object (step 2 of SLINK) are computed in parallel blocks.
+ * The remaining steps of SLINK are inherently sequential, but do not compute
+ * distances.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelSLINKHDBSCANLinearMemory<O> extends SLINKHDBSCANLinearMemory<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelSLINKHDBSCANLinearMemory.class);
+
+  /**
+   * Minimum number of objects per parallel block.
+   */
+  private static final int MIN_BLOCK = 1 << 10;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public ParallelSLINKHDBSCANLinearMemory(Distance<? super O> distance, int minPts) {
+    super(distance, minPts);
+  }
+
+  @Override
+  protected WritableDoubleDataStore computeCoreDists(QueryBuilder<O> qb, ArrayDBIDs ids) {
+    return ParallelHDBSCANUtil.computeCoreDists(qb, ids, minPts, LOG);
+  }
+
+  @Override
+  protected void step2(DBIDRef id, ArrayDBIDs processedIDs, DistanceQuery<? super O> distQuery, DoubleDataStore coredists, WritableDoubleDataStore m) {
+    final int size = processedIDs.size();
+    ParallelCore core = ParallelCore.getCore();
+    final int parallelism = core.getParallelism();
+    if(parallelism <= 1 || size < MIN_BLOCK << 1) {
+      super.step2(id, processedIDs, distQuery, coredists, m);
+      return;
+    }
+    final int grain = Math.max(MIN_BLOCK, size / (parallelism << 2));
+    core.connect();
+    try {
+      core.submit(new Step2(id, coredists.doubleValue(id), processedIDs, distQuery, coredists, m, 0, size, grain)).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Computing distances failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Computing distances was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Compute the distances of a block of processed objects to the new object.
+   *
+   * @author Erich Schubert
+   */
+  private static class Step2 extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * New object.
+     */
+    final DBIDRef id;
+
+    /**
+     * Core distance of the new object.
+     */
+    final double coreP;
+
+    /**
+     * Processed objects.
+     */
+    final ArrayDBIDs processedIDs;
+
+    /**
+     * Distance query.
+     */
+    final DistanceQuery<?> distQuery;
+
+    /**
+     * Core distances.
+     */
+    final DoubleDataStore coredists;
+
+    /**
+     * Output data store.
+     */
+    final WritableDoubleDataStore m;
+
+    /**
+     * Range of processed objects.
+     */
+    final int start, end;
+
+    /**
+     * Block size.
+     */
+    final int grain;
+
+    /**
+     * Constructor.
+     *
+     * @param id New object
+     * @param coreP Core distance of the new object
+     * @param processedIDs Processed objects
+     * @param distQuery Distance query
+     * @param coredists Core distances
+     * @param m Output data store
+     * @param start First offset
+     * @param end End offset (exclusive)
+     * @param grain Block size
+     */
+    Step2(DBIDRef id, double coreP, ArrayDBIDs processedIDs, DistanceQuery<?> distQuery, DoubleDataStore coredists, WritableDoubleDataStore m, int start, int end, int grain) {
+      this.id = id;
+      this.coreP = coreP;
+      this.processedIDs = processedIDs;
+      this.distQuery = distQuery;
+      this.coredists = coredists;
+      this.m = m;
+      this.start = start;
+      this.end = end;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > grain) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new Step2(id, coreP, processedIDs, distQuery, coredists, m, start, mid, grain), //
+            new Step2(id, coreP, processedIDs, distQuery, coredists, m, mid, end, grain));
+        return;
+      }
+      for(DBIDArrayIter it = processedIDs.iter().seek(start); it.getOffset() < end; it.advance()) {
+        // M(i) = dist(i, n+1)
+        double coreQ = coredists.doubleValue(it);
+        m.putDouble(it, MathUtil.max(coreP, coreQ, distQuery.distance(id, it)));
+      }
+    }
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends SLINKHDBSCANLinearMemory.Par<O> {
+    @Override
+    public ParallelSLINKHDBSCANLinearMemory<O> make() {
+      return new ParallelSLINKHDBSCANLinearMemory<>(distance, minPts);
+    }
+  }
+}
@@ -480,6 +480,20 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
      */
     protected double distance(NumberVector x, double[] y) {
       ++diststat;
+      return uncountedDistance(x, y);
+    }
+
+    /**
+     * Compute the squared distance, without counting the distance computation.
+     * Unlike the counting methods, this may be used by multiple threads
+     * concurrently, which then need to count the distance computations
+     * themselves.
+     *
+     * @param x First object
+     * @param y Second object
+     * @return Distance
+     */
+    public double uncountedDistance(NumberVector x, double[] y) {
       if(df.getClass() == SquaredEuclideanDistance.class) {
         if(y.length != x.getDimensionality()) {
           throw new IllegalArgumentException("Objects do not have the same dimensionality.");
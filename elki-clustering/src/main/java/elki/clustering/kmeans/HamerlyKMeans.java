@@ -98,27 +98,27 @@ public class HamerlyKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
     /**
      * Sum aggregate for the new mean.
      */
-    double[][] sums;
+    protected double[][] sums;
 
     /**
      * Scratch space for new means.
      */
-    double[][] newmeans;
+    protected double[][] newmeans;
 
     /**
      * Upper bounds
      */
-    WritableDoubleDataStore upper;
+    protected WritableDoubleDataStore upper;
 
     /**
      * Lower bounds
      */
-    WritableDoubleDataStore lower;
+    protected WritableDoubleDataStore lower;
 
     /**
      * Separation of means / distance moved.
      */
-    double[] sep;
+    protected double[] sep;
 
     /**
      * Constructor.
@@ -79,7 +79,7 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
   /**
    * Number of cluster center groups t
    */
-  private int t;
+  protected int t;
 
   /**
    * Constructor.
@@ -111,37 +111,37 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
     /**
      * Center list for each group
      */
-    int[][] groups;
+    protected int[][] groups;
 
     /**
      * Maximum distance moved within each group.
      */
-    double[] gdrift;
+    protected double[] gdrift;
 
     /**
      * Distance moved by each center.
      */
-    double[] cdrift;
+    protected double[] cdrift;
 
     /**
      * Current cluster sum.
      */
-    double[][] sums;
+    protected double[][] sums;
 
     /**
      * Group label of each mean
      */
-    int[] glabel = new int[k];
+    protected int[] glabel = new int[k];
 
     /**
      * Upper bound
      */
-    WritableDoubleDataStore upper;
+    protected WritableDoubleDataStore upper;
 
     /**
      * Lower bounds
      */
-    WritableDataStore<double[]> lower;
+    protected WritableDataStore<double[]> lower;
 
     /**
      * Constructor.
@@ -296,7 +296,7 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
     /**
      * Update centers and how much they moved.
      */
-    private void updateCenters() {
+    protected void updateCenters() {
       final int dim = means[0].length;
       double[] oldmean = new double[dim];
       for(int g = 0; g < groups.length; g++) {
@@ -409,7 +409,7 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
      * 
      * @return number of changes (i.e. relation size)
      */
-    private int initialAssignToNearestCluster() {
+    protected int initialAssignToNearestCluster() {
       assert k == means.length;
       for(DBIDIter id = relation.iterDBIDs(); id.valid(); id.advance()) {
         NumberVector point = relation.get(id);
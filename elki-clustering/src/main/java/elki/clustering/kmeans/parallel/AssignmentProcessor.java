@@ -0,0 +1,304 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import static elki.clustering.kmeans.AbstractKMeans.plusEquals;
+import static elki.clustering.kmeans.AbstractKMeans.plusMinusEquals;
+
+import java.util.List;
+
+import elki.clustering.kmeans.AbstractKMeans;
+import elki.data.NumberVector;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.ModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Processor for the per-point steps of the k-means variants that maintain
+ * bounds for each point, such as {@link ParallelHamerlyKMeans}.
+ * <p>
+ * The workers only modify the state of the points they process (the
+ * assignment and the bounds), and mark the points that were reassigned. The
+ * cluster memberships and sums are then updated sequentially, in the same order
+ * as in the serial algorithms. Because floating point addition is not
+ * associative, this is necessary to obtain exactly the same means (and hence
+ * the same results) as the serial versions.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Worker
+ */
+public abstract class AssignmentProcessor implements Processor {
+  /**
+   * Marker for points that were not reassigned.
+   */
+  private static final int UNCHANGED = -2;
+
+  /**
+   * k-means instance, for computing distances.
+   */
+  private AbstractKMeans.Instance kmeans;
+
+  /**
+   * Data relation.
+   */
+  private Relation<? extends NumberVector> relation;
+
+  /**
+   * Cluster assignment.
+   */
+  private WritableIntegerDataStore assignment;
+
+  /**
+   * Cluster memberships.
+   */
+  private List<ModifiableDBIDs> clusters;
+
+  /**
+   * Cluster sums.
+   */
+  private double[][] sums;
+
+  /**
+   * Whether the distance is squared.
+   */
+  private boolean isSquared;
+
+  /**
+   * Previous assignment of reassigned points, allocated on demand.
+   */
+  private WritableIntegerDataStore previous;
+
+  /**
+   * Number of reassignments in the last run.
+   */
+  private int changed;
+
+  /**
+   * Number of distance computations in the last run.
+   */
+  private long diststat;
+
+  /**
+   * Constructor.
+   *
+   * @param kmeans k-means instance (for computing distances)
+   * @param relation Data relation
+   * @param assignment Cluster assignment
+   * @param clusters Cluster memberships
+   * @param sums Cluster sums
+   * @param isSquared Whether the distance is squared
+   */
+  public AssignmentProcessor(AbstractKMeans.Instance kmeans, Relation<? extends NumberVector> relation, WritableIntegerDataStore assignment, List<ModifiableDBIDs> clusters, double[][] sums, boolean isSquared) {
+    super();
+    this.kmeans = kmeans;
+    this.relation = relation;
+    this.assignment = assignment;
+    this.clusters = clusters;
+    this.sums = sums;
+    this.isSquared = isSquared;
+  }
+
+  /**
+   * Process a single point.
+   *
+   * @param it Point to process
+   * @param w Worker (for distance computations and reassignments)
+   */
+  protected abstract void process(DBIDRef it, Worker w);
+
+  /**
+   * Perform the initial assignment, where every point is assigned using
+   * {@link Worker#assign}.
+   *
+   * @return Number of assigned points, i.e., the relation size
+   */
+  public int assignInitial() {
+    execute();
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int to = assignment.intValue(it);
+      clusters.get(to).add(it);
+      plusEquals(sums[to], relation.get(it));
+    }
+    return relation.size();
+  }
+
+  /**
+   * Perform a reassignment step, where points may be reassigned using
+   * {@link Worker#reassign}.
+   *
+   * @return Number of reassigned points
+   */
+  public int reassign() {
+    if(previous == null) {
+      previous = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, UNCHANGED);
+    }
+    execute();
+    // Apply the changes in the serial order, for identical sums:
+    int remaining = changed;
+    for(DBIDIter it = relation.iterDBIDs(); it.valid() && remaining > 0; it.advance()) {
+      final int from = previous.intValue(it);
+      if(from == UNCHANGED) {
+        continue;
+      }
+      final int to = assignment.intValue(it);
+      clusters.get(to).add(it);
+      clusters.get(from).remove(it);
+      plusMinusEquals(sums[to], sums[from], relation.get(it));
+      previous.putInt(it, UNCHANGED);
+      --remaining;
+    }
+    return changed;
+  }
+
+  /**
+   * Perform a step that does not reassign points, e.g., a bounds update.
+   */
+  public void update() {
+    execute();
+    assert changed == 0 : "Points must not be reassigned in an update step.";
+  }
+
+  /**
+   * Process all points in parallel.
+   */
+  private void execute() {
+    changed = 0;
+    diststat = 0;
+    ParallelExecutor.run(relation.getDBIDs(), this);
+  }
+
+  /**
+   * Get the number of distance computations of the last run.
+   *
+   * @return Distance computations
+   */
+  public long getDistanceComputations() {
+    return diststat;
+  }
+
+  @Override
+  public Worker instantiate(Executor executor) {
+    return new Worker();
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    Worker w = (Worker) inst;
+    synchronized(this) {
+      changed += w.changed;
+      diststat += w.diststat;
+    }
+  }
+
+  /**
+   * Worker thread, which counts distance computations and reassignments.
+   *
+   * @author Erich Schubert
+   */
+  public class Worker implements Processor.Instance {
+    /**
+     * Number of reassignments.
+     */
+    private int changed;
+
+    /**
+     * Number of distance computations.
+     */
+    private long diststat;
+
+    /**
+     * Scratch buffer.
+     */
+    private double[] scratch;
+
+    @Override
+    public void map(DBIDRef id) {
+      process(id, this);
+    }
+
+    /**
+     * Compute the squared distance (and count the distance computations).
+     *
+     * @param x First object
+     * @param y Second object
+     * @return Distance
+     */
+    public double distance(NumberVector x, double[] y) {
+      ++diststat;
+      return kmeans.uncountedDistance(x, y);
+    }
+
+    /**
+     * Compute the distance (and count the distance computations).
+     * If the distance is squared, also compute the square root.
+     *
+     * @param x First object
+     * @param y Second object
+     * @return Distance
+     */
+    public double sqrtdistance(NumberVector x, double[] y) {
+      final double d = distance(x, y);
+      return isSquared ? Math.sqrt(d) : d;
+    }
+
+    /**
+     * Initial assignment of a point.
+     *
+     * @param it Point
+     * @param to Cluster number
+     */
+    public void assign(DBIDRef it, int to) {
+      assignment.putInt(it, to);
+    }
+
+    /**
+     * Reassign a point.
+     *
+     * @param it Point
+     * @param from Previous cluster number
+     * @param to New cluster number
+     */
+    public void reassign(DBIDRef it, int from, int to) {
+      previous.putInt(it, from);
+      assignment.putInt(it, to);
+      ++changed;
+    }
+
+    /**
+     * Get a scratch buffer, reused within this worker.
+     *
+     * @param size Minimum size
+     * @return Buffer
+     */
+    public double[] scratch(int size) {
+      return scratch != null && scratch.length >= size ? scratch : (scratch = new double[size]);
+    }
+  }
+}
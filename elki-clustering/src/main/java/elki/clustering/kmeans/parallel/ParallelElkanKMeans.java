@@ -0,0 +1,222 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.ElkanKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.math.linearalgebra.VMath;
+
+/**
+ * Parallel version of Elkan's fast k-means.
+ * <p>
+ * The points are partitioned across the available cores, and the bounds of
+ * each point are only modified by the thread processing it. The cluster sums
+ * are updated in data order after each iteration, so the result is identical
+ * to {@link ElkanKMeans}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - AssignmentProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelElkanKMeans<V extends NumberVector> extends ElkanKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelElkanKMeans.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelElkanKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat) {
+    super(distance, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation));
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends ElkanKMeans.Instance {
+    /**
+     * Bounds update: movement of each center.
+     */
+    double[] move;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means) {
+      super(relation, df, means);
+    }
+
+    @Override
+    protected int initialAssignToNearestCluster() {
+      assert k == means.length;
+      initialSeperation(cdist);
+      AssignmentProcessor proc = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+        @Override
+        protected void process(DBIDRef it, Worker w) {
+          NumberVector fv = relation.get(it);
+          double[] l = lower.get(it);
+          // Check all (other) means:
+          double best = l[0] = w.sqrtdistance(fv, means[0]);
+          int minIndex = 0;
+          for(int j = 1; j < k; j++) {
+            if(best > cdist[minIndex][j]) {
+              double dist = l[j] = w.sqrtdistance(fv, means[j]);
+              if(dist < best) {
+                minIndex = j;
+                best = dist;
+              }
+            }
+          }
+          for(int j = 1; j < k; j++) {
+            if(l[j] == 0. && j != minIndex) {
+              l[j] = 2 * cdist[minIndex][j] - best;
+            }
+          }
+          // Assign to nearest cluster.
+          w.assign(it, minIndex);
+          upper.putDouble(it, best);
+        }
+      };
+      final int changed = proc.assignInitial();
+      diststat += proc.getDistanceComputations();
+      return changed;
+    }
+
+    /**
+     * Processor for the reassignment step.
+     */
+    private AssignmentProcessor reassign = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+      @Override
+      protected void process(DBIDRef it, Worker w) {
+        final int orig = assignment.intValue(it);
+        double u = upper.doubleValue(it);
+        // Upper bound check (#2):
+        if(u <= sep[orig]) {
+          return;
+        }
+        boolean recompute_u = true; // Elkan's r(x)
+        NumberVector fv = relation.get(it);
+        double[] l = lower.get(it);
+        // Check all (other) means:
+        int cur = orig;
+        for(int j = 0; j < k; j++) {
+          if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+            continue; // Condition #3 i-iii not satisfied
+          }
+          if(recompute_u) { // Need to update bound? #3a
+            upper.putDouble(it, u = w.sqrtdistance(fv, means[cur]));
+            recompute_u = false; // Once only
+            if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+              continue;
+            }
+          }
+          double dist = l[j] = w.sqrtdistance(fv, means[j]);
+          if(dist < u) {
+            cur = j;
+            u = dist;
+          }
+        }
+        // Object has to be reassigned.
+        if(cur != orig) {
+          w.reassign(it, orig, cur);
+          upper.putDouble(it, u); // Remember bound.
+        }
+      }
+    };
+
+    @Override
+    protected int assignToNearestCluster() {
+      recomputeSeperation(sep, cdist); // #1
+      final int changed = reassign.reassign();
+      diststat += reassign.getDistanceComputations();
+      return changed;
+    }
+
+    /**
+     * Processor for the bounds update, which is O(n*k) for Elkan.
+     */
+    private AssignmentProcessor bounds = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+      @Override
+      protected void process(DBIDRef it, Worker w) {
+        upper.increment(it, move[assignment.intValue(it)]);
+        VMath.minusEquals(lower.get(it), move);
+      }
+    };
+
+    @Override
+    protected void updateBounds(double[] move) {
+      this.move = move;
+      bounds.update();
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends ElkanKMeans.Par<V> {
+    @Override
+    public ParallelElkanKMeans<V> make() {
+      return new ParallelElkanKMeans<>(distance, k, maxiter, initializer, varstat);
+    }
+  }
+}
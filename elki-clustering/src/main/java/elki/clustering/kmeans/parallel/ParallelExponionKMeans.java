@@ -0,0 +1,223 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.ExponionKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+
+/**
+ * Parallel version of Newling's Exponion k-means.
+ * <p>
+ * The points are partitioned across the available cores, and the bounds of
+ * each point are only modified by the thread processing it. The cluster sums
+ * are updated in data order after each iteration, so the result is identical
+ * to {@link ExponionKMeans}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - AssignmentProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelExponionKMeans<V extends NumberVector> extends ExponionKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelExponionKMeans.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelExponionKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat) {
+    super(distance, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation));
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends ExponionKMeans.Instance {
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param df Distance function
+     * @param means Initial means
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means) {
+      super(relation, df, means);
+    }
+
+    @Override
+    protected int initialAssignToNearestCluster() {
+      assert k == means.length;
+      computeSquaredSeparation(cdist);
+      AssignmentProcessor proc = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+        @Override
+        protected void process(DBIDRef it, Worker w) {
+          NumberVector fv = relation.get(it);
+          // Find closest center, and distance to two closest centers:
+          double min1 = w.distance(fv, means[0]);
+          double min2 = k > 1 ? w.distance(fv, means[1]) : min1;
+          int minIndex = 0;
+          if(min2 < min1) {
+            double tmp = min1;
+            min1 = min2;
+            min2 = tmp;
+            minIndex = 1;
+          }
+          for(int i = 2; i < k; i++) {
+            if(min2 > cdist[minIndex][i]) {
+              double dist = w.distance(fv, means[i]);
+              if(dist < min1) {
+                minIndex = i;
+                min2 = min1;
+                min1 = dist;
+              }
+              else if(dist < min2) {
+                min2 = dist;
+              }
+            }
+          }
+          // Assign to nearest cluster.
+          w.assign(it, minIndex);
+          upper.putDouble(it, isSquared ? Math.sqrt(min1) : min1);
+          lower.putDouble(it, isSquared ? Math.sqrt(min2) : min2);
+        }
+      };
+      final int changed = proc.assignInitial();
+      diststat += proc.getDistanceComputations();
+      return changed;
+    }
+
+    /**
+     * Processor for the reassignment step.
+     */
+    private AssignmentProcessor reassign = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+      @Override
+      protected void process(DBIDRef it, Worker w) {
+        final int orig = assignment.intValue(it);
+        // Compute the current bound:
+        final double z = lower.doubleValue(it);
+        final double sa = sep[orig];
+        double u = upper.doubleValue(it);
+        if(u <= z || u <= sa) {
+          return;
+        }
+        // Update the upper bound
+        NumberVector fv = relation.get(it);
+        double curd2 = w.distance(fv, means[orig]);
+        upper.putDouble(it, u = isSquared ? Math.sqrt(curd2) : curd2);
+        if(u <= z || u <= sa) {
+          return;
+        }
+        double r = u + 0.5 * sa; // Our cdist are scaled 0.5
+        // Find closest center, and distance to two closest centers
+        double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+        int cur = orig;
+        for(int i = 0; i < k - 1; i++) {
+          final int c = cnum[orig][i]; // Optimized ordering
+          if(cdist[orig][c] > r) {
+            break;
+          }
+          double dist = w.distance(fv, means[c]);
+          if(dist < min1) {
+            cur = c;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        // Object has to be reassigned.
+        if(cur != orig) {
+          w.reassign(it, orig, cur);
+          upper.putDouble(it, min1 == curd2 ? u : isSquared ? Math.sqrt(min1) : min1);
+        }
+        lower.putDouble(it, min2 == curd2 ? u : isSquared ? Math.sqrt(min2) : min2);
+      }
+    };
+
+    @Override
+    protected int assignToNearestCluster() {
+      recomputeSeperation(sep, cdist);
+      nearestMeans(cdist, cnum);
+      final int changed = reassign.reassign();
+      diststat += reassign.getDistanceComputations();
+      return changed;
+    }
+
+    /**
+     * Processor for the bounds update.
+     */
+    private ParallelHamerlyKMeans.BoundsUpdate bounds = new ParallelHamerlyKMeans.BoundsUpdate(this, relation, assignment, clusters, sums, isSquared, upper, lower);
+
+    @Override
+    protected void updateBounds(double[] move, double delta) {
+      bounds.update(move, delta);
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends ExponionKMeans.Par<V> {
+    @Override
+    public ParallelExponionKMeans<V> make() {
+      return new ParallelExponionKMeans<>(distance, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import java.util.List;
+
+import elki.clustering.kmeans.AbstractKMeans;
+import elki.clustering.kmeans.HamerlyKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.ModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+
+/**
+ * Parallel version of Hamerly's fast k-means.
+ * <p>
+ * The points are partitioned across the available cores, and the bounds of
+ * each point are only modified by the thread processing it. The cluster sums
+ * are updated in data order after each iteration, so the result is identical
+ * to {@link HamerlyKMeans}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - AssignmentProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelHamerlyKMeans<V extends NumberVector> extends HamerlyKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelHamerlyKMeans.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelHamerlyKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat) {
+    super(distance, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation));
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends HamerlyKMeans.Instance {
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means) {
+      super(relation, df, means);
+    }
+
+    @Override
+    protected int initialAssignToNearestCluster() {
+      assert k == means.length;
+      final double[][] cdist = new double[k][k];
+      computeSquaredSeparation(cdist);
+      AssignmentProcessor proc = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+        @Override
+        protected void process(DBIDRef it, Worker w) {
+          NumberVector fv = relation.get(it);
+          // Find closest center, and distance to two closest centers:
+          double min1 = w.distance(fv, means[0]);
+          double min2 = k > 1 ? w.distance(fv, means[1]) : min1;
+          int minIndex = 0;
+          if(min2 < min1) {
+            double tmp = min1;
+            min1 = min2;
+            min2 = tmp;
+            minIndex = 1;
+          }
+          for(int i = 2; i < k; i++) {
+            if(min2 > cdist[minIndex][i]) {
+              double dist = w.distance(fv, means[i]);
+              if(dist < min1) {
+                minIndex = i;
+                min2 = min1;
+                min1 = dist;
+              }
+              else if(dist < min2) {
+                min2 = dist;
+              }
+            }
+          }
+          // Assign to nearest cluster.
+          w.assign(it, minIndex);
+          upper.putDouble(it, isSquared ? Math.sqrt(min1) : min1);
+          lower.putDouble(it, isSquared ? Math.sqrt(min2) : min2);
+        }
+      };
+      final int changed = proc.assignInitial();
+      diststat += proc.getDistanceComputations();
+      return changed;
+    }
+
+    /**
+     * Processor for the reassignment step.
+     */
+    private AssignmentProcessor reassign = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+      @Override
+      protected void process(DBIDRef it, Worker w) {
+        final int orig = assignment.intValue(it);
+        // Compute the current bound:
+        final double l = lower.doubleValue(it);
+        final double sa = sep[orig];
+        double u = upper.doubleValue(it);
+        if(u <= l || u <= sa) {
+          return;
+        }
+        // Update the upper bound
+        NumberVector fv = relation.get(it);
+        double curd2 = w.distance(fv, means[orig]);
+        upper.putDouble(it, u = isSquared ? Math.sqrt(curd2) : curd2);
+        if(u <= l || u <= sa) {
+          return;
+        }
+        // Find closest center, and distance to the second closest center
+        double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+        int cur = orig;
+        for(int i = 0; i < k; i++) {
+          if(i == orig) {
+            continue;
+          }
+          double dist = w.distance(fv, means[i]);
+          if(dist < min1) {
+            cur = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        // Object has to be reassigned.
+        if(cur != orig) {
+          w.reassign(it, orig, cur);
+          upper.putDouble(it, min1 == curd2 ? u : isSquared ? Math.sqrt(min1) : min1);
+        }
+        lower.putDouble(it, min2 == curd2 ? u : isSquared ? Math.sqrt(min2) : min2);
+      }
+    };
+
+    @Override
+    protected int assignToNearestCluster() {
+      recomputeSeperation(sep);
+      final int changed = reassign.reassign();
+      diststat += reassign.getDistanceComputations();
+      return changed;
+    }
+
+    /**
+     * Processor for the bounds update.
+     */
+    private BoundsUpdate bounds = new BoundsUpdate(this, relation, assignment, clusters, sums, isSquared, upper, lower);
+
+    @Override
+    protected void updateBounds(double[] move, double delta) {
+      bounds.update(move, delta);
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  /**
+   * Processor to update the bounds of Hamerly's algorithm and its variants.
+   *
+   * @author Erich Schubert
+   */
+  static class BoundsUpdate extends AssignmentProcessor {
+    /**
+     * Cluster assignment.
+     */
+    private WritableIntegerDataStore assignment;
+
+    /**
+     * Upper and lower bounds.
+     */
+    private WritableDoubleDataStore upper, lower;
+
+    /**
+     * Movement of each center.
+     */
+    private double[] move;
+
+    /**
+     * Negative maximum movement.
+     */
+    private double delta;
+
+    /**
+     * Constructor.
+     *
+     * @param kmeans k-means instance
+     * @param relation Data relation
+     * @param assignment Cluster assignment
+     * @param clusters Cluster memberships
+     * @param sums Cluster sums
+     * @param isSquared Whether the distance is squared
+     * @param upper Upper bounds
+     * @param lower Lower bounds
+     */
+    BoundsUpdate(AbstractKMeans.Instance kmeans, Relation<? extends NumberVector> relation, WritableIntegerDataStore assignment, List<ModifiableDBIDs> clusters, double[][] sums, boolean isSquared, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
+      super(kmeans, relation, assignment, clusters, sums, isSquared);
+      this.assignment = assignment;
+      this.upper = upper;
+      this.lower = lower;
+    }
+
+    /**
+     * Update the bounds.
+     *
+     * @param move Movement of centers
+     * @param delta Maximum center movement.
+     */
+    public void update(double[] move, double delta) {
+      this.move = move;
+      this.delta = -delta;
+      update();
+    }
+
+    @Override
+    protected void process(DBIDRef it, Worker w) {
+      upper.increment(it, move[assignment.intValue(it)]);
+      lower.increment(it, delta);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends HamerlyKMeans.Par<V> {
+    @Override
+    public ParallelHamerlyKMeans<V> make() {
+      return new ParallelHamerlyKMeans<>(distance, k, maxiter, initializer, varstat);
+    }
+  }
+}
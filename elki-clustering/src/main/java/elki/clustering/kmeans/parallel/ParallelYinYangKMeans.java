@@ -0,0 +1,262 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.YinYangKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+
+/**
+ * Parallel version of Yin-Yang k-Means Clustering.
+ * <p>
+ * The points are partitioned across the available cores, and the bounds of
+ * each point are only modified by the thread processing it. The cluster sums
+ * are updated in data order after each iteration, so the result is identical
+ * to {@link YinYangKMeans}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - AssignmentProcessor
+ *
+ * @param <V> Vector type
+ */
+public class ParallelYinYangKMeans<V extends NumberVector> extends YinYangKMeans<V> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelYinYangKMeans.class);
+
+  /**
+   * Constructor.
+   *
+   * @param k Number of clusters
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization method
+   * @param t Number of cluster center groups for pruning
+   */
+  public ParallelYinYangKMeans(int k, int maxiter, KMeansInitialization initializer, int t) {
+    super(k, maxiter, initializer, t);
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> rel) {
+    Instance instance = new Instance(rel, getDistance(), initialMeans(rel), t);
+    instance.run(maxiter);
+    return instance.buildResult();
+  }
+
+  /**
+   * Instance for a particular data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends YinYangKMeans.Instance {
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param t Number of groups to use
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, int t) {
+      super(relation, df, means, t);
+    }
+
+    @Override
+    protected int initialAssignToNearestCluster() {
+      assert k == means.length;
+      AssignmentProcessor proc = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+        @Override
+        protected void process(DBIDRef id, Worker w) {
+          NumberVector point = relation.get(id);
+          double[] lbs = lower.get(id);
+          double min = Double.POSITIVE_INFINITY;
+          int globalindex = 0;
+
+          for(int g = 0; g < groups.length; g++) {
+            final int[] group = groups[g];
+            if(group.length == 0) {
+              continue;
+            }
+            // First center in group
+            double min1 = w.distance(point, means[group[0]]);
+            double min2 = Double.POSITIVE_INFINITY;
+            int best = group[0];
+            // remaining centers in group
+            for(int c = 1; c < group.length; c++) {
+              int center = group[c];
+              double dist = w.distance(point, means[center]);
+              if(dist < min1) {
+                min2 = min1;
+                best = center;
+                min1 = dist;
+              }
+              else if(dist < min2) {
+                min2 = dist;
+              }
+            }
+            // For the triangle inequality, we need Euclidean not squared
+            min1 = isSquared ? Math.sqrt(min1) : min1;
+            min2 = min2 < Double.POSITIVE_INFINITY ? (isSquared ? Math.sqrt(min2) : min2) : min1;
+
+            if(min1 < min) {
+              if(globalindex != -1) {
+                lbs[glabel[globalindex]] = min;
+              }
+              min = min1;
+              globalindex = best;
+              lbs[g] = min2;
+            }
+            else {
+              lbs[g] = min1;
+            }
+          }
+          w.assign(id, globalindex);
+          upper.putDouble(id, min);
+        }
+      };
+      final int changed = proc.assignInitial();
+      diststat += proc.getDistanceComputations();
+      return changed;
+    }
+
+    /**
+     * Processor for the reassignment step.
+     */
+    private AssignmentProcessor reassign = new AssignmentProcessor(this, relation, assignment, clusters, sums, isSquared) {
+      @Override
+      protected void process(DBIDRef it, Worker w) {
+        final int t = gdrift.length;
+        NumberVector cur = relation.get(it);
+        int prev = assignment.intValue(it);
+        double[] lbs = lower.get(it);
+        double[] prevlb = w.scratch(t);
+        System.arraycopy(lbs, 0, prevlb, 0, lbs.length);
+
+        // Update the upper bound
+        final double drift = cdrift[prev];
+        if(drift > 0) {
+          upper.increment(it, drift);
+        }
+
+        double minlb = Double.POSITIVE_INFINITY;
+        // Update lower bounds with the maximum distance moved within each group
+        for(int g = 0; g < t; g++) {
+          double lb = lbs[g] -= gdrift[g];
+          minlb = lb < minlb ? lb : minlb;
+        }
+
+        // Global filter
+        double ub = upper.doubleValue(it);
+        if(minlb >= ub) {
+          return;
+        }
+
+        // tighten ub(x) and check again
+        upper.putDouble(it, ub = w.sqrtdistance(cur, means[prev]));
+        // Global filter with ub tight
+        if(minlb >= ub) {
+          return;
+        }
+
+        int best = prev;
+        // distance to second closest:
+        for(int g = 0; g < t; ++g) {
+          double lb = lbs[g];
+          // Group filter
+          if(lb >= ub) {
+            continue;
+          }
+          double plb = prevlb[g];
+          double sc = Double.POSITIVE_INFINITY;
+          for(int i : groups[g]) {
+            if(i == prev) { // Already computed above
+              continue;
+            }
+            // Local filter.
+            if(sc < plb - cdrift[i]) {
+              continue;
+            }
+            double di = w.sqrtdistance(cur, means[i]);
+            if(di < sc) { // at least second closest
+              if(di < ub) { // closest
+                lb = sc = ub; // previous closest is now second
+                ub = di;
+                best = i;
+              }
+              else {
+                sc = di;
+              }
+            }
+          }
+          lbs[g] = sc;
+        }
+
+        if(prev != best) {
+          upper.putDouble(it, ub);
+          w.reassign(it, prev, best);
+        }
+      }
+    };
+
+    @Override
+    protected int assignToNearestCluster() {
+      final int changed = reassign.reassign();
+      diststat += reassign.getDistanceComputations();
+      return changed;
+    }
+
+    @Override
+    protected Clustering<KMeansModel> buildResult() {
+      return super.buildResult(); // Make accessible in this package
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends YinYangKMeans.Par<V> {
+    @Override
+    public ParallelYinYangKMeans<V> make() {
+      return new ParallelYinYangKMeans<>(k, maxiter, initializer, t);
+    }
+  }
+}
@@ -201,7 +201,7 @@ public class CLARA<V> extends PAM<V> {
    * @param previous Previous medoids to always include in the sample.
    * @return Sample
    */
-  static DBIDs randomSample(DBIDs ids, int samplesize, Random rnd, DBIDs previous) {
+  public static DBIDs randomSample(DBIDs ids, int samplesize, Random rnd, DBIDs previous) {
     if(previous == null) {
       return DBIDUtil.randomSample(ids, samplesize, rnd);
     }
@@ -224,27 +224,27 @@ public class PAM<O> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
     /**
      * Ids to process.
      */
-    DBIDs ids;
+    protected DBIDs ids;
 
     /**
      * Distance function to use.
      */
-    DistanceQuery<?> distQ;
+    protected DistanceQuery<?> distQ;
 
     /**
      * Distance to the nearest medoid of each point.
      */
-    WritableDoubleDataStore nearest;
+    protected WritableDoubleDataStore nearest;
 
     /**
      * Distance to the second nearest medoid.
      */
-    WritableDoubleDataStore second;
+    protected WritableDoubleDataStore second;
 
     /**
      * Cluster mapping.
      */
-    WritableIntegerDataStore assignment;
+    protected WritableIntegerDataStore assignment;
 
     /**
      * Constructor.
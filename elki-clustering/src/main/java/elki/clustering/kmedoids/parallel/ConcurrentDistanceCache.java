@@ -0,0 +1,187 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+
+/**
+ * Bounded distance cache that can be shared by multiple threads, for example by
+ * the concurrently processed samples of {@link ParallelFastCLARA}.
+ * <p>
+ * The cache is a direct-mapped hash table of immutable entries: each pair of
+ * objects has a single slot, and a new distance replaces the previous entry in
+ * its slot. Reading and writing entry references is atomic, so no locking is
+ * necessary; concurrent misses may compute the same distance twice.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <V> Data type
+ */
+public class ConcurrentDistanceCache<V> implements DistanceQuery<V> {
+  /**
+   * Inner distance query
+   */
+  private final DistanceQuery<V> inner;
+
+  /**
+   * Cache entries.
+   */
+  private final Entry[] table;
+
+  /**
+   * Shift for hashing into the table.
+   */
+  private final int shift;
+
+  /**
+   * Number of cache misses.
+   */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Number of uncacheable queries (not using DBIDs)
+   */
+  private final LongAdder bad = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param inner Inner query
+   * @param size Maximum number of entries, will be rounded up to a power of 2
+   */
+  public ConcurrentDistanceCache(DistanceQuery<V> inner, long size) {
+    this.inner = inner;
+    final int bits = Math.max(4, Math.min(30, 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1))));
+    this.table = new Entry[1 << bits];
+    this.shift = 64 - bits;
+  }
+
+  /**
+   * Check if any queries were uncached (not using DBIDs).
+   *
+   * @return True if uncached distances were used
+   */
+  public boolean hasUncachedQueries() {
+    return bad.sum() > 0;
+  }
+
+  /**
+   * Get the number of distances computed because they were not cached.
+   *
+   * @return Number of cache misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Get the capacity of the cache.
+   *
+   * @return Capacity
+   */
+  public int getCapacity() {
+    return table.length;
+  }
+
+  @Override
+  public double distance(DBIDRef id1, DBIDRef id2) {
+    if(DBIDUtil.equal(id1, id2)) {
+      return 0.;
+    }
+    if(DBIDUtil.compare(id1, id2) > 0) {
+      return distance(id2, id1);
+    }
+    final long key = (((long) id1.internalGetIndex()) << 32) | (id2.internalGetIndex() & 0xFFFFFFFFL);
+    // Fibonacci hashing
+    final int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    final Entry e = table[slot];
+    if(e != null && e.key == key) {
+      return e.value;
+    }
+    misses.increment();
+    final double v = inner.distance(id1, id2);
+    table[slot] = new Entry(key, v);
+    return v;
+  }
+
+  @Override
+  public double distance(V o1, DBIDRef id2) {
+    bad.increment();
+    return inner.distance(o1, id2);
+  }
+
+  @Override
+  public double distance(DBIDRef id1, V o2) {
+    bad.increment();
+    return inner.distance(id1, o2);
+  }
+
+  @Override
+  public double distance(V o1, V o2) {
+    bad.increment();
+    return inner.distance(o1, o2);
+  }
+
+  @Override
+  public Distance<? super V> getDistance() {
+    return inner.getDistance();
+  }
+
+  @Override
+  public Relation<? extends V> getRelation() {
+    return inner.getRelation();
+  }
+
+  /**
+   * Immutable cache entry.
+   *
+   * @author Erich Schubert
+   */
+  private static final class Entry {
+    /**
+     * Pair of objects.
+     */
+    final long key;
+
+    /**
+     * Distance.
+     */
+    final double value;
+
+    /**
+     * Constructor.
+     *
+     * @param key Pair of objects
+     * @param value Distance
+     */
+    Entry(long key, double value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,440 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import elki.clustering.ClusteringAlgorithmUtil;
+import elki.clustering.kmedoids.CLARA;
+import elki.clustering.kmedoids.FastCLARA;
+import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.model.MedoidModel;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.result.Metadata;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Parallel version of {@link FastCLARA}.
+ * <p>
+ * When independent samples are drawn, the samples are processed concurrently;
+ * otherwise each sample depends on the best medoids of the previous samples,
+ * and only the processing of each sample is parallelized (see
+ * {@link ParallelFastPAM}). The samples and initial medoids are always chosen
+ * sequentially, in the same order as the serial version, so the result is the
+ * same as with {@link FastCLARA} for the same random seed. All samples share a
+ * single, bounded {@link ConcurrentDistanceCache}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <V> Data type
+ */
+public class ParallelFastCLARA<V> extends FastCLARA<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFastCLARA.class);
+
+  /**
+   * Default maximum number of cached distances.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 1 << 22;
+
+  /**
+   * Maximum number of cached distances.
+   */
+  protected int cachesize;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param k Number of clusters to produce
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization function
+   * @param fasttol Tolerance for fast swapping
+   * @param numsamples Number of samples (sampling iterations)
+   * @param sampling Sampling rate (absolute or relative)
+   * @param keepmed Keep the previous medoids in the next sample
+   * @param random Random generator
+   * @param cachesize Maximum number of cached distances
+   */
+  public ParallelFastCLARA(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, double fasttol, int numsamples, double sampling, boolean keepmed, RandomFactory random, int cachesize) {
+    super(distance, k, maxiter, initializer, fasttol, numsamples, sampling, keepmed, random);
+    this.cachesize = cachesize;
+  }
+
+  @Override
+  public Clustering<MedoidModel> run(Relation<V> relation) {
+    return new Driver<>(relation, distance, k, numsamples, sampling, keepmed, cachesize, LOG, getClass().getName()) //
+        .run(initializer, random, (distQ, ids, assignment, medoids) -> new ParallelFastPAM.Instance(distQ, ids, assignment, fasttol).run(medoids, maxiter));
+  }
+
+  /**
+   * Run k-medoids on a single sample.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  interface SampleRunner {
+    /**
+     * Run k-medoids on a sample.
+     *
+     * @param distQ Distance query
+     * @param ids Sample
+     * @param assignment Cluster assignment output
+     * @param medoids Medoids, will be modified
+     * @return Cost of the sample
+     */
+    double run(DistanceQuery<?> distQ, DBIDs ids, WritableIntegerDataStore assignment, ArrayModifiableDBIDs medoids);
+  }
+
+  /**
+   * Driver for processing the samples of CLARA in parallel.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Data type
+   */
+  static class Driver<V> {
+    /**
+     * Data relation.
+     */
+    private final Relation<V> relation;
+
+    /**
+     * Distance query.
+     */
+    private final DistanceQuery<V> distQ;
+
+    /**
+     * Shared distance cache.
+     */
+    private final ConcurrentDistanceCache<V> cachedQ;
+
+    /**
+     * Number of clusters.
+     */
+    private final int k;
+
+    /**
+     * Number of samples.
+     */
+    private final int numsamples;
+
+    /**
+     * Sample size.
+     */
+    private final int samplesize;
+
+    /**
+     * Keep the previous medoids in the sample.
+     */
+    private final boolean keepmed;
+
+    /**
+     * Logger for warnings and statistics.
+     */
+    private final Logging log;
+
+    /**
+     * Key for statistics.
+     */
+    private final String key;
+
+    /**
+     * Number of samples processed.
+     */
+    private int processed = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param distance Distance function
+     * @param k Number of clusters
+     * @param numsamples Number of samples
+     * @param sampling Sampling rate (absolute or relative)
+     * @param keepmed Keep the previous medoids in the sample
+     * @param cachesize Maximum number of cached distances
+     * @param log Logger
+     * @param key Key for statistics
+     */
+    Driver(Relation<V> relation, Distance<? super V> distance, int k, int numsamples, double sampling, boolean keepmed, int cachesize, Logging log, String key) {
+      this.relation = relation;
+      this.distQ = new QueryBuilder<>(relation, distance).distanceQuery();
+      this.k = k;
+      this.numsamples = numsamples;
+      this.keepmed = keepmed;
+      this.log = log;
+      this.key = key;
+      final int size = relation.size();
+      this.samplesize = Math.min(size, (int) (sampling <= 1 ? sampling * size : sampling));
+      if(samplesize < 3 * k) {
+        log.warning("The sampling size is set to a very small value, it should be much larger than k.");
+      }
+      final long pairs = ((long) samplesize * (samplesize - 1)) >> 1;
+      this.cachedQ = new ConcurrentDistanceCache<>(distQ, Math.min(cachesize, (keepmed ? 1 : numsamples) * pairs));
+    }
+
+    /**
+     * Process all samples.
+     *
+     * @param initializer Initialization
+     * @param random Random generator
+     * @param runner Algorithm to run on each sample
+     * @return Clustering
+     */
+    Clustering<MedoidModel> run(KMedoidsInitialization<V> initializer, RandomFactory random, SampleRunner runner) {
+      final DBIDs ids = relation.getDBIDs();
+      Random rnd = random.getSingleThreadedRandom();
+      FiniteProgress prog = log.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, log) : null;
+      List<Future<Sample>> futures = new ArrayList<>(numsamples);
+      Sample best = null;
+      ParallelCore core = ParallelCore.getCore();
+      core.connect();
+      try {
+        for(int j = 0; j < numsamples; j++) {
+          // Choose samples and initial medoids in the same order as CLARA.
+          DBIDs rids = CLARA.randomSample(ids, samplesize, rnd, keepmed && best != null ? best.medoids : null);
+          ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, cachedQ));
+          futures.add(core.submit(() -> {
+            WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+            double score = runner.run(cachedQ, rids, assignment, medoids) //
+                + assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
+            return new Sample(medoids, assignment, score);
+          }));
+          // The next sample depends on the best medoids so far:
+          if(keepmed) {
+            best = collect(futures, best, prog);
+          }
+        }
+        best = collect(futures, best, prog);
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Processing the samples failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Processing the samples was interrupted.");
+      }
+      finally {
+        core.disconnect();
+      }
+      log.ensureCompleted(prog);
+      if(cachedQ.hasUncachedQueries()) {
+        log.warning("Some distance queries were not cached; maybe the initialization is not optimized for k-medoids.");
+      }
+      if(log.isStatistics()) {
+        log.statistics(new LongStatistic(key + ".cache.capacity", cachedQ.getCapacity()));
+        log.statistics(new LongStatistic(key + ".cache.misses", cachedQ.getMisses()));
+        log.statistics(new DoubleStatistic(key + ".final-cost", best != null ? best.score : Double.POSITIVE_INFINITY));
+      }
+      if(best == null) {
+        throw new IllegalStateException("numsamples must be larger than 0.");
+      }
+
+      ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, best.assignment, k);
+
+      // Wrap result
+      Clustering<MedoidModel> result = new Clustering<>();
+      Metadata.of(result).setLongName("CLARA Clustering");
+      for(DBIDArrayIter it = best.medoids.iter(); it.valid(); it.advance()) {
+        MedoidModel model = new MedoidModel(DBIDUtil.deref(it));
+        result.addToplevelCluster(new Cluster<>(clusters[it.getOffset()], model));
+      }
+      return result;
+    }
+
+    /**
+     * Collect the results of finished samples, in order.
+     *
+     * @param futures Pending samples, will be cleared
+     * @param best Best sample so far
+     * @param prog Progress
+     * @return Best sample
+     * @throws InterruptedException when interrupted
+     * @throws ExecutionException when a sample failed
+     */
+    private Sample collect(List<Future<Sample>> futures, Sample best, FiniteProgress prog) throws InterruptedException, ExecutionException {
+      for(Future<Sample> future : futures) {
+        Sample sample = future.get();
+        if(log.isStatistics()) {
+          log.statistics(new DoubleStatistic(key + ".sample-" + processed + ".cost", sample.score));
+        }
+        if(best == null || sample.score < best.score) {
+          best = sample;
+        }
+        log.incrementProcessed(prog);
+        ++processed;
+      }
+      futures.clear();
+      return best;
+    }
+  }
+
+  /**
+   * Result of a single sample.
+   *
+   * @author Erich Schubert
+   */
+  private static class Sample {
+    /**
+     * Medoids.
+     */
+    final ArrayModifiableDBIDs medoids;
+
+    /**
+     * Cluster assignment.
+     */
+    final WritableIntegerDataStore assignment;
+
+    /**
+     * Total cost.
+     */
+    final double score;
+
+    /**
+     * Constructor.
+     *
+     * @param medoids Medoids
+     * @param assignment Cluster assignment
+     * @param score Total cost
+     */
+    Sample(ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment, double score) {
+      this.medoids = medoids;
+      this.assignment = assignment;
+      this.score = score;
+    }
+  }
+
+  /**
+   * Assign the points not in the sample to the nearest medoid, in parallel.
+   *
+   * @param means Medoids
+   * @param ids Object ids
+   * @param rids Sample that was already assigned
+   * @param assignment cluster assignment
+   * @param distQ distance query
+   * @return Sum of distances.
+   */
+  static double assignRemainingToNearestCluster(ArrayDBIDs means, DBIDs ids, DBIDs rids, WritableIntegerDataStore assignment, DistanceQuery<?> distQ) {
+    final DBIDs sample = DBIDUtil.ensureSet(rids); // Ensure we have fast contains
+    WritableDoubleDataStore mindists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP);
+    ParallelExecutor.run(ids, new Processor() {
+      @Override
+      public Processor.Instance instantiate(Executor executor) {
+        final DBIDArrayIter miter = means.iter();
+        return it -> {
+          if(sample.contains(it)) {
+            return;
+          }
+          double mindist = Double.POSITIVE_INFINITY;
+          int minIndex = 0;
+          for(miter.seek(0); miter.valid(); miter.advance()) {
+            double dist = distQ.distance(it, miter);
+            if(dist < mindist) {
+              minIndex = miter.getOffset();
+              mindist = dist;
+            }
+          }
+          mindists.putDouble(it, mindist);
+          assignment.put(it, minIndex);
+        };
+      }
+
+      @Override
+      public void cleanup(Processor.Instance inst) {
+        // Nothing to do.
+      }
+    });
+    // Sum in the same order as the serial version.
+    double distsum = 0.;
+    for(DBIDIter it = distQ.getRelation().iterDBIDs(); it.valid(); it.advance()) {
+      if(!sample.contains(it)) {
+        distsum += mindists.doubleValue(it);
+      }
+    }
+    mindists.destroy();
+    return distsum;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V> extends FastCLARA.Par<V> {
+    /**
+     * Maximum number of distances to cache.
+     */
+    public static final OptionID CACHE_SIZE_ID = new OptionID("clara.cachesize", "Maximum number of distances to cache, shared by all samples.");
+
+    /**
+     * Maximum number of cached distances.
+     */
+    protected int cachesize;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new IntParameter(CACHE_SIZE_ID, DEFAULT_CACHE_SIZE) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> cachesize = x);
+    }
+
+    @Override
+    public ParallelFastCLARA<V> make() {
+      return new ParallelFastCLARA<>(distance, k, maxiter, initializer, fasttol, numsamples, sampling, keepmed, random, cachesize);
+    }
+  }
+}
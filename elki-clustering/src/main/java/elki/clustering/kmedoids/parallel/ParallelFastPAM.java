@@ -0,0 +1,424 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import elki.clustering.kmedoids.FastPAM;
+import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Parallel version of {@link FastPAM}.
+ * <p>
+ * The candidate swaps are evaluated concurrently for blocks of non-medoids, and
+ * the assignment of the points to their nearest and second nearest medoids is
+ * updated in parallel. The best swap of each block is combined such that ties
+ * are resolved as in the serial version, hence the result is the same as with
+ * {@link FastPAM}. The distance function must be thread-safe.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelFastPAM<V> extends FastPAM<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFastPAM.class);
+
+  /**
+   * Number of blocks per thread for the minimum block size.
+   */
+  protected static final int BLOCKS_PER_THREAD = 32;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   * @param fasttol Tolerance for fast swapping
+   */
+  public ParallelFastPAM(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, double fasttol) {
+    super(distance, k, maxiter, initializer, fasttol);
+  }
+
+  @Override
+  protected void run(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    new Instance(distQ, ids, assignment, fasttol).run(medoids, maxiter);
+  }
+
+  /**
+   * Run a fork-join task on the current parallel core.
+   *
+   * @param task Task
+   * @param <T> Result type
+   * @return Task result
+   */
+  protected static <T> T execute(ForkJoinTask<T> task) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return core.submit(task).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Evaluating the swaps failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Evaluating the swaps was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Instance for a single dataset.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends FastPAM.Instance {
+    /**
+     * Ids to process, as array.
+     */
+    protected ArrayDBIDs aids;
+
+    /**
+     * Current medoids.
+     */
+    protected ArrayDBIDs medoids;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids IDs to process
+     * @param assignment Cluster assignment
+     * @param fasttol Tolerance for fast swapping
+     */
+    public Instance(DistanceQuery<?> distQ, DBIDs ids, WritableIntegerDataStore assignment, double fasttol) {
+      super(distQ, ids, assignment, fasttol);
+      this.aids = DBIDUtil.ensureArray(ids);
+    }
+
+    @Override
+    public double run(ArrayModifiableDBIDs medoids, int maxiter) {
+      this.medoids = medoids;
+      return super.run(medoids, maxiter);
+    }
+
+    /**
+     * Minimum block size for parallel processing of the points.
+     *
+     * @return Block size
+     */
+    protected int minimumBlockSize() {
+      return Math.max(1, aids.size() / (ParallelCore.getCore().getParallelism() * BLOCKS_PER_THREAD));
+    }
+
+    @Override
+    protected void findBestSwaps(DBIDArrayIter m, ArrayModifiableDBIDs bestids, double[] best, double[] cost, double[] pcost) {
+      updatePriorCost(pcost);
+      Swaps swaps = execute(new SwapsTask(pcost, 0, aids.size(), minimumBlockSize()));
+      System.arraycopy(swaps.best, 0, best, 0, best.length);
+      DBIDVar var = DBIDUtil.newVar();
+      for(int i = 0; i < best.length; i++) {
+        if(swaps.offset[i] >= 0) {
+          bestids.set(i, aids.assignVar(swaps.offset[i], var));
+        }
+      }
+    }
+
+    @Override
+    protected double assignToNearestCluster(ArrayDBIDs means) {
+      ParallelExecutor.run(aids, new Processor() {
+        @Override
+        public Processor.Instance instantiate(Executor executor) {
+          final DBIDArrayIter miter = means.iter();
+          return it -> {
+            double mindist = Double.POSITIVE_INFINITY;
+            double mindist2 = Double.POSITIVE_INFINITY;
+            int minindx = -1, minindx2 = -1;
+            for(miter.seek(0); miter.valid(); miter.advance()) {
+              final double dist = distQ.distance(it, miter);
+              if(dist < mindist) {
+                minindx2 = minindx;
+                mindist2 = mindist;
+                minindx = miter.getOffset();
+                mindist = dist;
+              }
+              else if(dist < mindist2) {
+                minindx2 = miter.getOffset();
+                mindist2 = dist;
+              }
+            }
+            if(minindx < 0) {
+              throw new AbortException("Too many infinite distances. Cannot assign objects.");
+            }
+            assignment.put(it, minindx | (minindx2 << 16));
+            nearest.put(it, mindist);
+            second.put(it, mindist2);
+          };
+        }
+
+        @Override
+        public void cleanup(Processor.Instance inst) {
+          // Nothing to do.
+        }
+      });
+      // Sum in the same order as the serial version.
+      double cost = 0.;
+      for(DBIDIter it = aids.iter(); it.valid(); it.advance()) {
+        cost += nearest.doubleValue(it);
+      }
+      return cost;
+    }
+
+    @Override
+    protected void updateAssignment(ArrayModifiableDBIDs medoids, DBIDArrayIter miter, DBIDRef h, int m) {
+      // The new medoid itself.
+      medoids.set(m, h);
+      final double hdist = nearest.putDouble(h, 0);
+      final int olda = assignment.intValue(h);
+      // In the high short, we store the second nearest center!
+      if((olda & 0x7FFF) != m) {
+        assignment.putInt(h, m | ((olda & 0x7FFF) << 16));
+        second.putDouble(h, hdist);
+      }
+      else {
+        assignment.putInt(h, m | (olda & 0x7FFF0000));
+      }
+      final DBIDVar hv = DBIDUtil.newVar(h);
+      // Each point only modifies its own entries:
+      ParallelExecutor.run(aids, new Processor() {
+        @Override
+        public Processor.Instance instantiate(Executor executor) {
+          final DBIDArrayIter mi = medoids.iter();
+          return j -> updatePoint(mi, hv, m, j);
+        }
+
+        @Override
+        public void cleanup(Processor.Instance inst) {
+          // Nothing to do.
+        }
+      });
+    }
+
+    /**
+     * Update the assignment of a single point, after a swap.
+     *
+     * @param miter Medoid iterator
+     * @param h New medoid
+     * @param m Position of replaced medoid
+     * @param j Point to update
+     */
+    private void updatePoint(DBIDArrayIter miter, DBIDRef h, int m, DBIDRef j) {
+      if(DBIDUtil.equal(h, j)) {
+        return;
+      }
+      // distance(j, i) for pi == pj
+      final double distcur = nearest.doubleValue(j);
+      // distance(j, o) to second nearest / possible reassignment
+      final double distsec = second.doubleValue(j);
+      // distance(j, h) to new medoid
+      final double dist_h = distQ.distance(h, j);
+      // Case 1b: j switches to new medoid, or to the second nearest:
+      int pj = assignment.intValue(j), po = pj >>> 16;
+      pj &= 0x7FFF; // Low byte is the old nearest cluster.
+      if(pj == m) { // Nearest medoid is gone.
+        if(dist_h < distsec) { // Replace nearest.
+          nearest.putDouble(j, dist_h);
+        }
+        else { // Second is new nearest.
+          nearest.putDouble(j, distsec);
+          // Find new second nearest.
+          assignment.putInt(j, po | (updateSecondNearest(j, miter, m, dist_h, po) << 16));
+        }
+      }
+      else { // Nearest medoid not replaced
+        if(dist_h < distcur) {
+          nearest.putDouble(j, dist_h);
+          second.putDouble(j, distcur);
+          assignment.putInt(j, m | (pj << 16));
+        }
+        else if(po == m) { // Second was replaced.
+          assignment.putInt(j, pj | (updateSecondNearest(j, miter, m, dist_h, pj) << 16));
+        }
+        else if(dist_h < distsec) {
+          second.putDouble(j, dist_h);
+          assignment.putInt(j, pj | (m << 16));
+        }
+      }
+    }
+
+    /**
+     * Find the best swaps for a range of candidates.
+     *
+     * @author Erich Schubert
+     */
+    private class SwapsTask extends RecursiveTask<Swaps> {
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Prior cost of removing each medoid.
+       */
+      private final double[] pcost;
+
+      /**
+       * Range of candidates.
+       */
+      private final int start, end;
+
+      /**
+       * Minimum block size, do not split below.
+       */
+      private final int minblock;
+
+      /**
+       * Constructor.
+       *
+       * @param pcost Prior cost of removing each medoid
+       * @param start First candidate
+       * @param end End of range (exclusive)
+       * @param minblock Minimum block size
+       */
+      SwapsTask(double[] pcost, int start, int end, int minblock) {
+        this.pcost = pcost;
+        this.start = start;
+        this.end = end;
+        this.minblock = minblock;
+      }
+
+      @Override
+      protected Swaps compute() {
+        if(end - start > minblock) {
+          final int mid = (start + end) >>> 1;
+          SwapsTask right = new SwapsTask(pcost, mid, end, minblock);
+          right.fork();
+          Swaps ls = new SwapsTask(pcost, start, mid, minblock).compute();
+          // Prefer the earlier candidate on ties, as the serial version.
+          return ls.merge(right.join());
+        }
+        final int k = pcost.length;
+        Swaps swaps = new Swaps(k);
+        double[] cost = new double[k];
+        DBIDArrayIter m = medoids.iter();
+        for(DBIDArrayIter h = aids.iter().seek(start); h.getOffset() < end; h.advance()) {
+          // Compare object to its own medoid.
+          if(DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
+            continue; // This is a medoid.
+          }
+          System.arraycopy(pcost, 0, cost, 0, k);
+          double acc = computeReassignmentCost(h, cost);
+          // Find the best possible swap for each medoid:
+          for(int i = 0; i < k; i++) {
+            final double costi = cost[i] + acc;
+            if(costi < swaps.best[i]) {
+              swaps.best[i] = costi;
+              swaps.offset[i] = h.getOffset();
+            }
+          }
+        }
+        return swaps;
+      }
+    }
+  }
+
+  /**
+   * Best swap for each medoid, within a range of candidates.
+   *
+   * @author Erich Schubert
+   */
+  private static class Swaps {
+    /**
+     * Best cost change.
+     */
+    final double[] best;
+
+    /**
+     * Offset of the best candidate, -1 if none.
+     */
+    final int[] offset;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of medoids
+     */
+    Swaps(int k) {
+      best = new double[k];
+      Arrays.fill(best, Double.POSITIVE_INFINITY);
+      offset = new int[k];
+      Arrays.fill(offset, -1);
+    }
+
+    /**
+     * Merge the swaps of a later range of candidates.
+     *
+     * @param other Swaps of a later range
+     * @return this
+     */
+    Swaps merge(Swaps other) {
+      for(int i = 0; i < best.length; i++) {
+        if(other.best[i] < best[i]) {
+          best[i] = other.best[i];
+          offset[i] = other.offset[i];
+        }
+      }
+      return this;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V> extends FastPAM.Par<V> {
+    @Override
+    public ParallelFastPAM<V> make() {
+      return new ParallelFastPAM<>(distance, k, maxiter, initializer, fasttol);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import elki.clustering.kmedoids.FasterCLARA;
+import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
+import elki.data.Clustering;
+import elki.data.model.MedoidModel;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Parallel version of {@link FasterCLARA}, processing the samples as in
+ * {@link ParallelFastCLARA} and using {@link ParallelFasterPAM} on each
+ * sample. The result is the same as with {@link FasterCLARA}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <V> Data type
+ */
+public class ParallelFasterCLARA<V> extends FasterCLARA<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFasterCLARA.class);
+
+  /**
+   * Maximum number of cached distances.
+   */
+  protected int cachesize;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param k Number of clusters to produce
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization function
+   * @param numsamples Number of samples (sampling iterations)
+   * @param sampling Sampling rate (absolute or relative)
+   * @param keepmed Keep the previous medoids in the next sample
+   * @param random Random generator
+   * @param cachesize Maximum number of cached distances
+   */
+  public ParallelFasterCLARA(Distance<? super V> distance, int k, int maxiter, KMedoidsInitialization<V> initializer, int numsamples, double sampling, boolean keepmed, RandomFactory random, int cachesize) {
+    super(distance, k, maxiter, initializer, numsamples, sampling, keepmed, random);
+    this.cachesize = cachesize;
+  }
+
+  @Override
+  public Clustering<MedoidModel> run(Relation<V> relation) {
+    return new ParallelFastCLARA.Driver<>(relation, distance, k, numsamples, sampling, keepmed, cachesize, LOG, getClass().getName()) //
+        .run(initializer, random, (distQ, ids, assignment, medoids) -> new ParallelFasterPAM.Instance(distQ, ids, assignment).run(medoids, maxiter));
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V> extends FasterCLARA.Par<V> {
+    /**
+     * Maximum number of cached distances.
+     */
+    protected int cachesize;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new IntParameter(ParallelFastCLARA.Par.CACHE_SIZE_ID, ParallelFastCLARA.DEFAULT_CACHE_SIZE) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> cachesize = x);
+    }
+
+    @Override
+    public ParallelFasterCLARA<V> make() {
+      return new ParallelFasterCLARA<>(distance, k, maxiter, initializer, numsamples, sampling, keepmed, random, cachesize);
+    }
+  }
+}
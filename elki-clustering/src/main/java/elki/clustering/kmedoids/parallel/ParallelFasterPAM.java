@@ -0,0 +1,288 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import java.util.concurrent.RecursiveAction;
+
+import elki.clustering.kmedoids.FasterPAM;
+import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.IndefiniteProgress;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
+
+/**
+ * Parallel version of {@link FasterPAM}.
+ * <p>
+ * FasterPAM performs a swap as soon as it finds an improvement, so the
+ * candidates depend on all previous swaps. This version evaluates a window of
+ * the next candidates speculatively in parallel, then performs the first
+ * improving swap of the window and discards the evaluations of the later
+ * candidates, which are now outdated. Because swaps become rare after the
+ * first iterations, little work is wasted; the window size is adapted to the
+ * swap frequency. The result is the same as with {@link FasterPAM}. The
+ * distance function must be thread-safe.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> object datatype
+ */
+public class ParallelFasterPAM<O> extends FasterPAM<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFasterPAM.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = ParallelFasterPAM.class.getName();
+
+  /**
+   * Maximum number of candidates per thread in a window.
+   */
+  private static final int MAX_WINDOW_PER_THREAD = 32;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   */
+  public ParallelFasterPAM(Distance<? super O> distance, int k, int maxiter, KMedoidsInitialization<O> initializer) {
+    super(distance, k, maxiter, initializer);
+  }
+
+  @Override
+  protected void run(DistanceQuery<O> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    new Instance(distQ, ids, assignment).run(medoids, maxiter);
+  }
+
+  /**
+   * Instance for a single dataset.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends ParallelFastPAM.Instance {
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids IDs to process
+     * @param assignment Cluster assignment
+     */
+    public Instance(DistanceQuery<?> distQ, DBIDs ids, WritableIntegerDataStore assignment) {
+      super(distQ, ids, assignment, 1.);
+    }
+
+    @Override
+    public double run(ArrayModifiableDBIDs medoids, int maxiter) {
+      this.medoids = medoids;
+      final int k = medoids.size(), size = aids.size();
+      // Initial assignment to nearest medoids
+      double tc = assignToNearestCluster(medoids);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + 0 + ".cost", tc));
+      }
+
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("PAM iteration", LOG) : null;
+      // Swap phase
+      final int parallelism = ParallelCore.getCore().getParallelism();
+      final int maxwindow = parallelism * MAX_WINDOW_PER_THREAD;
+      int[] window = new int[maxwindow], best = new int[maxwindow];
+      double[] bestcost = new double[maxwindow], pcost = new double[k];
+      DBIDArrayIter m = medoids.iter(), h = aids.iter();
+      DBIDVar lastswap = DBIDUtil.newVar();
+      int iteration = 0, prevswaps = 0, swaps = 0, wsize = parallelism;
+      long wasted = 0;
+      while(iteration < maxiter || maxiter <= 0) {
+        ++iteration;
+        LOG.incrementProcessed(prog);
+        // Compute costs of reassigning to the second closest medoid.
+        updatePriorCost(pcost);
+        boolean done = false;
+        for(int pos = 0; pos < size && !done;) {
+          // Collect the next non-medoids:
+          int c = 0;
+          for(; pos < size && c < wsize; pos++) {
+            // Check if we completed an entire round without swapping:
+            if(DBIDUtil.equal(h.seek(pos), lastswap)) {
+              done = true;
+              break;
+            }
+            // Compare object to its own medoid.
+            if(!DBIDUtil.equal(m.seek(assignment.intValue(h) & 0x7FFF), h)) {
+              window[c++] = pos;
+            }
+          }
+          ParallelFastPAM.execute(new WindowTask(window, best, bestcost, pcost, 0, c));
+          // Perform the first improving swap:
+          for(int i = 0; i < c; i++) {
+            if(!(bestcost[i] < -1e-12 * tc)) {
+              continue;
+            }
+            ++swaps;
+            wasted += c - i - 1;
+            lastswap.set(h.seek(window[i]));
+            updateAssignment(medoids, m, lastswap, best[i]);
+            updatePriorCost(pcost);
+            tc += bestcost[i];
+            assert tc >= 0;
+            if(LOG.isStatistics()) {
+              LOG.statistics(new DoubleStatistic(KEY + ".swap-" + swaps + ".cost", tc));
+            }
+            // Continue after the swapped point, with a smaller window:
+            pos = window[i] + 1;
+            done = false;
+            wsize = Math.max(parallelism, wsize >>> 1);
+            c = -1;
+            break;
+          }
+          if(c >= 0) { // No swap, use a larger window.
+            wsize = Math.min(maxwindow, wsize << 1);
+          }
+        }
+        if(LOG.isStatistics()) {
+          LOG.statistics(new LongStatistic(KEY + ".iteration-" + iteration + ".swaps", swaps - prevswaps));
+        }
+        if(prevswaps == swaps) {
+          break; // Converged
+        }
+        prevswaps = swaps;
+        if(LOG.isStatistics()) {
+          LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + iteration + ".cost", tc));
+        }
+      }
+      LOG.setCompleted(prog);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+        LOG.statistics(new LongStatistic(KEY + ".swaps", swaps));
+        LOG.statistics(new LongStatistic(KEY + ".wasted-evaluations", wasted));
+        LOG.statistics(new DoubleStatistic(KEY + ".final-cost", tc));
+      }
+      // Cleanup
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        assignment.putInt(it, assignment.intValue(it) & 0x7FFF);
+      }
+      return tc;
+    }
+
+    /**
+     * Evaluate a window of candidates in parallel.
+     *
+     * @author Erich Schubert
+     */
+    private class WindowTask extends RecursiveAction {
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Candidate offsets.
+       */
+      private final int[] window;
+
+      /**
+       * Output: best medoid to replace for each candidate.
+       */
+      private final int[] best;
+
+      /**
+       * Output: cost change of the best swap for each candidate.
+       */
+      private final double[] bestcost;
+
+      /**
+       * Prior cost of removing each medoid.
+       */
+      private final double[] pcost;
+
+      /**
+       * Range of the window to process.
+       */
+      private final int start, end;
+
+      /**
+       * Constructor.
+       *
+       * @param window Candidate offsets
+       * @param best Output: best medoid to replace
+       * @param bestcost Output: cost of the best swap
+       * @param pcost Prior cost of removing each medoid
+       * @param start First candidate
+       * @param end End (exclusive)
+       */
+      WindowTask(int[] window, int[] best, double[] bestcost, double[] pcost, int start, int end) {
+        this.window = window;
+        this.best = best;
+        this.bestcost = bestcost;
+        this.pcost = pcost;
+        this.start = start;
+        this.end = end;
+      }
+
+      @Override
+      protected void compute() {
+        if(end - start > 1) {
+          final int mid = (start + end) >>> 1;
+          invokeAll(new WindowTask(window, best, bestcost, pcost, start, mid), //
+              new WindowTask(window, best, bestcost, pcost, mid, end));
+          return;
+        }
+        if(start < end) {
+          double[] cost = pcost.clone();
+          // The cost we get back by making the non-medoid h medoid.
+          double acc = computeReassignmentCost(aids.iter().seek(window[start]), cost);
+          // Find the best possible swap for each medoid:
+          int min = argmin(cost);
+          best[start] = min;
+          bestcost[start] = cost[min] + acc;
+        }
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> extends FasterPAM.Par<O> {
+    @Override
+    public ParallelFasterPAM<O> make() {
+      return new ParallelFasterPAM<>(distance, k, maxiter, initializer);
+    }
+  }
+}
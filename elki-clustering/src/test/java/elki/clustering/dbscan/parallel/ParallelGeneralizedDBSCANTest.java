@@ -20,11 +20,16 @@
  */
 package elki.clustering.dbscan.parallel;
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
 import elki.clustering.AbstractClusterAlgorithmTest;
 import elki.clustering.dbscan.DBSCAN;
+import elki.clustering.dbscan.GeneralizedDBSCAN;
+import elki.data.Cluster;
 import elki.data.Clustering;
+import elki.data.model.CoreObjectsModel;
 import elki.data.model.Model;
 import elki.database.Database;
 import elki.utilities.ELKIBuilder;
@@ -68,4 +73,38 @@ public class ParallelGeneralizedDBSCANTest extends AbstractClusterAlgorithmTest
     assertFMeasure(db, result, 0.954382);
     assertClusterSizes(result, new int[] { 11, 200, 203, 224 });
   }
+
+  /**
+   * Compare the core points to the serial Generalized DBSCAN.
+   */
+  @Test
+  public void testCoreModel() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<Model> serial = new ELKIBuilder<>(GeneralizedDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 0.04) //
+        .with(DBSCAN.Par.MINPTS_ID, 20) //
+        .with(GeneralizedDBSCAN.Par.COREMODEL_ID) //
+        .build().autorun(db);
+    Clustering<Model> result = new ELKIBuilder<>(ParallelGeneralizedDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 0.04) //
+        .with(DBSCAN.Par.MINPTS_ID, 20) //
+        .with(ParallelGeneralizedDBSCAN.Par.COREMODEL_ID) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.996413);
+    assertEquals(countCores(serial), countCores(result));
+  }
+
+  /**
+   * Count the core points of a clustering.
+   *
+   * @param c Clustering
+   * @return Number of core points
+   */
+  private static int countCores(Clustering<Model> c) {
+    int cores = 0;
+    for(Cluster<Model> clus : c.getAllClusters()) {
+      cores += ((CoreObjectsModel) clus.getModel()).getCoreObjects().size();
+    }
+    return cores;
+  }
 }
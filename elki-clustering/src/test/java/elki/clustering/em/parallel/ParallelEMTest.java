@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.em.parallel;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.em.DiagonalGaussianModelFactory;
+import elki.clustering.em.EM;
+import elki.clustering.em.MultivariateGaussianModelFactory;
+import elki.clustering.em.SphericalGaussianModelFactory;
+import elki.clustering.em.TextbookMultivariateGaussianModelFactory;
+import elki.clustering.em.TwoPassMultivariateGaussianModelFactory;
+import elki.clustering.kmeans.KMeans;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Test the parallel EM with all Gaussian models, which must give the same
+ * results as the serial version.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelEMTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testMultivariateMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 4) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.MODEL_ID, MultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.941968);
+    assertClusterSizes(result, new int[] { 5, 13, 93, 98, 200, 301 });
+  }
+
+  @Test
+  public void testDiagonalMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 3) //
+        .with(EM.Par.K_ID, 5) //
+        .with(EM.Par.MODEL_ID, DiagonalGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.9681384);
+    assertClusterSizes(result, new int[] { 7, 91, 99, 200, 313 });
+  }
+
+  @Test
+  public void testSphericalMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 1) //
+        .with(EM.Par.K_ID, 4) //
+        .with(EM.Par.MODEL_ID, SphericalGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.811247176);
+    assertClusterSizes(result, new int[] { 8, 95, 198, 409 });
+  }
+
+  @Test
+  public void testTextbookMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 3) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.MODEL_ID, TextbookMultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.942254);
+    assertClusterSizes(result, new int[] { 5, 13, 91, 100, 200, 301 });
+  }
+
+  @Test
+  public void testTwoPassMLE() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 3) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.MODEL_ID, TwoPassMultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.942254);
+    assertClusterSizes(result, new int[] { 5, 13, 91, 100, 200, 301 });
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.parallel.ParallelCore;
+
+/**
+ * Test the matrix paradigm storage.
+ *
+ * @author Erich Schubert
+ */
+public class MatrixParadigmTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testDoublePrecision() {
+    assertMatrix(false, 0.);
+  }
+
+  @Test
+  public void testSinglePrecision() {
+    assertMatrix(true, 1e-6);
+  }
+
+  @Test
+  public void testParallel() {
+    ParallelCore core = new ParallelCore("test", 4);
+    ParallelCore prev = ParallelCore.setCore(core);
+    try {
+      assertMatrix(false, 0.);
+    }
+    finally {
+      ParallelCore.setCore(prev);
+      core.shutdown();
+    }
+  }
+
+  /**
+   * Compare the matrix to the distances.
+   *
+   * @param singlePrecision Use single precision
+   * @param tol Tolerance
+   */
+  private void assertMatrix(boolean singlePrecision, double tol) {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = new QueryBuilder<>(rel, EuclideanDistance.STATIC).distanceQuery();
+    MatrixParadigm mat = new MatrixParadigm(rel.getDBIDs(), singlePrecision).initializeWithDistances(dq);
+    assertEquals("Precision", singlePrecision, mat.isSinglePrecision());
+    for(int x = 0; x < mat.size; x++) {
+      mat.ix.seek(x);
+      for(int y = 0; y < mat.size; y++) {
+        final double d = dq.distance(mat.ix, mat.iy.seek(y));
+        assertEquals("Distance mismatch at " + x + "," + y, d, mat.get(x, y), d * tol);
+      }
+    }
+  }
+}
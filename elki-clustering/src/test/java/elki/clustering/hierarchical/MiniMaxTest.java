@@ -67,4 +67,20 @@ public class MiniMaxTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, clustering, 0.914592130);
     assertClusterSizes(clustering, new int[] { 59, 112, 159 });
   }
+
+  /**
+   * Run agglomerative hierarchical clustering with a single precision distance
+   * matrix, and compare the result to a golden standard.
+   */
+  @Test
+  public void testMiniMaxSinglePrecision() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, MiniMax.class) //
+        .with(AGNES.Par.FLOAT_ID) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.914592130);
+    assertClusterSizes(clustering, new int[] { 59, 112, 159 });
+  }
 }
@@ -0,0 +1,106 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.Algorithm;
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.hierarchical.PointerHierarchyResult;
+import elki.clustering.hierarchical.SLINKHDBSCANLinearMemory;
+import elki.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDVar;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the parallel SLINKHDBSCAN variant.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelSLINKHDBSCANLinearMemoryTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testHDBSCAN() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, ParallelSLINKHDBSCANLinearMemory.class) //
+        .with(ParallelSLINKHDBSCANLinearMemory.Par.MIN_PTS_ID, 20) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.686953412);
+    assertClusterSizes(clustering, new int[] { 1, 200, 437 });
+  }
+
+  @Test
+  public void testIdenticalToSerial() {
+    assertIdentical(EuclideanDistance.STATIC);
+  }
+
+  @Test
+  public void testIdenticalToSerialManhattan() {
+    assertIdentical(ManhattanDistance.STATIC);
+  }
+
+  /**
+   * Compare the parallel and serial pointer representations on a data set
+   * large enough to be processed in parallel blocks.
+   *
+   * @param dist Distance function
+   */
+  private static void assertIdentical(Distance<? super NumberVector> dist) {
+    Random rnd = new Random(0L);
+    double[][] data = new double[5000][3];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    PointerHierarchyResult serial = new SLINKHDBSCANLinearMemory<NumberVector>(dist, 10).run(rel);
+    PointerHierarchyResult parallel = new ParallelSLINKHDBSCANLinearMemory<NumberVector>(dist, 10).run(rel);
+    DBIDVar sp = DBIDUtil.newVar(), pp = DBIDUtil.newVar();
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      serial.getParentStore().assignVar(it, sp);
+      parallel.getParentStore().assignVar(it, pp);
+      assertTrue(DBIDUtil.equal(sp, pp));
+      assertEquals(serial.getParentDistanceStore().doubleValue(it), parallel.getParentDistanceStore().doubleValue(it), 0.);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmedoids.parallel;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.kmeans.KMeans;
+import elki.clustering.kmedoids.CLARA;
+import elki.clustering.kmedoids.FasterCLARA;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.model.MedoidModel;
+import elki.database.Database;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the parallel FasterCLARA.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelFasterCLARATest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testCLARA() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> result = new ELKIBuilder<ParallelFasterCLARA<DoubleVector>>(ParallelFasterCLARA.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(CLARA.Par.RANDOM_ID, 6) //
+        .with(CLARA.Par.NUMSAMPLES_ID, 2) //
+        .with(CLARA.Par.SAMPLESIZE_ID, 50) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  @Test
+  public void testIdenticalToSerial() {
+    Database db = makeSimpleDatabase(UNITTEST + "subspace-overlapping-4-5d.ascii", 1100);
+    Clustering<MedoidModel> serial = new ELKIBuilder<FasterCLARA<DoubleVector>>(FasterCLARA.class) //
+        .with(KMeans.K_ID, 10) //
+        .with(KMeans.SEED_ID, 1) //
+        .with(CLARA.Par.RANDOM_ID, 1) //
+        .with(CLARA.Par.NUMSAMPLES_ID, 5) //
+        .build().autorun(db);
+    Clustering<MedoidModel> parallel = new ELKIBuilder<ParallelFasterCLARA<DoubleVector>>(ParallelFasterCLARA.class) //
+        .with(KMeans.K_ID, 10) //
+        .with(KMeans.SEED_ID, 1) //
+        .with(CLARA.Par.RANDOM_ID, 1) //
+        .with(CLARA.Par.NUMSAMPLES_ID, 5) //
+        .with(ParallelFastCLARA.Par.CACHE_SIZE_ID, 1000) //
+        .build().autorun(db);
+    ParallelFastPAMTest.assertIdentical(serial, parallel);
+  }
+
+  @Test
+  public void testIndependentSamples() {
+    Database db = makeSimpleDatabase(UNITTEST + "subspace-overlapping-4-5d.ascii", 1100);
+    Clustering<MedoidModel> serial = new ELKIBuilder<FasterCLARA<DoubleVector>>(FasterCLARA.class) //
+        .with(KMeans.K_ID, 10) //
+        .with(KMeans.SEED_ID, 2) //
+        .with(CLARA.Par.RANDOM_ID, 2) //
+        .with(CLARA.Par.NUMSAMPLES_ID, 5) //
+        .with(CLARA.Par.NOKEEPMED_ID) //
+        .build().autorun(db);
+    Clustering<MedoidModel> parallel = new ELKIBuilder<ParallelFasterCLARA<DoubleVector>>(ParallelFasterCLARA.class) //
+        .with(KMeans.K_ID, 10) //
+        .with(KMeans.SEED_ID, 2) //
+        .with(CLARA.Par.RANDOM_ID, 2) //
+        .with(CLARA.Par.NUMSAMPLES_ID, 5) //
+        .with(CLARA.Par.NOKEEPMED_ID) //
+        .build().autorun(db);
+    ParallelFastPAMTest.assertIdentical(serial, parallel);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.knn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.KNNList;
+
+/**
+ * kNN searcher that can answer many queries at once, e.g., to process blocks
+ * of queries against blocks of data for better cache efficiency.
+ * <p>
+ * This is used for "all-kNN" workloads such as materializing the kNN of every
+ * object. Implementations must return the same results as calling
+ * {@link #getKNN} for each query individually.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public interface BatchKNNSearcher extends KNNSearcher<DBIDRef> {
+  /**
+   * Get the k nearest neighbors for multiple query objects.
+   * <p>
+   * Note: this is not named {@code getKNN}, as a single DBID is also a DBIDs
+   * collection, so the overload would be ambiguous.
+   *
+   * @param ids query objects
+   * @param k Number of neighbors requested
+   * @return neighbors, in the same order as the query ids
+   */
+  List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k);
+
+  /**
+   * Get the k nearest neighbors for multiple query objects, using the batch
+   * API if supported by the searcher, and individual queries otherwise.
+   *
+   * @param knnq kNN searcher
+   * @param ids query objects
+   * @param k Number of neighbors requested
+   * @return neighbors, in the same order as the query ids
+   */
+  static List<? extends KNNList> getKNNForBulkDBIDs(KNNSearcher<DBIDRef> knnq, ArrayDBIDs ids, int k) {
+    if(knnq instanceof BatchKNNSearcher) {
+      return ((BatchKNNSearcher) knnq).getKNNForBulkDBIDs(ids, k);
+    }
+    List<KNNList> result = new ArrayList<>(ids.size());
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      result.add(knnq.getKNN(iter, k));
+    }
+    return result;
+  }
+}
@@ -21,11 +21,26 @@
 package elki.parallel;
 
 import java.util.concurrent.*;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * Core for parallel processing in ELKI, based on a work-stealing
+ * {@link ForkJoinPool}.
+ * <p>
+ * Idle worker threads of a fork-join pool terminate by themselves after a
+ * while, so we do not need to shrink the pool explicitly when all submitters
+ * have disconnected.
  * <p>
- * TODO: make configurable how many threads are used.
+ * By default, a static core using all available processors is used. When
+ * multiple tasks run in the same JVM, each task can use its own bounded core
+ * (see {@link #ParallelCore(String, int)}), or share a named core (see
+ * {@link #getCore(String, int)}), by binding the core to the current thread
+ * with {@link #setCore(ParallelCore)}. Worker threads always use the core they
+ * belong to.
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -39,12 +54,22 @@ public class ParallelCore {
   /**
    * Static core
    */
-  private static final ParallelCore STATIC = new ParallelCore(ALL_PROCESSORS);
+  private static final ParallelCore STATIC = new ParallelCore("default", ALL_PROCESSORS);
+
+  /**
+   * Named, shared cores.
+   */
+  private static final ConcurrentHashMap<String, ParallelCore> NAMED = new ConcurrentHashMap<>();
+
+  /**
+   * Core bound to the current thread.
+   */
+  private static final ThreadLocal<ParallelCore> CURRENT = new ThreadLocal<>();
 
   /**
    * Executor service.
    */
-  private volatile ThreadPoolExecutor executor;
+  private volatile ForkJoinPool executor;
 
   /**
    * Number of connected submitters.
@@ -56,21 +81,92 @@ public class ParallelCore {
    */
   private int processors;
 
+  /**
+   * Core name, for thread names and statistics.
+   */
+  private final String name;
+
   /**
    * Constructor.
+   *
+   * @param name Core name, for thread names and statistics
+   * @param processors Number of threads to use
    */
-  protected ParallelCore(int processors) {
+  public ParallelCore(String name, int processors) {
     super();
+    if(processors < 1) {
+      throw new IllegalArgumentException("A parallel core needs at least one thread.");
+    }
+    this.name = name;
     this.processors = processors;
   }
 
   /**
-   * Get the static core object.
+   * Get the core for the current thread.
+   * <p>
+   * This is the core of the current worker thread, the core bound to the
+   * current thread using {@link #setCore}, or the static default core.
    * 
    * @return Core
    */
   public static ParallelCore getCore() {
-    return STATIC;
+    final Thread thread = Thread.currentThread();
+    if(thread instanceof Worker) {
+      return ((Worker) thread).core;
+    }
+    ParallelCore core = CURRENT.get();
+    return core != null ? core : STATIC;
+  }
+
+  /**
+   * Get a named core, shared by all users of the same name.
+   * <p>
+   * If the core already exists, the number of processors of the existing core
+   * is kept.
+   *
+   * @param name Core name
+   * @param processors Number of threads to use, when creating the core
+   * @return Shared core
+   */
+  public static ParallelCore getCore(String name, int processors) {
+    return NAMED.computeIfAbsent(name, n -> new ParallelCore(n, processors));
+  }
+
+  /**
+   * Check whether a core was bound to the current thread using
+   * {@link #setCore}, i.e., the user chose the parallelism explicitly.
+   *
+   * @return {@code true} if a core is bound to the current thread
+   */
+  public static boolean isCoreBound() {
+    return CURRENT.get() != null;
+  }
+
+  /**
+   * Bind a core to the current thread, to be used by all parallel executions
+   * started by this thread.
+   *
+   * @param core Core to use, {@code null} to use the default core
+   * @return Previously bound core, may be {@code null}
+   */
+  public static ParallelCore setCore(ParallelCore core) {
+    ParallelCore prev = CURRENT.get();
+    if(core != null) {
+      CURRENT.set(core);
+    }
+    else {
+      CURRENT.remove();
+    }
+    return prev;
+  }
+
+  /**
+   * Get the name of this core.
+   *
+   * @return Core name
+   */
+  public String getName() {
+    return name;
   }
 
   /**
@@ -79,7 +175,42 @@ public class ParallelCore {
    * @return Number of threads to run in parallel
    */
   public int getParallelism() {
-    return executor != null ? executor.getMaximumPoolSize() : processors;
+    return executor != null ? executor.getParallelism() : processors;
+  }
+
+  /**
+   * Get the number of tasks waiting in the queues of this core.
+   *
+   * @return Number of queued tasks
+   */
+  public long getQueuedTaskCount() {
+    final ForkJoinPool ex = executor;
+    return ex != null ? ex.getQueuedTaskCount() + ex.getQueuedSubmissionCount() : 0;
+  }
+
+  /**
+   * Get the number of threads currently executing tasks.
+   *
+   * @return Number of active threads
+   */
+  public int getActiveThreadCount() {
+    final ForkJoinPool ex = executor;
+    return ex != null ? ex.getActiveThreadCount() : 0;
+  }
+
+  /**
+   * Log the current state of the core as statistics.
+   *
+   * @param log Logger to report to
+   */
+  public void logStatistics(Logging log) {
+    final ForkJoinPool ex = executor;
+    final String prefix = ParallelCore.class.getName() + "." + name;
+    log.statistics(new LongStatistic(prefix + ".parallelism", getParallelism()));
+    log.statistics(new LongStatistic(prefix + ".threads", ex != null ? ex.getPoolSize() : 0));
+    log.statistics(new LongStatistic(prefix + ".threads.active", getActiveThreadCount()));
+    log.statistics(new LongStatistic(prefix + ".queue.depth", getQueuedTaskCount()));
+    log.statistics(new LongStatistic(prefix + ".steals", ex != null ? ex.getStealCount() : 0));
   }
 
   /**
@@ -93,27 +224,112 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Submit a fork-join task to the executor core.
+   * 
+   * @param task Submitted task
+   * 
+   * @return Task, to observe completion
+   */
+  public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+    return executor.submit(task);
+  }
+
   /**
    * Connect to the executor.
    */
   public synchronized void connect() {
     if(executor == null) {
-      executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-      executor.allowCoreThreadTimeOut(true);
-    }
-    if(++connected == 1) {
-      executor.allowCoreThreadTimeOut(false);
-      executor.setCorePoolSize(executor.getMaximumPoolSize());
+      executor = new ForkJoinPool(processors, new WorkerFactory(this), null, false);
     }
+    ++connected;
   }
 
   /**
    * Disconnect to the executor.
    */
   public synchronized void disconnect() {
-    if(--connected == 0) {
-      executor.allowCoreThreadTimeOut(true);
-      executor.setCorePoolSize(0);
+    --connected;
+  }
+
+  /**
+   * Shut down the thread pool of this core, once it is no longer needed.
+   * <p>
+   * The core can still be used afterwards, but will then start a new pool.
+   * Named cores are no longer shared after shutdown.
+   */
+  public synchronized void shutdown() {
+    if(this == STATIC) {
+      throw new IllegalStateException("The default core cannot be shut down.");
+    }
+    if(connected > 0) {
+      throw new IllegalStateException("The core is still in use.");
+    }
+    if(executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    NAMED.remove(name, this);
+  }
+
+  @Override
+  public String toString() {
+    return "ParallelCore(" + name + ", " + getParallelism() + ")";
+  }
+
+  /**
+   * Factory for worker threads that know their core.
+   *
+   * @author Erich Schubert
+   */
+  private static class WorkerFactory implements ForkJoinWorkerThreadFactory {
+    /**
+     * Core the workers belong to.
+     */
+    private final ParallelCore core;
+
+    /**
+     * Thread counter, for naming.
+     */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param core Core
+     */
+    WorkerFactory(ParallelCore core) {
+      this.core = core;
+    }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+      Worker worker = new Worker(pool, core);
+      worker.setName("ELKI-" + core.name + "-" + counter.incrementAndGet());
+      return worker;
+    }
+  }
+
+  /**
+   * Worker thread of a core.
+   *
+   * @author Erich Schubert
+   */
+  private static class Worker extends ForkJoinWorkerThread {
+    /**
+     * Core this worker belongs to.
+     */
+    final ParallelCore core;
+
+    /**
+     * Constructor.
+     *
+     * @param pool Pool
+     * @param core Core
+     */
+    Worker(ForkJoinPool pool, ParallelCore core) {
+      super(pool);
+      this.core = core;
     }
   }
 }
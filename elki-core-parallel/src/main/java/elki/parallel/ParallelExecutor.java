@@ -20,33 +20,60 @@
  */
 package elki.parallel;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
+import elki.logging.Logging;
+import elki.logging.progress.AbstractProgress;
 import elki.parallel.processor.Processor;
 import elki.parallel.variables.SharedVariable;
 import elki.parallel.variables.SharedVariable.Instance;
 
 /**
- * Class to run processors in parallel, on all available cores.
- *
- * TODO: add progress
+ * Class to run processors in parallel, on all cores of the current
+ * {@link ParallelCore}.
+ * <p>
+ * The array of ids is split recursively into smaller ranges, which are
+ * processed by a work-stealing fork-join pool. A range is only split further
+ * while other workers are likely to be idle, and idle workers steal the
+ * remaining halves of large ranges. This avoids the long tail of a fixed
+ * partitioning when the cost per object is skewed (e.g., kNN queries in dense
+ * and sparse regions).
+ * <p>
+ * Each worker thread instantiates the processors (and thus the shared
+ * variables) only once per run, and the processors are cleaned up once per
+ * worker after all ranges have been processed.
  *
  * @author Erich Schubert
  * @since 0.7.0
  *
- * @has - - - BlockArrayRunner
+ * @has - - - BlockArrayTask
+ * @has - - - WorkerState
  * @assoc - - - ParallelCore
  */
 public final class ParallelExecutor {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelExecutor.class);
+
+  /**
+   * Minimum number of pending tasks of a worker, before we stop splitting.
+   */
+  private static final int SURPLUS = 2;
+
+  /**
+   * Number of blocks per thread for the minimum block size.
+   */
+  private static final int BLOCKS_PER_THREAD = 32;
+
   /**
    * Private constructor. Static methods only.
    */
@@ -61,27 +88,29 @@ public final class ParallelExecutor {
    * @param procs Processors to run
    */
   public static void run(DBIDs ids, Processor... procs) {
+    run(ids, null, null, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs.
+   *
+   * @param ids IDs to process
+   * @param prog Progress to increment (may be {@code null})
+   * @param logger Logger to report progress to
+   * @param procs Processors to run
+   */
+  public static void run(DBIDs ids, AbstractProgress prog, Logging logger, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
     core.connect();
     try {
-      // TODO: try different strategies anyway!
       ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
       final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = Math.min(start + blocksize, size);
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
-      }
-
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
+      final int minblock = Math.max(1, size / (core.getParallelism() * BLOCKS_PER_THREAD));
+      BlockArrayTask root = new BlockArrayTask(new SharedState(aids, procs, minblock, prog, logger), 0, size);
+      core.submit(root).get();
+      root.shared.cleanup();
+      if(LOG.isStatistics()) {
+        core.logStatistics(LOG);
       }
     }
     catch(ExecutionException e) {
@@ -96,69 +125,233 @@ public final class ParallelExecutor {
   }
 
   /**
-   * Run for an array part, without step size.
+   * State shared by all tasks of a single run.
    *
    * @author Erich Schubert
-   *
-   * @assoc - - - Processor
    */
-  protected static class BlockArrayRunner implements Callable<ArrayDBIDs>, Executor {
+  private static class SharedState {
     /**
      * Array IDs to process
      */
-    private ArrayDBIDs ids;
+    final ArrayDBIDs ids;
 
     /**
-     * Start position
+     * The processor masters that own the instances.
      */
-    private int start;
+    final Processor[] procs;
 
     /**
-     * End position
+     * Minimum block size, do not split below.
      */
-    private int end;
+    final int minblock;
 
     /**
-     * The processor masters that own the instances.
+     * Progress to increment, may be {@code null}.
      */
-    private Processor[] procs;
+    final AbstractProgress prog;
 
     /**
-     * Variables map.
+     * Logger for progress reporting.
      */
-    private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
+    final Logging logger;
+
+    /**
+     * Worker state of each thread.
+     */
+    final ConcurrentHashMap<Thread, WorkerState> workers = new ConcurrentHashMap<>();
+
+    /**
+     * All worker states, for cleanup.
+     */
+    final ConcurrentLinkedQueue<WorkerState> all = new ConcurrentLinkedQueue<>();
 
     /**
      * Constructor.
      *
      * @param ids IDs to process
+     * @param procs Processors to run
+     * @param minblock Minimum block size
+     * @param prog Progress, may be {@code null}
+     * @param logger Logger for progress
+     */
+    SharedState(ArrayDBIDs ids, Processor[] procs, int minblock, AbstractProgress prog, Logging logger) {
+      this.ids = ids;
+      this.procs = procs;
+      this.minblock = minblock;
+      this.prog = prog;
+      this.logger = logger;
+    }
+
+    /**
+     * Process a range of objects in the current thread.
+     *
+     * @param start Start position
+     * @param end End position (exclusive)
+     */
+    void process(int start, int end) {
+      final Thread thread = Thread.currentThread();
+      WorkerState state = workers.get(thread);
+      if(state == null || state.busy) {
+        // Nested execution of a second block in the same thread is possible
+        // when processors themselves wait for fork-join tasks.
+        state = new WorkerState(ids.iter(), procs);
+        all.add(state);
+        workers.putIfAbsent(thread, state);
+      }
+      state.process(start, end);
+      if(prog != null) {
+        prog.incrementProcessed(end - start, logger);
+      }
+    }
+
+    /**
+     * Cleanup all processor instances.
+     */
+    void cleanup() {
+      for(WorkerState state : all) {
+        state.cleanup(procs);
+      }
+    }
+  }
+
+  /**
+   * Recursive task, splitting a range of the array adaptively.
+   *
+   * @author Erich Schubert
+   *
+   * @assoc - - - Processor
+   */
+  private static class BlockArrayTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Shared state of this run.
+     */
+    final SharedState shared;
+
+    /**
+     * Start position
+     */
+    final int start;
+
+    /**
+     * End position
+     */
+    final int end;
+
+    /**
+     * Next task forked by the same parent.
+     */
+    BlockArrayTask next;
+
+    /**
+     * Constructor.
+     *
+     * @param shared Shared state
      * @param start Starting position
      * @param end End position
-     * @param procs Processors to run
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    BlockArrayTask(SharedState shared, int start, int end) {
       super();
-      this.ids = ids;
+      this.shared = shared;
       this.start = start;
       this.end = end;
-      this.procs = procs;
     }
 
     @Override
-    public ArrayDBIDs call() {
-      Processor.Instance[] instances = new Processor.Instance[procs.length];
+    protected void compute() {
+      final int minblock = shared.minblock;
+      BlockArrayTask forked = null;
+      int s = start, e = end;
+      while(e - s > minblock) {
+        if(getSurplusQueuedTaskCount() > SURPLUS) {
+          // Enough work queued for stealing, process a small block ourselves,
+          // but keep the remainder splittable.
+          shared.process(s, s += minblock);
+          continue;
+        }
+        final int mid = (s + e) >>> 1;
+        BlockArrayTask t = new BlockArrayTask(shared, mid, e);
+        t.next = forked;
+        (forked = t).fork();
+        e = mid;
+      }
+      shared.process(s, e);
+      // Join in reverse order of forking:
+      for(; forked != null; forked = forked.next) {
+        forked.join();
+      }
+    }
+  }
+
+  /**
+   * Processor instances and shared variables of a single worker thread.
+   *
+   * @author Erich Schubert
+   */
+  private static class WorkerState implements Executor {
+    /**
+     * Iterator over the array.
+     */
+    private DBIDArrayIter iter;
+
+    /**
+     * Processor instances.
+     */
+    private Processor.Instance[] instances;
+
+    /**
+     * Variables map.
+     */
+    private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
+
+    /**
+     * Flag to detect nested use within the same thread.
+     */
+    boolean busy;
+
+    /**
+     * Constructor.
+     *
+     * @param iter Array iterator
+     * @param procs Processors to instantiate
+     */
+    WorkerState(DBIDArrayIter iter, Processor[] procs) {
+      this.iter = iter;
+      this.instances = new Processor.Instance[procs.length];
       for(int i = 0; i < procs.length; i++) {
         instances[i] = procs[i].instantiate(this);
       }
-      for(DBIDArrayIter iter = ids.iter().seek(start); iter.valid() && iter.getOffset() < end; iter.advance()) {
+    }
+
+    /**
+     * Process a range of the array.
+     *
+     * @param start Start position
+     * @param end End position (exclusive)
+     */
+    void process(int start, int end) {
+      busy = true;
+      for(iter.seek(start); iter.valid() && iter.getOffset() < end; iter.advance()) {
         for(int i = 0; i < instances.length; i++) {
           instances[i].map(iter);
         }
       }
+      busy = false;
+    }
+
+    /**
+     * Cleanup the processor instances.
+     *
+     * @param procs Processors
+     */
+    void cleanup(Processor[] procs) {
       for(int i = 0; i < instances.length; i++) {
         procs[i].cleanup(instances[i]);
       }
-      return ids;
     }
 
     @Override
@@ -0,0 +1,89 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.parallel.processor.Processor;
+
+/**
+ * Test binding of bounded and named cores.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelCoreTest {
+  @Test
+  public void testNamed() {
+    ParallelCore a = ParallelCore.getCore("test-named", 2);
+    ParallelCore b = ParallelCore.getCore("test-named", 3);
+    assertSame("Named cores not shared.", a, b);
+    assertEquals("Parallelism of first creation not kept.", 2, b.getParallelism());
+    a.shutdown();
+    assertEquals("Not removed on shutdown.", 3, ParallelCore.getCore("test-named", 3).getParallelism());
+  }
+
+  @Test
+  public void testBound() {
+    final ParallelCore core = new ParallelCore("test-bound", 2);
+    final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    final Set<ParallelCore> cores = ConcurrentHashMap.newKeySet();
+    Processor proc = new Processor() {
+      @Override
+      public Instance instantiate(Executor executor) {
+        return new Instance() {
+          @Override
+          public void map(DBIDRef id) {
+            threads.add(Thread.currentThread());
+            cores.add(ParallelCore.getCore());
+          }
+        };
+      }
+
+      @Override
+      public void cleanup(Instance inst) {
+        // Nothing to do.
+      }
+    };
+    assertNull(ParallelCore.setCore(core));
+    try {
+      assertSame(core, ParallelCore.getCore());
+      ParallelExecutor.run(DBIDUtil.generateStaticDBIDRange(10000), proc);
+    }
+    finally {
+      assertSame(core, ParallelCore.setCore(null));
+    }
+    assertTrue("Too many threads used: " + threads.size(), threads.size() <= 3);
+    assertEquals("Workers do not use their own core.", 1, cores.size());
+    assertSame("Workers do not use their own core.", core, cores.iterator().next());
+    assertEquals("Default core not restored.", ParallelCore.ALL_PROCESSORS, ParallelCore.getCore().getParallelism());
+    core.shutdown();
+  }
+}
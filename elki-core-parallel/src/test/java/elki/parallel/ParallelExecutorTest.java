@@ -0,0 +1,123 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.processor.Processor;
+
+/**
+ * Test the parallel executor, in particular that every object is processed
+ * exactly once, and every instance is cleaned up.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelExecutorTest {
+  @Test
+  public void testSkewed() {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(10000);
+    CountingProcessor proc = new CountingProcessor(ids);
+    FiniteProgress prog = new FiniteProgress("Test", ids.size(), Logging.getLogger(ParallelExecutorTest.class));
+    ParallelExecutor.run(ids, prog, Logging.getLogger(ParallelExecutorTest.class), proc);
+    assertEquals("Progress incomplete.", ids.size(), prog.getProcessed());
+    assertEquals("Not all processed.", ids.size(), proc.total.get());
+    assertEquals("Instances not cleaned up.", proc.instances.get(), proc.cleanups.get());
+    for(int i = 0; i < proc.seen.length; i++) {
+      assertEquals("Processed " + i + " not exactly once.", 1, proc.seen[i].get());
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(0);
+    CountingProcessor proc = new CountingProcessor(ids);
+    ParallelExecutor.run(ids, proc);
+    assertEquals("Processed nothing.", 0, proc.total.get());
+    assertEquals("Instances not cleaned up.", proc.instances.get(), proc.cleanups.get());
+  }
+
+  /**
+   * Processor that counts, with a skewed workload.
+   *
+   * @author Erich Schubert
+   */
+  private static class CountingProcessor implements Processor {
+    DBIDRange ids;
+
+    AtomicInteger[] seen;
+
+    AtomicInteger total = new AtomicInteger(), instances = new AtomicInteger(),
+        cleanups = new AtomicInteger();
+
+    CountingProcessor(DBIDRange ids) {
+      this.ids = ids;
+      this.seen = new AtomicInteger[ids.size()];
+      for(int i = 0; i < seen.length; i++) {
+        seen[i] = new AtomicInteger();
+      }
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      instances.incrementAndGet();
+      return new CountingInstance();
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      cleanups.incrementAndGet();
+      total.addAndGet(((CountingInstance) inst).count);
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class CountingInstance implements Instance {
+      int count = 0;
+
+      @Override
+      public void map(DBIDRef id) {
+        int off = ids.getOffset(id);
+        // Skewed workload: the first objects are much more expensive.
+        if(off < 100) {
+          double v = 0;
+          for(int i = 0; i < 100000; i++) {
+            v += Math.sqrt(i);
+          }
+          assert v > 0;
+        }
+        seen[off].incrementAndGet();
+        count++;
+      }
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.datastructures.unionfind;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import elki.utilities.documentation.Reference;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Lock-free union-find for primitive integers in a fixed range, that can be
+ * used concurrently by multiple threads.
+ * <p>
+ * Contrary to {@link WeightedQuickUnionInteger}, the components are not
+ * weighted, because the weight cannot be updated atomically together with the
+ * parent. Instead, the root with the larger index is always linked below the
+ * root with the smaller index. This rules out cycles, and the root of each
+ * component is its smallest element, independent of the order in which the
+ * unions were performed. Paths are shortened with path-halving using
+ * compare-and-set operations.
+ * <p>
+ * Reference:
+ * <p>
+ * R. J. Anderson, H. Woll<br>
+ * Wait-free Parallel Algorithms for the Union-Find Problem<br>
+ * Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@Reference(authors = "R. J. Anderson, H. Woll", //
+    title = "Wait-free Parallel Algorithms for the Union-Find Problem", //
+    booktitle = "Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC)", //
+    url = "https://doi.org/10.1145/103418.103458", //
+    bibkey = "DBLP:conf/stoc/AndersonW91")
+public class ConcurrentUnionFindInteger {
+  /**
+   * Parent element
+   */
+  private final AtomicIntegerArray parent;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of elements
+   */
+  public ConcurrentUnionFindInteger(int size) {
+    parent = new AtomicIntegerArray(size);
+    for(int i = 0; i < size; i++) {
+      parent.lazySet(i, i);
+    }
+  }
+
+  /**
+   * Find the current root of an object.
+   * <p>
+   * When unions are performed concurrently, the result may already be outdated
+   * when this method returns.
+   *
+   * @param cur Current entry
+   * @return Root entry
+   */
+  public int find(int cur) {
+    while(true) {
+      final int p = parent.get(cur);
+      if(p == cur) {
+        return cur;
+      }
+      final int gp = parent.get(p);
+      if(gp != p) {
+        parent.compareAndSet(cur, p, gp); // Path halving.
+      }
+      cur = gp;
+    }
+  }
+
+  /**
+   * Join the components of elements p and q.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return Component id, at the time of joining.
+   */
+  public int union(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return first;
+      }
+      // Always link the larger root below the smaller root:
+      if(first < second) {
+        final int tmp = first;
+        first = second;
+        second = tmp;
+      }
+      if(parent.compareAndSet(first, first, second)) {
+        return second;
+      }
+      // Concurrent modification, retry.
+    }
+  }
+
+  /**
+   * Test if two components are connected.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return {@code true} if they are in the same component.
+   */
+  public boolean isConnected(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return true;
+      }
+      // Only conclusive if first is still a root.
+      if(parent.get(first) == first) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Collect all component root elements.
+   * <p>
+   * This should only be used when no concurrent unions are performed.
+   *
+   * @return Root elements
+   */
+  public IntList getRoots() {
+    IntList roots = new IntArrayList();
+    for(int i = 0, size = parent.length(); i < size; i++) {
+      // roots or one element in component
+      if(parent.get(i) == i) {
+        roots.add(i);
+      }
+    }
+    return roots;
+  }
+
+  /**
+   * Number of elements.
+   *
+   * @return Size.
+   */
+  public int size() {
+    return parent.length();
+  }
+}
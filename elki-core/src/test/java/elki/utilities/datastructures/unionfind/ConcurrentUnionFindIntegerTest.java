@@ -0,0 +1,91 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.datastructures.unionfind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Unit test for the concurrent union find.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ConcurrentUnionFindIntegerTest {
+  @Test
+  public void testTree() {
+    ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(8);
+    assertFalse(uf.isConnected(0, 7));
+    uf.union(0, 1);
+    assertTrue(uf.isConnected(0, 1));
+    uf.union(3, 2);
+    assertFalse(uf.isConnected(0, 2));
+    uf.union(0, 2);
+    assertTrue(uf.isConnected(3, 1));
+    uf.union(4, 5);
+    uf.union(7, 6);
+    uf.union(4, 6);
+    assertFalse(uf.isConnected(0, 4));
+    assertEquals(4, uf.find(7));
+    uf.union(4, 0);
+    for(int i = 0; i < 8; i++) {
+      assertEquals("Root must be the smallest element.", 0, uf.find(i));
+    }
+  }
+
+  @Test
+  public void testConcurrent() throws InterruptedException {
+    final int size = 10000, numthreads = 4, modulo = 7;
+    final ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(size);
+    Thread[] threads = new Thread[numthreads];
+    for(int t = 0; t < numthreads; t++) {
+      final Random r = new Random(t);
+      threads[t] = new Thread(() -> {
+        // Join elements with the same remainder, in random order:
+        for(int i = 0; i < size; i++) {
+          int a = r.nextInt(size), b = r.nextInt(size / modulo) * modulo + a % modulo;
+          uf.union(a, b < size ? b : a);
+        }
+        for(int i = 0; i + modulo < size; i++) {
+          uf.union(i + modulo, i);
+        }
+      });
+    }
+    for(Thread t : threads) {
+      t.start();
+    }
+    for(Thread t : threads) {
+      t.join();
+    }
+    IntList roots = uf.getRoots();
+    assertEquals(modulo, roots.size());
+    for(int i = 0; i < size; i++) {
+      assertEquals(i % modulo, uf.find(i));
+    }
+  }
+}
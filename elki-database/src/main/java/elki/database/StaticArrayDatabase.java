@@ -28,13 +28,16 @@ import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDataStore;
 import elki.database.ids.ArrayStaticDBIDs;
 import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRange;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.relation.DBIDView;
+import elki.database.relation.MappedNumberVectorRelation;
 import elki.database.relation.MaterializedRelation;
 import elki.database.relation.Relation;
 import elki.datasource.DatabaseConnection;
 import elki.datasource.FileBasedDatabaseConnection;
+import elki.datasource.MappedNumberVectorColumn;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.index.Index;
 import elki.index.IndexFactory;
@@ -150,11 +153,18 @@ public class StaticArrayDatabase extends AbstractDatabase {
       SimpleTypeInformation<?> meta = bundle.meta(i);
       @SuppressWarnings("unchecked")
       SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-      WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-      for(it.seek(0); it.valid(); it.advance()) {
-        store.put(it, bundle.data(it.getOffset(), i));
+      Relation<?> relation;
+      if(bundle.getColumn(i) instanceof MappedNumberVectorColumn && ids instanceof DBIDRange) {
+        // Use the memory-mapped data directly, without copying.
+        relation = new MappedNumberVectorRelation((DBIDRange) ids, (MappedNumberVectorColumn) bundle.getColumn(i));
+      }
+      else {
+        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+        for(it.seek(0); it.valid(); it.advance()) {
+          store.put(it, bundle.data(it.getOffset(), i));
+        }
+        relation = new MaterializedRelation<>(null, ometa, ids, store);
       }
-      Relation<?> relation = new MaterializedRelation<>(null, ometa, ids, store);
       relations.add(relation);
       Metadata.hierarchyOf(this).addChild(relation);
 
@@ -0,0 +1,581 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.ProxyView;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.index.DistancePriorityIndex;
+import elki.index.KNNIndex;
+import elki.logging.Logging;
+import elki.result.Metadata;
+import elki.utilities.Alias;
+
+/**
+ * Cost-based query optimizer. Instead of fixed rules on the data size and
+ * dimensionality, the candidate indexes are built on two random samples of the
+ * data, and a few queries are run on each, measuring both the run time and the
+ * number of distance computations. From this, the build cost and the per-query
+ * cost on the full data set are extrapolated, and the plan with the least total
+ * cost for the expected number of queries is chosen - which may also be the
+ * linear scan, if only few queries will be run.
+ * <p>
+ * When precomputation is requested, a precomputed distance matrix and a kNN
+ * preprocessor are costed, too: the matrix needs one distance computation per
+ * pair of objects, and the preprocessor one query per object using the
+ * cheapest other plan, while their queries are assumed to be negligible.
+ * <p>
+ * Algorithms can declare the expected number of queries using
+ * {@link QueryBuilder#expectedQueries(long)}; otherwise one query per object
+ * is assumed.
+ * <p>
+ * Because the costs are measured as run times by default, the decision may
+ * differ between runs on the same data, in particular when the estimated costs
+ * are close. Subclasses can override {@link #cost(long, long)} to use the
+ * number of distance computations instead.
+ * <p>
+ * This optimizer can be enabled by setting the environment variable
+ * {@code elki.optimizer} to {@code cost}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@Alias("cost")
+public class CostBasedQueryOptimizer extends EmpiricalQueryOptimizer {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(CostBasedQueryOptimizer.class);
+
+  /**
+   * Maximum sample size used for estimating costs.
+   */
+  private static final int SAMPLE_SIZE = 4096;
+
+  /**
+   * Number of sample queries to measure.
+   */
+  private static final int SAMPLE_QUERIES = 64;
+
+  /**
+   * Minimum relation size to consider index trees at all.
+   */
+  private static final int MIN_SIZE = SAMPLE_QUERIES << 2;
+
+  /**
+   * Neighbors to use for sampling priority searches.
+   */
+  private static final int SAMPLE_K = 10;
+
+  /**
+   * Maximum number of neighbors to use for sampling kNN searches.
+   */
+  private static final int MAX_SAMPLE_K = 100;
+
+  /**
+   * Random seed, so that the same samples are used in every run.
+   */
+  private static final long SEED = 0L;
+
+  /**
+   * Expected number of queries, 0 if unknown.
+   */
+  private final long expectedQueries;
+
+  /**
+   * Constructor.
+   */
+  public CostBasedQueryOptimizer() {
+    super();
+    this.expectedQueries = 0;
+  }
+
+  /**
+   * Constructor for a declared workload.
+   *
+   * @param other Optimizer to copy
+   * @param expectedQueries Expected number of queries
+   */
+  protected CostBasedQueryOptimizer(CostBasedQueryOptimizer other, long expectedQueries) {
+    super(other);
+    this.expectedQueries = expectedQueries;
+  }
+
+  @Override
+  public QueryOptimizer withExpectedQueries(long queries) {
+    return queries == expectedQueries ? this : new CostBasedQueryOptimizer(this, queries);
+  }
+
+  @Override
+  public <O> KNNSearcher<O> kNNByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    Plan<O> plan = choosePlan(relation, distanceQuery.getDistance(), Math.min(maxk, MAX_SAMPLE_K), Double.NaN, flags, false, maxk);
+    KNNIndex<O> idx = buildKNN(plan, relation, distanceQuery, maxk, flags);
+    return idx != null ? idx.kNNByObject(distanceQuery, maxk, flags) : null;
+  }
+
+  @Override
+  public <O> KNNSearcher<DBIDRef> kNNByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    Plan<O> plan = choosePlan(relation, distanceQuery.getDistance(), Math.min(maxk, MAX_SAMPLE_K), Double.NaN, flags, true, maxk);
+    KNNIndex<O> idx = buildKNN(plan, relation, distanceQuery, maxk, flags);
+    return idx != null ? idx.kNNByDBID(distanceQuery, maxk, flags) : null;
+  }
+
+  @Override
+  public <O> RangeSearcher<O> rangeByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    DistancePriorityIndex<O> idx = build(choosePlan(relation, distanceQuery.getDistance(), 0, maxrange, flags, false, 0), relation, flags);
+    return idx != null ? idx.rangeByObject(distanceQuery, maxrange, flags) : null;
+  }
+
+  @Override
+  public <O> RangeSearcher<DBIDRef> rangeByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    DistancePriorityIndex<O> idx = build(choosePlan(relation, distanceQuery.getDistance(), 0, maxrange, flags, true, 0), relation, flags);
+    return idx != null ? idx.rangeByDBID(distanceQuery, maxrange, flags) : null;
+  }
+
+  @Override
+  public <O> PrioritySearcher<O> priorityByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    DistancePriorityIndex<O> idx = build(choosePlan(relation, distanceQuery.getDistance(), //
+        maxrange < Double.POSITIVE_INFINITY ? 0 : SAMPLE_K, maxrange, flags, false, 0), relation, flags);
+    return idx != null ? idx.priorityByObject(distanceQuery, maxrange, flags) : null;
+  }
+
+  @Override
+  public <O> PrioritySearcher<DBIDRef> priorityByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    DistancePriorityIndex<O> idx = build(choosePlan(relation, distanceQuery.getDistance(), //
+        maxrange < Double.POSITIVE_INFINITY ? 0 : SAMPLE_K, maxrange, flags, true, 0), relation, flags);
+    return idx != null ? idx.priorityByDBID(distanceQuery, maxrange, flags) : null;
+  }
+
+  /**
+   * Cost of a measured operation. By default, this is the run time; subclasses
+   * may use the number of distance computations instead, which makes the
+   * decisions deterministic.
+   *
+   * @param nanos Run time, in nanoseconds
+   * @param distances Number of distance computations
+   * @return Cost
+   */
+  protected double cost(long nanos, long distances) {
+    return nanos;
+  }
+
+  /**
+   * Choose the cheapest plan for the expected workload.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param k Number of neighbors for sampling kNN queries, 0 for range queries
+   * @param radius Radius for sampling range queries
+   * @param flags Optimizer flags
+   * @param byDBID Queries are by DBID, so a distance matrix can be used
+   * @param maxk Maximum k for a kNN preprocessor, 0 for other queries
+   * @return Plan, or {@code null} if there are no candidates
+   */
+  private <O> Plan<O> choosePlan(Relation<? extends O> relation, Distance<? super O> distance, int k, double radius, int flags, boolean byDBID, int maxk) {
+    final int size = relation.size();
+    final boolean precompute = (flags & QueryBuilder.FLAG_PRECOMPUTE) != 0;
+    final boolean cover = size >= MIN_SIZE && canUseCoverTree(distance);
+    final boolean kd = size >= MIN_SIZE && canUseKDTree(relation, distance);
+    final boolean matrix = precompute && byDBID && canUseMatrixIndex(relation);
+    final boolean knn = precompute && maxk > 0 && canUseKNNPreprocessor(relation, maxk);
+    if(!cover && !kd && !matrix && !knn) {
+      return null;
+    }
+    final long queries = expectedQueries > 0 ? expectedQueries : size;
+    // Two nested random samples, to estimate how costs grow with the data
+    Random rnd = new Random(SEED);
+    ArrayModifiableDBIDs sample = DBIDUtil.newArray(DBIDUtil.randomSample(relation.getDBIDs(), Math.min(size, SAMPLE_SIZE), rnd));
+    DBIDUtil.randomShuffle(sample, rnd);
+    @SuppressWarnings("unchecked")
+    final Relation<O> rel = (Relation<O>) relation;
+    final CountingView<O> large = new CountingView<>(sample, rel);
+    final CountingView<O> small = new CountingView<>(sample.slice(0, sample.size() >> 2), rel);
+    final DBIDs qids = sample.slice(0, Math.min(sample.size(), SAMPLE_QUERIES));
+    // Linear scan: no build cost, query cost is linear in the data size
+    final Measurement scan = measureQueries(null, large, distance, qids, k, radius);
+    final double scale = size / (double) large.size();
+    List<Plan<O>> plans = new ArrayList<>();
+    plans.add(log(new Plan<>("linear scan", null, null, 0., scan.cost * scale, scan.distances * scale), queries));
+    if(cover) {
+      plans.add(estimateCost(r -> instantiate(coverIndex, "cover tree", r, distance), "cover tree", small, large, distance, qids, k, radius, size, queries));
+    }
+    if(kd) {
+      plans.add(estimateCost(r -> instantiate(kdIndex, "k-d-tree", r, 5), "k-d-tree", small, large, distance, qids, k, radius, size, queries));
+    }
+    if(matrix) {
+      // One distance computation per pair; the lookups are assumed negligible
+      plans.add(log(new Plan<>("distance matrix", r -> instantiate(matrixIndex, "distance matrix", r, (DBIDRange) r.getDBIDs(), distance), //
+          null, scan.cost * scale * (size - 1) * .5, 0., 0.), queries));
+    }
+    Plan<O> best = cheapest(plans, queries);
+    if(knn) {
+      // One query per object with the best other plan, then only lookups
+      Plan<O> base = cheapest(plans, size);
+      Plan<O> pre = log(new Plan<>("kNN preprocessor", null, base, base.cost(size), 0., 0.), queries);
+      // On a tie, honor the request for precomputation
+      best = pre.cost(queries) <= best.cost(queries) ? pre : best;
+    }
+    return best;
+  }
+
+  /**
+   * Find the cheapest plan.
+   *
+   * @param <O> Object type
+   * @param plans Candidate plans, may contain {@code null}
+   * @param queries Number of queries
+   * @return Cheapest plan
+   */
+  private static <O> Plan<O> cheapest(List<Plan<O>> plans, long queries) {
+    Plan<O> best = null;
+    for(Plan<O> plan : plans) {
+      if(plan != null && (best == null || plan.cost(queries) < best.cost(queries))) {
+        best = plan;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Build the index of a plan, and add it to the relation.
+   *
+   * @param <O> Object type
+   * @param plan Plan, may be {@code null}
+   * @param relation Data relation
+   * @param flags Optimizer flags
+   * @return Index, or {@code null} for a linear scan
+   */
+  private <O> DistancePriorityIndex<O> build(Plan<O> plan, Relation<? extends O> relation, int flags) {
+    if(plan == null || plan.factory == null) {
+      if(plan != null) {
+        LOG.verbose("Optimizer: a linear scan is expected to be cheapest.");
+      }
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    final Relation<O> rel = (Relation<O>) relation;
+    DistancePriorityIndex<O> idx = plan.factory.apply(rel);
+    if(idx == null) {
+      return null;
+    }
+    LOG.verbose("Optimizer: automatically adding a " + plan.name + " index, estimated to be cheapest.");
+    idx.initialize();
+    return registered(idx, relation, flags);
+  }
+
+  /**
+   * Build the index of a plan for kNN queries, including the kNN preprocessor.
+   *
+   * @param <O> Object type
+   * @param plan Plan, may be {@code null}
+   * @param relation Data relation
+   * @param distanceQuery Distance query
+   * @param maxk Maximum k
+   * @param flags Optimizer flags
+   * @return Index, or {@code null} for a linear scan
+   */
+  private <O> KNNIndex<O> buildKNN(Plan<O> plan, Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    if(plan == null || plan.base == null) {
+      return build(plan, relation, flags);
+    }
+    // Add the base index first, so that the preprocessor will use it
+    build(plan.base, relation, flags);
+    return makeKNNPreprocessor(relation, distanceQuery, maxk, flags);
+  }
+
+  /**
+   * Estimate the costs of an index on the full data set.
+   *
+   * @param <O> Object type
+   * @param factory Index factory
+   * @param name Index name
+   * @param small Small sample
+   * @param large Large sample
+   * @param distance Distance function
+   * @param qids Query objects
+   * @param k Number of neighbors, 0 for range queries
+   * @param radius Query radius
+   * @param size Full data size
+   * @param queries Expected number of queries, for logging
+   * @return Plan, or {@code null} if the index cannot be used
+   */
+  private <O> Plan<O> estimateCost(Function<Relation<O>, DistancePriorityIndex<O>> factory, String name, CountingView<O> small, CountingView<O> large, Distance<? super O> distance, DBIDs qids, int k, double radius, int size, long queries) {
+    DistancePriorityIndex<O> idx = factory.apply(small);
+    if(idx == null) {
+      return null;
+    }
+    idx.initialize();
+    final Measurement query1 = measureQueries(idx, small, distance, qids, k, radius);
+    large.distances = 0;
+    long start = System.nanoTime();
+    idx = factory.apply(large);
+    if(idx == null) {
+      return null;
+    }
+    idx.initialize();
+    final double build2 = cost(System.nanoTime() - start, large.distances);
+    final Measurement query2 = measureQueries(idx, large, distance, qids, k, radius);
+    if(query1 == null || query2 == null) {
+      return null;
+    }
+    final int m1 = small.size(), m2 = large.size();
+    // Assume n log n construction cost
+    final double build = build2 * (size * Math.log(size)) / (m2 * Math.log(m2));
+    // Fit a power law to the distance computations of both samples, at most
+    // linear; unlike run times, these are not affected by noise.
+    final double exp = query2.distances > query1.distances && query1.distances > 0 ? //
+        Math.min(1., Math.log(query2.distances / query1.distances) / Math.log(m2 / (double) m1)) : 0.;
+    final double scale = Math.pow(size / (double) m2, exp);
+    return log(new Plan<>(name, factory, null, build, query2.cost * scale, query2.distances * scale), queries);
+  }
+
+  /**
+   * Measure the average query cost on a sample.
+   *
+   * @param <O> Object type
+   * @param idx Index, {@code null} for a linear scan
+   * @param rel Sample relation
+   * @param distance Distance function
+   * @param qids Query objects
+   * @param k Number of neighbors, 0 for range queries
+   * @param radius Query radius
+   * @return Average cost per query, or {@code null} if not supported
+   */
+  private <O> Measurement measureQueries(DistancePriorityIndex<O> idx, CountingView<O> rel, Distance<? super O> distance, DBIDs qids, int k, double radius) {
+    final DistanceQuery<O> dq = distance.instantiate(rel);
+    long start = 0, sink = 0;
+    if(k > 0) {
+      KNNSearcher<DBIDRef> knn = idx != null ? idx.kNNByDBID(dq, k, 0) : //
+          new QueryBuilder<>(dq).linearOnly().kNNByDBID(k);
+      if(knn == null) {
+        return null;
+      }
+      // First round is a warm-up, only the second round is measured
+      for(int round = 0; round < 2; round++) {
+        rel.distances = 0;
+        start = System.nanoTime();
+        for(DBIDIter it = qids.iter(); it.valid(); it.advance()) {
+          sink += knn.getKNN(it, k).size();
+        }
+      }
+    }
+    else {
+      RangeSearcher<DBIDRef> rq = idx != null ? idx.rangeByDBID(dq, radius, 0) : //
+          new QueryBuilder<>(dq).linearOnly().rangeByDBID(radius);
+      if(rq == null) {
+        return null;
+      }
+      ModifiableDoubleDBIDList buf = DBIDUtil.newDistanceDBIDList();
+      for(int round = 0; round < 2; round++) {
+        rel.distances = 0;
+        start = System.nanoTime();
+        for(DBIDIter it = qids.iter(); it.valid(); it.advance()) {
+          sink += rq.getRange(it, radius, buf.clear()).size();
+        }
+      }
+    }
+    final long elapsed = System.nanoTime() - start, distances = rel.distances;
+    final int n = qids.size();
+    return sink >= 0 ? new Measurement(cost(elapsed, distances) / n, distances / (double) n) : null;
+  }
+
+  /**
+   * Log the estimated cost of a plan.
+   *
+   * @param <O> Object type
+   * @param plan Plan
+   * @param queries Expected number of queries
+   * @return Plan
+   */
+  private static <O> Plan<O> log(Plan<O> plan, long queries) {
+    if(LOG.isVerbose()) {
+      LOG.verbose("Optimizer: estimated cost of " + plan.name + ": " + format(plan.cost(queries)) //
+          + " (build: " + format(plan.build) + ", per query: " + format(plan.query) //
+          + ", distance computations per query: " + (long) plan.distances + ")");
+    }
+    return plan;
+  }
+
+  /**
+   * Add an index to the relation, unless caching is disabled.
+   *
+   * @param <O> Object type
+   * @param idx Index
+   * @param relation Relation
+   * @param flags Optimizer flags
+   * @return Index
+   */
+  private static <O> DistancePriorityIndex<O> registered(DistancePriorityIndex<O> idx, Relation<?> relation, int flags) {
+    if(idx != null && (flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
+      Metadata.hierarchyOf(relation).addWeakChild(idx);
+    }
+    return idx;
+  }
+
+  /**
+   * Format a cost, nanoseconds when using the default cost.
+   *
+   * @param nanos Cost in nanoseconds
+   * @return Formatted cost
+   */
+  private static String format(double nanos) {
+    return nanos < 1e6 ? ((long) (nanos / 1e2)) / 10. + " us" : ((long) (nanos / 1e5)) / 10. + " ms";
+  }
+
+  /**
+   * Candidate query plan with its estimated costs.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class Plan<O> {
+    /**
+     * Plan name.
+     */
+    final String name;
+
+    /**
+     * Index factory, {@code null} for a linear scan or the kNN preprocessor.
+     */
+    final Function<Relation<O>, DistancePriorityIndex<O>> factory;
+
+    /**
+     * Plan used to build the kNN preprocessor, {@code null} otherwise.
+     */
+    final Plan<O> base;
+
+    /**
+     * Estimated build cost.
+     */
+    final double build;
+
+    /**
+     * Estimated cost per query.
+     */
+    final double query;
+
+    /**
+     * Estimated distance computations per query.
+     */
+    final double distances;
+
+    /**
+     * Constructor.
+     *
+     * @param name Plan name
+     * @param factory Index factory
+     * @param base Plan used to build the kNN preprocessor
+     * @param build Estimated build cost
+     * @param query Estimated cost per query
+     * @param distances Estimated distance computations per query
+     */
+    Plan(String name, Function<Relation<O>, DistancePriorityIndex<O>> factory, Plan<O> base, double build, double query, double distances) {
+      this.name = name;
+      this.factory = factory;
+      this.base = base;
+      this.build = build;
+      this.query = query;
+      this.distances = distances;
+    }
+
+    /**
+     * Total cost for a number of queries.
+     *
+     * @param queries Number of queries
+     * @return Total cost
+     */
+    double cost(long queries) {
+      return build + query * queries;
+    }
+  }
+
+  /**
+   * Measured average cost of the sample queries.
+   *
+   * @author Erich Schubert
+   */
+  private static class Measurement {
+    /**
+     * Cost per query.
+     */
+    final double cost;
+
+    /**
+     * Distance computations per query.
+     */
+    final double distances;
+
+    /**
+     * Constructor.
+     *
+     * @param cost Cost per query
+     * @param distances Distance computations per query
+     */
+    Measurement(double cost, double distances) {
+      this.cost = cost;
+      this.distances = distances;
+    }
+  }
+
+  /**
+   * Sample view that counts the object accesses. For the linear scan and the
+   * indexes costed here, every distance computation of a query accesses one
+   * object of the relation, so this counts the distance computations. During
+   * index construction, it counts the object accesses instead.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class CountingView<O> extends ProxyView<O> {
+    /**
+     * Number of object accesses.
+     */
+    long distances;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Sample
+     * @param inner Full relation
+     */
+    CountingView(DBIDs ids, Relation<O> inner) {
+      super(ids, inner);
+    }
+
+    @Override
+    public O get(DBIDRef id) {
+      ++distances;
+      return super.get(id);
+    }
+  }
+}
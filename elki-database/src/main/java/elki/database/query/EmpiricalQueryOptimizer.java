@@ -60,22 +60,22 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
   /**
    * Distance matrix index class.
    */
-  private final Constructor<? extends Index> matrixIndex;
+  protected final Constructor<? extends Index> matrixIndex;
 
   /**
    * kNN preprocessor class.
    */
-  private final Constructor<? extends KNNIndex<?>> knnIndex;
+  protected final Constructor<? extends KNNIndex<?>> knnIndex;
 
   /**
    * cover tree index class.
    */
-  private final Constructor<? extends Index> coverIndex;
+  protected final Constructor<? extends Index> coverIndex;
 
   /**
    * k-d-tree index class.
    */
-  private final Constructor<? extends Index> kdIndex;
+  protected final Constructor<? extends Index> kdIndex;
 
   /**
    * Constructor.
@@ -135,6 +135,18 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     this.kdIndex = kdIndex;
   }
 
+  /**
+   * Copy constructor, sharing the index constructors.
+   *
+   * @param other Optimizer to copy
+   */
+  protected EmpiricalQueryOptimizer(EmpiricalQueryOptimizer other) {
+    this.matrixIndex = other.matrixIndex;
+    this.knnIndex = other.knnIndex;
+    this.coverIndex = other.coverIndex;
+    this.kdIndex = other.kdIndex;
+  }
+
   @Override
   public <O> DistanceQuery<O> getDistanceQuery(Relation<? extends O> relation, Distance<? super O> distance, int flags) {
     if((flags & QueryBuilder.FLAG_PRECOMPUTE) != 0) {
@@ -151,7 +163,6 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public <O> KNNSearcher<O> kNNByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
     KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
@@ -167,33 +178,14 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
       }
     }
     // Next try adding a preprocessor:
-    if(knnIndex == null || (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0) {
+    if((flags & QueryBuilder.FLAG_PRECOMPUTE) == 0) {
       return null;
     }
-    long freeMemory = getFreeMemory();
-    final long msize = maxk * 12L * relation.size();
-    if(msize > 0.8 * freeMemory) {
-      LOG.warning("Precomputing the kNN would need about " + formatMemory(msize) + " memory, only " + formatMemory(freeMemory) + " are available.");
-      return null;
-    }
-    try {
-      idx = (KNNIndex<O>) knnIndex.newInstance(relation, distanceQuery, maxk, true);
-      LOG.verbose("Optimizer: Automatically adding a knn preprocessor.");
-      idx.initialize();
-      if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-        Metadata.hierarchyOf(relation).addWeakChild(idx);
-      }
-      return idx.kNNByObject(distanceQuery, maxk, flags);
-    }
-    catch(InstantiationException | IllegalAccessException
-        | IllegalArgumentException | InvocationTargetException e) {
-      LOG.exception("Automatic knn preprocessor creation failed.", e);
-    }
-    return null;
+    idx = makeKNNPreprocessor(relation, distanceQuery, maxk, flags);
+    return idx != null ? idx.kNNByObject(distanceQuery, maxk, flags) : null;
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public <O> KNNSearcher<DBIDRef> kNNByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
     KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
@@ -212,29 +204,11 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
       }
     }
     // Next try adding a preprocessor:
-    if(knnIndex == null || (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0) {
+    if((flags & QueryBuilder.FLAG_PRECOMPUTE) == 0) {
       return null;
     }
-    long freeMemory = getFreeMemory();
-    final long msize = maxk * 12L * relation.size();
-    if(msize > 0.8 * freeMemory) {
-      LOG.warning("Precomputing the kNN would need about " + formatMemory(msize) + " memory, only " + formatMemory(freeMemory) + " are available.");
-      return null;
-    }
-    try {
-      idx = (KNNIndex<O>) knnIndex.newInstance(relation, distanceQuery, maxk, true);
-      LOG.verbose("Optimizer: Automatically adding a knn preprocessor.");
-      idx.initialize();
-      if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-        Metadata.hierarchyOf(relation).addWeakChild(idx);
-      }
-      return idx.kNNByDBID(distanceQuery, maxk, flags);
-    }
-    catch(InstantiationException | IllegalAccessException
-        | IllegalArgumentException | InvocationTargetException e) {
-      LOG.exception("Automatic knn preprocessor creation failed.", e);
-    }
-    return null;
+    idx = makeKNNPreprocessor(relation, distanceQuery, maxk, flags);
+    return idx != null ? idx.kNNByDBID(distanceQuery, maxk, flags) : null;
   }
 
   @Override
@@ -303,7 +277,52 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     return idx.priorityByDBID(distanceQuery, maxrange, flags);
   }
 
-  private <O> DistancePriorityIndex<O> makeMatrixIndex(Relation<? extends O> relation, Distance<? super O> distance) {
+  /**
+   * Build a kNN preprocessor, if memory permits.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distanceQuery Distance query
+   * @param maxk Maximum k
+   * @param flags Optimizer flags
+   * @return Initialized preprocessor, or {@code null}
+   */
+  @SuppressWarnings("unchecked")
+  protected <O> KNNIndex<O> makeKNNPreprocessor(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    if(knnIndex == null) {
+      return null;
+    }
+    long freeMemory = getFreeMemory();
+    final long msize = maxk * 12L * relation.size();
+    if(msize > 0.8 * freeMemory) {
+      LOG.warning("Precomputing the kNN would need about " + formatMemory(msize) + " memory, only " + formatMemory(freeMemory) + " are available.");
+      return null;
+    }
+    try {
+      KNNIndex<O> idx = (KNNIndex<O>) knnIndex.newInstance(relation, distanceQuery, maxk, true);
+      LOG.verbose("Optimizer: Automatically adding a knn preprocessor.");
+      idx.initialize();
+      if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
+        Metadata.hierarchyOf(relation).addWeakChild(idx);
+      }
+      return idx;
+    }
+    catch(InstantiationException | IllegalAccessException
+        | IllegalArgumentException | InvocationTargetException e) {
+      LOG.exception("Automatic knn preprocessor creation failed.", e);
+    }
+    return null;
+  }
+
+  /**
+   * Build a distance matrix, if the relation is small enough.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distance Distance function
+   * @return Initialized index, or {@code null}
+   */
+  protected <O> DistancePriorityIndex<O> makeMatrixIndex(Relation<? extends O> relation, Distance<? super O> distance) {
     // TODO: make sure there is not matrix already!
     if(matrixIndex == null || relation.size() > 65536) {
       return null;
@@ -319,59 +338,124 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
       // TODO: add an automatic distance cache instead, c.f., CLARA?
       return null;
     }
-    try {
-      @SuppressWarnings("unchecked")
-      DistancePriorityIndex<O> idx = (DistancePriorityIndex<O>) matrixIndex.newInstance(relation, (DBIDRange) relation.getDBIDs(), distance);
+    DistancePriorityIndex<O> idx = instantiate(matrixIndex, "distance-matrix", relation, (DBIDRange) relation.getDBIDs(), distance);
+    if(idx != null) {
       LOG.verbose("Optimizer: automatically adding a distance matrix.");
       idx.initialize();
-      return idx;
-    }
-    catch(InstantiationException | IllegalAccessException
-        | IllegalArgumentException | InvocationTargetException e) {
-      LOG.exception("Automatic distance-matrix creation failed.", e);
-      return null;
     }
+    return idx;
   }
 
-  private <O> DistancePriorityIndex<O> makeCoverTree(Relation<? extends O> relation, Distance<? super O> distance) {
+  /**
+   * Build a cover tree, if the distance is a metric.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distance Distance function
+   * @return Initialized index, or {@code null}
+   */
+  protected <O> DistancePriorityIndex<O> makeCoverTree(Relation<? extends O> relation, Distance<? super O> distance) {
     // TODO: make sure there is no such cover tree already!
-    if(coverIndex == null || !distance.isMetric()) {
+    if(!canUseCoverTree(distance)) {
       return null;
     }
     // TODO: auto-tune parameters based on dimensionality or sample?
-    try {
-      @SuppressWarnings("unchecked")
-      DistancePriorityIndex<O> idx = (DistancePriorityIndex<O>) coverIndex.newInstance(relation, distance);
+    DistancePriorityIndex<O> idx = instantiate(coverIndex, "cover tree", relation, distance);
+    if(idx != null) {
       LOG.verbose("Optimizer: automatically adding a cover tree index.");
       idx.initialize();
-      return idx;
-    }
-    catch(InstantiationException | IllegalAccessException
-        | IllegalArgumentException | InvocationTargetException e) {
-      LOG.exception("Automatic cover tree creation failed.", e);
     }
-    return null;
+    return idx;
   }
 
-  private <O> DistancePriorityIndex<O> makeKDTree(Relation<? extends O> relation, Distance<? super O> distance) {
+  /**
+   * Build a k-d-tree, for low-dimensional vector data only.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distance Distance function
+   * @return Initialized index, or {@code null}
+   */
+  protected <O> DistancePriorityIndex<O> makeKDTree(Relation<? extends O> relation, Distance<? super O> distance) {
     // TODO: make sure there is no such k-d-tree already!
-    TypeInformation type = relation.getDataTypeInformation();
-    if(kdIndex == null // not available
-        || !TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type) //
-        || !(distance instanceof LPNormDistance || distance instanceof SquaredEuclideanDistance) //
-        || ((FieldTypeInformation) type).getDimensionality() > 20) {
+    if(!canUseKDTree(relation, distance) //
+        || ((FieldTypeInformation) relation.getDataTypeInformation()).getDimensionality() > 20) {
       return null;
     }
-    try {
-      @SuppressWarnings("unchecked")
-      DistancePriorityIndex<O> idx = (DistancePriorityIndex<O>) kdIndex.newInstance(relation, 5);
+    DistancePriorityIndex<O> idx = instantiate(kdIndex, "k-d-tree", relation, 5);
+    if(idx != null) {
       LOG.verbose("Optimizer: automatically adding a k-d-tree index.");
       idx.initialize();
-      return idx;
+    }
+    return idx;
+  }
+
+  /**
+   * Test whether a distance matrix can be used for a relation.
+   *
+   * @param relation Data relation
+   * @return {@code true} if a distance matrix is available, and the relation is
+   *         a DBID range small enough to fit into memory
+   */
+  protected boolean canUseMatrixIndex(Relation<?> relation) {
+    return matrixIndex != null && relation.size() <= 65536 //
+        && relation.getDBIDs() instanceof DBIDRange //
+        && relation.size() * 4L * relation.size() <= 0.8 * getFreeMemory();
+  }
+
+  /**
+   * Test whether a kNN preprocessor can be used for a relation.
+   *
+   * @param relation Data relation
+   * @param maxk Maximum k
+   * @return {@code true} if a kNN preprocessor is available, and the kNN fit
+   *         into memory
+   */
+  protected boolean canUseKNNPreprocessor(Relation<?> relation, int maxk) {
+    return knnIndex != null && maxk * 12L * relation.size() <= 0.8 * getFreeMemory();
+  }
+
+  /**
+   * Test whether a cover tree can be used for a distance.
+   *
+   * @param distance Distance function
+   * @return {@code true} if a cover tree is available and applicable
+   */
+  protected boolean canUseCoverTree(Distance<?> distance) {
+    return coverIndex != null && distance.isMetric();
+  }
+
+  /**
+   * Test whether a k-d-tree can be used for a relation and distance.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @return {@code true} if a k-d-tree is available and applicable
+   */
+  protected boolean canUseKDTree(Relation<?> relation, Distance<?> distance) {
+    TypeInformation type = relation.getDataTypeInformation();
+    return kdIndex != null // available
+        && TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type) //
+        && (distance instanceof LPNormDistance || distance instanceof SquaredEuclideanDistance);
+  }
+
+  /**
+   * Instantiate an index via reflection, without initializing it.
+   *
+   * @param <O> Object type
+   * @param cons Constructor
+   * @param name Index name, for error reporting
+   * @param args Constructor arguments
+   * @return Index, or {@code null} on failure
+   */
+  @SuppressWarnings("unchecked")
+  protected static <O> DistancePriorityIndex<O> instantiate(Constructor<? extends Index> cons, String name, Object... args) {
+    try {
+      return (DistancePriorityIndex<O>) cons.newInstance(args);
     }
     catch(InstantiationException | IllegalAccessException
         | IllegalArgumentException | InvocationTargetException e) {
-      LOG.exception("Automatic k-d-tree creation failed.", e);
+      LOG.exception("Automatic " + name + " creation failed.", e);
     }
     return null;
   }
@@ -381,7 +465,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
    *
    * @return Free memory
    */
-  private static long getFreeMemory() {
+  protected static long getFreeMemory() {
     final Runtime r = Runtime.getRuntime();
     return r.freeMemory() + r.maxMemory() - r.totalMemory();
   }
@@ -392,7 +476,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
    * @param mem Memory
    * @return Memory amount
    */
-  private static String formatMemory(long mem) {
+  protected static String formatMemory(long mem) {
     return mem < 2500 * MEGA ? ((int) (mem * 10. / MEGA)) / 10. + "M" : //
         ((int) (mem / 102.4 / MEGA)) / 10. + "G";
   }
@@ -144,6 +144,11 @@ public class QueryBuilder<O> {
    */
   private int flags;
 
+  /**
+   * Expected number of queries, 0 if unknown.
+   */
+  private long expectedQueries;
+
   /**
    * Constructor.
    *
@@ -257,6 +262,18 @@ public class QueryBuilder<O> {
     return this;
   }
 
+  /**
+   * Declare the expected number of queries, so that a cost-based optimizer can
+   * weigh the cost of building an index against the savings per query.
+   * 
+   * @param queries Expected number of queries
+   * @return query builder, for chaining
+   */
+  public QueryBuilder<O> expectedQueries(long queries) {
+    this.expectedQueries = queries;
+    return this;
+  }
+
   /**
    * Build a distance query.
    *
@@ -278,7 +295,7 @@ public class QueryBuilder<O> {
     }
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      distQuery = OPTIMIZER.getDistanceQuery(relation, distance, flags);
+      distQuery = optimizer().getDistanceQuery(relation, distance, flags);
       if(distQuery != null) {
         return distQuery;
       }
@@ -313,7 +330,7 @@ public class QueryBuilder<O> {
     }
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      simQuery = OPTIMIZER.getSimilarityQuery(relation, similarity, flags);
+      simQuery = optimizer().getSimilarityQuery(relation, similarity, flags);
       if(simQuery != null) {
         return simQuery;
       }
@@ -354,7 +371,7 @@ public class QueryBuilder<O> {
     }
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      KNNSearcher<O> q = OPTIMIZER.kNNByObject(relation, distanceQuery, maxk, flags);
+      KNNSearcher<O> q = optimizer().kNNByObject(relation, distanceQuery, maxk, flags);
       if(q != null) {
         return q;
       }
@@ -405,7 +422,7 @@ public class QueryBuilder<O> {
     }
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      KNNSearcher<DBIDRef> q = OPTIMIZER.kNNByDBID(relation, distanceQuery, maxk, flags);
+      KNNSearcher<DBIDRef> q = optimizer().kNNByDBID(relation, distanceQuery, maxk, flags);
       if(q != null) {
         return q;
       }
@@ -419,7 +436,7 @@ public class QueryBuilder<O> {
       final PrimitiveDistanceQuery<O> pdq = (PrimitiveDistanceQuery<O>) distanceQuery;
       if(EuclideanDistance.STATIC.equals(pdq.getDistance())) {
         final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
-        return WrappedKNNDBIDByLookup.wrap(ndq.getRelation(), new LinearScanEuclideanKNNByObject<>(ndq));
+        return new LinearScanEuclideanKNNByDBID<>(ndq);
       }
       return WrappedKNNDBIDByLookup.wrap(pdq.getRelation(), new LinearScanPrimitiveKNNByObject<>(pdq));
     }
@@ -459,7 +476,7 @@ public class QueryBuilder<O> {
 
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      RangeSearcher<O> q = OPTIMIZER.rangeByObject(relation, distanceQuery, maxrange, flags);
+      RangeSearcher<O> q = optimizer().rangeByObject(relation, distanceQuery, maxrange, flags);
       if(q != null) {
         return q;
       }
@@ -513,7 +530,7 @@ public class QueryBuilder<O> {
 
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      RangeSearcher<DBIDRef> q = OPTIMIZER.rangeByDBID(relation, distanceQuery, maxrange, flags);
+      RangeSearcher<DBIDRef> q = optimizer().rangeByDBID(relation, distanceQuery, maxrange, flags);
       if(q != null) {
         return q;
       }
@@ -568,7 +585,7 @@ public class QueryBuilder<O> {
 
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      RangeSearcher<O> q = OPTIMIZER.similarityRangeByObject(relation, simQuery, threshold, flags);
+      RangeSearcher<O> q = optimizer().similarityRangeByObject(relation, simQuery, threshold, flags);
       if(q != null) {
         return q;
       }
@@ -617,7 +634,7 @@ public class QueryBuilder<O> {
 
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      RangeSearcher<DBIDRef> q = OPTIMIZER.similarityRangeByDBID(relation, simQuery, threshold, flags);
+      RangeSearcher<DBIDRef> q = optimizer().similarityRangeByDBID(relation, simQuery, threshold, flags);
       if(q != null) {
         return q;
       }
@@ -664,7 +681,7 @@ public class QueryBuilder<O> {
 
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      RKNNSearcher<O> q = OPTIMIZER.rkNNByObject(relation, distanceQuery, k, flags);
+      RKNNSearcher<O> q = optimizer().rkNNByObject(relation, distanceQuery, k, flags);
       if(q != null) {
         return q;
       }
@@ -708,7 +725,7 @@ public class QueryBuilder<O> {
 
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      RKNNSearcher<DBIDRef> q = OPTIMIZER.rkNNByDBID(relation, distanceQuery, k, flags);
+      RKNNSearcher<DBIDRef> q = optimizer().rkNNByDBID(relation, distanceQuery, k, flags);
       if(q != null) {
         return q;
       }
@@ -753,7 +770,7 @@ public class QueryBuilder<O> {
 
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      PrioritySearcher<O> q = OPTIMIZER.priorityByObject(relation, distanceQuery, maxrange, flags);
+      PrioritySearcher<O> q = optimizer().priorityByObject(relation, distanceQuery, maxrange, flags);
       if(q != null) {
         return q;
       }
@@ -802,7 +819,7 @@ public class QueryBuilder<O> {
 
     // Use optimizer
     if((flags & FLAGS_NO_OPTIMIZER) == 0) {
-      PrioritySearcher<DBIDRef> q = OPTIMIZER.priorityByDBID(relation, distanceQuery, maxrange, flags);
+      PrioritySearcher<DBIDRef> q = optimizer().priorityByDBID(relation, distanceQuery, maxrange, flags);
       if(q != null) {
         return q;
       }
@@ -865,6 +882,15 @@ public class QueryBuilder<O> {
     }
   }
 
+  /**
+   * Get the optimizer to use, taking the declared workload into account.
+   *
+   * @return Optimizer
+   */
+  private QueryOptimizer optimizer() {
+    return expectedQueries > 0 ? OPTIMIZER.withExpectedQueries(expectedQueries) : OPTIMIZER;
+  }
+
   /**
    * Initialization method, which sets {@link #OPTIMIZER}.
    *
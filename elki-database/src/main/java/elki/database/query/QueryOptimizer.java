@@ -38,6 +38,18 @@ import elki.similarity.Similarity;
  * @author Erich Schubert
  */
 public interface QueryOptimizer {
+  /**
+   * Get an optimizer for a workload with the given number of queries, as
+   * declared by the algorithm. Optimizers that do not take the workload into
+   * account can simply return themselves.
+   *
+   * @param queries Expected number of queries
+   * @return Optimizer to use
+   */
+  default QueryOptimizer withExpectedQueries(long queries) {
+    return this;
+  }
+
   /**
    * Optimize a similarity query for this relation.
    *
@@ -0,0 +1,302 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.knn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import elki.data.NumberVector;
+import elki.database.ids.*;
+import elki.database.query.LinearScanQuery;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.parallel.ParallelCore;
+
+/**
+ * Linear scan kNN query for Euclidean distance by DBID, with support for
+ * processing batches of queries.
+ * <p>
+ * Batches are processed in blocks of queries against blocks of data, with the
+ * coordinates copied into contiguous arrays, so that the data block remains in
+ * the CPU cache while it is compared to all queries of the block. Query blocks
+ * are processed in parallel using the current {@link ParallelCore}.
+ * <p>
+ * The data is scanned in the same order as with a single query, so results
+ * (including ties) are identical to {@link LinearScanEuclideanKNNByObject}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - - - PrimitiveDistanceQuery
+ * @assoc - - - EuclideanDistance
+ * @assoc - - - SquaredEuclideanDistance
+ *
+ * @param <O> relation object type
+ */
+public class LinearScanEuclideanKNNByDBID<O extends NumberVector> implements BatchKNNSearcher, LinearScanQuery {
+  /**
+   * Number of queries processed in one block.
+   */
+  private static final int QUERY_BLOCK = 64;
+
+  /**
+   * Number of data points processed in one block.
+   */
+  private static final int DATA_BLOCK = 256;
+
+  /**
+   * Relation to scan.
+   */
+  private final Relation<? extends O> relation;
+
+  /**
+   * Return squared distances instead of Euclidean distances.
+   */
+  private final boolean squared;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance function to use
+   */
+  public LinearScanEuclideanKNNByDBID(PrimitiveDistanceQuery<O> distanceQuery) {
+    super();
+    this.relation = distanceQuery.getRelation();
+    this.squared = SquaredEuclideanDistance.STATIC.equals(distanceQuery.getDistance());
+    assert squared || EuclideanDistance.STATIC.equals(distanceQuery.getDistance());
+  }
+
+  @Override
+  public KNNList getKNN(DBIDRef id, int k) {
+    final SquaredEuclideanDistance sq = SquaredEuclideanDistance.STATIC;
+    final Relation<? extends O> relation = this.relation;
+    final O obj = relation.get(id);
+    final KNNHeap heap = DBIDUtil.newHeap(k);
+    double max = Double.POSITIVE_INFINITY;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      final double dist = sq.distance(obj, relation.get(iter));
+      max = dist <= max ? heap.insert(dist, iter) : max;
+    }
+    return squared ? heap.toKNNList() : heap.toKNNListSqrt();
+  }
+
+  @Override
+  public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    final int dim = RelationUtil.dimensionality(relation);
+    final int size = ids.size();
+    if(dim <= 0) { // Variable dimensionality, process queries individually.
+      List<KNNList> result = new ArrayList<>(size);
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        result.add(getKNN(iter, k));
+      }
+      return result;
+    }
+    final KNNList[] result = new KNNList[size];
+    final BlockTask root = new BlockTask(ids, DBIDUtil.ensureArray(relation.getDBIDs()), dim, k, result, 0, size);
+    if(size <= QUERY_BLOCK || ForkJoinTask.inForkJoinPool()) {
+      root.invoke();
+      return Arrays.asList(result);
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      core.submit(root).get();
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("kNN batch execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+    return Arrays.asList(result);
+  }
+
+  /**
+   * Copy the coordinates of a block of objects into a contiguous array.
+   *
+   * @param iter Iterator, will be positioned
+   * @param start First offset
+   * @param end End offset (exclusive)
+   * @param dim Dimensionality
+   * @param buf Output buffer
+   */
+  private void copyBlock(DBIDArrayIter iter, int start, int end, int dim, double[] buf) {
+    for(int i = start, o = 0; i < end; i++, o += dim) {
+      final O v = relation.get(iter.seek(i));
+      for(int d = 0; d < dim; d++) {
+        buf[o + d] = v.doubleValue(d);
+      }
+    }
+  }
+
+  /**
+   * Process a block of queries against all data.
+   *
+   * @param qiter Query iterator
+   * @param data Data ids
+   * @param start First query offset
+   * @param end End query offset (exclusive)
+   * @param dim Dimensionality
+   * @param k Number of neighbors
+   * @param result Output array
+   */
+  private void processBlock(DBIDArrayIter qiter, ArrayDBIDs data, int start, int end, int dim, int k, KNNList[] result) {
+    final int nq = end - start, n = data.size();
+    final DBIDArrayIter diter = data.iter();
+    final double[] qbuf = new double[nq * dim], dbuf = new double[DATA_BLOCK * dim];
+    copyBlock(qiter, start, end, dim, qbuf);
+    final KNNHeap[] heaps = new KNNHeap[nq];
+    final double[] max = new double[nq];
+    for(int q = 0; q < nq; q++) {
+      heaps[q] = DBIDUtil.newHeap(k);
+      max[q] = Double.POSITIVE_INFINITY;
+    }
+    final double[] dists = new double[DATA_BLOCK];
+    for(int dstart = 0; dstart < n; dstart += DATA_BLOCK) {
+      final int dend = Math.min(dstart + DATA_BLOCK, n), nd = dend - dstart;
+      copyBlock(diter, dstart, dend, dim, dbuf);
+      for(int q = 0, qo = 0; q < nq; q++, qo += dim) {
+        // Compute all distances first, four at a time for independent
+        // accumulators; each sum is still in the same order as serially.
+        int j = 0, jo = 0;
+        for(final int nd4 = nd & ~3; j < nd4; j += 4, jo += dim << 2) {
+          double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+          for(int d = 0, o1 = jo + dim, o2 = o1 + dim, o3 = o2 + dim; d < dim; d++) {
+            final double qd = qbuf[qo + d];
+            final double delta0 = qd - dbuf[jo + d], delta1 = qd - dbuf[o1 + d];
+            final double delta2 = qd - dbuf[o2 + d], delta3 = qd - dbuf[o3 + d];
+            agg0 += delta0 * delta0;
+            agg1 += delta1 * delta1;
+            agg2 += delta2 * delta2;
+            agg3 += delta3 * delta3;
+          }
+          dists[j] = agg0;
+          dists[j + 1] = agg1;
+          dists[j + 2] = agg2;
+          dists[j + 3] = agg3;
+        }
+        for(; j < nd; j++, jo += dim) {
+          double agg = 0.;
+          for(int d = 0; d < dim; d++) {
+            final double delta = qbuf[qo + d] - dbuf[jo + d];
+            agg += delta * delta;
+          }
+          dists[j] = agg;
+        }
+        final KNNHeap heap = heaps[q];
+        double m = max[q];
+        for(j = 0; j < nd; j++) {
+          final double dist = dists[j];
+          m = dist <= m ? heap.insert(dist, diter.seek(dstart + j)) : m;
+        }
+        max[q] = m;
+      }
+    }
+    for(int q = 0; q < nq; q++) {
+      result[start + q] = squared ? heaps[q].toKNNList() : heaps[q].toKNNListSqrt();
+    }
+  }
+
+  /**
+   * Fork-join task processing a range of query blocks.
+   *
+   * @author Erich Schubert
+   */
+  private class BlockTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Query ids.
+     */
+    private final ArrayDBIDs queries;
+
+    /**
+     * Data ids.
+     */
+    private final ArrayDBIDs data;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Number of neighbors.
+     */
+    private final int k;
+
+    /**
+     * Output array.
+     */
+    private final KNNList[] result;
+
+    /**
+     * Range of queries to process.
+     */
+    private final int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param queries Query ids
+     * @param data Data ids
+     * @param dim Dimensionality
+     * @param k Number of neighbors
+     * @param result Output array
+     * @param start First query offset
+     * @param end End query offset (exclusive)
+     */
+    BlockTask(ArrayDBIDs queries, ArrayDBIDs data, int dim, int k, KNNList[] result, int start, int end) {
+      this.queries = queries;
+      this.data = data;
+      this.dim = dim;
+      this.k = k;
+      this.result = result;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start <= QUERY_BLOCK) {
+        processBlock(queries.iter(), data, start, end, dim, k, result);
+        return;
+      }
+      // Split on a block boundary:
+      final int mid = start + ((((end - start) >>> 1) + QUERY_BLOCK - 1) / QUERY_BLOCK) * QUERY_BLOCK;
+      invokeAll(new BlockTask(queries, data, dim, k, result, start, mid), //
+          new BlockTask(queries, data, dim, k, result, mid, end));
+    }
+  }
+}
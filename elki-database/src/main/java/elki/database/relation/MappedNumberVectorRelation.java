@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+import elki.datasource.MappedNumberVectorColumn;
+
+/**
+ * Relation of number vectors backed by a memory-mapped file.
+ * <p>
+ * Vectors are not materialized, but {@link #get} returns a flyweight view onto
+ * the mapped file, so the relation does not use Java heap per object.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - MappedNumberVectorColumn
+ */
+public class MappedNumberVectorRelation implements Relation<NumberVector> {
+  /**
+   * The DBIDs of this relation.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Mapped data column.
+   */
+  private final MappedNumberVectorColumn column;
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * Constructor.
+   *
+   * @param ids DBIDs, must be the same size as the column
+   * @param column Mapped data column
+   */
+  public MappedNumberVectorRelation(DBIDRange ids, MappedNumberVectorColumn column) {
+    super();
+    if(ids.size() != column.size()) {
+      throw new IllegalArgumentException("DBIDs and mapped column have different size.");
+    }
+    this.ids = ids;
+    this.column = column;
+    this.type = column.getTypeInformation();
+  }
+
+  @Override
+  public NumberVector get(DBIDRef id) {
+    return column.get(ids.getOffset(id));
+  }
+
+  @Override
+  public SimpleTypeInformation<NumberVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public DBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return "Mapped number vectors";
+  }
+}
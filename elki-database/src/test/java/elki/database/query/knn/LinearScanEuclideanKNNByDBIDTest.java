@@ -0,0 +1,106 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+
+/**
+ * Unit test for batch kNN queries with linear scans.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class LinearScanEuclideanKNNByDBIDTest {
+  @Test
+  public void testBatchMatchesSerial() {
+    // Small integer coordinates, to produce many ties.
+    Random rnd = new Random(0L);
+    double[][] data = new double[1000][5];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextInt(5);
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    KNNSearcher<DBIDRef> knnq = new QueryBuilder<>(rel, EuclideanDistance.STATIC).cheapOnly().kNNByDBID(10);
+    assertTrue("Batch searcher not used.", knnq instanceof LinearScanEuclideanKNNByDBID);
+    LinearScanKNNByDBID<NumberVector> serial = new LinearScanKNNByDBID<>(new PrimitiveDistanceQuery<>(rel, EuclideanDistance.STATIC));
+    compare(serial, (BatchKNNSearcher) knnq, DBIDUtil.ensureArray(rel.getDBIDs()), 10);
+
+    LinearScanEuclideanKNNByDBID<NumberVector> sq = new LinearScanEuclideanKNNByDBID<>(new PrimitiveDistanceQuery<>(rel, SquaredEuclideanDistance.STATIC));
+    LinearScanKNNByDBID<NumberVector> sqserial = new LinearScanKNNByDBID<>(new PrimitiveDistanceQuery<>(rel, SquaredEuclideanDistance.STATIC));
+    // Use a subset of queries, not aligned with the block size:
+    ArrayModifiableDBIDs subset = DBIDUtil.newArray();
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      if(rnd.nextInt(3) == 0) {
+        subset.add(it);
+      }
+    }
+    compare(sqserial, sq, subset, 7);
+  }
+
+  /**
+   * Compare batch results to individual queries.
+   *
+   * @param serial Serial searcher
+   * @param batch Batch searcher
+   * @param ids Query ids
+   * @param k Number of neighbors
+   */
+  private static void compare(KNNSearcher<DBIDRef> serial, BatchKNNSearcher batch, ArrayDBIDs ids, int k) {
+    List<? extends KNNList> results = batch.getKNNForBulkDBIDs(ids, k);
+    assertEquals("Number of results", ids.size(), results.size());
+    DBIDIter it = ids.iter();
+    for(KNNList res : results) {
+      KNNList exp = serial.getKNN(it, k);
+      KNNList single = batch.getKNN(it, k);
+      assertEquals("Result size", exp.size(), res.size());
+      assertEquals("Result size", exp.size(), single.size());
+      for(DoubleDBIDListIter e = exp.iter(), r = res.iter(), s = single.iter(); e.valid(); e.advance(), r.advance(), s.advance()) {
+        assertEquals("Distance differs", e.doubleValue(), r.doubleValue(), 0.);
+        assertEquals("Distance differs", e.doubleValue(), s.doubleValue(), 0.);
+        assertTrue("Neighbor differs", DBIDUtil.equal(e, r));
+        assertTrue("Neighbor differs", DBIDUtil.equal(e, s));
+      }
+      it.advance();
+    }
+  }
+}
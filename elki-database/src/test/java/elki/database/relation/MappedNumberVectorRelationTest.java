@@ -0,0 +1,85 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.datasource.MappedNumberVectorColumn;
+import elki.datasource.MappedNumberVectorDatabaseConnection;
+
+/**
+ * Unit test for memory-mapped number vector relations.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class MappedNumberVectorRelationTest {
+  @Test
+  public void testLayouts() throws IOException {
+    Random rnd = new Random(0L);
+    List<DoubleVector> data = new ArrayList<>();
+    for(int i = 0; i < 1000; i++) {
+      data.add(new DoubleVector(new double[] { rnd.nextDouble(), rnd.nextInt(100), rnd.nextGaussian() }));
+    }
+    for(boolean columnMajor : new boolean[] { false, true }) {
+      for(boolean isFloat : new boolean[] { false, true }) {
+        Path file = Files.createTempFile("elki-mapped", ".bin");
+        try {
+          MappedNumberVectorColumn.write(file, data, columnMajor, isFloat);
+          Database db = new StaticArrayDatabase(new MappedNumberVectorDatabaseConnection(null, file));
+          db.initialize();
+          Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+          assertTrue("Data was copied.", rel instanceof MappedNumberVectorRelation);
+          assertEquals("Dimensionality", 3, RelationUtil.dimensionality(rel));
+          assertEquals("Size", data.size(), rel.size());
+          int i = 0;
+          for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+            NumberVector v = rel.get(it);
+            assertEquals("Views of the same vector differ.", v, rel.get(it));
+            for(int d = 0; d < 3; d++) {
+              double expected = isFloat ? (float) data.get(i).doubleValue(d) : data.get(i).doubleValue(d);
+              assertEquals("Value differs.", expected, v.doubleValue(d), 0.);
+            }
+          }
+        }
+        finally {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+  }
+}
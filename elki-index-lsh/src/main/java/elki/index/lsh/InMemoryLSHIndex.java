@@ -21,6 +21,8 @@
 package elki.index.lsh;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
 
 import elki.data.type.TypeInformation;
 import elki.database.ids.*;
@@ -38,6 +40,9 @@ import elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -45,10 +50,21 @@ import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-
 /**
  * Locality Sensitive Hashing.
+ * <p>
+ * Each hash table is stored in a compressed sparse row layout: one array of
+ * all objects, sorted by bucket, and the bucket offsets into this array. The
+ * tables are built in parallel. With multi-probe queries, the neighboring
+ * buckets of the query are visited, too, if the hash functions support this.
+ * This achieves a similar recall with far fewer hash tables.
+ * <p>
+ * Reference for multi-probe LSH:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br>
+ * Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity
+ * Search<br>
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)
  *
  * @author Erich Schubert
  * @since 0.6.0
@@ -58,6 +74,11 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
  *
  * @param <V> Object type to index
  */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+    title = "Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity Search", //
+    booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)", //
+    url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf", //
+    bibkey = "DBLP:conf/vldb/LvJWCL07")
 public class InMemoryLSHIndex<V> implements IndexFactory<V> {
   /**
    * Class logger
@@ -79,6 +100,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe in each table.
+   */
+  int probes;
+
   /**
    * Constructor.
    *
@@ -87,15 +113,28 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe in each table.
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
   }
 
   @Override
   public Instance instantiate(Relation<V> relation) {
-    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets);
+    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets, probes);
   }
 
   @Override
@@ -117,78 +156,186 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * Bucket offsets of each table; bucket {@code b} of table {@code t}
+     * contains the objects {@code offsets[t][b]} to {@code offsets[t][b+1]}.
+     */
+    int[][] offsets;
+
+    /**
+     * Objects of each table, sorted by bucket.
      */
-    ArrayList<Int2ObjectOpenHashMap<DBIDs>> hashtables;
+    ArrayDBIDs[] tables;
 
     /**
      * Number of buckets to use.
      */
     private int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    private int probes;
+
     /**
      * Constructor.
      *
      * @param relation Relation to index.
      * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets to use.
      */
     public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets) {
+      this(relation, hashfunctions, numberOfBuckets, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation to index.
+     * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets to use.
+     * @param probes Number of buckets to probe in each table.
+     */
+    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets, int probes) {
       super(relation);
       this.hashfunctions = hashfunctions;
       this.numberOfBuckets = numberOfBuckets;
+      this.probes = probes;
     }
 
     @Override
     public void initialize() {
       final int numhash = hashfunctions.size();
-      hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new Int2ObjectOpenHashMap<DBIDs>(numberOfBuckets));
+      offsets = new int[numhash][];
+      tables = new ArrayDBIDs[numhash];
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH tables", numhash, LOG) : null;
+      ParallelCore core = ParallelCore.getCore();
+      core.connect();
+      try {
+        core.submit(new TableTask(ids, 0, numhash, progress)).get();
       }
-
-      // TODO: We assume all hash functions have the same dimensionality.
-      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-        V obj = relation.get(iter);
-        for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
-          }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
-          }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
-          }
-        }
-        LOG.incrementProcessed(progress);
+      catch(ExecutionException e) {
+        throw new AbortException("Building the LSH index failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Building the LSH index was interrupted.");
+      }
+      finally {
+        core.disconnect();
       }
       LOG.ensureCompleted(progress);
       if(LOG.isStatistics()) {
         int min = Integer.MAX_VALUE, max = 0;
         for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          for(DBIDs set : table.values()) {
-            final int size = set.size();
-            min = size < min ? size : min;
-            max = size > max ? size : max;
+          final int[] offs = offsets[i];
+          for(int b = 1; b < offs.length; b++) {
+            final int size = offs[b] - offs[b - 1];
+            if(size > 0) {
+              min = size < min ? size : min;
+              max = size > max ? size : max;
+            }
           }
         }
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
-        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.size()));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", numhash));
+      }
+    }
+
+    /**
+     * Map a hash value to a bucket. As hash values may be negative, there are
+     * {@code 2 * numberOfBuckets - 1} buckets.
+     *
+     * @param hash Hash value
+     * @return Bucket number
+     */
+    private int bucket(int hash) {
+      return hash % numberOfBuckets + numberOfBuckets - 1;
+    }
+
+    /**
+     * Build a single hash table, using a counting sort by bucket.
+     *
+     * @param t Table number
+     * @param ids Object ids
+     */
+    protected void buildTable(int t, ArrayDBIDs ids) {
+      final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(t);
+      final double[] buf = new double[hashfunc.getNumberOfProjections()];
+      final int[] buckets = new int[ids.size()];
+      final int[] offs = new int[numberOfBuckets << 1];
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        // Get the initial (unbounded) hash code, and reduce to table size
+        final int b = bucket(hashfunc.hashObject(relation.get(iter), buf));
+        buckets[iter.getOffset()] = b;
+        ++offs[b + 1];
+      }
+      for(int b = 1; b < offs.length; b++) {
+        offs[b] += offs[b - 1];
+      }
+      final int[] pos = new int[offs.length - 1];
+      System.arraycopy(offs, 0, pos, 0, pos.length);
+      ArrayModifiableDBIDs table = DBIDUtil.newArray(ids);
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        table.set(pos[buckets[iter.getOffset()]]++, iter);
+      }
+      offsets[t] = offs;
+      tables[t] = table;
+    }
+
+    /**
+     * Task to build a range of hash tables. Hash functions are not thread-safe,
+     * so each table is built by a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class TableTask extends RecursiveAction {
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Object ids.
+       */
+      private final ArrayDBIDs ids;
+
+      /**
+       * Range of tables to build.
+       */
+      private final int begin, end;
+
+      /**
+       * Progress, may be {@code null}.
+       */
+      private final FiniteProgress progress;
+
+      /**
+       * Constructor.
+       *
+       * @param ids Object ids
+       * @param begin First table
+       * @param end End of tables (exclusive)
+       * @param progress Progress, may be {@code null}
+       */
+      TableTask(ArrayDBIDs ids, int begin, int end, FiniteProgress progress) {
+        this.ids = ids;
+        this.begin = begin;
+        this.end = end;
+        this.progress = progress;
+      }
+
+      @Override
+      protected void compute() {
+        if(end - begin > 1) {
+          final int mid = (begin + end) >>> 1;
+          invokeAll(new TableTask(ids, begin, mid, progress), new TableTask(ids, mid, end, progress));
+          return;
+        }
+        for(int t = begin; t < end; t++) {
+          buildTable(t, ids);
+          LOG.incrementProcessed(progress);
+        }
       }
     }
 
@@ -219,21 +366,26 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     protected DBIDs getCandidates(V obj) {
       ModifiableDBIDs candidates = null;
-      final int numhash = hashtables.size();
+      final int numhash = tables.length;
       double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      final int[] hashes = new int[probes];
       for(int i = 0; i < numhash; i++) {
-        final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-        // Get the initial (unbounded) hash code:
-        int hash = hashfunc.hashObject(obj, buf);
-        // Reduce to hash table size
-        int bucket = hash % numberOfBuckets;
-        DBIDs cur = table.get(bucket);
-        if(cur != null) {
+        final int[] offs = offsets[i];
+        final DBIDArrayIter iter = tables[i].iter();
+        // Get the initial (unbounded) hash codes of the buckets to probe:
+        final int n = hashfunctions.get(i).probeObject(obj, buf, hashes);
+        for(int p = 0; p < n; p++) {
+          // Reduce to hash table size
+          final int b = bucket(hashes[p]), begin = offs[b], end = offs[b + 1];
+          if(begin == end) {
+            continue;
+          }
           if(candidates == null) {
-            candidates = DBIDUtil.newHashSet(cur.size() * numhash);
+            candidates = DBIDUtil.newHashSet((end - begin) * numhash);
+          }
+          for(iter.seek(begin); iter.getOffset() < end; iter.advance()) {
+            candidates.add(iter);
           }
-          candidates.addDBIDs(cur);
         }
       }
       return (candidates == null) ? DBIDUtil.EMPTYDBIDS : candidates;
@@ -320,6 +472,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of buckets to probe in each hash table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table (multi-probe LSH), including the bucket of the query itself.");
+
     /**
      * LSH hash function family to use.
      */
@@ -335,6 +492,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    int probes;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<LocalitySensitiveHashFunctionFamily<? super V>>(FAMILY_ID, LocalitySensitiveHashFunctionFamily.class) //
@@ -346,11 +508,14 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
           .setDefaultValue(7919) // Primes work best, apparently.
           .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
           .grab(config, x -> numberOfBuckets = x);
+      new IntParameter(PROBES_ID, 1) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> probes = x);
     }
 
     @Override
     public InMemoryLSHIndex<V> make() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes);
     }
   }
 }
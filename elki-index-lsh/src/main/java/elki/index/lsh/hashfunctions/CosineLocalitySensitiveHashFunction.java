@@ -81,6 +81,30 @@ public class CosineLocalitySensitiveHashFunction implements LocalitySensitiveHas
     return hashValue;
   }
 
+  @Override
+  public int probeObject(NumberVector obj, double[] buf, int[] hashes) {
+    projection.project(obj, buf);
+    // Only the first 32 projections contribute to the hash value.
+    final int num = Math.min(buf.length, 32);
+    final double[] scores = new double[num];
+    final long[] deltas = new long[num];
+    int hashValue = 0;
+    for(int i = 0, j = 1; i < num; i++, j <<= 1) {
+      if(buf[i] > 0) {
+        hashValue = hashValue | j;
+      }
+      // Flipping the bits of projections close to zero first:
+      scores[i] = buf[i] * buf[i];
+      deltas[i] = buf[i] > 0 ? -(j & 0xFFFFFFFFL) : (j & 0xFFFFFFFFL);
+    }
+    final long[] sums = new long[hashes.length];
+    final int n = MultiProbe.probes(scores, deltas, 0, hashValue & 0xFFFFFFFFL, sums);
+    for(int i = 0; i < n; i++) {
+      hashes[i] = (int) sums[i];
+    }
+    return n;
+  }
+
   @Override
   public int getNumberOfProjections() {
     return projection.getOutputDimensionality();
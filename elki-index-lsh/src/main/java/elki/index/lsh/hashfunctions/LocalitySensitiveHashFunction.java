@@ -46,6 +46,22 @@ public interface LocalitySensitiveHashFunction<V> {
    */
   int hashObject(V obj, double[] buf);
 
+  /**
+   * Compute the hash values of the buckets to probe for a query, in the order
+   * of expected success (multi-probe LSH). The first value is the hash value of
+   * the object itself. Hash functions that do not support multi-probe queries
+   * only produce this value.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param hashes Output hash values, the length is the maximum number of probes
+   * @return Number of hash values produced
+   */
+  default int probeObject(V obj, double[] buf, int[] hashes) {
+    hashes[0] = hashObject(obj, buf);
+    return 1;
+  }
+
   /**
    * Get the number of projections performed.
    *
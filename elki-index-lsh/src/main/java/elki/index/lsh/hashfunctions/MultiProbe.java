@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.lsh.hashfunctions;
+
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import elki.utilities.documentation.Reference;
+
+/**
+ * Generate the perturbation sequence of multi-probe LSH: sets of elementary
+ * perturbations (e.g., moving to the neighboring bin in one projection) are
+ * enumerated in ascending order of their score, using a heap and the "shift"
+ * and "expand" operations of Lv et al. Sets are represented as bit masks over
+ * the elementary perturbations sorted by score, so at most the 63 best
+ * elementary perturbations are used.
+ * <p>
+ * Reference:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br>
+ * Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity
+ * Search<br>
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+    title = "Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity Search", //
+    booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)", //
+    url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf", //
+    bibkey = "DBLP:conf/vldb/LvJWCL07")
+final class MultiProbe {
+  /**
+   * Private constructor. Static methods only.
+   */
+  private MultiProbe() {
+    // Do not use.
+  }
+
+  /**
+   * Enumerate the probes. Elementary perturbation {@code j} modifies the
+   * coordinate {@code j >>> shift}, and sets that modify a coordinate twice
+   * are skipped. The hash accumulator of a probe is the accumulator of the
+   * query plus the deltas of its perturbations.
+   *
+   * @param scores Scores of the elementary perturbations, will be modified
+   * @param deltas Hash accumulator deltas of the elementary perturbations
+   * @param shift Shift to obtain the coordinate of a perturbation
+   * @param base Hash accumulator of the query itself
+   * @param out Output accumulators, the first is the query itself
+   * @return Number of probes generated
+   */
+  static int probes(double[] scores, long[] deltas, int shift, long base, long[] out) {
+    out[0] = base;
+    if(out.length == 1) {
+      return 1;
+    }
+    final int[] idx = new int[scores.length];
+    for(int i = 0; i < idx.length; i++) {
+      idx[i] = i;
+    }
+    DoubleIntegerArrayQuickSort.sort(scores, idx, scores.length);
+    final int m = Math.min(scores.length, 63);
+    if(m == 0) {
+      return 1;
+    }
+    DoubleLongMinHeap heap = new DoubleLongMinHeap(out.length << 1);
+    heap.add(scores[0], 1L);
+    int c = 1;
+    while(c < out.length && !heap.isEmpty()) {
+      final double score = heap.peekKey();
+      final long set = heap.peekValue();
+      heap.poll();
+      final int k = 63 - Long.numberOfLeadingZeros(set);
+      if(k + 1 < m) {
+        // Shift: replace the largest element by the next one.
+        heap.add(score - scores[k] + scores[k + 1], set ^ (3L << k));
+        // Expand: add the next element.
+        heap.add(score + scores[k + 1], set | (1L << (k + 1)));
+      }
+      // Skip invalid sets, that modify a coordinate twice.
+      long acc = base;
+      boolean valid = true;
+      for(long s = set; s != 0 && valid; s &= s - 1) {
+        final int j = Long.numberOfTrailingZeros(s);
+        valid = !hasCoordinate(set & ((1L << j) - 1), idx, idx[j] >>> shift, shift);
+        acc += deltas[idx[j]];
+      }
+      if(valid) {
+        out[c++] = acc;
+      }
+    }
+    return c;
+  }
+
+  /**
+   * Test whether a set already modifies a coordinate.
+   *
+   * @param set Set of perturbations
+   * @param idx Perturbation index
+   * @param coord Coordinate
+   * @param shift Shift to obtain the coordinate of a perturbation
+   * @return {@code true} if the coordinate is modified by the set
+   */
+  private static boolean hasCoordinate(long set, int[] idx, int coord, int shift) {
+    for(; set != 0; set &= set - 1) {
+      if(idx[Long.numberOfTrailingZeros(set)] >>> shift == coord) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
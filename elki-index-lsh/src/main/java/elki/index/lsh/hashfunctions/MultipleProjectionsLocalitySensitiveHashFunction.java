@@ -35,6 +35,9 @@ import elki.utilities.documentation.Reference;
  * M. Datar, N. Immorlica, P. Indyk, V. S. Mirrokni<br>
  * Locality-sensitive hashing scheme based on p-stable distributions<br>
  * Proc. 20th Annual Symposium on Computational Geometry<br>
+ * <p>
+ * Multi-probe queries also visit the neighboring bins, in ascending order of
+ * the squared distance of the projected query to the bin boundaries.
  *
  * @author Erich Schubert
  * @since 0.6.0
@@ -118,6 +121,32 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int probeObject(NumberVector vec, double[] buf, int[] hashes) {
+    // Project the vector:
+    projection.project(vec, buf);
+    final double[] scores = new double[shift.length << 1];
+    final long[] deltas = new long[shift.length << 1];
+    long t1sum = 0L;
+    for(int i = 0, j = 0; i < shift.length; i++, j += 2) {
+      final double f = (buf[i] + shift[i]) * iwidth, fl = Math.floor(f);
+      final long r = randoms1[i] & MASK32;
+      t1sum += r * (int) fl; // unsigned math!
+      // Squared distance to the lower and upper bin boundary:
+      final double lo = f - fl, hi = 1. - lo;
+      scores[j] = lo * lo;
+      deltas[j] = -r;
+      scores[j + 1] = hi * hi;
+      deltas[j + 1] = r;
+    }
+    final long[] sums = new long[hashes.length];
+    final int n = MultiProbe.probes(scores, deltas, 1, t1sum, sums);
+    for(int i = 0; i < n; i++) {
+      hashes[i] = fastModPrime(sums[i]);
+    }
+    return n;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
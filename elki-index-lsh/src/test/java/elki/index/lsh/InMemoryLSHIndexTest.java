@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNList;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.knn.LinearScanPrimitiveKNNByObject;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the in-memory LSH index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class InMemoryLSHIndexTest {
+  @Test
+  public void testMultiProbe() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[5000][8];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextGaussian();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    double single = recall(rel, 16, 1), multi = recall(rel, 4, 16);
+    assertEquals("Recall of single-probe LSH", 0.941, single, 1e-15);
+    assertEquals("Recall of multi-probe LSH", 0.965, multi, 1e-15);
+    assertTrue("Multi-probe LSH with a quarter of the tables is worse.", multi >= single);
+  }
+
+  /**
+   * Compute the recall of the 10 nearest neighbors of the first 200 objects.
+   *
+   * @param rel Data relation
+   * @param l Number of hash tables
+   * @param probes Number of probes
+   * @return Recall
+   */
+  private static double recall(Relation<NumberVector> rel, int l, int probes) {
+    InMemoryLSHIndex<NumberVector>.Instance index = new ELKIBuilder<InMemoryLSHIndex<NumberVector>>(InMemoryLSHIndex.class) //
+        .with(InMemoryLSHIndex.Par.FAMILY_ID, EuclideanHashFunctionFamily.class) //
+        .with(EuclideanHashFunctionFamily.Par.RANDOM_ID, 0L) //
+        .with(EuclideanHashFunctionFamily.Par.WIDTH_ID, 4.) //
+        .with(EuclideanHashFunctionFamily.Par.NUMPROJ_ID, 6) //
+        .with(InMemoryLSHIndex.Par.L_ID, l) //
+        .with(InMemoryLSHIndex.Par.PROBES_ID, probes) //
+        .build().instantiate(rel);
+    index.initialize();
+    PrimitiveDistanceQuery<NumberVector> dq = new PrimitiveDistanceQuery<>(rel, EuclideanDistance.STATIC);
+    KNNSearcher<NumberVector> lsh = index.kNNByObject(dq, 10, 0);
+    LinearScanPrimitiveKNNByObject<NumberVector> lin = new LinearScanPrimitiveKNNByObject<>(dq);
+    int found = 0, total = 0, q = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && q < 200; it.advance(), q++) {
+      KNNList exact = lin.getKNN(rel.get(it), 10);
+      DBIDs approx = DBIDUtil.newHashSet(lsh.getKNN(rel.get(it), 10));
+      for(DBIDIter e = exact.iter(); e.valid(); e.advance()) {
+        found += approx.contains(e) ? 1 : 0;
+      }
+      total += exact.size();
+    }
+    return found / (double) total;
+  }
+}
@@ -23,6 +23,7 @@ package elki.index.tree.metrical.mtreevariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import elki.database.ids.DBID;
 import elki.database.ids.DBIDRef;
@@ -192,6 +193,30 @@ public class MTreeDirectoryEntry implements DirectoryEntry, MTreeEntry {
     this.coveringRadius = in.readDouble();
   }
 
+  /**
+   * Write the entry to a buffer.
+   *
+   * @param buffer Buffer to write to
+   */
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putInt(id);
+    buffer.putInt(DBIDUtil.asInteger(routingObjectID));
+    buffer.putDouble(parentDistance);
+    buffer.putDouble(coveringRadius);
+  }
+
+  /**
+   * Read the entry from a buffer.
+   *
+   * @param buffer Buffer to read from
+   */
+  public void readFrom(ByteBuffer buffer) {
+    this.id = buffer.getInt();
+    this.routingObjectID = DBIDUtil.importInteger(buffer.getInt());
+    this.parentDistance = buffer.getDouble();
+    this.coveringRadius = buffer.getDouble();
+  }
+
   @Override
   public String toString() {
     return "MTreeNode(" + id + " dbid=" + DBIDUtil.toString((DBIDRef) routingObjectID) + ")";
@@ -23,6 +23,7 @@ package elki.index.tree.metrical.mtreevariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import elki.database.ids.DBID;
 import elki.database.ids.DBIDUtil;
@@ -162,6 +163,26 @@ public class MTreeLeafEntry implements LeafEntry, MTreeEntry {
     this.parentDistance = in.readDouble();
   }
 
+  /**
+   * Write the entry to a buffer.
+   *
+   * @param buffer Buffer to write to
+   */
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putInt(DBIDUtil.asInteger(id));
+    buffer.putDouble(parentDistance);
+  }
+
+  /**
+   * Read the entry from a buffer.
+   *
+   * @param buffer Buffer to read from
+   */
+  public void readFrom(ByteBuffer buffer) {
+    this.id = DBIDUtil.importInteger(buffer.getInt());
+    this.parentDistance = buffer.getDouble();
+  }
+
   @Override
   public boolean equals(Object o) {
     // Compare ID only!
@@ -20,8 +20,13 @@
  */
 package elki.index.tree.metrical.mtreevariants.mtree;
 
+import java.nio.ByteBuffer;
+
 import elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
+import elki.index.tree.metrical.mtreevariants.MTreeDirectoryEntry;
 import elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
+import elki.persistent.ByteBufferPage;
 
 /**
  * Represents a node in an M-Tree.
@@ -30,7 +35,7 @@ import elki.index.tree.metrical.mtreevariants.MTreeEntry;
  * @since 0.1
  * @param <O> Object type
  */
-public class MTreeNode<O> extends AbstractMTreeNode<O, MTreeNode<O>, MTreeEntry> {
+public class MTreeNode<O> extends AbstractMTreeNode<O, MTreeNode<O>, MTreeEntry> implements ByteBufferPage {
   /**
    * Serial version
    */
@@ -53,4 +58,36 @@ public class MTreeNode<O> extends AbstractMTreeNode<O, MTreeNode<O>, MTreeEntry>
   public MTreeNode(int capacity, boolean isLeaf) {
     super(capacity, isLeaf);
   }
-}
\ No newline at end of file
+
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    super.writeTo(buffer);
+    buffer.putInt(entries.length);
+    for(int i = 0; i < numEntries; i++) {
+      if(isLeaf) {
+        ((MTreeLeafEntry) entries[i]).writeTo(buffer);
+      }
+      else {
+        ((MTreeDirectoryEntry) entries[i]).writeTo(buffer);
+      }
+    }
+  }
+
+  @Override
+  public void readFrom(ByteBuffer buffer) {
+    super.readFrom(buffer);
+    entries = new MTreeEntry[buffer.getInt()];
+    for(int i = 0; i < numEntries; i++) {
+      if(isLeaf) {
+        MTreeLeafEntry e = new MTreeLeafEntry();
+        e.readFrom(buffer);
+        entries[i] = e;
+      }
+      else {
+        MTreeDirectoryEntry e = new MTreeDirectoryEntry();
+        e.readFrom(buffer);
+        entries[i] = e;
+      }
+    }
+  }
+}
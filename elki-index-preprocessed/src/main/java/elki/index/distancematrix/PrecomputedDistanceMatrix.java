@@ -20,7 +20,17 @@
  */
 package elki.index.distancematrix;
 
+import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
 
 import elki.data.type.TypeInformation;
 import elki.database.ids.*;
@@ -36,23 +46,35 @@ import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
 import elki.utilities.datastructures.QuickSelect;
 import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
 import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.ByteArrayUtil;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.LongParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Distance matrix, for precomputing similarity for a small data set.
  * <p>
  * This class uses a linear memory layout (not a ragged array), and assumes
- * symmetry as well as strictness. This way, it only stores the upper triangle
- * matrix with double precision. It has to store (n-1) * (n-2) distance values
- * in memory, requiring 8 * (n-1) * (n-2) bytes. Since Java has a size limit of
- * arrays of 31 bits (signed integer), we can store at most \(2^{16}\) objects
- * (precisely, 65536 objects) in a single array, which needs about 16 GB of RAM.
+ * symmetry as well as strictness. This way, it only stores the lower triangle
+ * matrix, i.e., n * (n-1) / 2 distance values, requiring 8 bytes each with
+ * double precision, or 4 bytes with single precision. Because Java arrays are
+ * limited to 31 bit indexes, the triangle is split into multiple pages.
+ * <p>
+ * The matrix is computed in parallel, in tiles of {@link #TILE} by
+ * {@link #TILE} objects, which keeps the data of both objects in the cache.
+ * If the matrix would exceed the memory budget (by default, half of the
+ * currently free memory), it is stored in a temporary file instead (in the
+ * default temporary directory), as a triangle of tiles, and accessed via
+ * memory mapping. Call {@link #destroy()} to delete this file
+ * once the matrix is no longer needed.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -79,16 +101,32 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    */
   protected final Distance<? super O> distance;
 
+  /**
+   * Tile size for computing the matrix, and for storing it on disk.
+   */
+  public static final int TILE = 64;
+
   /**
    * Distance matrix.
    */
-  private double[] matrix = null;
+  private Storage matrix = null;
 
   /**
    * DBID range.
    */
   private DBIDRange ids;
 
+  /**
+   * Store distances with single precision only.
+   */
+  protected final boolean singlePrecision;
+
+  /**
+   * Memory budget in bytes, negative to use half of the currently free
+   * memory.
+   */
+  protected final long maxmemory;
+
   /**
    * Constructor.
    *
@@ -97,10 +135,26 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    * @param distance Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DBIDRange range, Distance<? super O> distance) {
+    this(relation, range, distance, false, -1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param range DBID range
+   * @param distance Distance function
+   * @param singlePrecision Store distances with single precision only
+   * @param maxmemory Memory budget in bytes, negative to use half of the
+   *        currently free memory; larger matrixes are stored on disk
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DBIDRange range, Distance<? super O> distance, boolean singlePrecision, long maxmemory) {
     super();
     this.refrelation = new WeakReference<>(relation);
     this.ids = range;
     this.distance = distance;
+    this.singlePrecision = singlePrecision;
+    this.maxmemory = maxmemory;
 
     if(!distance.isSymmetric()) {
       throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
@@ -109,56 +163,180 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
 
   @Override
   public void initialize() {
-    if(ids.size() > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
+    final int size = ids.size();
+    final int bytes = singlePrecision ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE;
+    final long msize = triangleSize(size) * bytes;
+    // Leave half of the free memory to the algorithm using the matrix
+    final long budget = maxmemory >= 0 ? maxmemory : getFreeMemory() >> 1;
+    if(msize > budget) {
+      LOG.verbose("Distance matrix needs " + (msize >> 20) + " MB, which exceeds the memory budget of " + (budget >> 20) + " MB. Storing the matrix on disk.");
+      matrix = new DiskStorage(size, singlePrecision);
     }
-    DistanceQuery<O> distanceQuery = distance.instantiate(refrelation.get());
-
-    final int msize = triangleSize(ids.size());
-    matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
+    else {
+      matrix = singlePrecision ? new FloatStorage(size) : new DoubleStorage(size);
+    }
+    final int ntiles = (size + TILE - 1) / TILE;
+    final long work = triangleSize(ntiles + 1);
     Duration timer = LOG.newDuration(getClass().getName() + ".precomputation-time").begin();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos++] = distanceQuery.distance(ix, iy);
-      }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
-      }
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix tiles", (int) work, LOG) : null;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      final long minblock = Math.max(1, work / (core.getParallelism() * 32));
+      core.submit(new TileTask(distance.instantiate(refrelation.get()), prog, 0, work, minblock)).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Computing the distance matrix failed.", e.getCause());
     }
+    catch(InterruptedException e) {
+      throw new AbortException("Computing the distance matrix was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+    matrix.finish();
     LOG.ensureCompleted(prog);
     LOG.statistics(timer.end());
   }
 
+  /**
+   * Release the distance matrix. A temporary file used to store the matrix is
+   * closed and deleted. The index cannot be used afterwards.
+   */
+  public void destroy() {
+    if(matrix != null) {
+      matrix.close();
+      matrix = null;
+    }
+  }
+
+  /**
+   * Get the file the matrix is stored in.
+   *
+   * @return File, or {@code null} if the matrix is stored in memory
+   */
+  Path getFile() {
+    return matrix instanceof DiskStorage ? ((DiskStorage) matrix).file : null;
+  }
+
+  /**
+   * Get the currently free amount of memory.
+   *
+   * @return Free memory
+   */
+  private static long getFreeMemory() {
+    final Runtime r = Runtime.getRuntime();
+    return r.maxMemory() - r.totalMemory() + r.freeMemory();
+  }
+
   /**
    * Compute the size of a complete x by x triangle (minus diagonal)
    *
    * @param x Offset
    * @return Size of complete triangle
    */
-  protected static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  protected static long triangleSize(int x) {
+    return (x * (long) (x - 1)) >>> 1;
   }
 
   /**
-   * Array offset computation.
+   * Parallel computation of a range of tiles. Tiles are enumerated row by row,
+   * i.e., tile number {@code triangleSize(bx + 1) + by} holds the distances of
+   * the objects in block bx to the objects in block {@code by <= bx}.
    *
-   * @param x X parameter
-   * @param y Y parameter
-   * @return Array offset
+   * @author Erich Schubert
    */
-  private int getOffset(int x, int y) {
-    return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
+  private class TileTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Distance query.
+     */
+    private final DistanceQuery<O> distanceQuery;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private final FiniteProgress prog;
+
+    /**
+     * Range of tiles to compute.
+     */
+    private final long start, end;
+
+    /**
+     * Minimum number of tiles, do not split below.
+     */
+    private final long minblock;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param prog Progress, may be {@code null}
+     * @param start First tile
+     * @param end End of tiles (exclusive)
+     * @param minblock Minimum number of tiles
+     */
+    TileTask(DistanceQuery<O> distanceQuery, FiniteProgress prog, long start, long end, long minblock) {
+      this.distanceQuery = distanceQuery;
+      this.prog = prog;
+      this.start = start;
+      this.end = end;
+      this.minblock = minblock;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > minblock) {
+        final long mid = (start + end) >>> 1;
+        invokeAll(new TileTask(distanceQuery, prog, start, mid, minblock), //
+            new TileTask(distanceQuery, prog, mid, end, minblock));
+        return;
+      }
+      final int size = ids.size();
+      final double[] tile = new double[TILE * TILE];
+      DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      // Find the first tile row, by inverting triangleSize:
+      int bx = (int) ((Math.sqrt(8. * start + 1) - 1) / 2);
+      while(triangleSize(bx + 2) <= start) {
+        bx++;
+      }
+      while(triangleSize(bx + 1) > start) {
+        bx--;
+      }
+      int by = (int) (start - triangleSize(bx + 1));
+      for(long t = start; t < end; t++) {
+        final int x0 = bx * TILE, x1 = Math.min(x0 + TILE, size);
+        final int y0 = by * TILE, y1 = Math.min(y0 + TILE, size);
+        for(ix.seek(x0); ix.getOffset() < x1; ix.advance()) {
+          final int x = ix.getOffset(), base = (x - x0) * TILE - y0;
+          // Only y < x is stored
+          for(iy.seek(y0); iy.getOffset() < y1 && iy.getOffset() < x; iy.advance()) {
+            tile[base + iy.getOffset()] = distanceQuery.distance(ix, iy);
+          }
+        }
+        matrix.putTile(bx, by, tile);
+        if(++by > bx) {
+          by = 0;
+          bx++;
+        }
+      }
+      if(prog != null) {
+        prog.incrementProcessed((int) (end - start), LOG);
+      }
+    }
   }
 
   @Override
   public void logStatistics() {
     if(matrix != null) {
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", triangleSize(ids.size())));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-bytes", matrix.getByteSize()));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".on-disk", matrix instanceof DiskStorage ? 1 : 0));
     }
   }
 
@@ -206,7 +384,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       final int x = ids.getOffset(id1), y = ids.getOffset(id2);
-      return (x != y) ? matrix[getOffset(x, y)] : 0.;
+      return (x > y) ? matrix.get(x, y) : (x < y) ? matrix.get(y, x) : 0.;
     }
 
     @Override
@@ -231,24 +409,19 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
      */
     DBIDArrayIter it = ids.iter();
 
+    /**
+     * Distances of the current query object.
+     */
+    double[] row = new double[ids.size()];
+
     @Override
     public ModifiableDoubleDBIDList getRange(DBIDRef id, double range, ModifiableDoubleDBIDList result) {
       result.add(0., id);
       final int x = ids.getOffset(id);
-      // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
-      for(int y = 0; y < x; y++, pos++) {
-        final double dist = matrix[pos];
-        if(dist <= range) {
-          result.add(dist, it.seek(y));
-        }
-      }
-      assert (pos == triangleSize(x + 1));
-      // Case y > x: triangleSize(y) + x
-      pos = triangleSize(x + 1) + x;
-      for(int y = x + 1, size = ids.size(); y < size; pos += y++) {
-        final double dist = matrix[pos];
-        if(dist <= range) {
+      matrix.getRow(x, row);
+      for(int y = 0; y < row.length; y++) {
+        final double dist = row[y];
+        if(dist <= range && y != x) {
           result.add(dist, it.seek(y));
         }
       }
@@ -267,24 +440,21 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
      */
     DBIDArrayIter it = ids.iter();
 
+    /**
+     * Distances of the current query object.
+     */
+    double[] row = new double[ids.size()];
+
     @Override
     public KNNList getKNN(DBIDRef id, int k) {
       KNNHeap heap = DBIDUtil.newHeap(k);
       heap.insert(0., id);
       double max = Double.POSITIVE_INFINITY;
       final int x = ids.getOffset(id);
-      // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
-      for(int y = 0; y < x; y++, pos++) {
-        final double dist = matrix[pos];
-        max = dist <= max ? heap.insert(dist, it.seek(y)) : max;
-      }
-      assert (pos == triangleSize(x + 1));
-      // Case y > x: triangleSize(y) + x
-      pos = triangleSize(x + 1) + x;
-      for(int y = x + 1, size = ids.size(); y < size; pos += y++) {
-        final double dist = matrix[pos];
-        max = dist <= max ? heap.insert(dist, it.seek(y)) : max;
+      matrix.getRow(x, row);
+      for(int y = 0; y < row.length; y++) {
+        final double dist = row[y];
+        max = dist <= max && y != x ? heap.insert(dist, it.seek(y)) : max;
       }
       return heap.toKNNList();
     }
@@ -335,23 +505,16 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
     public PrioritySearcher<DBIDRef> search(DBIDRef query) {
       off = 0;
       threshold = Double.POSITIVE_INFINITY;
-      int x = ids.getOffset(query);
-      int pos = triangleSize(x);
-      // Initialize ids:
-      idx[0] = x;
-      for(int y = 0; y < x; y++) {
-        idx[y + 1] = y;
-      }
-      for(int y = x + 1, size = dists.length; y < size; y++) {
+      final int x = ids.getOffset(query);
+      // Initialize ids and distances, with the query object first:
+      matrix.getRow(x, dists);
+      for(int y = 0; y < idx.length; y++) {
         idx[y] = y;
       }
-      // Initialize distances:
+      idx[0] = x;
+      idx[x] = 0;
+      dists[x] = dists[0];
       dists[0] = 0;
-      System.arraycopy(matrix, pos, dists, 1, x);
-      pos = triangleSize(x + 1) + x;
-      for(int y = x + 1, size = dists.length; y < size; pos += y++) {
-        dists[y] = matrix[pos];
-      }
       sorted = 1;
       return this;
     }
@@ -455,6 +618,400 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
     }
   }
 
+  /**
+   * Storage of the lower triangle of the distance matrix.
+   *
+   * @author Erich Schubert
+   */
+  private abstract static class Storage {
+    /**
+     * Get a single distance.
+     *
+     * @param x First object offset
+     * @param y Second object offset, must be less than x
+     * @return Distance
+     */
+    abstract double get(int x, int y);
+
+    /**
+     * Get all distances of one object.
+     *
+     * @param x Object offset
+     * @param row Output array, distance to the object itself will be 0
+     */
+    abstract void getRow(int x, double[] row);
+
+    /**
+     * Store a tile of computed distances.
+     *
+     * @param bx Tile row
+     * @param by Tile column, {@code by <= bx}
+     * @param tile Distances, {@code TILE * TILE} in row-major order; only the
+     *        values of valid object pairs (with y < x) are used.
+     */
+    abstract void putTile(int bx, int by, double[] tile);
+
+    /**
+     * Complete the storage, after all tiles have been stored.
+     */
+    void finish() {
+      // Nothing to do by default.
+    }
+
+    /**
+     * Release the storage.
+     */
+    void close() {
+      // Nothing to do by default.
+    }
+
+    /**
+     * Get the storage size in bytes.
+     *
+     * @return Storage size
+     */
+    abstract long getByteSize();
+  }
+
+  /**
+   * Storage of the triangle in memory, split into pages of {@code 2^PAGE_BITS}
+   * values because of the Java array size limit.
+   *
+   * @author Erich Schubert
+   */
+  private abstract static class PagedStorage extends Storage {
+    /**
+     * Number of bits per page.
+     */
+    static final int PAGE_BITS = 24;
+
+    /**
+     * Mask for the offset within a page.
+     */
+    static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    /**
+     * Number of objects.
+     */
+    final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     */
+    PagedStorage(int size) {
+      this.size = size;
+    }
+
+    /**
+     * Get the size of each page.
+     *
+     * @param total Total size
+     * @return Page sizes
+     */
+    static int[] pageSizes(long total) {
+      int[] sizes = new int[(int) ((total + PAGE_MASK) >>> PAGE_BITS)];
+      for(int i = 0; i < sizes.length; i++) {
+        sizes[i] = (int) Math.min(PAGE_MASK + 1L, total - ((long) i << PAGE_BITS));
+      }
+      return sizes;
+    }
+
+    /**
+     * Get a value by its linear position.
+     *
+     * @param pos Position
+     * @return Value
+     */
+    abstract double get(long pos);
+
+    /**
+     * Set a value by its linear position.
+     *
+     * @param pos Position
+     * @param v Value
+     */
+    abstract void set(long pos, double v);
+
+    @Override
+    double get(int x, int y) {
+      return get(triangleSize(x) + y);
+    }
+
+    @Override
+    void getRow(int x, double[] row) {
+      // Case y < x: triangleSize(x) + y
+      long pos = triangleSize(x);
+      for(int y = 0; y < x; y++, pos++) {
+        row[y] = get(pos);
+      }
+      row[x] = 0.;
+      // Case y > x: triangleSize(y) + x
+      pos = triangleSize(x + 1) + x;
+      for(int y = x + 1; y < size; pos += y++) {
+        row[y] = get(pos);
+      }
+    }
+
+    @Override
+    void putTile(int bx, int by, double[] tile) {
+      final int x0 = bx * TILE, x1 = Math.min(x0 + TILE, size), y0 = by * TILE;
+      for(int x = x0; x < x1; x++) {
+        final int y1 = Math.min(y0 + TILE, x), base = (x - x0) * TILE - y0;
+        long pos = triangleSize(x);
+        for(int y = y0; y < y1; y++) {
+          set(pos + y, tile[base + y]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Double precision storage in memory.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleStorage extends PagedStorage {
+    /**
+     * Pages of the matrix.
+     */
+    private final double[][] pages;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     */
+    DoubleStorage(int size) {
+      super(size);
+      int[] sizes = pageSizes(triangleSize(size));
+      pages = new double[sizes.length][];
+      for(int i = 0; i < sizes.length; i++) {
+        pages[i] = new double[sizes[i]];
+      }
+    }
+
+    @Override
+    double get(long pos) {
+      return pages[(int) (pos >>> PAGE_BITS)][(int) pos & PAGE_MASK];
+    }
+
+    @Override
+    void set(long pos, double v) {
+      pages[(int) (pos >>> PAGE_BITS)][(int) pos & PAGE_MASK] = v;
+    }
+
+    @Override
+    long getByteSize() {
+      return triangleSize(size) * ByteArrayUtil.SIZE_DOUBLE;
+    }
+  }
+
+  /**
+   * Single precision storage in memory.
+   *
+   * @author Erich Schubert
+   */
+  private static class FloatStorage extends PagedStorage {
+    /**
+     * Pages of the matrix.
+     */
+    private final float[][] pages;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     */
+    FloatStorage(int size) {
+      super(size);
+      int[] sizes = pageSizes(triangleSize(size));
+      pages = new float[sizes.length][];
+      for(int i = 0; i < sizes.length; i++) {
+        pages[i] = new float[sizes[i]];
+      }
+    }
+
+    @Override
+    double get(long pos) {
+      return pages[(int) (pos >>> PAGE_BITS)][(int) pos & PAGE_MASK];
+    }
+
+    @Override
+    void set(long pos, double v) {
+      pages[(int) (pos >>> PAGE_BITS)][(int) pos & PAGE_MASK] = (float) v;
+    }
+
+    @Override
+    long getByteSize() {
+      return triangleSize(size) * ByteArrayUtil.SIZE_FLOAT;
+    }
+  }
+
+  /**
+   * Storage in a temporary file, as a triangle of tiles in the order in which
+   * they are computed. Each tile is one record of TILE * TILE values, in
+   * row-major order. Tiles are written with positional writes, and once the
+   * matrix is complete, the file is mapped read-only, so that concurrent
+   * readers do not need to synchronize.
+   *
+   * @author Erich Schubert
+   */
+  private static class DiskStorage extends Storage {
+    /**
+     * Number of objects.
+     */
+    private final int size;
+
+    /**
+     * Bytes per value.
+     */
+    private final int bytes;
+
+    /**
+     * Bytes per tile.
+     */
+    private final int tilebytes;
+
+    /**
+     * Temporary file.
+     */
+    private final Path file;
+
+    /**
+     * File channel.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Read-only mapped segments, once the matrix is complete.
+     */
+    private ByteBuffer[] maps;
+
+    /**
+     * Number of tiles per mapped segment.
+     */
+    private int tilesPerMap;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     * @param singlePrecision Use single precision
+     */
+    DiskStorage(int size, boolean singlePrecision) {
+      this.size = size;
+      this.bytes = singlePrecision ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE;
+      this.tilebytes = TILE * TILE * bytes;
+      try {
+        file = Files.createTempFile("elki-distancematrix", ".bin");
+        // Fallback only, the file is deleted by close().
+        file.toFile().deleteOnExit();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      }
+      catch(IOException e) {
+        throw new AbortException("Could not create the distance matrix file.", e);
+      }
+    }
+
+    /**
+     * Read a value from a tile.
+     *
+     * @param bx Tile row
+     * @param by Tile column
+     * @param i Index within the tile
+     * @return Value
+     */
+    private double read(int bx, int by, int i) {
+      final long t = triangleSize(bx + 1) + by;
+      final ByteBuffer map = maps[(int) (t / tilesPerMap)];
+      final int pos = (int) (t % tilesPerMap) * tilebytes + i * bytes;
+      return bytes == ByteArrayUtil.SIZE_FLOAT ? map.getFloat(pos) : map.getDouble(pos);
+    }
+
+    @Override
+    double get(int x, int y) {
+      return read(x / TILE, y / TILE, (x % TILE) * TILE + (y % TILE));
+    }
+
+    @Override
+    void getRow(int x, double[] row) {
+      final int bx = x / TILE, rx = x % TILE;
+      for(int by = 0, y0 = 0; y0 < size; by++, y0 += TILE) {
+        final int y1 = Math.min(y0 + TILE, size);
+        // Tiles left of the diagonal store rows of x, tiles right of it
+        // columns; the diagonal tile stores both halves.
+        for(int y = y0; y < y1; y++) {
+          row[y] = y < x ? read(bx, by, rx * TILE + y - y0) : y > x ? read(by, bx, (y - y0) * TILE + rx) : 0.;
+        }
+      }
+    }
+
+    @Override
+    void putTile(int bx, int by, double[] tile) {
+      final ByteBuffer buf = ByteBuffer.allocate(tilebytes).order(ByteOrder.nativeOrder());
+      for(int i = 0; i < tile.length; i++) {
+        if(bytes == ByteArrayUtil.SIZE_FLOAT) {
+          buf.putFloat(i * bytes, (float) tile[i]);
+        }
+        else {
+          buf.putDouble(i * bytes, tile[i]);
+        }
+      }
+      final long pos = (triangleSize(bx + 1) + by) * tilebytes;
+      try {
+        while(buf.hasRemaining()) {
+          channel.write(buf, pos + buf.position());
+        }
+      }
+      catch(IOException e) {
+        throw new AbortException("Could not write the distance matrix file.", e);
+      }
+    }
+
+    @Override
+    void finish() {
+      final int ntiles = (size + TILE - 1) / TILE;
+      final long numtiles = triangleSize(ntiles + 1);
+      tilesPerMap = Math.max(1, Integer.MAX_VALUE / tilebytes);
+      ByteBuffer[] maps = new ByteBuffer[(int) ((numtiles + tilesPerMap - 1) / tilesPerMap)];
+      try {
+        for(int i = 0; i < maps.length; i++) {
+          final long first = i * (long) tilesPerMap;
+          final long len = Math.min(tilesPerMap, numtiles - first) * tilebytes;
+          maps[i] = channel.map(MapMode.READ_ONLY, first * tilebytes, len).order(ByteOrder.nativeOrder());
+        }
+      }
+      catch(IOException e) {
+        throw new AbortException("Could not map the distance matrix file.", e);
+      }
+      this.maps = maps;
+    }
+
+    @Override
+    void close() {
+      maps = null;
+      try {
+        channel.close();
+        Files.deleteIfExists(file);
+      }
+      catch(IOException e) {
+        LOG.warning("Could not delete the distance matrix file " + file, e);
+      }
+    }
+
+    @Override
+    long getByteSize() {
+      try {
+        return Files.size(file);
+      }
+      catch(IOException e) {
+        return -1;
+      }
+    }
+  }
+
   /**
    * Factory for the index.
    *
@@ -470,14 +1027,39 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
      */
     protected final Distance<? super O> distance;
 
+    /**
+     * Store distances with single precision only.
+     */
+    protected final boolean singlePrecision;
+
+    /**
+     * Memory budget in bytes, negative to use half of the currently free
+     * memory.
+     */
+    protected final long maxmemory;
+
     /**
      * Constructor.
      *
      * @param distance Distance function
      */
     public Factory(Distance<? super O> distance) {
+      this(distance, false, -1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param singlePrecision Store distances with single precision only
+     * @param maxmemory Memory budget in bytes, negative to use half of the
+     *        currently free memory; larger matrixes are stored on disk
+     */
+    public Factory(Distance<? super O> distance, boolean singlePrecision, long maxmemory) {
       super();
       this.distance = distance;
+      this.singlePrecision = singlePrecision;
+      this.maxmemory = maxmemory;
     }
 
     @Override
@@ -486,7 +1068,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
       if(!(rids instanceof DBIDRange)) {
         throw new AbortException("Distance matrixes are currently only supported for DBID ranges (as used by static databases; not on modifiable databases) for performance reasons (Patches welcome).");
       }
-      return new PrecomputedDistanceMatrix<>(relation, (DBIDRange) rids, distance);
+      return new PrecomputedDistanceMatrix<>(relation, (DBIDRange) rids, distance, singlePrecision, maxmemory);
     }
 
     @Override
@@ -509,20 +1091,45 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
        */
       public static final OptionID DISTANCE_ID = new OptionID("matrix.distance", "Distance function for the precomputed distance matrix.");
 
+      /**
+       * Flag to store distances with single precision only.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store distances with single precision (float) only, to halve the memory usage.");
+
+      /**
+       * Memory budget for the matrix.
+       */
+      public static final OptionID MEMORY_ID = new OptionID("matrix.maxmemory", "Memory budget for the distance matrix in megabytes. Larger matrixes are stored in a temporary file. By default, half of the currently free memory is used.");
+
       /**
        * Nested distance function.
        */
       protected Distance<? super O> distanceFunction;
 
+      /**
+       * Store distances with single precision only.
+       */
+      protected boolean singlePrecision;
+
+      /**
+       * Memory budget in bytes.
+       */
+      protected long maxmemory = -1;
+
       @Override
       public void configure(Parameterization config) {
         new ObjectParameter<Distance<? super O>>(DISTANCE_ID, Distance.class) //
             .grab(config, x -> distanceFunction = x);
+        new Flag(FLOAT_ID).grab(config, x -> singlePrecision = x);
+        new LongParameter(MEMORY_ID) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+            .setOptional(true) //
+            .grab(config, x -> maxmemory = x << 20);
       }
 
       @Override
       public Factory<O> make() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, singlePrecision, maxmemory);
       }
     }
   }
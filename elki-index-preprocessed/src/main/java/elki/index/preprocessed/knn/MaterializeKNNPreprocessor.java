@@ -20,11 +20,14 @@
  */
 package elki.index.preprocessed.knn;
 
+import java.util.List;
+
 import javax.swing.event.EventListenerList;
 
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.BatchKNNSearcher;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.knn.PreprocessorKNNQuery;
 import elki.database.relation.Relation;
@@ -71,6 +74,22 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   protected final EventListenerList listenerList = new EventListenerList();
 
+  /**
+   * Indicates whether insertions and deletions should be accumulated and
+   * processed as one batch on demand.
+   */
+  private boolean accumulateKNNUpdates = false;
+
+  /**
+   * Type of the accumulated updates: {@code true} for insertions.
+   */
+  private boolean pendingInsertions;
+
+  /**
+   * Objects inserted or deleted since the last batch was processed.
+   */
+  private HashSetModifiableDBIDs pending;
+
   /**
    * Constructor with preprocessing step.
    *
@@ -115,6 +134,22 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
     FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
     // Try bulk
+    if(knnQuery instanceof BatchKNNSearcher) {
+      List<? extends KNNList> knns = ((BatchKNNSearcher) knnQuery).getKNNForBulkDBIDs(ids, k);
+      DBIDIter iter = ids.iter();
+      for(KNNList knn : knns) {
+        storage.put(iter, knn);
+        iter.advance();
+      }
+      if(progress != null) {
+        progress.setProcessed(ids.size(), log);
+      }
+      log.ensureCompleted(progress);
+      if(duration != null) {
+        log.statistics(duration.end());
+      }
+      return;
+    }
     final boolean ismetric = getDistanceQuery().getDistance().isMetric();
     for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
       if(ismetric && storage.get(iter) != null) {
@@ -138,11 +173,18 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
 
   @Override
   public final void insert(DBIDRef id) {
+    if(accumulateKNNUpdates) {
+      accumulate(id, true);
+      return;
+    }
     objectsInserted(DBIDUtil.deref(id));
   }
 
   @Override
   public void insertAll(DBIDs ids) {
+    if(accumulateKNNUpdates) {
+      processPending(); // Keep the order of modifications.
+    }
     if(storage == null && ids.size() > 0) {
       preprocess();
     }
@@ -153,15 +195,88 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
 
   @Override
   public boolean delete(DBIDRef id) {
+    if(accumulateKNNUpdates) {
+      // Objects inserted and deleted within one batch cancel out.
+      if(!pendingInsertions || pending == null || !pending.remove(id)) {
+        accumulate(id, false);
+      }
+      return true;
+    }
     objectsRemoved(DBIDUtil.deref(id));
     return true;
   }
 
   @Override
   public void deleteAll(DBIDs ids) {
+    if(accumulateKNNUpdates) {
+      processPending(); // Keep the order of modifications.
+    }
     objectsRemoved(ids);
   }
 
+  /**
+   * Collects successive insertions or deletions, instead of updating the
+   * materialized neighborhoods for every single object. The accumulated
+   * objects are processed as one batch, with a single change event, when
+   * {@link #flushKNNUpdates()} is called or the type of modification changes.
+   * <p>
+   * Until then, the neighborhoods of the affected objects are not up to date.
+   *
+   * @see #flushKNNUpdates()
+   */
+  public void accumulateKNNUpdates() {
+    this.accumulateKNNUpdates = true;
+  }
+
+  /**
+   * Processes all insertions or deletions collected since
+   * {@link #accumulateKNNUpdates()} was called, and returns to updating the
+   * neighborhoods for every single object.
+   *
+   * @see #accumulateKNNUpdates()
+   */
+  public void flushKNNUpdates() {
+    accumulateKNNUpdates = false;
+    processPending();
+  }
+
+  /**
+   * Add an object to the accumulated batch.
+   *
+   * @param id Object inserted or deleted
+   * @param insertion {@code true} for insertions
+   */
+  private void accumulate(DBIDRef id, boolean insertion) {
+    if(pending != null && pendingInsertions != insertion) {
+      processPending();
+    }
+    if(pending == null) {
+      pending = DBIDUtil.newHashSet();
+      pendingInsertions = insertion;
+    }
+    pending.add(id);
+  }
+
+  /**
+   * Process the accumulated batch, if any.
+   */
+  private void processPending() {
+    if(pending == null) {
+      return;
+    }
+    DBIDs ids = pending;
+    pending = null;
+    if(ids.isEmpty()) {
+      return;
+    }
+    if(pendingInsertions) {
+      objectsInserted(ids);
+    }
+    else {
+      objectsRemoved(ids);
+    }
+  }
+
   /**
    * Called after new objects have been inserted, updates the materialized
    * neighborhood.
@@ -175,8 +290,10 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     // materialize the new kNNs
     log.beginStep(stepprog, 1, "New insertions ocurred, materialize their new kNNs.");
     // Store in storage
-    for(DBIDIter iter = aids.iter(); iter.valid(); iter.advance()) {
-      storage.put(iter, knnQuery.getKNN(iter, k));
+    DBIDIter iter = aids.iter();
+    for(KNNList knn : BatchKNNSearcher.getKNNForBulkDBIDs(knnQuery, aids, k)) {
+      storage.put(iter, knn);
+      iter.advance();
     }
 
     // update the affected kNNs
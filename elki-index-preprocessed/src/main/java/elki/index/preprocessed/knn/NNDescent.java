@@ -21,6 +21,7 @@
 package elki.index.preprocessed.knn;
 
 import java.util.Random;
+import java.util.function.BiConsumer;
 
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.WritableDataStore;
@@ -77,37 +78,37 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
   /**
    * Log prefix.
    */
-  private String prefix = getClass().getCanonicalName();
+  protected String prefix = getClass().getCanonicalName();
 
   /**
    * Random generator
    */
-  private final RandomFactory rnd;
+  protected final RandomFactory rnd;
 
   /**
    * early termination parameter
    */
-  private double delta = 0.001;
+  protected double delta = 0.001;
 
   /**
    * sample rate
    */
-  private double rho = 1.0;
+  protected double rho = 1.0;
 
   /**
    * maximum number of iterations
    */
-  private int iterations = 100;
+  protected int iterations = 100;
 
   /**
    * Do not use initial neighbors
    */
-  private boolean noInitialNeighbors;
+  protected boolean noInitialNeighbors;
 
   /**
    * store for neighbors
    */
-  private WritableDataStore<KNNHeap> store;
+  protected WritableDataStore<KNNHeap> store;
 
   /**
    * Constructor.
@@ -187,6 +188,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     }
 
     final int size = relation.size();
+    final BiConsumer<DBIDRef, DBIDRef> pair = (a, b) -> addpair(flag, a, b);
     double rate = 0.0;
     int iter = 0;
 
@@ -215,7 +217,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
         HashSetModifiableDBIDs oldRev = oldReverseNeighbors.get(iditer);
         oldRev.removeDBIDs(oldNeighbors);
         boundSize(oldRev, items);
-        counter += processNewNeighbors(flag, sampleNew, oldNeighbors, newRev, oldRev);
+        counter += processNewNeighbors(sampleNew, oldNeighbors, newRev, oldRev, pair);
       }
       counter_all += counter;
       if(LOG.isStatistics()) {
@@ -272,7 +274,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * @param ids Ids to process
    * @param sets Sets to clear
    */
-  private void clearAll(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sets) {
+  protected void clearAll(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sets) {
     for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
       sets.get(it).clear();
     }
@@ -284,7 +286,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * @param set Set to process
    * @param items Maximum size
    */
-  private void boundSize(HashSetModifiableDBIDs set, int items) {
+  protected void boundSize(HashSetModifiableDBIDs set, int items) {
     if(set.size() > items) {
       DBIDs sample = DBIDUtil.randomSample(set, items, rnd);
       set.clear().addDBIDs(sample);
@@ -297,14 +299,14 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * This is a complex join, because we do not need to join old neighbors with
    * old neighbors, and we have forward- and reverse neighbors each.
    *
-   * @param flag Flags to mark new neighbors.
    * @param newFwd New forward neighbors
    * @param oldFwd Old forward neighbors
    * @param newRev New reverse neighbors
    * @param oldRev Old reverse neighbors
-   * @return Number of new neighbors
+   * @param pair Consumer for each candidate pair
+   * @return Number of pairs
    */
-  private int processNewNeighbors(WritableDataStore<HashSetModifiableDBIDs> flag, HashSetModifiableDBIDs newFwd, HashSetModifiableDBIDs oldFwd, HashSetModifiableDBIDs newRev, HashSetModifiableDBIDs oldRev) {
+  protected static int processNewNeighbors(HashSetModifiableDBIDs newFwd, HashSetModifiableDBIDs oldFwd, HashSetModifiableDBIDs newRev, HashSetModifiableDBIDs oldRev, BiConsumer<DBIDRef, DBIDRef> pair) {
     int counter = 0;
     // nn_new
     if(!newFwd.isEmpty()) {
@@ -312,7 +314,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
         // nn_new X nn_new
         for(DBIDIter niter2 = newFwd.iter(); niter2.valid(); niter2.advance()) {
           if(DBIDUtil.compare(sniter, niter2) < 0) { // Only x < y.
-            addpair(flag, sniter, niter2);
+            pair.accept(sniter, niter2);
             counter++;
           }
         }
@@ -321,7 +323,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
           if(DBIDUtil.equal(sniter, niter2)) {
             continue;
           }
-          addpair(flag, sniter, niter2);
+          pair.accept(sniter, niter2);
           counter++;
         }
       }
@@ -332,7 +334,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
         // rnn_new X rnn_new
         for(DBIDIter niter2 = newRev.iter(); niter2.valid(); niter2.advance()) {
           if(DBIDUtil.compare(nriter, niter2) < 0) { // Only x < y
-            addpair(flag, nriter, niter2);
+            pair.accept(nriter, niter2);
             counter++;
           }
         }
@@ -341,7 +343,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
           if(DBIDUtil.equal(nriter, niter2)) {
             continue;
           }
-          addpair(flag, nriter, niter2);
+          pair.accept(nriter, niter2);
           counter++;
         }
       }
@@ -353,14 +355,14 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
         // nn_new X rnn_old
         for(DBIDIter niter2 = oldRev.iter(); niter2.valid(); niter2.advance()) {
           if(!DBIDUtil.equal(sniter2, niter2)) {
-            addpair(flag, sniter2, niter2);
+            pair.accept(sniter2, niter2);
             counter++;
           }
         }
         // nn_new X rnn_new
         for(DBIDIter niter2 = newRev.iter(); niter2.valid(); niter2.advance()) {
           if(DBIDUtil.compare(sniter2, niter2) < 0) {
-            addpair(flag, sniter2, niter2);
+            pair.accept(sniter2, niter2);
             counter++;
           }
         }
@@ -374,7 +376,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
           if(DBIDUtil.equal(niter, niter2)) {
             continue;
           }
-          addpair(flag, niter, niter2);
+          pair.accept(niter, niter2);
           counter++;
         }
       }
@@ -418,7 +420,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * @param items Number of items to collect
    * @return Number of new neighbors
    */
-  private int sampleNew(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors, WritableDataStore<HashSetModifiableDBIDs> newNeighborHash, int items) {
+  protected int sampleNew(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors, WritableDataStore<HashSetModifiableDBIDs> newNeighborHash, int items) {
     int t = 0;
     for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
       KNNHeap realNeighbors = store.get(iditer);
@@ -445,7 +447,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * @param newReverseNeighbors new reverse neighbors
    * @param oldReverseNeighbors old reverse neighbors
    */
-  private void reverse(WritableDataStore<HashSetModifiableDBIDs> sampleNewHash, WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors, WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors) {
+  protected void reverse(WritableDataStore<HashSetModifiableDBIDs> sampleNewHash, WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors, WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors) {
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
       KNNHeap heap = store.get(iditer);
       HashSetDBIDs newNeighbors = sampleNewHash.get(iditer);
@@ -477,27 +479,27 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     /**
      * Random generator
      */
-    private final RandomFactory rnd;
+    protected final RandomFactory rnd;
 
     /**
      * early termination parameter
      */
-    private final double delta;
+    protected final double delta;
 
     /**
      * sample rate
      */
-    private final double rho;
+    protected final double rho;
 
     /**
      * set initial neighbors?
      */
-    private final boolean noInitialNeighbors;
+    protected final boolean noInitialNeighbors;
 
     /**
      * maximum number of iterations
      */
-    private final int iterations;
+    protected final int iterations;
 
     /**
      * Constructor.
@@ -562,27 +564,27 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
       /**
        * Random generator
        */
-      private RandomFactory rnd;
+      protected RandomFactory rnd;
 
       /**
        * early termination parameter
        */
-      private double delta;
+      protected double delta;
 
       /**
        * sample rate
        */
-      private double rho;
+      protected double rho;
 
       /**
        * No initial neighbors
        */
-      private boolean noInitialNeighbors;
+      protected boolean noInitialNeighbors;
 
       /**
        * maximum number of iterations
        */
-      private int iterations;
+      protected int iterations;
 
       @Override
       public void configure(Parameterization config) {
@@ -0,0 +1,638 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.preprocessed.knn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.IndefiniteProgress;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import elki.utilities.random.RandomFactory;
+
+import it.unimi.dsi.fastutil.ints.IntComparator;
+
+/**
+ * Parallel version of NN-descent.
+ * <p>
+ * The objects are processed in blocks of fixed size. For each block, the
+ * neighbor sets are sampled sequentially; the local joins (and thus the
+ * distance computations) are then run in parallel. Instead of updating the
+ * shared {@link KNNHeap}s directly, each thread collects candidate updates,
+ * which are then grouped by target object and applied in parallel, one target
+ * object per task, in the order of distance and candidate. Because neither the sampling nor
+ * the order of heap updates depends on thread scheduling, the result is
+ * deterministic for a fixed random seed, independent of the number of threads.
+ * <p>
+ * Candidates farther than the current k-distance of the target (as of the
+ * beginning of the block) cannot enter the heap, and are discarded before
+ * buffering, as are candidates already in the heap. This keeps the buffers
+ * small after the first iteration.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelNNDescent<O> extends NNDescent<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNNDescent.class);
+
+  /**
+   * Number of objects to join before applying the heap updates.
+   */
+  private static final int BLOCKSIZE = 4096;
+
+  /**
+   * Array of all objects.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Offsets of the objects in the array.
+   */
+  private WritableIntegerDataStore offsets;
+
+  /**
+   * k-distances of the heaps, for pruning candidates.
+   */
+  private double[] kdists;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distance distance function
+   * @param k k
+   * @param rnd Random generator
+   * @param delta Delta threshold
+   * @param rho Rho threshold
+   * @param noInitialNeighbors Do not use initial neighbors
+   * @param iterations Maximum number of iterations
+   */
+  public ParallelNNDescent(Relation<O> relation, Distance<? super O> distance, int k, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+    super(relation, distance, k, rnd, delta, rho, noInitialNeighbors, iterations);
+  }
+
+  @Override
+  protected void preprocess() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final long starttime = System.currentTimeMillis();
+    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("KNNGraph iteration", LOG) : null;
+
+    // to add query point itself in the end, internally (k-1) is used
+    final int internal_k = k - 1;
+
+    // kNN store
+    store = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNHeap.class);
+    // store for new reverse neighbors
+    WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
+    // store for old reverse neighbors
+    WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
+    // Sample of new forward neighbors.
+    WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
+    // data structures for new and sampled new neighbors
+    WritableDataStore<HashSetModifiableDBIDs> flag = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
+    offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    kdists = new double[size];
+    Arrays.fill(kdists, Double.POSITIVE_INFINITY);
+
+    // this variable is the sampling size
+    final int items = (int) Math.ceil(rho * internal_k);
+
+    // Initialize data structures, sequentially for reproducible sampling:
+    Random rand = rnd.getSingleThreadedRandom();
+    for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      offsets.putInt(iditer, iditer.getOffset());
+      store.put(iditer, DBIDUtil.newHeap(internal_k));
+      oldReverseNeighbors.put(iditer, DBIDUtil.newHashSet(internal_k));
+      sampleNewNeighbors.put(iditer, DBIDUtil.newHashSet(DBIDUtil.randomSampleExcept(ids, iditer, items, rand)));
+      newReverseNeighbors.put(iditer, DBIDUtil.newHashSet(DBIDUtil.randomSampleExcept(ids, iditer, items, rand)));
+      flag.put(iditer, DBIDUtil.newHashSet());
+    }
+    long counter_all = 0;
+    // initialize store (each thread only modifies the heaps of its objects)
+    if(!noInitialNeighbors) {
+      ParallelExecutor.run(ids, new InitialProcessor(sampleNewNeighbors, flag));
+      for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        kdists[iditer.getOffset()] = store.get(iditer).getKNNDistance();
+        counter_all += sampleNewNeighbors.get(iditer).size();
+      }
+    }
+
+    // Old forward neighbors of the current block
+    HashSetModifiableDBIDs[] oldFwd = new HashSetModifiableDBIDs[Math.min(BLOCKSIZE, size)];
+    // Group of each target object in the current block, -1 if none
+    int[] groups = new int[size];
+    Arrays.fill(groups, -1);
+    double rate = 0.0;
+    int iter = 0;
+    for(; iter < iterations; iter++) {
+      long counter = 0;
+      for(int start = 0; start < size; start += BLOCKSIZE) {
+        final ArrayDBIDs block = ids.slice(start, Math.min(start + BLOCKSIZE, size));
+        // determine new and old neighbors, sequentially for reproducibility
+        for(DBIDIter iditer = block.iter(); iditer.valid(); iditer.advance()) {
+          HashSetModifiableDBIDs newNeighbors = flag.get(iditer);
+          HashSetModifiableDBIDs oldNeighbors = DBIDUtil.newHashSet();
+          for(DoubleDBIDIter heapiter = store.get(iditer).unorderedIterator(); heapiter.valid(); heapiter.advance()) {
+            if(!newNeighbors.contains(heapiter)) {
+              oldNeighbors.add(heapiter);
+            }
+          }
+          oldFwd[offsets.intValue(iditer) - start] = oldNeighbors;
+
+          HashSetModifiableDBIDs newRev = newReverseNeighbors.get(iditer);
+          newRev.removeDBIDs(sampleNewNeighbors.get(iditer));
+          boundSize(newRev, items);
+
+          HashSetModifiableDBIDs oldRev = oldReverseNeighbors.get(iditer);
+          oldRev.removeDBIDs(oldNeighbors);
+          boundSize(oldRev, items);
+        }
+        // Local joins, in parallel
+        JoinProcessor join = new JoinProcessor(start, oldFwd, sampleNewNeighbors, newReverseNeighbors, oldReverseNeighbors);
+        ParallelExecutor.run(block, join);
+        counter += join.counter;
+        // Apply the updates, in parallel by target object
+        ArrayDBIDs targets = join.groupUpdates(groups);
+        ParallelExecutor.run(targets, new UpdateProcessor(join, groups, flag));
+      }
+      counter_all += counter;
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", counter_all * .5 / (size * (size - 1L))));
+      }
+
+      // t is the number of new neighbors
+      int t = sampleNew(ids, sampleNewNeighbors, flag, items);
+
+      // calculate old and new reverse neighbors
+      clearAll(ids, newReverseNeighbors);
+      clearAll(ids, oldReverseNeighbors);
+      reverse(sampleNewNeighbors, newReverseNeighbors, oldReverseNeighbors);
+
+      rate = (double) t / (double) (internal_k * size);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + ".update-rate", rate));
+      }
+      if(counter < delta * internal_k * size) {
+        LOG.verbose("KNNGraph terminated because we performaned delta*k*size distance computations.");
+        break;
+      }
+      if(rate < delta) {
+        LOG.verbose("KNNGraph terminated because update rate got smaller than delta.");
+        break;
+      }
+      LOG.incrementProcessed(progress);
+    }
+    if(LOG.isVerbose() && iter == iterations) {
+      LOG.verbose("KNNGraph terminated because the maximum number of iterations was reached.");
+    }
+    LOG.setCompleted(progress);
+    // convert store to storage
+    storage = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_DB, KNNList.class);
+    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      KNNHeap tempHeap = DBIDUtil.newHeap(k);
+      // Add query point and convert heap to list:
+      KNNHeap heap = store.get(iditer);
+      tempHeap.insert(0, iditer);
+      for(DoubleDBIDIter heapiter = heap.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
+        tempHeap.insert(heapiter.doubleValue(), heapiter);
+      }
+      storage.put(iditer, tempHeap.toKNNList());
+    }
+    store.destroy();
+    offsets.destroy();
+    ids = null;
+    kdists = null;
+    final long end = System.currentTimeMillis();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", end - starttime));
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Processor to initialize the heaps with the sampled neighbors.
+   *
+   * @author Erich Schubert
+   */
+  private class InitialProcessor implements Processor {
+    /**
+     * Sampled neighbors.
+     */
+    private WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors;
+
+    /**
+     * Flags for new neighbors.
+     */
+    private WritableDataStore<HashSetModifiableDBIDs> flag;
+
+    /**
+     * Constructor.
+     *
+     * @param sampleNewNeighbors Sampled neighbors
+     * @param flag Flags for new neighbors
+     */
+    InitialProcessor(WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors, WritableDataStore<HashSetModifiableDBIDs> flag) {
+      this.sampleNewNeighbors = sampleNewNeighbors;
+      this.flag = flag;
+    }
+
+    @Override
+    public Processor.Instance instantiate(Executor executor) {
+      return id -> {
+        KNNHeap heap = store.get(id);
+        HashSetModifiableDBIDs flags = flag.get(id);
+        for(DBIDIter siter = sampleNewNeighbors.get(id).iter(); siter.valid(); siter.advance()) {
+          final double d = distanceQuery.distance(id, siter);
+          if(d <= heap.insert(d, siter)) {
+            flags.add(siter);
+          }
+        }
+      };
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Processor for the local joins of a block, collecting candidate updates.
+   *
+   * @author Erich Schubert
+   */
+  private class JoinProcessor implements Processor {
+    /**
+     * Offset of the block.
+     */
+    private int start;
+
+    /**
+     * Old forward neighbors of the block.
+     */
+    private HashSetModifiableDBIDs[] oldFwd;
+
+    /**
+     * Neighbor sets.
+     */
+    private WritableDataStore<HashSetModifiableDBIDs> newFwd, newRev, oldRev;
+
+    /**
+     * Number of distance computations.
+     */
+    long counter;
+
+    /**
+     * Buffers of all threads.
+     */
+    private List<JoinInstance> buffers = new ArrayList<>();
+
+    /**
+     * Merged updates: target offset, candidate offset, and distance.
+     */
+    int[] targets, candidates;
+
+    /**
+     * Merged update distances.
+     */
+    double[] dists;
+
+    /**
+     * Update order, grouped by target.
+     */
+    int[] order;
+
+    /**
+     * Start of each group in the update order.
+     */
+    int[] groupStart;
+
+    /**
+     * Constructor.
+     *
+     * @param start Offset of the block
+     * @param oldFwd Old forward neighbors of the block
+     * @param newFwd New forward neighbors
+     * @param newRev New reverse neighbors
+     * @param oldRev Old reverse neighbors
+     */
+    JoinProcessor(int start, HashSetModifiableDBIDs[] oldFwd, WritableDataStore<HashSetModifiableDBIDs> newFwd, WritableDataStore<HashSetModifiableDBIDs> newRev, WritableDataStore<HashSetModifiableDBIDs> oldRev) {
+      this.start = start;
+      this.oldFwd = oldFwd;
+      this.newFwd = newFwd;
+      this.newRev = newRev;
+      this.oldRev = oldRev;
+    }
+
+    @Override
+    public JoinInstance instantiate(Executor executor) {
+      return new JoinInstance(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Safe cast: all instances were created by instantiate.
+      final JoinInstance buf = (JoinInstance) inst;
+      synchronized(this) {
+        counter += buf.counter;
+        buffers.add(buf);
+      }
+    }
+
+    /**
+     * Merge the updates of all threads, and group them by target object.
+     *
+     * @param groups Output: group number of each target object
+     * @return Distinct targets
+     */
+    ArrayDBIDs groupUpdates(int[] groups) {
+      int total = 0;
+      for(JoinInstance buf : buffers) {
+        total += buf.size;
+      }
+      targets = new int[total];
+      candidates = new int[total];
+      dists = new double[total];
+      int pos = 0;
+      for(JoinInstance buf : buffers) {
+        System.arraycopy(buf.targets, 0, targets, pos, buf.size);
+        System.arraycopy(buf.candidates, 0, candidates, pos, buf.size);
+        System.arraycopy(buf.dists, 0, dists, pos, buf.size);
+        pos += buf.size;
+      }
+      buffers = null;
+      // Counting sort by target; the order of the groups is irrelevant.
+      ArrayModifiableDBIDs distinct = DBIDUtil.newArray();
+      DBIDArrayIter it = ids.iter();
+      int[] starts = new int[Math.min(total, ids.size()) + 1];
+      int ngroups = 0;
+      for(int i = 0; i < total; i++) {
+        final int t = targets[i];
+        if(groups[t] < 0) {
+          groups[t] = ngroups++;
+          distinct.add(it.seek(t));
+        }
+        starts[groups[t] + 1]++;
+      }
+      for(int g = 0; g < ngroups; g++) {
+        starts[g + 1] += starts[g];
+      }
+      groupStart = Arrays.copyOf(starts, ngroups + 1);
+      order = new int[total];
+      for(int i = 0; i < total; i++) {
+        order[starts[groups[targets[i]]]++] = i;
+      }
+      return distinct;
+    }
+  }
+
+  /**
+   * Thread-local buffer of candidate updates.
+   *
+   * @author Erich Schubert
+   */
+  private class JoinInstance implements Processor.Instance {
+    /**
+     * Join processor.
+     */
+    private JoinProcessor parent;
+
+    /**
+     * Target and candidate offsets.
+     */
+    int[] targets = new int[1024], candidates = new int[1024];
+
+    /**
+     * Candidate distances.
+     */
+    double[] dists = new double[1024];
+
+    /**
+     * Number of buffered updates.
+     */
+    int size;
+
+    /**
+     * Number of distance computations.
+     */
+    long counter;
+
+    /**
+     * Consumer of candidate pairs.
+     */
+    private final BiConsumer<DBIDRef, DBIDRef> pair = this::join;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Join processor
+     */
+    JoinInstance(JoinProcessor parent) {
+      this.parent = parent;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      counter += processNewNeighbors(parent.newFwd.get(id), parent.oldFwd[offsets.intValue(id) - parent.start], //
+          parent.newRev.get(id), parent.oldRev.get(id), pair);
+    }
+
+    /**
+     * Compute the distance of a pair, and buffer the updates.
+     *
+     * @param a First object
+     * @param b Second object
+     */
+    private void join(DBIDRef a, DBIDRef b) {
+      final double d = distanceQuery.distance(a, b);
+      final int oa = offsets.intValue(a), ob = offsets.intValue(b);
+      // The heaps are not modified during the join, and can be read safely
+      if(d <= kdists[oa] && !store.get(a).contains(b)) {
+        add(oa, ob, d);
+      }
+      if(d <= kdists[ob] && !store.get(b).contains(a)) {
+        add(ob, oa, d);
+      }
+    }
+
+    /**
+     * Buffer an update.
+     *
+     * @param target Target offset
+     * @param candidate Candidate offset
+     * @param d Distance
+     */
+    private void add(int target, int candidate, double d) {
+      if(size == targets.length) {
+        final int newsize = targets.length << 1;
+        targets = Arrays.copyOf(targets, newsize);
+        candidates = Arrays.copyOf(candidates, newsize);
+        dists = Arrays.copyOf(dists, newsize);
+      }
+      targets[size] = target;
+      candidates[size] = candidate;
+      dists[size++] = d;
+    }
+  }
+
+  /**
+   * Processor to apply the sorted updates, one target object at a time.
+   *
+   * @author Erich Schubert
+   */
+  private class UpdateProcessor implements Processor {
+    /**
+     * Join with the sorted updates.
+     */
+    private JoinProcessor join;
+
+    /**
+     * Group number of each target.
+     */
+    private int[] groups;
+
+    /**
+     * Flags for new neighbors.
+     */
+    private WritableDataStore<HashSetModifiableDBIDs> flag;
+
+    /**
+     * Constructor.
+     *
+     * @param join Join with the sorted updates
+     * @param groups Group number of each target
+     * @param flag Flags for new neighbors
+     */
+    UpdateProcessor(JoinProcessor join, int[] groups, WritableDataStore<HashSetModifiableDBIDs> flag) {
+      this.join = join;
+      this.groups = groups;
+      this.flag = flag;
+    }
+
+    @Override
+    public Processor.Instance instantiate(Executor executor) {
+      final DBIDArrayIter cand = ids.iter();
+      final int[] order = join.order, groupStart = join.groupStart, candidates = join.candidates;
+      final double[] dists = join.dists;
+      // Canonical order of updates, independent of the thread scheduling
+      final IntComparator comp = (a, b) -> {
+        final int c = Double.compare(dists[a], dists[b]);
+        return c != 0 ? c : Integer.compare(candidates[a], candidates[b]);
+      };
+      return id -> {
+        final int t = offsets.intValue(id), g = groups[t];
+        final int begin = groupStart[g], end = groupStart[g + 1];
+        IntegerArrayQuickSort.sort(order, begin, end, comp);
+        KNNHeap heap = store.get(id);
+        HashSetModifiableDBIDs flags = flag.get(id);
+        for(int i = begin; i < end; i++) {
+          final int j = order[i];
+          cand.seek(candidates[j]);
+          if(heap.contains(cand)) {
+            continue;
+          }
+          final double d = dists[j];
+          if(d <= heap.insert(d, cand)) {
+            flags.add(cand);
+          }
+        }
+        kdists[t] = heap.getKNNDistance();
+        groups[t] = -1;
+      };
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends NNDescent.Factory<O> {
+    /**
+     * Constructor.
+     *
+     * @param k K
+     * @param distance distance function
+     * @param rnd Random generator
+     * @param delta Delta threshold
+     * @param rho Rho threshold
+     * @param noInitialNeighbors Do not use initial neighbors
+     * @param iterations Maximum number of iterations
+     */
+    public Factory(int k, Distance<? super O> distance, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+      super(k, distance, rnd, delta, rho, noInitialNeighbors, iterations);
+    }
+
+    @Override
+    public ParallelNNDescent<O> instantiate(Relation<O> relation) {
+      return new ParallelNNDescent<>(relation, distance, k, rnd, delta, rho, noInitialNeighbors, iterations);
+    }
+
+    /**
+     * Parameterization class
+     *
+     * @author Erich Schubert
+     *
+     * @hidden
+     *
+     * @param <O> Object type
+     */
+    public static class Par<O> extends NNDescent.Factory.Par<O> {
+      @Override
+      public ParallelNNDescent.Factory<O> make() {
+        return new ParallelNNDescent.Factory<>(k, distance, rnd, delta, rho, noInitialNeighbors, iterations);
+      }
+    }
+  }
+}
@@ -20,23 +20,43 @@
  */
 package elki.index.distancematrix;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import elki.algorithm.AbstractSimpleAlgorithmTest;
 import elki.data.DoubleVector;
+import elki.data.NumberVector;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
 import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRange;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
 import elki.database.relation.Relation;
 import elki.distance.CosineDistance;
+import elki.distance.Distance;
 import elki.distance.minkowski.EuclideanDistance;
 import elki.index.AbstractIndexStructureTest;
+import elki.result.Metadata;
 import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.iterator.It;
 import elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -88,4 +108,144 @@ public class PrecomputedDistanceMatrixTest extends AbstractIndexStructureTest {
         .with(PrecomputedDistanceMatrix.Factory.Par.DISTANCE_ID, CosineDistance.class).build();
     assertExactCosine(factory, PrecomputedDistanceMatrix.PrecomputedKNNQuery.class, PrecomputedDistanceMatrix.PrecomputedRangeQuery.class, true);
   }
+
+  @Test
+  public void testOnDisk() {
+    DestroyingFactory<NumberVector> factory = new DestroyingFactory<>(EuclideanDistance.STATIC, false, 0);
+    try {
+      assertExactEuclidean(factory, PrecomputedDistanceMatrix.PrecomputedKNNQuery.class, PrecomputedDistanceMatrix.PrecomputedRangeQuery.class, true);
+      assertPrioritySearchEuclidean(factory, PrecomputedDistanceMatrix.PrecomputedDistancePrioritySearcher.class, true);
+      assertSinglePoint(factory, PrecomputedDistanceMatrix.PrecomputedKNNQuery.class, PrecomputedDistanceMatrix.PrecomputedRangeQuery.class);
+    }
+    finally {
+      factory.destroy();
+    }
+  }
+
+  @Test
+  public void testDestroy() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    PrecomputedDistanceMatrix<DoubleVector> idx = new PrecomputedDistanceMatrix<>(relation, (DBIDRange) relation.getDBIDs(), EuclideanDistance.STATIC, false, 0);
+    idx.initialize();
+    assertDestroyed(idx, true);
+  }
+
+  @Test
+  public void testSinglePrecision() {
+    assertSinglePrecision(new ListParameterization(), false);
+    assertSinglePrecision(new ListParameterization().addParameter(PrecomputedDistanceMatrix.Factory.Par.MEMORY_ID, 0), true);
+  }
+
+  /**
+   * Compare the single precision matrix to the exact distances.
+   *
+   * @param params Additional parameters
+   * @param ondisk Matrix is expected to be stored on disk
+   */
+  private void assertSinglePrecision(ListParameterization params, boolean ondisk) {
+    params.addParameter(StaticArrayDatabase.Par.INDEX_ID, PrecomputedDistanceMatrix.Factory.class) //
+        .addParameter(PrecomputedDistanceMatrix.Factory.Par.DISTANCE_ID, EuclideanDistance.class) //
+        .addFlag(PrecomputedDistanceMatrix.Factory.Par.FLOAT_ID);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, params);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().distanceQuery();
+    KNNSearcher<DBIDRef> knnq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).cheapOnly().kNNByDBID(10);
+    assertTrue("Matrix not used.", dq instanceof PrecomputedDistanceMatrix.PrecomputedDistanceQuery);
+    assertTrue("Matrix not used.", knnq instanceof PrecomputedDistanceMatrix.PrecomputedKNNQuery);
+    It<PrecomputedDistanceMatrix<?>> idx = Metadata.hierarchyOf(relation).iterChildren().filter(PrecomputedDistanceMatrix.class);
+    try {
+      assertSinglePrecision(relation, dq, knnq);
+    }
+    finally {
+      assertDestroyed(idx.get(), ondisk);
+    }
+  }
+
+  /**
+   * Compare the single precision matrix to the exact distances.
+   *
+   * @param relation Data relation
+   * @param dq Distance query
+   * @param knnq kNN query
+   */
+  private void assertSinglePrecision(Relation<DoubleVector> relation, DistanceQuery<DoubleVector> dq, KNNSearcher<DBIDRef> knnq) {
+    for(DBIDIter x = relation.iterDBIDs(); x.valid(); x.advance()) {
+      for(DBIDIter y = relation.iterDBIDs(); y.valid(); y.advance()) {
+        final double exact = EuclideanDistance.STATIC.distance(relation.get(x), relation.get(y));
+        assertEquals("Distance does not match.", exact, dq.distance(x, y), 1e-7);
+      }
+      KNNList knn = knnq.getKNN(x, 10);
+      assertEquals("Wrong number of neighbors.", 10, knn.size());
+      assertTrue("Query point not first.", DBIDUtil.equal(knn.iter(), x));
+      for(DoubleDBIDListIter it = knn.iter(); it.valid(); it.advance()) {
+        assertEquals("Distance does not match.", EuclideanDistance.STATIC.distance(relation.get(x), relation.get(it)), it.doubleValue(), 1e-7);
+      }
+    }
+  }
+
+  /**
+   * Destroy a matrix, and check that its file has been deleted.
+   *
+   * @param idx Distance matrix
+   * @param ondisk Matrix is expected to be stored on disk
+   */
+  private static void assertDestroyed(PrecomputedDistanceMatrix<?> idx, boolean ondisk) {
+    final Path file = idx.getFile();
+    idx.destroy();
+    if(ondisk) {
+      assertNotNull("Matrix not stored on disk.", file);
+      assertFalse("Matrix file not deleted.", Files.exists(file));
+    }
+    else {
+      assertNull("Matrix stored on disk.", file);
+    }
+  }
+
+  /**
+   * Factory that destroys all its matrixes at the end of a test.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class DestroyingFactory<O> extends PrecomputedDistanceMatrix.Factory<O> {
+    /**
+     * Matrixes created.
+     */
+    private List<PrecomputedDistanceMatrix<O>> created = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param singlePrecision Store distances with single precision only
+     * @param maxmemory Memory budget in bytes
+     */
+    public DestroyingFactory(Distance<? super O> distance, boolean singlePrecision, long maxmemory) {
+      super(distance, singlePrecision, maxmemory);
+    }
+
+    @Override
+    public PrecomputedDistanceMatrix<O> instantiate(Relation<O> relation) {
+      PrecomputedDistanceMatrix<O> idx = super.instantiate(relation);
+      created.add(idx);
+      return idx;
+    }
+
+    /**
+     * Destroy all matrixes, and check that their files have been deleted.
+     */
+    public void destroy() {
+      int ondisk = 0;
+      for(PrecomputedDistanceMatrix<O> idx : created) {
+        // Matrixes of a single object are empty, and always kept in memory.
+        final boolean file = idx.getFile() != null;
+        ondisk += file ? 1 : 0;
+        assertDestroyed(idx, file);
+      }
+      created.clear();
+      assertTrue("No matrix stored on disk.", ondisk > 0);
+    }
+  }
 }
@@ -0,0 +1,127 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.preprocessed.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.knn.LinearScanKNNByDBID;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.parallel.ParallelCore;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the parallel NNDescent.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelNNDescentTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  @Test
+  public void testPreprocessor() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DBIDRef> lin_knn_query = new LinearScanKNNByDBID<>(distanceQuery);
+
+    ParallelNNDescent<DoubleVector> preproc = build(relation, distanceQuery, 4);
+    KNNSearcher<DBIDRef> preproc_knn_query = preproc.kNNByDBID(distanceQuery, k, 34);
+    assertFalse("Preprocessor knn query class incorrect.", preproc_knn_query instanceof LinearScanKNNByDBID);
+    MaterializedKNNPreprocessorTest.testKNNQueries(relation, lin_knn_query, preproc_knn_query, k, 34);
+    MaterializedKNNPreprocessorTest.testKNNQueries(relation, lin_knn_query, preproc_knn_query, k / 2, 10);
+
+    // Same seed, same results:
+    assertSameResults(relation, preproc_knn_query, build(relation, distanceQuery, 4).kNNByDBID(distanceQuery, k, 34));
+    // Independent of the number of threads:
+    assertSameResults(relation, preproc_knn_query, build(relation, distanceQuery, 1).kNNByDBID(distanceQuery, k, 34));
+  }
+
+  /**
+   * Compare the results of two kNN searchers exactly.
+   *
+   * @param relation Data relation
+   * @param first First searcher
+   * @param second Second searcher
+   */
+  private void assertSameResults(Relation<DoubleVector> relation, KNNSearcher<DBIDRef> first, KNNSearcher<DBIDRef> second) {
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList a = first.getKNN(it, k), b = second.getKNN(it, k);
+      assertEquals("Result size differs", a.size(), b.size());
+      for(DoubleDBIDListIter ai = a.iter(), bi = b.iter(); ai.valid(); ai.advance(), bi.advance()) {
+        assertTrue("Neighbor differs", DBIDUtil.equal(ai, bi));
+        assertEquals("Distance differs", ai.doubleValue(), bi.doubleValue(), 0.);
+      }
+    }
+  }
+
+  /**
+   * Build the preprocessor.
+   *
+   * @param relation Data relation
+   * @param distanceQuery Distance query
+   * @param threads Number of threads to use
+   * @return Initialized preprocessor
+   */
+  private ParallelNNDescent<DoubleVector> build(Relation<DoubleVector> relation, DistanceQuery<DoubleVector> distanceQuery, int threads) {
+    ParallelNNDescent<DoubleVector> preproc = new ELKIBuilder<ParallelNNDescent.Factory<DoubleVector>>(ParallelNNDescent.Factory.class) //
+        .with(NNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistance()) //
+        .with(NNDescent.Factory.K_ID, k) //
+        .with(NNDescent.Factory.Par.SEED_ID, 1) //
+        .with(NNDescent.Factory.Par.DELTA_ID, 0.1) //
+        .with(NNDescent.Factory.Par.RHO_ID, 0.5) //
+        .build().instantiate(relation);
+    ParallelCore core = new ParallelCore("test", threads);
+    ParallelCore prev = ParallelCore.setCore(core);
+    try {
+      preproc.initialize();
+    }
+    finally {
+      ParallelCore.setCore(prev);
+      core.shutdown();
+    }
+    return preproc;
+  }
+}
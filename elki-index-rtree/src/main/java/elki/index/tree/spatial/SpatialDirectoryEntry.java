@@ -23,6 +23,7 @@ package elki.index.tree.spatial;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import elki.data.ModifiableHyperBoundingBox;
 import elki.data.spatial.SpatialComparable;
@@ -148,6 +149,41 @@ public class SpatialDirectoryEntry implements DirectoryEntry, SpatialEntry {
     this.mbr.readExternal(in);
   }
 
+  /**
+   * Write the entry to a buffer.
+   *
+   * @param buffer Buffer to write to
+   */
+  public void writeTo(ByteBuffer buffer) {
+    final int dim = mbr.getDimensionality();
+    buffer.putInt(id);
+    buffer.putInt(dim);
+    for(int d = 0; d < dim; d++) {
+      buffer.putDouble(mbr.getMin(d));
+    }
+    for(int d = 0; d < dim; d++) {
+      buffer.putDouble(mbr.getMax(d));
+    }
+  }
+
+  /**
+   * Read the entry from a buffer.
+   *
+   * @param buffer Buffer to read from
+   */
+  public void readFrom(ByteBuffer buffer) {
+    this.id = buffer.getInt();
+    final int dim = buffer.getInt();
+    double[] min = new double[dim], max = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      min[d] = buffer.getDouble();
+    }
+    for(int d = 0; d < dim; d++) {
+      max[d] = buffer.getDouble();
+    }
+    this.mbr = new ModifiableHyperBoundingBox(min, max);
+  }
+
   /**
    * Extend the MBR of this node.
    * 
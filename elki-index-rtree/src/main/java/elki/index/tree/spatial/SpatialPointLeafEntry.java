@@ -23,6 +23,7 @@ package elki.index.tree.spatial;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import elki.data.NumberVector;
 import elki.database.ids.DBID;
@@ -132,6 +133,32 @@ public class SpatialPointLeafEntry implements LeafEntry, SpatialEntry, NumberVec
     }
   }
 
+  /**
+   * Write the entry to a buffer.
+   *
+   * @param buffer Buffer to write to
+   */
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putInt(DBIDUtil.asInteger(id));
+    buffer.putInt(values.length);
+    for(double v : values) {
+      buffer.putDouble(v);
+    }
+  }
+
+  /**
+   * Read the entry from a buffer.
+   *
+   * @param buffer Buffer to read from
+   */
+  public void readFrom(ByteBuffer buffer) {
+    id = DBIDUtil.importInteger(buffer.getInt());
+    values = new double[buffer.getInt()];
+    for(int d = 0; d < values.length; d++) {
+      values[d] = buffer.getDouble();
+    }
+  }
+
   @Override
   public double doubleValue(int dimension) {
     return values[dimension];
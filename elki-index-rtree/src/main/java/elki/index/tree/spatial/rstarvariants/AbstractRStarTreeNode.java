@@ -23,6 +23,7 @@ package elki.index.tree.spatial.rstarvariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import elki.data.HyperBoundingBox;
 import elki.data.ModifiableHyperBoundingBox;
@@ -251,4 +252,48 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
       }
     }
   }
+
+  /**
+   * Writes the node and its entries to the buffer; for subclasses using
+   * {@link elki.persistent.ByteBufferPage}. Only point leaf entries and
+   * spatial directory entries are supported.
+   */
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    super.writeTo(buffer);
+    buffer.putInt(entries.length);
+    for(int i = 0; i < numEntries; i++) {
+      if(isLeaf()) {
+        ((SpatialPointLeafEntry) entries[i]).writeTo(buffer);
+      }
+      else {
+        ((SpatialDirectoryEntry) entries[i]).writeTo(buffer);
+      }
+    }
+  }
+
+  /**
+   * Reads the node and its entries from the buffer.
+   */
+  @Override
+  public void readFrom(ByteBuffer buffer) {
+    super.readFrom(buffer);
+    final int capacity = buffer.getInt();
+    if(isLeaf()) {
+      entries = new SpatialPointLeafEntry[capacity];
+      for(int i = 0; i < numEntries; i++) {
+        SpatialPointLeafEntry s = new SpatialPointLeafEntry();
+        s.readFrom(buffer);
+        entries[i] = s;
+      }
+    }
+    else {
+      entries = new SpatialDirectoryEntry[capacity];
+      for(int i = 0; i < numEntries; i++) {
+        SpatialDirectoryEntry s = new SpatialDirectoryEntry();
+        s.readFrom(buffer);
+        entries[i] = s;
+      }
+    }
+  }
 }
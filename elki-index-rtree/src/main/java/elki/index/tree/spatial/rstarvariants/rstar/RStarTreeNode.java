@@ -22,6 +22,7 @@ package elki.index.tree.spatial.rstarvariants.rstar;
 
 import elki.index.tree.spatial.SpatialEntry;
 import elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import elki.persistent.ByteBufferPage;
 
 /**
  * Represents a node in an R*-Tree.
@@ -29,7 +30,7 @@ import elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
  * @author Elke Achtert
  * @since 0.1
  */
-public class RStarTreeNode extends AbstractRStarTreeNode<RStarTreeNode, SpatialEntry> {
+public class RStarTreeNode extends AbstractRStarTreeNode<RStarTreeNode, SpatialEntry> implements ByteBufferPage {
   private static final long serialVersionUID = 1;
 
   /**
@@ -291,6 +291,67 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     }
   }
 
+  /**
+   * Partition the tree into disjoint blocks of close objects, e.g., for join
+   * processing. Subtrees of at most the given size form a block, and the
+   * singletons of larger nodes are collected into a block of their own.
+   *
+   * @param maxsize Maximum block size
+   * @return Blocks of objects
+   */
+  public List<ArrayDBIDs> getBlocks(int maxsize) {
+    List<ArrayDBIDs> blocks = new ArrayList<>();
+    if(root != null) {
+      ArrayModifiableDBIDs rest = collectBlocks(root, maxsize, blocks);
+      if(!rest.isEmpty()) {
+        blocks.add(rest);
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Collect the blocks of a subtree.
+   *
+   * @param cur Current node
+   * @param maxsize Maximum block size
+   * @param blocks Output blocks
+   * @return Objects not yet assigned to a block
+   */
+  private ArrayModifiableDBIDs collectBlocks(Node cur, int maxsize, List<ArrayDBIDs> blocks) {
+    ArrayModifiableDBIDs own = DBIDUtil.newArray(cur.singletons.size());
+    // The routing object of an inner node is stored in a child, too.
+    DoubleDBIDListIter it = cur.singletons.iter();
+    if(!cur.children.isEmpty()) {
+      it.advance();
+    }
+    for(; it.valid(); it.advance()) {
+      own.add(it);
+    }
+    if(cur.children.isEmpty()) {
+      return own;
+    }
+    List<ArrayModifiableDBIDs> open = new ArrayList<>(cur.children.size());
+    int size = own.size();
+    for(Node chi : cur.children) {
+      ArrayModifiableDBIDs r = collectBlocks(chi, maxsize, blocks);
+      if(!r.isEmpty()) {
+        open.add(r);
+        size += r.size();
+      }
+    }
+    if(size <= maxsize) {
+      for(ArrayModifiableDBIDs r : open) {
+        own.addDBIDs(r);
+      }
+      return own;
+    }
+    for(ArrayModifiableDBIDs r : open) {
+      blocks.add(r);
+    }
+    return own;
+  }
+
   @Override
   public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
     return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
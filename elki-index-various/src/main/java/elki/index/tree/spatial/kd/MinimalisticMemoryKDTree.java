@@ -20,6 +20,9 @@
  */
 package elki.index.tree.spatial.kd;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveTask;
+
 import elki.data.NumberVector;
 import elki.data.VectorUtil;
 import elki.data.VectorUtil.SortDBIDsBySingleDimension;
@@ -41,9 +44,11 @@ import elki.index.DistancePriorityIndex;
 import elki.index.IndexFactory;
 import elki.logging.Logging;
 import elki.logging.statistics.Counter;
+import elki.parallel.ParallelCore;
 import elki.utilities.Alias;
 import elki.utilities.datastructures.heap.ComparableMinHeap;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -67,6 +72,9 @@ import elki.utilities.optionhandling.parameters.IntParameter;
  * thus reducing the number of accesses to the relation substantially. In
  * particular, this reduces construction time.
  * <p>
+ * Large trees are built using fork-join parallelism, as the subtrees are
+ * disjoint ranges of the sorted array.
+ * <p>
  * TODO: add support for weighted Minkowski distances.
  *
  * @author Erich Schubert
@@ -88,6 +96,11 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
    */
   private static final Logging LOG = Logging.getLogger(MinimalisticMemoryKDTree.class);
 
+  /**
+   * Minimum size of a subtree to build with a separate task.
+   */
+  private static final int PARALLEL_CUTOFF = 1 << 14;
+
   /**
    * The representation we are bound to.
    */
@@ -143,14 +156,51 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
   public void initialize() {
     sorted = DBIDUtil.newArray(relation.getDBIDs());
     dims = RelationUtil.dimensionality(relation);
-    final VectorUtil.SortDBIDsBySingleDimension comp;
-    if(objaccess != null) {
-      comp = new CountSortAccesses(objaccess, relation);
+    final int size = sorted.size();
+    long accesses;
+    if(size >= PARALLEL_CUTOFF && size > leafsize) {
+      ParallelCore core = ParallelCore.getCore();
+      core.connect();
+      try {
+        accesses = core.submit(new BuildTask(0, size, 0)).get();
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Building the k-d-tree failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Building the k-d-tree was interrupted.");
+      }
+      finally {
+        core.disconnect();
+      }
     }
     else {
-      comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
+      final VectorUtil.SortDBIDsBySingleDimension comp = newComparator();
+      buildTree(0, size, 0, comp);
+      accesses = getAccesses(comp);
     }
-    buildTree(0, sorted.size(), 0, comp);
+    if(objaccess != null) {
+      objaccess.increment(accesses);
+    }
+  }
+
+  /**
+   * Make a new comparator, counting accesses if statistics are enabled.
+   *
+   * @return Comparator
+   */
+  private SortDBIDsBySingleDimension newComparator() {
+    return objaccess != null ? new CountSortAccesses(relation) : new VectorUtil.SortDBIDsBySingleDimension(relation);
+  }
+
+  /**
+   * Get the number of object accesses of a comparator.
+   *
+   * @param comp Comparator
+   * @return Number of accesses, 0 if not counted
+   */
+  private static long getAccesses(SortDBIDsBySingleDimension comp) {
+    return comp instanceof CountSortAccesses ? ((CountSortAccesses) comp).accesses : 0;
   }
 
   /**
@@ -160,24 +210,22 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
    */
   private static class CountSortAccesses extends VectorUtil.SortDBIDsBySingleDimension {
     /**
-     * Counter for comparisons.
+     * Number of object accesses.
      */
-    final Counter objaccess;
+    long accesses;
 
     /**
      * Constructor.
      *
-     * @param objaccess Object access counter.
      * @param data Data relation
      */
-    public CountSortAccesses(Counter objaccess, Relation<? extends NumberVector> data) {
+    public CountSortAccesses(Relation<? extends NumberVector> data) {
       super(data);
-      this.objaccess = objaccess;
     }
 
     @Override
     public int compare(DBIDRef id1, DBIDRef id2) {
-      objaccess.increment(2);
+      accesses += 2;
       return super.compare(id1, id2);
     }
   }
@@ -207,6 +255,65 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> implements Distanc
     }
   }
 
+  /**
+   * Task to build a subtree, forking a task for the left subtree. The
+   * subtrees are disjoint ranges of the sorted array, and the partitioning is
+   * deterministic, so this yields the same tree as the serial construction.
+   *
+   * @author Erich Schubert
+   */
+  private class BuildTask extends RecursiveTask<Long> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Interval to build.
+     */
+    private final int left, right;
+
+    /**
+     * Current splitting axis.
+     */
+    private final int axis;
+
+    /**
+     * Constructor.
+     *
+     * @param left Interval minimum
+     * @param right Interval maximum
+     * @param axis Current splitting axis
+     */
+    BuildTask(int left, int right, int axis) {
+      this.left = left;
+      this.right = right;
+      this.axis = axis;
+    }
+
+    @Override
+    protected Long compute() {
+      final SortDBIDsBySingleDimension comp = newComparator();
+      if(right - left < PARALLEL_CUTOFF) {
+        buildTree(left, right, axis, comp);
+        return getAccesses(comp);
+      }
+      final int middle = (left + right) >>> 1;
+      comp.setDimension(axis);
+      QuickSelectDBIDs.quickSelect(sorted, comp, left, right, middle);
+      final int next = next(axis);
+      BuildTask lefttask = null;
+      if(left + leafsize < middle) {
+        (lefttask = new BuildTask(left, middle, next)).fork();
+      }
+      long accesses = getAccesses(comp);
+      if(middle + 1 + leafsize < right) {
+        accesses += new BuildTask(middle + 1, right, next).compute();
+      }
+      return lefttask != null ? accesses + lefttask.join() : accesses;
+    }
+  }
+
   /**
    * Next axis.
    *
@@ -20,6 +20,12 @@
  */
 package elki.index.tree.spatial.kd;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveTask;
+
 import elki.data.NumberVector;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
@@ -39,13 +45,16 @@ import elki.index.DistancePriorityIndex;
 import elki.index.IndexFactory;
 import elki.logging.Logging;
 import elki.logging.statistics.Counter;
+import elki.parallel.ParallelCore;
 import elki.utilities.Alias;
 import elki.utilities.datastructures.heap.ComparableMinHeap;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
@@ -58,6 +67,12 @@ import elki.utilities.optionhandling.parameters.IntParameter;
  * it is also considerably faster because it does not need to lookup this value
  * from the vectors.
  * <p>
+ * Large trees are built using fork-join parallelism, as the subtrees are
+ * disjoint ranges of the sorted array. Optionally, the coordinates can be
+ * copied into one contiguous array in tree order, such that the distance
+ * computations in the leaves are sequential memory reads rather than random
+ * accesses to the relation; this needs another {@code n * d} doubles.
+ * <p>
  * Reference:
  * <p>
  * J. L. Bentley<br>
@@ -85,6 +100,11 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    */
   private static final Logging LOG = Logging.getLogger(SmallMemoryKDTree.class);
 
+  /**
+   * Minimum size of a subtree to build with a separate task.
+   */
+  private static final int PARALLEL_CUTOFF = 1 << 14;
+
   /**
    * The representation we are bound to.
    */
@@ -105,6 +125,17 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    */
   protected int leafsize;
 
+  /**
+   * Copy the coordinates into a contiguous array.
+   */
+  protected boolean contiguous;
+
+  /**
+   * Coordinates in tree order, if {@link #contiguous} and within the Java
+   * array size limit, otherwise {@code null}.
+   */
+  protected double[] data = null;
+
   /**
    * Counter for comparisons.
    */
@@ -122,8 +153,20 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    * @param leafsize Maximum size of leaf nodes
    */
   public SmallMemoryKDTree(Relation<O> relation, int leafsize) {
+    this(relation, leafsize, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param leafsize Maximum size of leaf nodes
+   * @param contiguous Copy the coordinates into a contiguous array
+   */
+  public SmallMemoryKDTree(Relation<O> relation, int leafsize, boolean contiguous) {
     this.relation = relation;
     this.leafsize = leafsize;
+    this.contiguous = contiguous;
     assert (leafsize >= 1);
     if(LOG.isStatistics()) {
       String prefix = this.getClass().getName();
@@ -143,7 +186,44 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
       sorted.add(Double.NaN, it);
     }
-    buildTree(0, sorted.size(), 0, sorted.iter());
+    final int size = sorted.size();
+    long accesses;
+    if(size >= PARALLEL_CUTOFF && size > leafsize) {
+      ParallelCore core = ParallelCore.getCore();
+      core.connect();
+      try {
+        accesses = core.submit(new BuildTask(0, size, 0)).get();
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Building the k-d-tree failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Building the k-d-tree was interrupted.");
+      }
+      finally {
+        core.disconnect();
+      }
+    }
+    else {
+      accesses = buildTree(0, size, 0, sorted.iter());
+    }
+    if(contiguous && (long) size * dims > 0x7FFF_FFFAL) {
+      LOG.warning("Coordinates exceed the Java array size limit, not using a contiguous copy.");
+    }
+    else if(contiguous) {
+      data = new double[size * dims];
+      int off = 0;
+      for(DBIDIter it = sorted.iter(); it.valid(); it.advance(), off += dims) {
+        final O vec = relation.get(it);
+        for(int d = 0; d < dims; d++) {
+          data[off + d] = vec.doubleValue(d);
+        }
+      }
+      accesses += size;
+    }
+    if(objaccess != null) {
+      objaccess.increment(accesses);
+    }
   }
 
   /**
@@ -155,26 +235,83 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    * @param right Interval maximum
    * @param axis Current splitting axis
    * @param iter Iterator
+   * @return Number of object accesses
    */
-  private void buildTree(int left, int right, int axis, DoubleDBIDListMIter iter) {
+  private long buildTree(int left, int right, int axis, DoubleDBIDListMIter iter) {
     assert (left < right);
     for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
       iter.setDouble(relation.get(iter).doubleValue(axis));
-      countObjectAccess();
     }
+    long accesses = right - left;
     if(right - left <= leafsize) {
-      return;
+      return accesses;
     }
 
     int middle = (left + right) >>> 1;
     QuickSelectDBIDs.quickSelect(sorted, left, right, middle);
     final int next = next(axis);
     if(left < middle) {
-      buildTree(left, middle, next, iter);
+      accesses += buildTree(left, middle, next, iter);
     }
     ++middle;
     if(middle < right) {
-      buildTree(middle, right, next, iter);
+      accesses += buildTree(middle, right, next, iter);
+    }
+    return accesses;
+  }
+
+  /**
+   * Task to build a subtree, forking a task for the left subtree. The
+   * subtrees are disjoint ranges of the sorted array, and the partitioning is
+   * deterministic, so this yields the same tree as the serial construction.
+   *
+   * @author Erich Schubert
+   */
+  private class BuildTask extends RecursiveTask<Long> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Interval to build.
+     */
+    private final int left, right;
+
+    /**
+     * Current splitting axis.
+     */
+    private final int axis;
+
+    /**
+     * Constructor.
+     *
+     * @param left Interval minimum
+     * @param right Interval maximum
+     * @param axis Current splitting axis
+     */
+    BuildTask(int left, int right, int axis) {
+      this.left = left;
+      this.right = right;
+      this.axis = axis;
+    }
+
+    @Override
+    protected Long compute() {
+      DoubleDBIDListMIter iter = sorted.iter();
+      if(right - left < PARALLEL_CUTOFF || right - left <= leafsize) {
+        return buildTree(left, right, axis, iter);
+      }
+      for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+        iter.setDouble(relation.get(iter).doubleValue(axis));
+      }
+      final int middle = (left + right) >>> 1;
+      QuickSelectDBIDs.quickSelect(sorted, left, right, middle);
+      final int next = next(axis);
+      BuildTask lefttask = new BuildTask(left, middle, next);
+      lefttask.fork();
+      long accesses = right - left + new BuildTask(middle + 1, right, next).compute();
+      return accesses + lefttask.join();
     }
   }
 
@@ -188,6 +325,45 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
     return ++axis == dims ? 0 : axis;
   }
 
+  /**
+   * Partition the tree into disjoint blocks of spatially close objects, e.g.,
+   * for join processing. Blocks are subtrees of at most the given size (or
+   * the leaf size, if larger); the splitting object of an inner node is added
+   * to the block of its right subtree.
+   *
+   * @param maxsize Maximum block size
+   * @return Blocks of objects
+   */
+  public List<ArrayDBIDs> getBlocks(int maxsize) {
+    List<ArrayDBIDs> blocks = new ArrayList<>();
+    if(sorted != null && sorted.size() > 0) {
+      collectBlocks(0, sorted.size(), Math.max(maxsize, leafsize), blocks);
+    }
+    return blocks;
+  }
+
+  /**
+   * Collect the blocks of a subtree.
+   *
+   * @param left Interval minimum
+   * @param right Interval maximum
+   * @param maxsize Maximum block size
+   * @param blocks Output blocks
+   */
+  private void collectBlocks(int left, int right, int maxsize, List<ArrayDBIDs> blocks) {
+    if(right - left <= maxsize) {
+      ArrayModifiableDBIDs block = DBIDUtil.newArray(right - left);
+      for(DBIDArrayIter it = sorted.iter().seek(left); it.getOffset() < right; it.advance()) {
+        block.add(it);
+      }
+      blocks.add(block);
+      return;
+    }
+    final int middle = (left + right) >>> 1;
+    collectBlocks(left, middle, maxsize, blocks);
+    collectBlocks(middle, right, maxsize, blocks);
+  }
+
   @Override
   public void logStatistics() {
     if(objaccess != null) {
@@ -250,24 +426,116 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
   }
 
   /**
-   * kNN query for the k-d-tree.
+   * Common base class of the k-d-tree searchers.
    *
    * @author Erich Schubert
    */
-  public class KDTreeKNNSearcher implements KNNSearcher<O> {
+  public abstract class KDTreeSearcher {
     /**
      * Distance to use.
      */
-    private PrimitiveDistance<? super O> distance;
+    protected PrimitiveDistance<? super O> distance;
+
+    /**
+     * Distance to use on the contiguous coordinates, may be {@code null}.
+     */
+    private PrimitiveDistance<? super NumberVector> dense;
+
+    /**
+     * View of the contiguous coordinates.
+     */
+    private CoordinateView view;
 
     /**
      * Constructor.
      *
      * @param distance Distance to use
      */
-    public KDTreeKNNSearcher(PrimitiveDistance<? super O> distance) {
+    @SuppressWarnings("unchecked")
+    public KDTreeSearcher(PrimitiveDistance<? super O> distance) {
       super();
       this.distance = distance;
+      // Sparse distances expect sparse vectors, and cannot use the copy.
+      if(data != null && !(distance instanceof SparseLPNormDistance)) {
+        this.dense = (PrimitiveDistance<? super NumberVector>) distance;
+        this.view = new CoordinateView();
+      }
+    }
+
+    /**
+     * Compute the distance to the object at the iterator position.
+     *
+     * @param query Query object
+     * @param iter Iterator position
+     * @return Distance
+     */
+    protected double distance(O query, DoubleDBIDListIter iter) {
+      countDistanceComputation();
+      if(dense != null) {
+        return dense.distance(query, view.seek(iter.getOffset()));
+      }
+      countObjectAccess();
+      return distance.distance(query, relation.get(iter));
+    }
+  }
+
+  /**
+   * Vector view of the contiguous coordinate array.
+   *
+   * @author Erich Schubert
+   */
+  private class CoordinateView implements NumberVector {
+    /**
+     * Offset of the current vector.
+     */
+    private int off;
+
+    /**
+     * Move to the vector at the given position in the tree.
+     *
+     * @param pos Position
+     * @return {@code this}
+     */
+    protected CoordinateView seek(int pos) {
+      // Cannot overflow, as the array size was checked on initialization.
+      off = (int) ((long) pos * dims);
+      return this;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dims;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return data[off + dimension];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) data[off + dimension];
+    }
+
+    @Override
+    public double[] toArray() {
+      return Arrays.copyOfRange(data, off, off + dims);
+    }
+  }
+
+  /**
+   * kNN query for the k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreeKNNSearcher extends KDTreeSearcher implements KNNSearcher<O> {
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     */
+    public KDTreeKNNSearcher(PrimitiveDistance<? super O> distance) {
+      super(distance);
     }
 
     @Override
@@ -292,9 +560,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
     private double kdKNNSearch(int left, int right, int axis, O query, KNNHeap knns, DoubleDBIDListIter iter, double maxdist) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
-          double dist = distance.distance(query, relation.get(iter));
-          countObjectAccess();
-          countDistanceComputation();
+          double dist = distance(query, iter);
           if(dist <= maxdist) {
             knns.insert(dist, iter);
           }
@@ -317,10 +583,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
       // Exact match chance (delta == 0)!
       // process first, then descend both sides.
       if(onleft && onright) {
-        O split = relation.get(iter.seek(middle));
-        countObjectAccess();
-        double dist = distance.distance(query, split);
-        countDistanceComputation();
+        double dist = distance(query, iter.seek(middle));
         if(dist <= maxdist) {
           assert (iter.getOffset() == middle);
           knns.insert(dist, iter /* .seek(middle) */);
@@ -341,10 +604,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
           }
           // Look at splitting element (unless already above):
           if(mindist <= maxdist) {
-            O split = relation.get(iter.seek(middle));
-            countObjectAccess();
-            double dist = distance.distance(query, split);
-            countDistanceComputation();
+            double dist = distance(query, iter.seek(middle));
             if(dist <= maxdist) {
               knns.insert(dist, iter);
               maxdist = knns.getKNNDistance();
@@ -360,10 +620,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
           }
           // Look at splitting element (unless already above):
           if(mindist <= maxdist) {
-            O split = relation.get(iter.seek(middle));
-            countObjectAccess();
-            double dist = distance.distance(query, split);
-            countDistanceComputation();
+            double dist = distance(query, iter.seek(middle));
             if(dist <= maxdist) {
               knns.insert(dist, iter);
               maxdist = knns.getKNNDistance();
@@ -383,20 +640,14 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    *
    * @author Erich Schubert
    */
-  public class KDTreeRangeSearcher implements RangeSearcher<O> {
-    /**
-     * Distance to use.
-     */
-    private PrimitiveDistance<? super O> distance;
-
+  public class KDTreeRangeSearcher extends KDTreeSearcher implements RangeSearcher<O> {
     /**
      * Constructor.
      *
      * @param distance Distance to use
      */
     public KDTreeRangeSearcher(PrimitiveDistance<? super O> distance) {
-      super();
-      this.distance = distance;
+      super(distance);
     }
 
     @Override
@@ -419,9 +670,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
     private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DoubleDBIDListIter iter, double radius) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
-          double dist = distance.distance(query, relation.get(iter));
-          countObjectAccess();
-          countDistanceComputation();
+          double dist = distance(query, iter);
           if(dist <= radius) {
             res.add(dist, iter);
           }
@@ -442,10 +691,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
 
       // Current object:
       if(close) {
-        O split = relation.get(iter.seek(middle));
-        countObjectAccess();
-        double dist = distance.distance(query, split);
-        countDistanceComputation();
+        double dist = distance(query, iter.seek(middle));
         if(dist <= radius) {
           assert (iter.getOffset() == middle);
           res.add(dist, iter /* .seek(middle) */);
@@ -512,12 +758,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
    *
    * @author Erich Schubert
    */
-  public class KDTreePrioritySearcher implements PrioritySearcher<O> {
-    /**
-     * Distance to use.
-     */
-    private PrimitiveDistance<? super O> distance;
-
+  public class KDTreePrioritySearcher extends KDTreeSearcher implements PrioritySearcher<O> {
     /**
      * Min heap for searching.
      */
@@ -554,8 +795,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
      * @param distance Distance to use
      */
     public KDTreePrioritySearcher(PrimitiveDistance<? super O> distance) {
-      super();
-      this.distance = distance;
+      super(distance);
     }
 
     @Override
@@ -630,9 +870,7 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
 
     @Override
     public double computeExactDistance() {
-      countDistanceComputation();
-      countObjectAccess();
-      return distance.distance(query, relation.get(iter.seek(pos)));
+      return distance(query, iter.seek(pos));
     }
 
     @Override
@@ -665,6 +903,11 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
      */
     int leafsize;
 
+    /**
+     * Copy the coordinates into a contiguous array.
+     */
+    boolean contiguous;
+
     /**
      * Constructor.
      */
@@ -678,13 +921,24 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
      * @param leafsize Maximum size of leaf nodes.
      */
     public Factory(int leafsize) {
+      this(leafsize, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param leafsize Maximum size of leaf nodes.
+     * @param contiguous Copy the coordinates into a contiguous array
+     */
+    public Factory(int leafsize, boolean contiguous) {
       super();
       this.leafsize = leafsize;
+      this.contiguous = contiguous;
     }
 
     @Override
     public SmallMemoryKDTree<O> instantiate(Relation<O> relation) {
-      return new SmallMemoryKDTree<>(relation, leafsize);
+      return new SmallMemoryKDTree<>(relation, leafsize, contiguous);
     }
 
     @Override
@@ -703,21 +957,32 @@ public class SmallMemoryKDTree<O extends NumberVector> implements DistancePriori
        */
       public static final OptionID LEAFSIZE_P = MinimalisticMemoryKDTree.Factory.Par.LEAFSIZE_P;
 
+      /**
+       * Option to copy the coordinates into a contiguous array in tree order.
+       */
+      public static final OptionID CONTIGUOUS_ID = new OptionID("kd.contiguous", "Copy the coordinates into a contiguous array in tree order, for faster leaf scans at the cost of additional memory.");
+
       /**
        * Maximum size of leaf nodes.
        */
       int leafsize;
 
+      /**
+       * Copy the coordinates into a contiguous array.
+       */
+      boolean contiguous;
+
       @Override
       public void configure(Parameterization config) {
         new IntParameter(LEAFSIZE_P, 1) //
             .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
             .grab(config, x -> leafsize = x);
+        new Flag(CONTIGUOUS_ID).grab(config, x -> contiguous = x);
       }
 
       @Override
       public Factory<O> make() {
-        return new Factory<>(leafsize);
+        return new Factory<>(leafsize, contiguous);
       }
     }
   }
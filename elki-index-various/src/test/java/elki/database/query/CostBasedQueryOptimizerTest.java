@@ -0,0 +1,158 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.KNNList;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.EuclideanDistance;
+
+/**
+ * Unit test for the cost-based query optimizer.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class CostBasedQueryOptimizerTest {
+  @Test
+  public void testIndexChoice() {
+    QueryOptimizer opt = new DistanceCountingOptimizer();
+    // Too small to consider an index.
+    Relation<NumberVector> tiny = randomRelation(100);
+    DistanceQuery<NumberVector> tq = new QueryBuilder<>(tiny, EuclideanDistance.STATIC).distanceQuery();
+    assertNull("Index built for a tiny relation.", opt.kNNByDBID(tiny, tq, 5, QueryBuilder.FLAG_NO_CACHE));
+    // One query per object should pay off an index in two dimensions.
+    Relation<NumberVector> rel = randomRelation(10000);
+    DistanceQuery<NumberVector> dq = new QueryBuilder<>(rel, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DBIDRef> knnq = opt.kNNByDBID(rel, dq, 5, QueryBuilder.FLAG_NO_CACHE);
+    assertNotNull("No index built.", knnq);
+    assertKNN(rel, dq, knnq, 5);
+    // But not a single query.
+    assertNull("Index built for a single query.", opt.withExpectedQueries(1).kNNByDBID(rel, dq, 5, QueryBuilder.FLAG_NO_CACHE));
+  }
+
+  @Test
+  public void testPrecomputed() {
+    QueryOptimizer opt = new DistanceCountingOptimizer().withExpectedQueries(1000000);
+    Relation<NumberVector> rel = randomRelation(1000);
+    DistanceQuery<NumberVector> dq = new QueryBuilder<>(rel, EuclideanDistance.STATIC).distanceQuery();
+    final int flags = QueryBuilder.FLAG_PRECOMPUTE | QueryBuilder.FLAG_NO_CACHE;
+    KNNSearcher<DBIDRef> knnq = opt.kNNByDBID(rel, dq, 5, flags);
+    assertNotNull("No kNN preprocessor built.", knnq);
+    assertEquals("Not precomputed.", "PreprocessorKNNQuery", knnq.getClass().getSimpleName());
+    assertKNN(rel, dq, knnq, 5);
+    // Range queries cannot use the kNN preprocessor, but the distance matrix.
+    RangeSearcher<DBIDRef> rq = opt.rangeByDBID(rel, dq, 0.1, flags);
+    assertNotNull("No distance matrix built.", rq);
+    RangeSearcher<DBIDRef> linq = new QueryBuilder<>(dq).linearOnly().rangeByDBID(0.1);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Result size", linq.getRange(it, 0.1).size(), rq.getRange(it, 0.1).size());
+    }
+  }
+
+  /**
+   * Compare kNN results to a linear scan.
+   *
+   * @param rel Relation
+   * @param dq Distance query
+   * @param knnq kNN searcher to test
+   * @param k Number of neighbors
+   */
+  private static void assertKNN(Relation<NumberVector> rel, DistanceQuery<NumberVector> dq, KNNSearcher<DBIDRef> knnq, int k) {
+    KNNSearcher<DBIDRef> linq = new QueryBuilder<>(dq).linearOnly().kNNByDBID(k);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 100; it.advance(), i++) {
+      KNNList exp = linq.getKNN(it, k), res = knnq.getKNN(it, k);
+      assertEquals("Result size", exp.size(), res.size());
+      assertEquals("kNN distance", exp.getKNNDistance(), res.getKNNDistance(), 1e-15);
+    }
+  }
+
+  /**
+   * Generate a relation of uniform random points in two dimensions.
+   *
+   * @param size Number of points
+   * @return Relation
+   */
+  private static Relation<NumberVector> randomRelation(int size) {
+    Random rnd = new Random(0L);
+    double[][] data = new double[size][2];
+    for(double[] row : data) {
+      row[0] = rnd.nextDouble();
+      row[1] = rnd.nextDouble();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Optimizer using the number of distance computations as cost, so that its
+   * decisions do not depend on the run times.
+   *
+   * @author Erich Schubert
+   */
+  private static class DistanceCountingOptimizer extends CostBasedQueryOptimizer {
+    /**
+     * Constructor.
+     */
+    DistanceCountingOptimizer() {
+      super();
+    }
+
+    /**
+     * Constructor for a declared workload.
+     *
+     * @param other Optimizer to copy
+     * @param expectedQueries Expected number of queries
+     */
+    DistanceCountingOptimizer(DistanceCountingOptimizer other, long expectedQueries) {
+      super(other, expectedQueries);
+    }
+
+    @Override
+    public QueryOptimizer withExpectedQueries(long queries) {
+      return new DistanceCountingOptimizer(this, queries);
+    }
+
+    @Override
+    protected double cost(long nanos, long distances) {
+      return distances;
+    }
+  }
+}
@@ -20,10 +20,28 @@
  */
 package elki.index.tree.spatial.kd;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
 import org.junit.Test;
 
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.knn.LinearScanPrimitiveKNNByObject;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
 import elki.index.AbstractIndexStructureTest;
 import elki.utilities.ELKIBuilder;
 
@@ -41,4 +59,54 @@ public class SmallMemoryKDTreeTest extends AbstractIndexStructureTest {
     assertPrioritySearchEuclidean(factory, SmallMemoryKDTree.KDTreePrioritySearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  @Test
+  public void testContiguous() {
+    SmallMemoryKDTree.Factory<?> factory = new ELKIBuilder<>(SmallMemoryKDTree.Factory.class) //
+        .with(SmallMemoryKDTree.Factory.Par.CONTIGUOUS_ID).build();
+    assertExactEuclidean(factory, SmallMemoryKDTree.KDTreeKNNSearcher.class, SmallMemoryKDTree.KDTreeRangeSearcher.class);
+    assertPrioritySearchEuclidean(factory, SmallMemoryKDTree.KDTreePrioritySearcher.class);
+    assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+  }
+
+  @Test
+  public void testLargeTree() {
+    // Large enough to use the parallel construction.
+    Random rnd = new Random(0L);
+    double[][] data = new double[50000][3];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    for(boolean contiguous : new boolean[] { false, true }) {
+      SmallMemoryKDTree<NumberVector> tree = new SmallMemoryKDTree<>(rel, 4, contiguous);
+      tree.initialize();
+      assertKNN(tree, new PrimitiveDistanceQuery<>(rel, EuclideanDistance.STATIC), rnd);
+      assertKNN(tree, new PrimitiveDistanceQuery<>(rel, ManhattanDistance.STATIC), rnd);
+    }
+  }
+
+  /**
+   * Compare the kNN of random query points to a linear scan.
+   *
+   * @param tree Tree to query
+   * @param dq Distance query
+   * @param rnd Random generator
+   */
+  private static void assertKNN(SmallMemoryKDTree<NumberVector> tree, PrimitiveDistanceQuery<NumberVector> dq, Random rnd) {
+    KNNSearcher<NumberVector> knnq = tree.kNNByObject(dq, 10, 0);
+    LinearScanPrimitiveKNNByObject<NumberVector> lin = new LinearScanPrimitiveKNNByObject<>(dq);
+    for(int i = 0; i < 100; i++) {
+      NumberVector q = DoubleVector.wrap(new double[] { rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() });
+      KNNList expect = lin.getKNN(q, 10), actual = knnq.getKNN(q, 10);
+      assertEquals("Wrong kNN size", expect.size(), actual.size());
+      for(DoubleDBIDListIter e = expect.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+        assertEquals("Wrong kNN distance", e.doubleValue(), a.doubleValue(), 0.);
+      }
+    }
+  }
 }
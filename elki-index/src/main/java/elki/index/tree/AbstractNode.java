@@ -23,14 +23,17 @@ package elki.index.tree;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
 
 import elki.logging.Logging;
 import elki.logging.LoggingConfiguration;
 import elki.persistent.AbstractExternalizablePage;
+import elki.persistent.ReadAheadPage;
 import elki.utilities.datastructures.BitsUtil;
 import elki.utilities.exceptions.AbortException;
 
@@ -43,7 +46,7 @@ import elki.utilities.exceptions.AbortException;
  *
  * @param <E> the type of Entry used in the index
  */
-public abstract class AbstractNode<E> extends AbstractExternalizablePage implements Node<E> {
+public abstract class AbstractNode<E> extends AbstractExternalizablePage implements Node<E>, ReadAheadPage {
   /**
    * The number of entries in this node.
    */
@@ -118,6 +121,18 @@ public abstract class AbstractNode<E> extends AbstractExternalizablePage impleme
     return (E) entries[index];
   }
 
+  @Override
+  public void forEachChildPage(IntConsumer action) {
+    if(isLeaf) {
+      return;
+    }
+    for(int i = 0; i < numEntries; i++) {
+      if(entries[i] instanceof DirectoryEntry) {
+        action.accept(((DirectoryEntry) entries[i]).getPageID());
+      }
+    }
+  }
+
   /**
    * Calls the super method and writes the id of this node, the numEntries and
    * the entries array to the specified stream.
@@ -147,6 +162,22 @@ public abstract class AbstractNode<E> extends AbstractExternalizablePage impleme
     // Entries will be read in subclasses
   }
 
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    super.writeTo(buffer);
+    buffer.put((byte) (isLeaf ? 1 : 0));
+    buffer.putInt(numEntries);
+    // Entries will be written in subclasses
+  }
+
+  @Override
+  public void readFrom(ByteBuffer buffer) {
+    super.readFrom(buffer);
+    isLeaf = buffer.get() != 0;
+    numEntries = buffer.getInt();
+    // Entries will be read in subclasses
+  }
+
   /**
    * Returns a string representation of this node.
    *
@@ -25,6 +25,7 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 /**
  * Abstract superclass for pages.
@@ -132,6 +133,26 @@ public abstract class AbstractExternalizablePage implements Externalizable, Page
     id = in.readInt();
   }
 
+  /**
+   * Write the page id to the buffer; for subclasses implementing
+   * {@link ByteBufferPage}.
+   *
+   * @param buffer Buffer to write to
+   */
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putInt(id);
+  }
+
+  /**
+   * Read the page id from the buffer; for subclasses implementing
+   * {@link ByteBufferPage}.
+   *
+   * @param buffer Buffer to read from
+   */
+  public void readFrom(ByteBuffer buffer) {
+    id = buffer.getInt();
+  }
+
   /**
    * Returns a string representation of the object.
    * 
@@ -0,0 +1,49 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pages that can be written to and read from a byte buffer directly, without
+ * the overhead of Java object streams.
+ * <p>
+ * The page must not write more than the remaining buffer size, i.e., the page
+ * size minus a small header used by the page file.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public interface ByteBufferPage extends ExternalizablePage {
+  /**
+   * Write the page contents to the buffer, at the current position.
+   *
+   * @param buffer Buffer to write to
+   */
+  void writeTo(ByteBuffer buffer);
+
+  /**
+   * Read the page contents from the buffer, at the current position.
+   *
+   * @param buffer Buffer to read from
+   */
+  void readFrom(ByteBuffer buffer);
+}
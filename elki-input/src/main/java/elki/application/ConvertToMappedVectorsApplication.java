@@ -0,0 +1,182 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.application;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.datasource.DatabaseConnection;
+import elki.datasource.FileBasedDatabaseConnection;
+import elki.datasource.MappedNumberVectorColumn;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.logging.Logging;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Convert the number vectors of an input file to a memory-mapped vector file,
+ * which can be opened without parsing using
+ * {@link elki.datasource.MappedNumberVectorDatabaseConnection}.
+ * <p>
+ * Only the first number vector column is converted, labels are not kept.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ConvertToMappedVectorsApplication extends AbstractApplication {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ConvertToMappedVectorsApplication.class);
+
+  /**
+   * The data input step.
+   */
+  private DatabaseConnection input;
+
+  /**
+   * Output filename.
+   */
+  private Path outfile;
+
+  /**
+   * Use column-major layout.
+   */
+  private boolean columnMajor;
+
+  /**
+   * Use single precision.
+   */
+  private boolean isFloat;
+
+  /**
+   * Constructor.
+   *
+   * @param input Data source configuration
+   * @param outfile Output filename
+   * @param columnMajor Use column-major layout
+   * @param isFloat Use single precision
+   */
+  public ConvertToMappedVectorsApplication(DatabaseConnection input, Path outfile, boolean columnMajor, boolean isFloat) {
+    super();
+    this.input = input;
+    this.outfile = outfile;
+    this.columnMajor = columnMajor;
+    this.isFloat = isFloat;
+  }
+
+  @Override
+  public void run() {
+    if(LOG.isVerbose()) {
+      LOG.verbose("Loading data.");
+    }
+    MultipleObjectsBundle bundle = input.loadData();
+    for(int i = 0; i < bundle.metaLength(); i++) {
+      if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(bundle.meta(i))) {
+        if(LOG.isVerbose()) {
+          LOG.verbose("Writing mapped vectors to output file: " + outfile.toString());
+        }
+        @SuppressWarnings("unchecked")
+        List<? extends NumberVector> column = (List<? extends NumberVector>) bundle.getColumn(i);
+        try {
+          MappedNumberVectorColumn.write(outfile, column, columnMajor, isFloat);
+        }
+        catch(IOException e) {
+          throw new AbortException("Error writing mapped vector file " + outfile, e);
+        }
+        return;
+      }
+    }
+    throw new AbortException("No number vector field found in the input data.");
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par extends AbstractApplication.Par {
+    /**
+     * Option to specify the data source for the database.
+     */
+    public static final OptionID DATABASE_CONNECTION_ID = ConvertToBundleApplication.Par.DATABASE_CONNECTION_ID;
+
+    /**
+     * Flag to store the data column-major.
+     */
+    public static final OptionID COLUMN_MAJOR_ID = new OptionID("mapped.columnmajor", "Store the data column-major (all values of each dimension contiguously) instead of row-major.");
+
+    /**
+     * Flag to store single precision values.
+     */
+    public static final OptionID FLOAT_ID = new OptionID("mapped.float", "Store single precision (float) instead of double precision values.");
+
+    /**
+     * The data input step.
+     */
+    private DatabaseConnection input;
+
+    /**
+     * Output filename.
+     */
+    private Path outfile;
+
+    /**
+     * Use column-major layout.
+     */
+    private boolean columnMajor;
+
+    /**
+     * Use single precision.
+     */
+    private boolean isFloat;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new ObjectParameter<DatabaseConnection>(DATABASE_CONNECTION_ID, DatabaseConnection.class, FileBasedDatabaseConnection.class) //
+          .grab(config, x -> input = x);
+      outfile = super.getParameterOutputFile(config, "File name to write the mapped vectors to.");
+      new Flag(COLUMN_MAJOR_ID).grab(config, x -> columnMajor = x);
+      new Flag(FLOAT_ID).grab(config, x -> isFloat = x);
+    }
+
+    @Override
+    public ConvertToMappedVectorsApplication make() {
+      return new ConvertToMappedVectorsApplication(input, outfile, columnMajor, isFloat);
+    }
+  }
+
+  /**
+   * Run command line application.
+   *
+   * @param args Command line parameters
+   */
+  public static void main(String[] args) {
+    runCLIApplication(ConvertToMappedVectorsApplication.class, args);
+  }
+}
@@ -25,12 +25,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.file.Paths;
 import java.util.List;
 
+import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.datasource.filter.ObjectFilter;
 import elki.datasource.parser.ArffParser;
 import elki.datasource.parser.NumberVectorLabelParser;
+import elki.datasource.parser.ParallelNumberVectorParser;
 import elki.datasource.parser.Parser;
+import elki.logging.Logging;
 import elki.utilities.Priority;
 import elki.utilities.io.FileUtil;
 import elki.utilities.optionhandling.OptionID;
@@ -47,6 +51,16 @@ import elki.utilities.optionhandling.parameters.FileParameter;
  */
 @Priority(Priority.IMPORTANT)
 public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(FileBasedDatabaseConnection.class);
+
+  /**
+   * Input file, may be {@code null}.
+   */
+  private URI infile;
+
   /**
    * Constructor.
    * 
@@ -63,6 +77,7 @@ public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
         throw new UncheckedIOException("Could not load input file: " + infile, e);
       }
     }, filters, parser);
+    this.infile = infile;
   }
 
   /**
@@ -87,6 +102,20 @@ public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
     super(in, filters, parser);
   }
 
+  @Override
+  protected MultipleObjectsBundle parse() {
+    // Local files are memory-mapped by the parallel parser.
+    if(infile != null && parser instanceof ParallelNumberVectorParser && "file".equals(infile.getScheme())) {
+      return ((ParallelNumberVectorParser<?>) parser).parse(Paths.get(infile));
+    }
+    return super.parse();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
   /**
    * Parameterization class.
    * 
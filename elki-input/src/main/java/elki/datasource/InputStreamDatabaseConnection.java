@@ -128,8 +128,7 @@ public class InputStreamDatabaseConnection extends AbstractDatabaseConnection im
     else {
       // For non-streaming parsers, we first parse, then filter
       Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".parse").begin() : null;
-      ins = ins != null ? ins : in.get();
-      MultipleObjectsBundle parsingResult = parser.parse(ins);
+      MultipleObjectsBundle parsingResult = parse();
       parser.cleanup();
       try {
         close();
@@ -154,6 +153,16 @@ public class InputStreamDatabaseConnection extends AbstractDatabaseConnection im
     }
   }
 
+  /**
+   * Parse the input with a non-streaming parser.
+   *
+   * @return Parsing result
+   */
+  protected MultipleObjectsBundle parse() {
+    ins = ins != null ? ins : in.get();
+    return parser.parse(ins);
+  }
+
   @Override
   public void close() throws IOException {
     if(ins != null) {
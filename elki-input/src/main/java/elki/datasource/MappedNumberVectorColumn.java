@@ -0,0 +1,483 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.utilities.datastructures.arraylike.ArrayAdapter;
+import elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.ByteArrayUtil;
+import elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Column of number vectors stored in a single memory-mapped file.
+ * <p>
+ * The vectors are not materialized as arrays: {@link #get} returns a
+ * lightweight view onto the mapped file, so the values do not occupy any Java
+ * heap, and no parsing is necessary to open the file. Views are not cached:
+ * each call returns a new short-lived view (which the JIT can often eliminate
+ * by escape analysis), and views of the same vector are equal.
+ * <p>
+ * File format: a header of 32 bytes (magic, version, flags, dimensionality as
+ * 32 bit integers; number of vectors as 64 bit integer; 8 reserved bytes),
+ * followed by the values in little endian byte order, either row-major (all
+ * values of the first vector first) or column-major (all values of the first
+ * dimension first), as {@code double} or {@code float} values.
+ * <p>
+ * Files larger than 2 GB are mapped in multiple segments.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - View
+ */
+public class MappedNumberVectorColumn extends AbstractList<NumberVector> implements RandomAccess {
+  /**
+   * Magic number identifying the file format.
+   */
+  public static final int MAGIC = 0xE1C1_0D0C;
+
+  /**
+   * File format version.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Header size.
+   */
+  public static final int HEADER_SIZE = 32;
+
+  /**
+   * Flag for column-major layout.
+   */
+  public static final int FLAG_COLUMN_MAJOR = 1;
+
+  /**
+   * Flag for single precision storage.
+   */
+  public static final int FLAG_FLOAT = 2;
+
+  /**
+   * Bits per mapped segment (1 GB segments).
+   */
+  private static final int SEGMENT_BITS = 30;
+
+  /**
+   * Mask for the offset within a segment.
+   */
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+  /**
+   * Factory for new vectors derived from mapped vectors.
+   */
+  public static final NumberVector.Factory<NumberVector> FACTORY = new Factory();
+
+  /**
+   * Serializer for vectors, using varint encoding of the dimensionality.
+   */
+  public static final ByteBufferSerializer<NumberVector> SERIALIZER = new Serializer();
+
+  /**
+   * Mapped segments of the file.
+   */
+  private final ByteBuffer[] segments;
+
+  /**
+   * Number of vectors.
+   */
+  private final int size;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Layout of the file.
+   */
+  private final boolean columnMajor;
+
+  /**
+   * Use single precision.
+   */
+  private final boolean isFloat;
+
+  /**
+   * Element size in bytes.
+   */
+  private final int esize;
+
+  /**
+   * Constructor.
+   *
+   * @param segments Mapped segments
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param columnMajor Column-major layout
+   * @param isFloat Single precision
+   */
+  protected MappedNumberVectorColumn(ByteBuffer[] segments, int size, int dim, boolean columnMajor, boolean isFloat) {
+    super();
+    this.segments = segments;
+    this.size = size;
+    this.dim = dim;
+    this.columnMajor = columnMajor;
+    this.isFloat = isFloat;
+    this.esize = isFloat ? Float.BYTES : Double.BYTES;
+  }
+
+  /**
+   * Open a mapped vector file.
+   *
+   * @param file File to open
+   * @return Column
+   * @throws IOException on IO errors
+   */
+  public static MappedNumberVectorColumn open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final long fsize = channel.size();
+      if(fsize < HEADER_SIZE) {
+        throw new AbortException("File is too short for a mapped vector file: " + file);
+      }
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while(header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+        // Continue reading.
+      }
+      header.flip();
+      if(header.getInt() != MAGIC) {
+        throw new AbortException("File does not start with the expected magic: " + file);
+      }
+      final int version = header.getInt();
+      if(version != VERSION) {
+        throw new AbortException("Unsupported mapped vector file version: " + version);
+      }
+      final int flags = header.getInt(), dim = header.getInt();
+      final long size = header.getLong();
+      final boolean isFloat = (flags & FLAG_FLOAT) != 0;
+      final long expected = HEADER_SIZE + size * dim * (isFloat ? Float.BYTES : Double.BYTES);
+      if(size > Integer.MAX_VALUE || dim <= 0 || fsize < expected) {
+        throw new AbortException("Corrupt mapped vector file header or truncated file: " + file);
+      }
+      final int numseg = (int) ((expected - 1) >>> SEGMENT_BITS) + 1;
+      ByteBuffer[] segments = new ByteBuffer[numseg];
+      for(int i = 0; i < numseg; i++) {
+        final long start = ((long) i) << SEGMENT_BITS;
+        MappedByteBuffer buf = channel.map(MapMode.READ_ONLY, start, Math.min(expected - start, 1L << SEGMENT_BITS));
+        segments[i] = buf.order(ByteOrder.LITTLE_ENDIAN);
+      }
+      return new MappedNumberVectorColumn(segments, (int) size, dim, (flags & FLAG_COLUMN_MAJOR) != 0, isFloat);
+    }
+  }
+
+  /**
+   * Write vectors to a mapped vector file.
+   *
+   * @param file Output file
+   * @param vectors Vectors to write, at least one, all of the same
+   *        dimensionality
+   * @param columnMajor Use column-major layout
+   * @param isFloat Use single precision
+   * @throws IOException on IO errors
+   */
+  public static void write(Path file, List<? extends NumberVector> vectors, boolean columnMajor, boolean isFloat) throws IOException {
+    final int size = vectors.size();
+    final int dim = size > 0 ? vectors.get(0).getDimensionality() : 0;
+    if(dim <= 0) {
+      throw new AbortException("Mapped vector files require at least one vector with at least one dimension.");
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+      buf.putInt(MAGIC).putInt(VERSION) //
+          .putInt((columnMajor ? FLAG_COLUMN_MAJOR : 0) | (isFloat ? FLAG_FLOAT : 0)) //
+          .putInt(dim).putLong(size).putLong(0L);
+      final int outer = columnMajor ? dim : size, inner = columnMajor ? size : dim;
+      for(int o = 0; o < outer; o++) {
+        for(int i = 0; i < inner; i++) {
+          if(buf.remaining() < Double.BYTES) {
+            flush(channel, buf);
+          }
+          final NumberVector v = vectors.get(columnMajor ? i : o);
+          if(v.getDimensionality() != dim) {
+            throw new AbortException("Mapped vector files require all vectors to have the same dimensionality.");
+          }
+          final int d = columnMajor ? o : i;
+          if(isFloat) {
+            buf.putFloat(v.floatValue(d));
+          }
+          else {
+            buf.putDouble(v.doubleValue(d));
+          }
+        }
+      }
+      flush(channel, buf);
+    }
+  }
+
+  /**
+   * Flush a buffer to a channel.
+   *
+   * @param channel Channel
+   * @param buf Buffer
+   * @throws IOException on IO errors
+   */
+  private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+    buf.flip();
+    while(buf.hasRemaining()) {
+      channel.write(buf);
+    }
+    buf.clear();
+  }
+
+  /**
+   * Get the type information of this column.
+   *
+   * @return Type information
+   */
+  public VectorFieldTypeInformation<NumberVector> getTypeInformation() {
+    return new VectorFieldTypeInformation<>(FACTORY, dim);
+  }
+
+  /**
+   * Get the dimensionality of the vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public NumberVector get(int index) {
+    if(index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+    }
+    return new View(this, index);
+  }
+
+  /**
+   * Get a single value.
+   *
+   * @param index Vector index
+   * @param d Dimension
+   * @return Value
+   */
+  public double doubleValue(int index, int d) {
+    final long pos = position(index, d);
+    final ByteBuffer seg = segments[(int) (pos >>> SEGMENT_BITS)];
+    final int off = (int) (pos & SEGMENT_MASK);
+    return isFloat ? seg.getFloat(off) : seg.getDouble(off);
+  }
+
+  /**
+   * Get a single value in single precision.
+   *
+   * @param index Vector index
+   * @param d Dimension
+   * @return Value
+   */
+  public float floatValue(int index, int d) {
+    final long pos = position(index, d);
+    final ByteBuffer seg = segments[(int) (pos >>> SEGMENT_BITS)];
+    final int off = (int) (pos & SEGMENT_MASK);
+    return isFloat ? seg.getFloat(off) : (float) seg.getDouble(off);
+  }
+
+  /**
+   * Compute the position of a value in the file.
+   *
+   * @param index Vector index
+   * @param d Dimension
+   * @return File position
+   */
+  private long position(int index, int d) {
+    assert d >= 0 && d < dim : "Dimension out of bounds: " + d;
+    return HEADER_SIZE + (columnMajor ? (long) d * size + index : (long) index * dim + d) * esize;
+  }
+
+  /**
+   * Flyweight view of a single vector in the mapped file.
+   *
+   * @author Erich Schubert
+   */
+  public static class View implements NumberVector {
+    /**
+     * Column containing the vector.
+     */
+    private final MappedNumberVectorColumn column;
+
+    /**
+     * Vector index.
+     */
+    private final int index;
+
+    /**
+     * Constructor.
+     *
+     * @param column Column
+     * @param index Vector index
+     */
+    protected View(MappedNumberVectorColumn column, int index) {
+      super();
+      this.column = column;
+      this.index = index;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return column.dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return column.doubleValue(index, dimension);
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      return column.floatValue(index, dimension);
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) column.doubleValue(index, dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] data = new double[column.dim];
+      for(int d = 0; d < data.length; d++) {
+        data[d] = column.doubleValue(index, d);
+      }
+      return data;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder featureLine = new StringBuilder();
+      for(int d = 0; d < column.dim; d++) {
+        featureLine.append(column.doubleValue(index, d));
+        if(d + 1 < column.dim) {
+          featureLine.append(ATTRIBUTE_SEPARATOR);
+        }
+      }
+      return featureLine.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(!(obj instanceof View)) {
+        return false;
+      }
+      View other = (View) obj;
+      return column == other.column && index == other.index;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(column) * 31 + index;
+    }
+  }
+
+  /**
+   * Factory for vectors derived from mapped vectors. New vectors are stored in
+   * the Java heap, as {@link DoubleVector}.
+   *
+   * @author Erich Schubert
+   */
+  private static class Factory implements NumberVector.Factory<NumberVector> {
+    @Override
+    public <A> NumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      return DoubleVector.FACTORY.newFeatureVector(array, adapter);
+    }
+
+    @Override
+    public <A> NumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return DoubleVector.FACTORY.newNumberVector(array, adapter);
+    }
+
+    @Override
+    public ByteBufferSerializer<NumberVector> getDefaultSerializer() {
+      return SERIALIZER;
+    }
+
+    @Override
+    public Class<? super NumberVector> getRestrictionClass() {
+      return NumberVector.class;
+    }
+  }
+
+  /**
+   * Serialization of vectors with variable dimensionality, using VarInt
+   * encoding. Vectors are deserialized as {@link DoubleVector}.
+   *
+   * @author Erich Schubert
+   *
+   * @assoc - serializes - NumberVector
+   */
+  private static class Serializer implements ByteBufferSerializer<NumberVector> {
+    @Override
+    public NumberVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      final double[] values = new double[dimensionality];
+      for(int i = 0; i < dimensionality; i++) {
+        values[i] = buffer.getDouble();
+      }
+      return DoubleVector.wrap(values);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, NumberVector vec) throws IOException {
+      final int dimensionality = vec.getDimensionality();
+      ByteArrayUtil.writeUnsignedVarint(buffer, dimensionality);
+      for(int i = 0; i < dimensionality; i++) {
+        buffer.putDouble(vec.doubleValue(i));
+      }
+    }
+
+    @Override
+    public int getByteSize(NumberVector vec) {
+      final int dimensionality = vec.getDimensionality();
+      return ByteArrayUtil.getUnsignedVarintSize(dimensionality) + ByteArrayUtil.SIZE_DOUBLE * dimensionality;
+    }
+  }
+}
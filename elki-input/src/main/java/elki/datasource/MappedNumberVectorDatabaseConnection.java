@@ -0,0 +1,119 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.datasource.filter.ObjectFilter;
+import elki.logging.Logging;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Database connection to open a memory-mapped file of number vectors, without
+ * parsing.
+ * <p>
+ * Unless filters are used, the data is not copied into the Java heap, but the
+ * static array database will access the mapped file directly. Such files can be created with
+ * {@link elki.application.ConvertToMappedVectorsApplication}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - MappedNumberVectorColumn
+ */
+public class MappedNumberVectorDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedNumberVectorDatabaseConnection.class);
+
+  /**
+   * File to load.
+   */
+  private Path infile;
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   */
+  public MappedNumberVectorDatabaseConnection(List<? extends ObjectFilter> filters, Path infile) {
+    super(filters);
+    this.infile = infile;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    try {
+      MappedNumberVectorColumn column = MappedNumberVectorColumn.open(infile);
+      if(LOG.isVerbose()) {
+        LOG.verbose("Mapped " + column.size() + " vectors of dimensionality " + column.getDimensionality() + ".");
+      }
+      return invokeBundleFilters(MultipleObjectsBundle.makeSimple(column.getTypeInformation(), column));
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error mapping vector file", e);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par extends AbstractDatabaseConnection.Par {
+    /**
+     * Option ID for the input file.
+     */
+    public static final OptionID INPUT_ID = new OptionID("mapped.input", "Mapped vector file to open.");
+
+    /**
+     * File to load.
+     */
+    private Path infile;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      configFilters(config);
+      new FileParameter(INPUT_ID, FileParameter.FileType.INPUT_FILE) //
+          .grab(config, x -> infile = Paths.get(x));
+    }
+
+    @Override
+    public MappedNumberVectorDatabaseConnection make() {
+      return new MappedNumberVectorDatabaseConnection(filters, infile);
+    }
+  }
+}
@@ -0,0 +1,698 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import elki.data.DoubleVector;
+import elki.data.LabelList;
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.data.type.VectorTypeInformation;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.logging.Logging;
+import elki.parallel.ParallelCore;
+import elki.utilities.datastructures.BitsUtil;
+import elki.utilities.datastructures.arraylike.DoubleArray;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.ParseUtil;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntListParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel parser for number vectors with labels, in the default format of
+ * {@link NumberVectorLabelParser}: columns are separated by whitespace, comma
+ * or semicolon, lines starting with {@code #}, {@code //} or {@code ;} are
+ * comments, and quoted or non-numeric columns become labels.
+ * <p>
+ * Instead of tokenizing each line with regular expressions, this parser scans
+ * raw bytes, and parses numbers directly from the byte buffer. The input is
+ * split into newline-aligned chunks, which are parsed in parallel and then
+ * concatenated in input order, so the result is the same as with the serial
+ * parser. Files are memory-mapped when possible (see {@link #parse(Path)}),
+ * and each chunk is copied into a reusable byte window for parsing; other
+ * input is read in large blocks, while the previous block is parsed.
+ * <p>
+ * Quotes may only be used for entire columns, and the column separator cannot
+ * be configured; use {@link NumberVectorLabelParser} for other formats.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - NumberVector
+ *
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorParser<V extends NumberVector> implements Parser {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorParser.class);
+
+  /**
+   * Default chunk size.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 23;
+
+  /**
+   * Maximum size of a memory-mapped segment.
+   */
+  private static final int SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * Keeps the indices of the attributes to be treated as a string label.
+   */
+  private long[] labelIndices;
+
+  /**
+   * Vector factory class.
+   */
+  protected NumberVector.Factory<V> factory;
+
+  /**
+   * Size of the chunks to parse in parallel, in bytes.
+   */
+  protected int chunksize;
+
+  /**
+   * For String unification across chunks.
+   */
+  private ConcurrentHashMap<String, String> unique = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param chunksize Size of the chunks to parse in parallel, in bytes
+   */
+  public ParallelNumberVectorParser(long[] labelIndices, NumberVector.Factory<V> factory, int chunksize) {
+    super();
+    this.labelIndices = labelIndices;
+    this.factory = factory;
+    this.chunksize = chunksize;
+  }
+
+  /**
+   * Constructor with defaults.
+   *
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorParser(NumberVector.Factory<V> factory) {
+    this(null, factory, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Test if the current column is marked as label column.
+   *
+   * @param col Column number
+   * @return {@code true} when a label column.
+   */
+  protected boolean isLabelColumn(int col) {
+    return labelIndices != null && BitsUtil.get(labelIndices, col);
+  }
+
+  @Override
+  public MultipleObjectsBundle parse(InputStream in) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      Collector collector = new Collector();
+      // Read the next block while the previous block is parsed.
+      final int blocksize = (int) Math.min(SEGMENT_SIZE, 2L * chunksize * core.getParallelism());
+      List<Future<Chunk<V>>> previous = new ArrayList<>(), current = new ArrayList<>();
+      byte[] buf = new byte[blocksize];
+      int len = 0;
+      while(true) {
+        for(int r; len < buf.length && (r = in.read(buf, len, buf.length - len)) >= 0;) {
+          len += r;
+        }
+        final boolean eof = len < buf.length;
+        int cut = len;
+        if(!eof) {
+          while(cut > 0 && buf[cut - 1] != '\n') {
+            --cut;
+          }
+          if(cut == 0) { // Line longer than the buffer
+            buf = Arrays.copyOf(buf, (int) Math.min(Integer.MAX_VALUE - 8, 2L * buf.length));
+            continue;
+          }
+        }
+        final byte[] block = buf;
+        for(int start = 0, end; start < cut; start = end) {
+          end = nextChunkEnd(block, start, cut);
+          final int s = start, e = end;
+          current.add(core.submit(() -> parseChunk(block, s, e)));
+        }
+        collector.collect(previous);
+        List<Future<Chunk<V>>> tmp = previous;
+        previous = current;
+        current = tmp;
+        if(eof) {
+          break;
+        }
+        buf = new byte[Math.max(blocksize, len - cut)];
+        System.arraycopy(block, cut, buf, 0, len - cut);
+        len -= cut;
+      }
+      collector.collect(previous);
+      return collector.build();
+    }
+    catch(IOException e) {
+      throw new AbortException("Error while reading the input.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Parse a file, memory-mapping it unless it is gzip compressed.
+   *
+   * @param path File to parse
+   * @return Parsed data
+   */
+  public MultipleObjectsBundle parse(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(2);
+      channel.read(magic, 0);
+      if(magic.position() == 2 && ((magic.get(0) & 0xFF) | (magic.get(1) & 0xFF) << 8) == GZIPInputStream.GZIP_MAGIC) {
+        return parse(new GZIPInputStream(Channels.newInputStream(channel), 1 << 16));
+      }
+      return parse(channel);
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not read input file: " + path, e);
+    }
+  }
+
+  /**
+   * Parse an (uncompressed) file channel using memory-mapping.
+   *
+   * @param channel File channel
+   * @return Parsed data
+   * @throws IOException on read errors
+   */
+  public MultipleObjectsBundle parse(FileChannel channel) throws IOException {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      Collector collector = new Collector();
+      List<Future<Chunk<V>>> previous = new ArrayList<>(), current = new ArrayList<>();
+      // Reusable windows to copy the mapped chunks into
+      final Queue<byte[]> windows = new ConcurrentLinkedQueue<>();
+      final long size = channel.size();
+      for(long pos = 0; pos < size;) {
+        final int len = (int) Math.min(SEGMENT_SIZE, size - pos);
+        final MappedByteBuffer map = channel.map(MapMode.READ_ONLY, pos, len);
+        int cut = len;
+        if(pos + len < size) {
+          while(cut > 0 && map.get(cut - 1) != '\n') {
+            --cut;
+          }
+          if(cut == 0) {
+            throw new AbortException("Input line at offset " + pos + " is longer than " + SEGMENT_SIZE + " bytes.");
+          }
+        }
+        for(int start = 0, end; start < cut; start = end) {
+          end = nextChunkEnd(map, start, cut);
+          // Each task gets its own view, with independent position
+          final ByteBuffer view = map.duplicate();
+          view.position(start);
+          final int l = end - start;
+          current.add(core.submit(() -> {
+            byte[] buf = windows.poll();
+            if(buf == null || buf.length < l) {
+              buf = new byte[l + (l >>> 3)]; // Some slack for longer chunks
+            }
+            view.get(buf, 0, l);
+            try {
+              return parseChunk(buf, 0, l);
+            }
+            finally {
+              windows.offer(buf);
+            }
+          }));
+        }
+        collector.collect(previous);
+        List<Future<Chunk<V>>> tmp = previous;
+        previous = current;
+        current = tmp;
+        pos += cut;
+      }
+      collector.collect(previous);
+      return collector.build();
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Find the end of the next chunk, after a newline.
+   *
+   * @param buf Buffer
+   * @param start Chunk start
+   * @param limit End of the buffer
+   * @return End of chunk
+   */
+  private int nextChunkEnd(byte[] buf, int start, int limit) {
+    int end = limit - start > chunksize ? start + chunksize : limit;
+    while(end < limit && buf[end - 1] != '\n') {
+      ++end;
+    }
+    return end;
+  }
+
+  /**
+   * Find the end of the next chunk, after a newline.
+   *
+   * @param buf Buffer
+   * @param start Chunk start
+   * @param limit End of the buffer
+   * @return End of chunk
+   */
+  private int nextChunkEnd(ByteBuffer buf, int start, int limit) {
+    int end = limit - start > chunksize ? start + chunksize : limit;
+    while(end < limit && buf.get(end - 1) != '\n') {
+      ++end;
+    }
+    return end;
+  }
+
+  /**
+   * Parse a newline-aligned chunk of the input.
+   *
+   * @param buf Buffer
+   * @param start First byte
+   * @param end Last byte (exclusive)
+   * @return Parsed chunk
+   */
+  protected Chunk<V> parseChunk(byte[] buf, int start, int end) {
+    Chunk<V> chunk = new Chunk<>();
+    DoubleArray attributes = new DoubleArray(11);
+    ArrayList<String> labels = new ArrayList<>();
+    for(int pos = start; pos < end;) {
+      int lend = pos;
+      while(lend < end && buf[lend] != '\n') {
+        ++lend;
+      }
+      final int next = lend + 1;
+      while(pos < lend && isWhitespace(buf[pos])) {
+        ++pos;
+      }
+      while(lend > pos && isWhitespace(buf[lend - 1])) {
+        --lend;
+      }
+      if(pos < lend && !isComment(buf, pos, lend)) {
+        parseLine(buf, pos, lend, attributes, labels, chunk);
+        chunk.vecs.add(factory.newNumberVector(attributes, attributes));
+        chunk.lbls.add(LabelList.make(labels));
+        attributes.clear();
+        labels.clear();
+      }
+      pos = next;
+    }
+    return chunk;
+  }
+
+  /**
+   * Parse a single line.
+   *
+   * @param buf Buffer
+   * @param start Line start, without leading whitespace
+   * @param end Line end, without trailing whitespace
+   * @param attributes Output numerical attributes
+   * @param labels Output labels
+   * @param chunk Chunk, for reporting warnings
+   */
+  private void parseLine(byte[] buf, int start, int end, DoubleArray attributes, List<String> labels, Chunk<V> chunk) {
+    for(int pos = start, col = 0; pos < end; col++) {
+      int tend = pos;
+      boolean quoted = false;
+      final byte q = buf[pos];
+      if(q == '"' || q == '\'') {
+        for(int i = pos + 1; i < end; i++) {
+          if(buf[i] == q && (i + 1 == end || isSeparator(buf[i + 1]))) {
+            quoted = true;
+            tend = i;
+            break;
+          }
+        }
+      }
+      if(quoted) {
+        addLabel(buf, pos + 1, tend, labels);
+        ++tend; // Closing quote
+      }
+      else {
+        while(tend < end && !isSeparator(buf[tend])) {
+          ++tend;
+        }
+        if(!parseNumber(buf, pos, tend, col, attributes, chunk)) {
+          addLabel(buf, pos, tend, labels);
+        }
+      }
+      // Consume one separator, with surrounding whitespace.
+      pos = tend;
+      while(pos < end && isWhitespace(buf[pos])) {
+        ++pos;
+      }
+      if(pos < end && (buf[pos] == ',' || buf[pos] == ';')) {
+        ++pos;
+        while(pos < end && isWhitespace(buf[pos])) {
+          ++pos;
+        }
+      }
+    }
+  }
+
+  /**
+   * Try to parse a number.
+   *
+   * @param buf Buffer
+   * @param start Token start
+   * @param end Token end
+   * @param col Column number
+   * @param attributes Output numerical attributes
+   * @param chunk Chunk, for reporting warnings
+   * @return {@code true} if a number was parsed
+   */
+  private boolean parseNumber(byte[] buf, int start, int end, int col, DoubleArray attributes, Chunk<V> chunk) {
+    if(isLabelColumn(col)) {
+      return false;
+    }
+    try {
+      attributes.add(ParseUtil.parseDouble(buf, start, end));
+      return true;
+    }
+    catch(NumberFormatException e) {
+      if(chunk.overflow == null && (e == ParseUtil.PRECISION_OVERFLOW || e == ParseUtil.EXPONENT_OVERFLOW)) {
+        chunk.overflow = new String(buf, start, end - start, StandardCharsets.UTF_8);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Add a label, unless empty.
+   *
+   * @param buf Buffer
+   * @param start Label start
+   * @param end Label end
+   * @param labels Output labels
+   */
+  private void addLabel(byte[] buf, int start, int end, List<String> labels) {
+    if(start < end) {
+      String lbl = new String(buf, start, end - start, StandardCharsets.UTF_8);
+      String prev = unique.putIfAbsent(lbl, lbl);
+      labels.add(prev != null ? prev : lbl);
+    }
+  }
+
+  /**
+   * Test for whitespace (except newlines, which we handle separately).
+   *
+   * @param b Byte
+   * @return {@code true} if whitespace
+   */
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+  }
+
+  /**
+   * Test for column separators.
+   *
+   * @param b Byte
+   * @return {@code true} if a separator
+   */
+  private static boolean isSeparator(byte b) {
+    return b == ',' || b == ';' || isWhitespace(b);
+  }
+
+  /**
+   * Test for comment lines, starting with {@code #}, {@code //} or {@code ;}.
+   *
+   * @param buf Buffer
+   * @param start Line start, without leading whitespace
+   * @param end Line end
+   * @return {@code true} if a comment line
+   */
+  private static boolean isComment(byte[] buf, int start, int end) {
+    final byte b = buf[start];
+    return b == '#' || b == ';' || (b == '/' && start + 1 < end && buf[start + 1] == '/');
+  }
+
+  @Override
+  public void cleanup() {
+    unique.clear();
+  }
+
+  /**
+   * Result of parsing one chunk.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  protected static class Chunk<V> {
+    /**
+     * Vectors.
+     */
+    ArrayList<V> vecs = new ArrayList<>();
+
+    /**
+     * Labels, one list per vector.
+     */
+    ArrayList<LabelList> lbls = new ArrayList<>();
+
+    /**
+     * First token with too many digits, for warnings.
+     */
+    String overflow;
+  }
+
+  /**
+   * Collect the chunks in input order.
+   *
+   * @author Erich Schubert
+   */
+  private class Collector {
+    /**
+     * Vectors.
+     */
+    ArrayList<V> vecs = new ArrayList<>();
+
+    /**
+     * Labels.
+     */
+    ArrayList<LabelList> lbls = new ArrayList<>();
+
+    /**
+     * Column names.
+     */
+    List<String> columnnames = null;
+
+    /**
+     * Dimensionality range.
+     */
+    int mindim = Integer.MAX_VALUE, maxdim = 0;
+
+    /**
+     * Whether or not the data set has labels.
+     */
+    boolean haslabels = false;
+
+    /**
+     * Emit a double-precision limit warning once.
+     */
+    boolean warnedPrecision = false;
+
+    /**
+     * Collect the results of parsed chunks, then clear the list.
+     *
+     * @param futures Chunks to collect
+     */
+    void collect(List<Future<Chunk<V>>> futures) {
+      try {
+        for(Future<Chunk<V>> future : futures) {
+          add(future.get());
+        }
+        futures.clear();
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Parsing the input failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Parsing the input was interrupted.");
+      }
+    }
+
+    /**
+     * Add a chunk.
+     *
+     * @param chunk Chunk
+     */
+    private void add(Chunk<V> chunk) {
+      if(!warnedPrecision && chunk.overflow != null) {
+        LOG.warning("Too many digits in what looked like a double number - treating as string: " + chunk.overflow);
+        warnedPrecision = true;
+      }
+      for(int i = 0; i < chunk.vecs.size(); i++) {
+        final V vec = chunk.vecs.get(i);
+        final LabelList lbl = chunk.lbls.get(i);
+        final int dim = vec.getDimensionality();
+        // Label row before the first vector:
+        if(vecs.isEmpty() && dim == 0) {
+          columnnames = new ArrayList<>(lbl.size());
+          for(int j = 0; j < lbl.size(); j++) {
+            columnnames.add(lbl.get(j));
+          }
+          continue;
+        }
+        mindim = dim < mindim ? dim : mindim;
+        maxdim = dim > maxdim ? dim : maxdim;
+        haslabels |= lbl.size() > 0;
+        vecs.add(vec);
+        lbls.add(lbl);
+      }
+    }
+
+    /**
+     * Build the final bundle.
+     *
+     * @return Bundle
+     */
+    MultipleObjectsBundle build() {
+      if(maxdim == 0) {
+        throw new AbortException("No numeric data was read. Verify the column separator; for textual data use other parsers.");
+      }
+      if(mindim != maxdim && LOG.isVerbose()) {
+        LOG.verbose("Non-uniform column width detected, widening data type to " + mindim + "-" + maxdim + " dimensions.");
+      }
+      MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+      bundle.appendColumn(getTypeInformation(mindim, maxdim, columnnames), vecs);
+      if(haslabels) {
+        bundle.appendColumn(TypeUtil.LABELLIST, lbls);
+      }
+      return bundle;
+    }
+  }
+
+  /**
+   * Get a prototype object for the given dimensionality.
+   *
+   * @param mindim Minimum dimensionality
+   * @param maxdim Maximum dimensionality
+   * @param columnnames Column names, may be {@code null}
+   * @return Prototype object
+   */
+  SimpleTypeInformation<V> getTypeInformation(int mindim, int maxdim, List<String> columnnames) {
+    if(mindim == maxdim) {
+      String[] colnames = null;
+      if(columnnames != null && mindim <= columnnames.size()) {
+        colnames = new String[mindim];
+        int j = 0;
+        for(int i = 0; j < mindim && i < columnnames.size(); i++) {
+          if(isLabelColumn(i)) {
+            continue;
+          }
+          colnames[j] = columnnames.get(i);
+          j++;
+        }
+        if(j != mindim) {
+          colnames = null; // Did not work
+        }
+      }
+      return new VectorFieldTypeInformation<>(factory, mindim, colnames);
+    }
+    // Variable dimensionality - return non-vector field type
+    return new VectorTypeInformation<>(factory, factory.getDefaultSerializer(), mindim, maxdim);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Size of the chunks to parse in parallel.
+     */
+    public static final OptionID CHUNK_SIZE_ID = new OptionID("parser.chunksize", "Size of the newline-aligned chunks to parse in parallel, in bytes.");
+
+    /**
+     * Keeps the indices of the attributes to be treated as a string label.
+     */
+    protected long[] labelIndices;
+
+    /**
+     * Factory object.
+     */
+    protected NumberVector.Factory<V> factory;
+
+    /**
+     * Chunk size.
+     */
+    protected int chunksize;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntListParameter(NumberVectorLabelParser.Par.LABEL_INDICES_ID) //
+          .setOptional(true) //
+          .grab(config, x -> labelIndices = BitsUtil.of(x));
+      new ObjectParameter<NumberVector.Factory<V>>(NumberVectorLabelParser.Par.VECTOR_TYPE_ID, NumberVector.Factory.class, DoubleVector.Factory.class) //
+          .grab(config, x -> factory = x);
+      new IntParameter(CHUNK_SIZE_ID, DEFAULT_CHUNK_SIZE) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> chunksize = x);
+    }
+
+    @Override
+    public ParallelNumberVectorParser<V> make() {
+      return new ParallelNumberVectorParser<>(labelIndices, factory, chunksize);
+    }
+  }
+}
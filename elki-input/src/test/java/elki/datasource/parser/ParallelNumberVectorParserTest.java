@@ -0,0 +1,160 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.LabelList;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.datasource.AbstractDataSourceTest;
+import elki.datasource.FileBasedDatabaseConnection;
+import elki.datasource.InputStreamDatabaseConnection;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.BitsUtil;
+
+/**
+ * Test the parallel number vector parser against the serial parser.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelNumberVectorParserTest extends AbstractDataSourceTest {
+  /**
+   * Test input with header, comments, quotes and labels.
+   */
+  private static final String TEST = "# comment\n" //
+      + "x, y, \"class\"\n" //
+      + "1.5, -2e3, \"a label\"\n" //
+      + "\n" //
+      + "  3;4;b\r\n" //
+      + "// another comment\n" //
+      + "5\t6 a\n" //
+      + "7 8";
+
+  @Test
+  public void testUnittestFiles() throws IOException {
+    for(String name : new String[] { "dimensionality-test-1.csv", "external-id-test-1.csv", "label-selection-test-1.csv", "nan-test-1.csv", "rank-tie-test-1.csv" }) {
+      MultipleObjectsBundle expected = readBundle(UNITTEST + name);
+      for(int chunksize : new int[] { 16, 1000, ParallelNumberVectorParser.DEFAULT_CHUNK_SIZE }) {
+        Parser parser = new ParallelNumberVectorParser<>(null, DoubleVector.FACTORY, chunksize);
+        MultipleObjectsBundle bundle;
+        try (InputStream is = open(UNITTEST + name);
+            InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, null, parser)) {
+          bundle = dbc.loadData();
+        }
+        assertSameBundle(expected, bundle);
+      }
+    }
+  }
+
+  @Test
+  public void testFormat() {
+    MultipleObjectsBundle bundle = new ParallelNumberVectorParser<>(null, DoubleVector.FACTORY, 4).parse(stream(TEST));
+    assertEquals("Length", 4, bundle.dataLength());
+    assertTrue("Test file not as expected", TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(bundle.meta(0)));
+    assertTrue("Test file not as expected", TypeUtil.LABELLIST.isAssignableFromType(bundle.meta(1)));
+    VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) bundle.meta(0);
+    assertEquals("Dimensionality", 2, type.getDimensionality());
+    assertEquals("Column name", "y", type.getLabel(1));
+    assertEquals("Value", -2000., ((NumberVector) bundle.data(0, 0)).doubleValue(1), 0.);
+    assertEquals("Label", "a label", ((LabelList) bundle.data(0, 1)).get(0));
+    assertEquals("Value", 3., ((NumberVector) bundle.data(1, 0)).doubleValue(0), 0.);
+    assertEquals("Label", "b", ((LabelList) bundle.data(1, 1)).get(0));
+    assertEquals("Labels", 0, ((LabelList) bundle.data(3, 1)).size());
+    assertEquals("Value", 8., ((NumberVector) bundle.data(3, 0)).doubleValue(1), 0.);
+    // Label indexes:
+    bundle = new ParallelNumberVectorParser<>(BitsUtil.of(1), DoubleVector.FACTORY, 4).parse(stream(TEST));
+    assertEquals("Dimensionality", 1, ((VectorFieldTypeInformation<?>) bundle.meta(0)).getDimensionality());
+    assertEquals("Label", "4", ((LabelList) bundle.data(1, 1)).get(0));
+  }
+
+  @Test
+  public void testMappedFile() throws IOException {
+    Path file = Files.createTempFile("elki-parser", ".csv");
+    Path gzfile = Files.createTempFile("elki-parser", ".csv.gz");
+    try {
+      StringBuilder buf = new StringBuilder(TEST).append('\n');
+      for(int i = 0; i < 1000; i++) {
+        buf.append(i).append(',').append(i * 0.5).append(",l").append(i % 7).append('\n');
+      }
+      byte[] data = buf.toString().getBytes(StandardCharsets.UTF_8);
+      Files.write(file, data);
+      try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzfile))) {
+        out.write(data);
+      }
+      MultipleObjectsBundle expected = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(data));
+      assertEquals("Length", 1004, expected.dataLength());
+      ParallelNumberVectorParser<DoubleVector> parser = new ParallelNumberVectorParser<>(null, DoubleVector.FACTORY, 100);
+      assertSameBundle(expected, parser.parse(file));
+      assertSameBundle(expected, parser.parse(gzfile));
+      Parser p = new ELKIBuilder<>(ParallelNumberVectorParser.class) //
+          .with(ParallelNumberVectorParser.Par.CHUNK_SIZE_ID, 50).build();
+      assertSameBundle(expected, new FileBasedDatabaseConnection(null, p, file.toUri()).loadData());
+    }
+    finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(gzfile);
+    }
+  }
+
+  /**
+   * Make an input stream.
+   *
+   * @param s String
+   * @return Input stream
+   */
+  private static InputStream stream(String s) {
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Compare two parsing results.
+   *
+   * @param expected Expected bundle
+   * @param actual Actual bundle
+   */
+  private static void assertSameBundle(MultipleObjectsBundle expected, MultipleObjectsBundle actual) {
+    assertEquals("Columns", expected.metaLength(), actual.metaLength());
+    assertEquals("Length", expected.dataLength(), actual.dataLength());
+    for(int c = 0; c < expected.metaLength(); c++) {
+      assertEquals("Column type", expected.meta(c).toString(), actual.meta(c).toString());
+      for(int i = 0; i < expected.dataLength(); i++) {
+        assertEquals("Row " + i + " column " + c, expected.data(i, c).toString(), actual.data(i, c).toString());
+      }
+    }
+  }
+}
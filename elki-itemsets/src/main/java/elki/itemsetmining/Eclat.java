@@ -122,14 +122,8 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     DBIDs[] idx = buildIndex(relation, dim, minsupp);
     LOG.statistics(ctime.end());
 
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", idx.length, LOG) : null;
     Duration etime = LOG.newDuration(STAT + "eclat.extraction.time").begin();
-    final List<Itemset> solution = new ArrayList<>();
-    for(int i = 0; i < idx.length; i++) {
-      LOG.incrementProcessed(prog);
-      extractItemsets(idx, i, minsupp, solution);
-    }
-    LOG.ensureCompleted(prog);
+    final List<Itemset> solution = extractItemsets(idx, minsupp);
     Collections.sort(solution);
     LOG.statistics(etime.end());
 
@@ -139,8 +133,35 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return result;
   }
 
+  /**
+   * Extract the frequent itemsets from the transaction lists.
+   *
+   * @param idx Transaction lists of the frequent 1-itemsets
+   * @param minsupp Minimum support
+   * @return Frequent itemsets, unsorted
+   */
+  protected List<Itemset> extractItemsets(DBIDs[] idx, int minsupp) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", idx.length, LOG) : null;
+    final List<Itemset> solution = new ArrayList<>();
+    for(int i = 0; i < idx.length; i++) {
+      LOG.incrementProcessed(prog);
+      extractItemsets(idx, i, minsupp, solution);
+    }
+    LOG.ensureCompleted(prog);
+    return solution;
+  }
+
+  /**
+   * Extract the frequent itemsets starting with a single item. Different
+   * items can be processed concurrently.
+   *
+   * @param idx Transaction lists of the frequent 1-itemsets
+   * @param start First item
+   * @param minsupp Minimum support
+   * @param solution Output list
+   */
   // TODO: implement diffsets.
-  private void extractItemsets(DBIDs[] idx, int start, int minsupp, List<Itemset> solution) {
+  protected void extractItemsets(DBIDs[] idx, int start, int minsupp, List<Itemset> solution) {
     int[] buf = new int[idx.length];
     DBIDs iset = idx[start];
     if(iset == null || iset.size() < minsupp) {
@@ -200,7 +221,15 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return ids;
   }
 
-  private DBIDs[] buildIndex(Relation<BitVector> relation, int dim, int minsupp) {
+  /**
+   * Build the transaction lists of the frequent 1-itemsets.
+   *
+   * @param relation Data
+   * @param dim Maximum dimensionality
+   * @param minsupp Minimum support
+   * @return Sorted transaction lists, {@code null} for infrequent items
+   */
+  protected DBIDs[] buildIndex(Relation<BitVector> relation, int dim, int minsupp) {
     ArrayModifiableDBIDs[] idx = new ArrayModifiableDBIDs[dim];
     for(int i = 0; i < dim; i++) {
       idx[i] = DBIDUtil.newArray();
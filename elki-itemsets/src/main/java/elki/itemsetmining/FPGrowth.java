@@ -44,6 +44,9 @@ import elki.result.Metadata;
 import elki.utilities.Priority;
 import elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
 import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * FP-Growth is an algorithm for mining the frequent itemsets by using a
@@ -57,7 +60,9 @@ import elki.utilities.documentation.Reference;
  * item combinations.
  * <p>
  * This implementation is in-memory only, and has not yet been carefully
- * optimized.
+ * optimized. Optionally, a {@link CompactFPTree} stored in primitive arrays can
+ * be used instead of one object per node, which needs much less memory on
+ * dense data with a low minimum support.
  * <p>
  * The worst case memory use probably is \(O(\min(n\cdot l,i^l))\) where i is
  * the
@@ -74,7 +79,7 @@ import elki.utilities.documentation.Reference;
  * @author Erich Schubert
  * @since 0.7.0
  *
- * @composed - - - FPTree
+ * @composed - - - PrefixTree
  * @has - - - Itemset
  * @has - produces - FrequentItemsetsResult
  */
@@ -95,6 +100,11 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    */
   private static final String STAT = FPGrowth.class.getName() + ".";
 
+  /**
+   * Use the compact, array-backed tree representation.
+   */
+  protected boolean compact = false;
+
   /**
    * Constructor.
    *
@@ -103,7 +113,20 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @param maxlength Maximum length
    */
   public FPGrowth(double minsupp, int minlength, int maxlength) {
+    this(minsupp, minlength, maxlength, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support (relative or absolute)
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   * @param compact Use the compact, array-backed tree representation
+   */
+  public FPGrowth(double minsupp, int minlength, int maxlength, boolean compact) {
     super(minsupp, minlength, maxlength);
+    this.compact = compact;
   }
 
   @Override
@@ -138,10 +161,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
 
     LOG.verbose("Building FP-Tree.");
     Duration ctime = LOG.newDuration(STAT + "fp-tree.construction.time").begin();
-    FPTree tree = buildFPTree(relation, iidx, items);
-    if(LOG.isStatistics()) {
-      tree.logStatistics();
-    }
+    PrefixTree tree = buildFPTree(relation, iidx, items);
     if(LOG.isDebuggingFinest()) {
       StringBuilder buf = new StringBuilder(10000).append("FP-tree:\n");
       tree.appendTo(buf, new FPNode.Translator() {
@@ -155,33 +175,14 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     }
     // Reduce memory usage:
     tree.reduceMemory();
+    if(LOG.isStatistics()) {
+      tree.logStatistics();
+    }
     LOG.statistics(ctime.end());
 
     LOG.verbose("Extracting frequent patterns.");
     Duration etime = LOG.newDuration(STAT + "fp-growth.extraction.time").begin();
-    final IndefiniteProgress itemp = LOG.isVerbose() ? new IndefiniteProgress("Frequent itemsets", LOG) : null;
-    final List<Itemset> solution = new ArrayList<>();
-    // Start extraction with the least frequent items
-    tree.extract(minsupp, minlength, maxlength, true, new FPTree.Collector() {
-      @Override
-      public void collect(int support, int[] data, int start, int plen) {
-        // Always translate the indexes back to the original values via 'idx'!
-        if(plen - start == 1) {
-          solution.add(new OneItemset(idx[data[start]], support));
-          LOG.incrementProcessed(itemp);
-          return;
-        }
-        // Copy from buffer to a permanent storage
-        int[] indices = new int[plen - start];
-        for(int i = start, j = 0; i < plen; i++) {
-          indices[j++] = idx[data[i]]; // Translate to original items
-        }
-        Arrays.sort(indices);
-        solution.add(new SparseItemset(indices, support));
-        LOG.incrementProcessed(itemp);
-      }
-    });
-    LOG.setCompleted(itemp);
+    final List<Itemset> solution = extractItemsets(tree, minsupp, idx);
     Collections.sort(solution);
     LOG.statistics(etime.end());
     LOG.statistics(new LongStatistic(STAT + "frequent-itemsets", solution.size()));
@@ -191,6 +192,49 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     return result;
   }
 
+  /**
+   * Extract the frequent itemsets from the FP-tree.
+   *
+   * @param tree FP-tree, will be destroyed
+   * @param minsupp Minimum support
+   * @param idx Index to translate back to the original items
+   * @return Frequent itemsets, unsorted
+   */
+  protected List<Itemset> extractItemsets(PrefixTree tree, int minsupp, int[] idx) {
+    final IndefiniteProgress itemp = LOG.isVerbose() ? new IndefiniteProgress("Frequent itemsets", LOG) : null;
+    final List<Itemset> solution = new ArrayList<>();
+    // Start extraction with the least frequent items
+    tree.extract(minsupp, minlength, maxlength, true, (support, data, start, plen) -> {
+      solution.add(makeItemset(support, data, start, plen, idx));
+      LOG.incrementProcessed(itemp);
+    });
+    LOG.setCompleted(itemp);
+    return solution;
+  }
+
+  /**
+   * Copy an itemset from the extraction buffer to permanent storage.
+   *
+   * @param support Support of the itemset
+   * @param data Buffer
+   * @param start First valid buffer position
+   * @param plen End of valid buffer
+   * @param idx Index to translate back to the original items
+   * @return Itemset
+   */
+  protected static Itemset makeItemset(int support, int[] data, int start, int plen, int[] idx) {
+    // Always translate the indexes back to the original values via 'idx'!
+    if(plen - start == 1) {
+      return new OneItemset(idx[data[start]], support);
+    }
+    int[] indices = new int[plen - start];
+    for(int i = start, j = 0; i < plen; i++) {
+      indices[j++] = idx[data[i]]; // Translate to original items
+    }
+    Arrays.sort(indices);
+    return new SparseItemset(indices, support);
+  }
+
   /**
    * Count the support of each 1-item.
    *
@@ -198,7 +242,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @param dim Maximum dimensionality
    * @return Item counts
    */
-  private int[] countItemSupport(final Relation<BitVector> relation, final int dim) {
+  protected int[] countItemSupport(final Relation<BitVector> relation, final int dim) {
     final int[] counts = new int[dim];
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding frequent 1-items", relation.size(), LOG) : null;
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
@@ -221,8 +265,8 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @param items Number of items
    * @return FP-tree
    */
-  private FPTree buildFPTree(final Relation<BitVector> relation, int[] iidx, final int items) {
-    FPTree tree = new FPTree(items);
+  protected PrefixTree buildFPTree(final Relation<BitVector> relation, int[] iidx, final int items) {
+    PrefixTree tree = newTree(items);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building FP-tree", relation.size(), LOG) : null;
     int[] buf = new int[items];
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
@@ -247,6 +291,16 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     return tree;
   }
 
+  /**
+   * Make a new, empty FP-tree.
+   *
+   * @param items Number of items in header table
+   * @return Tree
+   */
+  protected PrefixTree newTree(int items) {
+    return compact ? new CompactFPTree(items) : new FPTree(items);
+  }
+
   /**
    * Build a forward map, item id (dimension) to frequency position
    *
@@ -278,6 +332,75 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     return idx;
   }
 
+  /**
+   * Common interface of the FP-tree representations.
+   *
+   * @author Erich Schubert
+   *
+   * @assoc - - - FPTree.Collector
+   */
+  public interface PrefixTree {
+    /**
+     * Insert an itemset into the tree.
+     *
+     * @param buf Buffer
+     * @param i Start position in buffer
+     * @param l End position in buffer
+     * @param weight Weight
+     */
+    void insert(int[] buf, int i, int l, int weight);
+
+    /**
+     * Merge another tree of the same type into this tree. Both trees must not
+     * have been reduced yet.
+     *
+     * @param other Other tree
+     */
+    void merge(PrefixTree other);
+
+    /**
+     * Release the memory only needed for construction.
+     */
+    void reduceMemory();
+
+    /**
+     * Extract all frequent itemsets, beginning with the least frequent items.
+     *
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param destruct Remove nodes
+     * @param col Itemset collector
+     */
+    void extract(int minsupp, int minlength, int maxlength, boolean destruct, FPTree.Collector col);
+
+    /**
+     * Extract itemsets ending in a single item, without modifying this tree.
+     * Different items can be extracted concurrently.
+     *
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param item Item to extract
+     * @param col Itemset collector
+     */
+    void extract(int minsupp, int minlength, int maxlength, int item, FPTree.Collector col);
+
+    /**
+     * Debugging function: build a text representation of the tree.
+     *
+     * @param buf Output buffer
+     * @param t Translator to user-understandable items
+     * @return Buffer
+     */
+    StringBuilder appendTo(StringBuilder buf, FPNode.Translator t);
+
+    /**
+     * Output some statistics to logging.
+     */
+    void logStatistics();
+  }
+
   /**
    * FP-Tree data structure
    *
@@ -286,7 +409,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @composed - - - FPNode
    * @assoc - - - Collector
    */
-  public static class FPTree extends FPNode {
+  public static class FPTree extends FPNode implements PrefixTree {
     /**
      * Header table
      */
@@ -315,10 +438,16 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      * @param l End position in buffer
      * @param weight Weight
      */
+    @Override
     public void insert(int[] buf, int i, int l, int weight) {
       insert(this, buf, i, l, weight);
     }
 
+    @Override
+    public void merge(PrefixTree other) {
+      merge(this, (FPTree) other);
+    }
+
     /**
      * Create a new node of the FP-tree, linking it into the header table.
      *
@@ -345,6 +474,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      * @param destruct Remove nodes
      * @param col Itemset collector
      */
+    @Override
     public void extract(int minsupp, int minlength, int maxlength, boolean destruct, Collector col) {
       int[] buf = new int[header.length], buf2 = new int[header.length],
           buf3 = new int[header.length];
@@ -357,6 +487,13 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       LOG.ensureCompleted(prog);
     }
 
+    @Override
+    public void extract(int minsupp, int minlength, int maxlength, int item, Collector col) {
+      int[] buf = new int[header.length], buf2 = new int[header.length],
+          buf3 = new int[header.length];
+      extract(minsupp, minlength, maxlength, item, buf, 0, buf2, buf3, false, col);
+    }
+
     /**
      * Extract itemsets ending in the given item.
      *
@@ -437,7 +574,8 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
         col.collect(support, postfix, 0, plen);
       }
       for(int j = last; j >= 0; j--) {
-        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, destruct, col);
+        // The projected tree is private, and can always be destroyed.
+        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, true, col);
       }
       if(destruct) {
         header[item] = null;
@@ -487,7 +625,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      *
      * @author Erich Schubert
      */
-    interface Collector {
+    public interface Collector {
       /**
        * Collect a single frequent itemset
        *
@@ -499,9 +637,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       void collect(int support, int[] buf, int start, int end);
     }
 
-    /**
-     * Output some statistics to logging.
-     */
+    @Override
     public void logStatistics() {
       LOG.statistics(new LongStatistic(STAT + "items", header.length));
       LOG.statistics(new LongStatistic(STAT + "nodes", nodes));
@@ -509,6 +645,390 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     }
   }
 
+  /**
+   * Compact FP-tree, stored in parallel primitive arrays instead of one object
+   * per node.
+   * <p>
+   * Nodes are allocated from growing arrays (item, count, parent, next node
+   * with the same item, and number of children). The first child and next
+   * sibling links are only needed for construction, and are released by
+   * {@link #reduceMemory()}, which also trims the arrays to their used size.
+   * A node then needs 20 bytes, instead of an object with a child array.
+   *
+   * @author Erich Schubert
+   *
+   * @assoc - - - FPTree.Collector
+   */
+  public static class CompactFPTree implements PrefixTree {
+    /**
+     * Root node index.
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * Initial capacity of projected trees.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Item of each node, -1 for the root.
+     */
+    int[] item;
+
+    /**
+     * Count of each node.
+     */
+    int[] count;
+
+    /**
+     * Parent of each node, -1 for the root.
+     */
+    int[] parent;
+
+    /**
+     * Next node with the same item, -1 for the end of the list.
+     */
+    int[] next;
+
+    /**
+     * Number of children of each node.
+     */
+    int[] numchildren;
+
+    /**
+     * First child and next sibling, for construction only.
+     */
+    int[] child, sibling;
+
+    /**
+     * Header table: first node of each item, -1 if none.
+     */
+    int[] header;
+
+    /**
+     * Number of nodes used.
+     */
+    int size = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param items Number of items in header table
+     */
+    public CompactFPTree(int items) {
+      this(items, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param items Number of items in header table
+     * @param capacity Initial node capacity
+     */
+    public CompactFPTree(int items, int capacity) {
+      header = new int[items];
+      Arrays.fill(header, -1);
+      item = new int[capacity];
+      count = new int[capacity];
+      parent = new int[capacity];
+      next = new int[capacity];
+      numchildren = new int[capacity];
+      child = new int[capacity];
+      sibling = new int[capacity];
+      newNode(-1, -1); // Root
+    }
+
+    /**
+     * Allocate a new node.
+     *
+     * @param p Parent node
+     * @param label Item
+     * @return Node index
+     */
+    private int newNode(int p, int label) {
+      if(size == item.length) {
+        final int newsize = size + (size >> 1) + 1;
+        item = Arrays.copyOf(item, newsize);
+        count = Arrays.copyOf(count, newsize);
+        parent = Arrays.copyOf(parent, newsize);
+        next = Arrays.copyOf(next, newsize);
+        numchildren = Arrays.copyOf(numchildren, newsize);
+        child = Arrays.copyOf(child, newsize);
+        sibling = Arrays.copyOf(sibling, newsize);
+      }
+      final int n = size++;
+      item[n] = label;
+      parent[n] = p;
+      child[n] = -1;
+      if(p >= 0) {
+        // Prepend to the item list and to the children of the parent.
+        next[n] = header[label];
+        header[label] = n;
+        sibling[n] = child[p];
+        child[p] = n;
+        numchildren[p]++;
+      }
+      else {
+        next[n] = sibling[n] = -1;
+      }
+      return n;
+    }
+
+    /**
+     * Find or create the child of a node.
+     *
+     * @param p Parent node
+     * @param label Item
+     * @return Child node
+     */
+    private int getOrMakeChild(int p, int label) {
+      for(int c = child[p]; c >= 0; c = sibling[c]) {
+        if(item[c] == label) {
+          return c;
+        }
+      }
+      return newNode(p, label);
+    }
+
+    @Override
+    public void insert(int[] buf, int i, int l, int weight) {
+      int node = ROOT;
+      count[node] += weight;
+      for(; i < l; i++) {
+        node = getOrMakeChild(node, buf[i]);
+        count[node] += weight;
+      }
+    }
+
+    @Override
+    public void merge(PrefixTree other) {
+      merge(ROOT, (CompactFPTree) other, ROOT);
+    }
+
+    /**
+     * Merge a subtree of another tree into a node of this tree.
+     *
+     * @param node Node in this tree
+     * @param other Other tree
+     * @param onode Node in the other tree
+     */
+    private void merge(int node, CompactFPTree other, int onode) {
+      count[node] += other.count[onode];
+      for(int c = other.child[onode]; c >= 0; c = other.sibling[c]) {
+        merge(getOrMakeChild(node, other.item[c]), other, c);
+      }
+    }
+
+    @Override
+    public void reduceMemory() {
+      child = sibling = null;
+      if(size < item.length) {
+        item = Arrays.copyOf(item, size);
+        count = Arrays.copyOf(count, size);
+        parent = Arrays.copyOf(parent, size);
+        next = Arrays.copyOf(next, size);
+        numchildren = Arrays.copyOf(numchildren, size);
+      }
+    }
+
+    @Override
+    public void extract(int minsupp, int minlength, int maxlength, boolean destruct, FPTree.Collector col) {
+      int[] buf = new int[header.length], buf2 = new int[header.length],
+          buf3 = new int[header.length];
+      int stop = (minlength > 1) ? minlength - 1 : 0;
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", header.length - stop, LOG) : null;
+      for(int j = header.length - 1; j >= stop; --j) {
+        extract(minsupp, minlength, maxlength, j, buf, 0, buf2, buf3, destruct, col);
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+    }
+
+    @Override
+    public void extract(int minsupp, int minlength, int maxlength, int item, FPTree.Collector col) {
+      int[] buf = new int[header.length], buf2 = new int[header.length],
+          buf3 = new int[header.length];
+      extract(minsupp, minlength, maxlength, item, buf, 0, buf2, buf3, false, col);
+    }
+
+    /**
+     * Extract itemsets ending in the given item.
+     *
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param it Current item
+     * @param postfix Items to append
+     * @param plen Postfix length
+     * @param buf2 Scratch buffer
+     * @param buf3 Scratch buffer
+     * @param destruct Remove nodes
+     * @param col Itemset collector
+     */
+    private void extract(int minsupp, int minlength, int maxlength, int it, int[] postfix, int plen, int[] buf2, int[] buf3, boolean destruct, FPTree.Collector col) {
+      final int first = header[it];
+      // Skip items that have disappeared from the tree
+      if(first < 0) {
+        return;
+      }
+      // No siblings, no children: single path only.
+      if(next[first] < 0 && numchildren[first] == 0) {
+        if(count[first] >= minsupp) {
+          extractLinear(count[first], minlength, maxlength, it, postfix, plen, col);
+        }
+        if(destruct) {
+          numchildren[parent[first]]--;
+          header[it] = -1;
+        }
+        return;
+      }
+      // Count total support.
+      int support = 0, pathlen = 0;
+      for(int cur = first; cur >= 0; cur = next[cur]) {
+        support += count[cur];
+      }
+      if(support < minsupp) {
+        return;
+      }
+      // Check which parent items to keep in the projection.
+      Arrays.fill(buf3, 0);
+      for(int cur = first; cur >= 0; cur = next[cur]) {
+        for(int p = parent[cur]; p != ROOT; p = parent[p]) {
+          buf3[item[p]] += count[cur];
+          ++pathlen;
+        }
+      }
+      // For testing minimum length:
+      final int mminlength = minlength - (plen + 1);
+      if(mminlength > 0) {
+        int fparents = 0;
+        for(int i = 0; i < it; i++) {
+          if(buf3[i] >= minsupp) {
+            fparents += 1;
+          }
+        }
+        if(fparents < mminlength) {
+          return; // Not enough parents that are still frequent.
+        }
+      }
+      // Build projected tree, at most as large as all paths:
+      CompactFPTree proj = new CompactFPTree(it, Math.min(pathlen, size) + 1);
+      for(int cur = first; cur >= 0; cur = next[cur]) {
+        int j = buf2.length;
+        for(int p = parent[cur]; p != ROOT; p = parent[p]) {
+          if(buf3[item[p]] >= minsupp) {
+            buf2[--j] = item[p];
+          }
+        }
+        if(buf2.length - j >= mminlength) {
+          proj.insert(buf2, j, buf2.length, count[cur]);
+        }
+      }
+      // Release memory:
+      proj.reduceMemory();
+      postfix[plen++] = it;
+      if(plen >= minlength && plen <= maxlength) {
+        col.collect(support, postfix, 0, plen);
+      }
+      // The projected tree is private, and can always be destroyed.
+      for(int j = it - 1; j >= 0; j--) {
+        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, true, col);
+      }
+      if(destruct) {
+        header[it] = -1;
+      }
+    }
+
+    /**
+     * Extract itemsets from a linear tree.
+     *
+     * @param supp Current support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param it Current item
+     * @param postfix Postfix for extracted itemsets
+     * @param plen Postfix length
+     * @param col Output collector
+     */
+    private void extractLinear(int supp, int minlength, int maxlength, int it, int[] postfix, int plen, FPTree.Collector col) {
+      // For testing minimum length:
+      final int mminlength = minlength - plen;
+      // Unsatisfiable even with current item:
+      if(it + 1 < mminlength) {
+        return;
+      }
+      // Add current item:
+      postfix[plen++] = it;
+      if(plen >= minlength && plen <= maxlength) {
+        col.collect(supp, postfix, 0, plen);
+      }
+      // Any more parents will exceed the maximum length:
+      if(plen == maxlength) {
+        return;
+      }
+      assert (header[it] >= 0);
+      // Look at parent nodes:
+      for(int p = parent[header[it]]; p != ROOT; p = parent[p]) {
+        if(item[p] < mminlength) {
+          break; // Too short.
+        }
+        extractLinear(supp, minlength, maxlength, item[p], postfix, plen, col);
+      }
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder buf, FPNode.Translator t) {
+      return appendTo(buf, t, ROOT, 0);
+    }
+
+    /**
+     * Debugging function: build a text representation of the tree.
+     *
+     * @param buf Output buffer
+     * @param t Translator to user-understandable items
+     * @param node Current node
+     * @param depth Current depth
+     * @return Buffer
+     */
+    private StringBuilder appendTo(StringBuilder buf, FPNode.Translator t, int node, int depth) {
+      if(node != ROOT) {
+        t.appendTo(buf, item[node]).append(": ");
+      }
+      buf.append(count[node]).append('\n');
+      if(child == null) {
+        return buf; // Children no longer available.
+      }
+      for(int c = child[node]; c >= 0; c = sibling[c]) {
+        for(int j = 0; j < depth; j++) {
+          buf.append(' ');
+        }
+        appendTo(buf, t, c, depth + 1);
+      }
+      return buf;
+    }
+
+    /**
+     * Memory used by the node arrays and header table, in bytes.
+     *
+     * @return Bytes used
+     */
+    public long getBytes() {
+      long arrays = item.length * 5L + header.length;
+      if(child != null) {
+        arrays += child.length * 2L;
+      }
+      return arrays * Integer.BYTES;
+    }
+
+    @Override
+    public void logStatistics() {
+      LOG.statistics(new LongStatistic(STAT + "items", header.length));
+      LOG.statistics(new LongStatistic(STAT + "nodes", size));
+      LOG.statistics(new LongStatistic(STAT + "bytes", getBytes()));
+      LOG.statistics(new LongStatistic(STAT + "transactions", count[ROOT]));
+    }
+  }
+
   /**
    * A single node of the FP tree.
    *
@@ -585,6 +1105,34 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       sub.insert(tree, buf, i + 1, l, weight);
     }
 
+    /**
+     * Merge another tree into this tree, before memory has been reduced.
+     *
+     * @param tree Tree to add new nodes to
+     * @param other Node to merge into this node
+     */
+    public void merge(FPTree tree, FPNode other) {
+      count += other.count;
+      for(int i = 0; i < other.numchildren; i++) {
+        final FPNode ochild = other.children[i];
+        FPNode child = null;
+        for(int j = 0; j < numchildren; j++) {
+          if(children[j].key == ochild.key) {
+            child = children[j];
+            break;
+          }
+        }
+        if(child == null) {
+          // Make sure we have enough room to insert.
+          if(numchildren == children.length) {
+            ensureSize();
+          }
+          child = children[numchildren++] = tree.newNode(this, ochild.key);
+        }
+        child.merge(tree, ochild);
+      }
+    }
+
     /**
      * Ensure we have enough storage.
      */
@@ -655,7 +1203,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      *
      * @author Erich Schubert
      */
-    interface Translator {
+    public interface Translator {
       /**
        * Append a single item to a buffer.
        *
@@ -673,9 +1221,26 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @author Erich Schubert
    */
   public static class Par extends AbstractFrequentItemsetAlgorithm.Par {
+    /**
+     * Flag to use the compact, array-backed FP-tree.
+     */
+    public static final OptionID COMPACT_ID = new OptionID("fpgrowth.compact", //
+        "Use a compact FP-tree stored in primitive arrays, which needs less memory.");
+
+    /**
+     * Use the compact, array-backed tree representation.
+     */
+    protected boolean compact = false;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new Flag(COMPACT_ID).grab(config, x -> compact = x);
+    }
+
     @Override
     public FPGrowth make() {
-      return new FPGrowth(minsupp, minlength, maxlength);
+      return new FPGrowth(minsupp, minlength, maxlength, compact);
     }
   }
 }
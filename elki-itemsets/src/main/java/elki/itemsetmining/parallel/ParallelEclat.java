@@ -0,0 +1,108 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.itemsetmining.parallel;
+
+import java.util.List;
+
+import elki.data.BitVector;
+import elki.data.SparseFeatureVector;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.relation.Relation;
+import elki.itemsetmining.Eclat;
+import elki.itemsetmining.Itemset;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+
+/**
+ * Parallel version of {@link Eclat}.
+ * <p>
+ * The item supports are counted in parallel, such that transaction lists are
+ * only built for frequent items, with the exact size. The itemsets beginning
+ * with each frequent item are then mined as independent fork-join tasks, with
+ * one collector per task. The result is the same as with the serial version.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelEclat extends Eclat {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEclat.class);
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   */
+  public ParallelEclat(double minsupp, int minlength, int maxlength) {
+    super(minsupp, minlength, maxlength);
+  }
+
+  @Override
+  protected DBIDs[] buildIndex(Relation<BitVector> relation, int dim, int minsupp) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding frequent 1-items", relation.size(), LOG) : null;
+    final int[] counts = ParallelItemsetUtil.countItemSupport(relation, dim, prog, LOG);
+    ArrayModifiableDBIDs[] idx = new ArrayModifiableDBIDs[dim];
+    for(int i = 0; i < dim; i++) {
+      // Forget non-frequent 1-itemsets.
+      idx[i] = counts[i] >= minsupp ? DBIDUtil.newArray(counts[i]) : null;
+    }
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        ArrayModifiableDBIDs ids = idx[bv.iterDim(it)];
+        if(ids != null) {
+          ids.add(iter);
+        }
+      }
+    }
+    for(int i = 0; i < dim; i++) {
+      if(idx[i] != null) {
+        idx[i].sort();
+      }
+    }
+    return idx;
+  }
+
+  @Override
+  protected List<Itemset> extractItemsets(DBIDs[] idx, int minsupp) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", idx.length, LOG) : null;
+    return ParallelItemsetUtil.mine(0, idx.length, (item, solution) -> extractItemsets(idx, item, minsupp, solution), prog, LOG);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par extends Eclat.Par {
+    @Override
+    public ParallelEclat make() {
+      return new ParallelEclat(minsupp, minlength, maxlength);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.itemsetmining.parallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import elki.data.BitVector;
+import elki.data.SparseFeatureVector;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.itemsetmining.FPGrowth;
+import elki.itemsetmining.Itemset;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Parallel version of {@link FPGrowth}.
+ * <p>
+ * The item supports are counted in parallel, and each thread builds an FP-tree
+ * of its part of the data; these trees are merged afterwards. The conditional
+ * pattern base of each item in the header table is then mined as an
+ * independent fork-join task, with one collector per task. The result is the
+ * same as with the serial version.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelFPGrowth extends FPGrowth {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFPGrowth.class);
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support (relative or absolute)
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   */
+  public ParallelFPGrowth(double minsupp, int minlength, int maxlength) {
+    this(minsupp, minlength, maxlength, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support (relative or absolute)
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   * @param compact Use the compact, array-backed tree representation
+   */
+  public ParallelFPGrowth(double minsupp, int minlength, int maxlength, boolean compact) {
+    super(minsupp, minlength, maxlength, compact);
+  }
+
+  @Override
+  protected int[] countItemSupport(Relation<BitVector> relation, int dim) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding frequent 1-items", relation.size(), LOG) : null;
+    return ParallelItemsetUtil.countItemSupport(relation, dim, prog, LOG);
+  }
+
+  @Override
+  protected PrefixTree buildFPTree(Relation<BitVector> relation, int[] iidx, int items) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building FP-tree", relation.size(), LOG) : null;
+    TreeBuilder builder = new TreeBuilder(relation, iidx, items);
+    ParallelExecutor.run(relation.getDBIDs(), prog, LOG, builder);
+    LOG.ensureCompleted(prog);
+    return builder.tree != null ? builder.tree : newTree(items);
+  }
+
+  @Override
+  protected List<Itemset> extractItemsets(PrefixTree tree, int minsupp, int[] idx) {
+    final int stop = (minlength > 1) ? minlength - 1 : 0;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", Math.max(0, idx.length - stop), LOG) : null;
+    return ParallelItemsetUtil.mine(stop, idx.length, (item, solution) -> {
+      tree.extract(minsupp, minlength, maxlength, item, //
+          (support, data, start, plen) -> solution.add(makeItemset(support, data, start, plen, idx)));
+    }, prog, LOG);
+  }
+
+  /**
+   * Build partial FP-trees in parallel, and merge them.
+   *
+   * @author Erich Schubert
+   */
+  private class TreeBuilder implements Processor {
+    /**
+     * Data relation.
+     */
+    private final Relation<BitVector> relation;
+
+    /**
+     * Inverse index (dimension to item rank).
+     */
+    private final int[] iidx;
+
+    /**
+     * Number of items.
+     */
+    private final int items;
+
+    /**
+     * Merged tree.
+     */
+    PrefixTree tree;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param iidx Inverse index (dimension to item rank)
+     * @param items Number of items
+     */
+    TreeBuilder(Relation<BitVector> relation, int[] iidx, int items) {
+      this.relation = relation;
+      this.iidx = iidx;
+      this.items = items;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      PrefixTree partial = ((Instance) inst).tree;
+      if(tree == null) {
+        tree = partial;
+      }
+      else {
+        tree.merge(partial);
+      }
+    }
+
+    /**
+     * Build the FP-tree of a part of the data.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Partial tree.
+       */
+      final PrefixTree tree = newTree(items);
+
+      /**
+       * Item buffer.
+       */
+      final int[] buf = new int[items];
+
+      @Override
+      public void map(DBIDRef id) {
+        // Convert item to index representation:
+        int l = 0;
+        SparseFeatureVector<?> bv = relation.get(id);
+        for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+          int i = iidx[bv.iterDim(it)];
+          if(i < 0) {
+            continue; // Skip non-frequent items
+          }
+          buf[l++] = i;
+        }
+        // Skip too short entries
+        if(l >= minlength) {
+          Arrays.sort(buf, 0, l); // Sort ascending
+          tree.insert(buf, 0, l, 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par extends FPGrowth.Par {
+    @Override
+    public ParallelFPGrowth make() {
+      return new ParallelFPGrowth(minsupp, minlength, maxlength, compact);
+    }
+  }
+}
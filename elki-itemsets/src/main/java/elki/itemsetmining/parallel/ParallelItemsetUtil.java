@@ -0,0 +1,235 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.itemsetmining.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveTask;
+
+import elki.data.BitVector;
+import elki.data.SparseFeatureVector;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.itemsetmining.Itemset;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Shared helper functions for parallel frequent itemset mining.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+final class ParallelItemsetUtil {
+  /**
+   * Private constructor. Static methods only.
+   */
+  private ParallelItemsetUtil() {
+    // Do not use.
+  }
+
+  /**
+   * Count the support of each 1-item in parallel.
+   *
+   * @param relation Data
+   * @param dim Maximum dimensionality
+   * @param prog Progress
+   * @param log Logger for progress
+   * @return Item counts
+   */
+  static int[] countItemSupport(final Relation<BitVector> relation, final int dim, FiniteProgress prog, Logging log) {
+    final int[] counts = new int[dim];
+    ParallelExecutor.run(relation.getDBIDs(), prog, log, new Processor() {
+      @Override
+      public Counter instantiate(Executor executor) {
+        return new Counter(relation, dim);
+      }
+
+      @Override
+      public void cleanup(Processor.Instance inst) {
+        final int[] c = ((Counter) inst).counts;
+        for(int i = 0; i < dim; i++) {
+          counts[i] += c[i];
+        }
+      }
+    });
+    log.ensureCompleted(prog);
+    return counts;
+  }
+
+  /**
+   * Mine all items in a range in parallel, and merge the results.
+   *
+   * @param start First item
+   * @param end End of items (exclusive)
+   * @param miner Function to mine a single item
+   * @param prog Progress
+   * @param log Logger for progress
+   * @return Itemsets found, unsorted
+   */
+  static List<Itemset> mine(int start, int end, ItemMiner miner, FiniteProgress prog, Logging log) {
+    if(start >= end) {
+      return new ArrayList<>();
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      List<Itemset> solution = core.submit(new ItemsTask(miner, start, end, prog, log)).get();
+      log.ensureCompleted(prog);
+      return solution;
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Mining frequent itemsets failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Mining frequent itemsets was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Mine the itemsets of a single item.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  interface ItemMiner {
+    /**
+     * Mine the itemsets of a single item.
+     *
+     * @param item Item
+     * @param solution Output collector, private to this task
+     */
+    void mine(int item, List<Itemset> solution);
+  }
+
+  /**
+   * Count the item support of a part of the data.
+   *
+   * @author Erich Schubert
+   */
+  private static class Counter implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    private final Relation<BitVector> relation;
+
+    /**
+     * Partial counts.
+     */
+    final int[] counts;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param dim Dimensionality
+     */
+    Counter(Relation<BitVector> relation, int dim) {
+      this.relation = relation;
+      this.counts = new int[dim];
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      SparseFeatureVector<?> bv = relation.get(id);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        counts[bv.iterDim(it)]++;
+      }
+    }
+  }
+
+  /**
+   * Fork-join task to mine a range of items, with one output list per task.
+   *
+   * @author Erich Schubert
+   */
+  private static class ItemsTask extends RecursiveTask<List<Itemset>> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Function to mine a single item.
+     */
+    private final ItemMiner miner;
+
+    /**
+     * Item range.
+     */
+    private final int start, end;
+
+    /**
+     * Progress.
+     */
+    private final FiniteProgress prog;
+
+    /**
+     * Logger for progress.
+     */
+    private final Logging log;
+
+    /**
+     * Constructor.
+     *
+     * @param miner Function to mine a single item
+     * @param start First item
+     * @param end End of items (exclusive)
+     * @param prog Progress
+     * @param log Logger for progress
+     */
+    ItemsTask(ItemMiner miner, int start, int end, FiniteProgress prog, Logging log) {
+      this.miner = miner;
+      this.start = start;
+      this.end = end;
+      this.prog = prog;
+      this.log = log;
+    }
+
+    @Override
+    protected List<Itemset> compute() {
+      if(end - start == 1) {
+        List<Itemset> solution = new ArrayList<>();
+        miner.mine(start, solution);
+        if(prog != null) {
+          prog.incrementProcessed(log);
+        }
+        return solution;
+      }
+      final int mid = (start + end) >>> 1;
+      ItemsTask left = new ItemsTask(miner, start, mid, prog, log);
+      left.fork();
+      List<Itemset> right = new ItemsTask(miner, mid, end, prog, log).compute();
+      List<Itemset> solution = left.join();
+      solution.addAll(right);
+      return solution;
+    }
+  }
+}
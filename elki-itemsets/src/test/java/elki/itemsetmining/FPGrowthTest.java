@@ -119,4 +119,43 @@ public class FPGrowthTest extends AbstractSimpleAlgorithmTest {
         .with(FPGrowth.Par.MINSUPP_ID, 200).build().autorun(db);
     assertEquals("Size not as expected.", 184, res.getItemsets().size());
   }
+
+  @Test
+  public void testCompact() {
+    Database db = makeSimpleDatabase(UNITTEST + "itemsets/missing1.txt", 4, new ListParameterization() //
+        .addParameter(InputStreamDatabaseConnection.Par.PARSER_ID, SimpleTransactionParser.class));
+    {
+      FrequentItemsetsResult res = new ELKIBuilder<>(FPGrowth.class) //
+          .with(FPGrowth.Par.MINSUPP_ID, 1) //
+          .with(FPGrowth.Par.COMPACT_ID) //
+          .build().autorun(db);
+      assertEquals("Size not as expected.", 14, res.getItemsets().size());
+      for(Itemset i : res.getItemsets()) {
+        assertEquals("Bad support", 4 - i.length(), i.getSupport());
+      }
+    }
+    {
+      FrequentItemsetsResult res = new ELKIBuilder<>(FPGrowth.class) //
+          .with(FPGrowth.Par.MINSUPP_ID, 1) //
+          .with(FPGrowth.Par.MINLENGTH_ID, 2) //
+          .with(FPGrowth.Par.MAXLENGTH_ID, 3) //
+          .with(FPGrowth.Par.COMPACT_ID) //
+          .build().autorun(db);
+      assertEquals("Size not as expected.", 10, res.getItemsets().size());
+      for(Itemset i : res.getItemsets()) {
+        assertEquals("Bad support", 4 - i.length(), i.getSupport());
+      }
+    }
+  }
+
+  @Test
+  public void testLargeCompact() {
+    Database db = makeSimpleDatabase(UNITTEST + "itemsets/zutaten.txt.gz", 16401, new ListParameterization() //
+        .addParameter(InputStreamDatabaseConnection.Par.PARSER_ID, SimpleTransactionParser.class));
+    FrequentItemsetsResult res = new ELKIBuilder<>(FPGrowth.class) //
+        .with(FPGrowth.Par.MINSUPP_ID, 200) //
+        .with(FPGrowth.Par.COMPACT_ID) //
+        .build().autorun(db);
+    assertEquals("Size not as expected.", 184, res.getItemsets().size());
+  }
 }
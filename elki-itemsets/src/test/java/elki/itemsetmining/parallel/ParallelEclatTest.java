@@ -0,0 +1,85 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.itemsetmining.parallel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.database.Database;
+import elki.datasource.InputStreamDatabaseConnection;
+import elki.datasource.parser.SimpleTransactionParser;
+import elki.itemsetmining.Eclat;
+import elki.itemsetmining.Itemset;
+import elki.result.FrequentItemsetsResult;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for the parallel Eclat.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelEclatTest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testMissing() {
+    Database db = makeSimpleDatabase(UNITTEST + "itemsets/missing1.txt", 4, new ListParameterization() //
+        .addParameter(InputStreamDatabaseConnection.Par.PARSER_ID, SimpleTransactionParser.class));
+    {
+      FrequentItemsetsResult res = new ELKIBuilder<>(ParallelEclat.class) //
+          .with(Eclat.Par.MINSUPP_ID, 1).build().autorun(db);
+      assertEquals("Size not as expected.", 14, res.getItemsets().size());
+      for(Itemset i : res.getItemsets()) {
+        assertEquals("Bad support", 4 - i.length(), i.getSupport());
+      }
+    }
+    {
+      FrequentItemsetsResult res = new ELKIBuilder<>(ParallelEclat.class) //
+          .with(Eclat.Par.MINSUPP_ID, 1) //
+          .with(Eclat.Par.MINLENGTH_ID, 2) //
+          .with(Eclat.Par.MAXLENGTH_ID, 3) //
+          .build().autorun(db);
+      assertEquals("Size not as expected.", 10, res.getItemsets().size());
+      for(Itemset i : res.getItemsets()) {
+        assertEquals("Bad support", 4 - i.length(), i.getSupport());
+      }
+    }
+  }
+
+  @Test
+  public void testLarge() {
+    Database db = makeSimpleDatabase(UNITTEST + "itemsets/zutaten.txt.gz", 16401, new ListParameterization() //
+        .addParameter(InputStreamDatabaseConnection.Par.PARSER_ID, SimpleTransactionParser.class));
+    List<Itemset> serial = new ELKIBuilder<>(Eclat.class) //
+        .with(Eclat.Par.MINSUPP_ID, 100).build().autorun(db).getItemsets();
+    List<Itemset> parallel = new ELKIBuilder<>(ParallelEclat.class) //
+        .with(Eclat.Par.MINSUPP_ID, 100).build().autorun(db).getItemsets();
+    assertEquals("Size not as expected.", serial.size(), parallel.size());
+    for(int i = 0; i < serial.size(); i++) {
+      assertEquals("Itemsets differ.", 0, serial.get(i).compareTo(parallel.get(i)));
+      assertEquals("Bad support", serial.get(i).getSupport(), parallel.get(i).getSupport());
+    }
+  }
+}
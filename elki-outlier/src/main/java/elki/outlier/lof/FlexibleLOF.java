@@ -231,25 +231,36 @@ public class FlexibleLOF<O> implements OutlierAlgorithm {
   protected void computeLRDs(KNNSearcher<DBIDRef> knnq, DBIDs ids, WritableDoubleDataStore lrds) {
     FiniteProgress lrdsProgress = LOG.isVerbose() ? new FiniteProgress("LRD", ids.size(), LOG) : null;
     for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      final KNNList neighbors = knnq.getKNN(iter, kreach);
-      double sum = 0.0;
-      int count = 0;
-      for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
-        if(DBIDUtil.equal(neighbor, iter)) {
-          continue;
-        }
-        KNNList neighborsNeighbors = knnq.getKNN(neighbor, kreach);
-        sum += MathUtil.max(neighbor.doubleValue(), neighborsNeighbors.getKNNDistance());
-        count++;
-      }
-      // Avoid division by 0
-      final double lrd = (sum > 0) ? (count / sum) : Double.POSITIVE_INFINITY;
-      lrds.putDouble(iter, lrd);
+      lrds.putDouble(iter, computeLRD(knnq, iter));
       LOG.incrementProcessed(lrdsProgress);
     }
     LOG.ensureCompleted(lrdsProgress);
   }
 
+  /**
+   * Computes the local reachability density (LRD) of a single object.
+   *
+   * @param knnq the precomputed neighborhood of the objects w.r.t. the
+   *        reachability distance
+   * @param id the object
+   * @return Local reachability density
+   */
+  protected double computeLRD(KNNSearcher<DBIDRef> knnq, DBIDRef id) {
+    final KNNList neighbors = knnq.getKNN(id, kreach);
+    double sum = 0.0;
+    int count = 0;
+    for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      KNNList neighborsNeighbors = knnq.getKNN(neighbor, kreach);
+      sum += MathUtil.max(neighbor.doubleValue(), neighborsNeighbors.getKNNDistance());
+      count++;
+    }
+    // Avoid division by 0
+    return (sum > 0) ? (count / sum) : Double.POSITIVE_INFINITY;
+  }
+
   /**
    * Computes the Local outlier factor (LOF) of the specified objects.
    *
@@ -263,28 +274,7 @@ public class FlexibleLOF<O> implements OutlierAlgorithm {
   protected void computeLOFs(KNNSearcher<DBIDRef> knnq, DBIDs ids, DoubleDataStore lrds, WritableDoubleDataStore lofs, DoubleMinMax lofminmax) {
     FiniteProgress progressLOFs = LOG.isVerbose() ? new FiniteProgress("LOF_SCORE for objects", ids.size(), LOG) : null;
     for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      final double lof, lrdp = lrds.doubleValue(iter);
-      final KNNList neighbors = knnq.getKNN(iter, krefer);
-      if(!Double.isInfinite(lrdp)) {
-        double sum = 0.;
-        int count = 0;
-        for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
-          // skip the point itself
-          if(DBIDUtil.equal(neighbor, iter)) {
-            continue;
-          }
-          final double val = lrds.doubleValue(neighbor);
-          sum += val;
-          count++;
-          if(Double.isInfinite(val)) {
-            break;
-          }
-        }
-        lof = sum / (lrdp * count);
-      }
-      else {
-        lof = 1.0;
-      }
+      final double lof = computeLOF(knnq, iter, lrds);
       lofs.putDouble(iter, lof);
       // update minimum and maximum
       lofminmax.put(lof);
@@ -294,6 +284,38 @@ public class FlexibleLOF<O> implements OutlierAlgorithm {
     LOG.ensureCompleted(progressLOFs);
   }
 
+  /**
+   * Computes the local outlier factor (LOF) of a single object.
+   *
+   * @param knnq the precomputed neighborhood of the objects w.r.t. the
+   *        reference distance
+   * @param id the object
+   * @param lrds Local reachability distances
+   * @return Local outlier factor
+   */
+  protected double computeLOF(KNNSearcher<DBIDRef> knnq, DBIDRef id, DoubleDataStore lrds) {
+    final double lrdp = lrds.doubleValue(id);
+    if(Double.isInfinite(lrdp)) {
+      return 1.0;
+    }
+    final KNNList neighbors = knnq.getKNN(id, krefer);
+    double sum = 0.;
+    int count = 0;
+    for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+      // skip the point itself
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      final double val = lrds.doubleValue(neighbor);
+      sum += val;
+      count++;
+      if(Double.isInfinite(val)) {
+        break;
+      }
+    }
+    return sum / (lrdp * count);
+  }
+
   /**
    * Encapsulates information like the neighborhood, the LRD and LOF values of
    * the objects during a run of the {@link FlexibleLOF} algorithm.
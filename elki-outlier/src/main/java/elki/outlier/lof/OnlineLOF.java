@@ -20,8 +20,13 @@
  */
 package elki.outlier.lof;
 
-import elki.database.datastore.DataStoreFactory;
-import elki.database.datastore.DataStoreUtil;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ToDoubleFunction;
+
+import elki.database.Database;
+import elki.database.datastore.DataStoreEvent;
+import elki.database.datastore.DataStoreListener;
 import elki.database.datastore.WritableDoubleDataStore;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
@@ -34,15 +39,36 @@ import elki.distance.Distance;
 import elki.index.preprocessed.knn.*;
 import elki.logging.Logging;
 import elki.logging.progress.StepProgress;
+import elki.logging.statistics.Duration;
+import elki.logging.statistics.LongStatistic;
 import elki.math.DoubleMinMax;
+import elki.parallel.ParallelCore;
 import elki.result.Metadata;
+import elki.result.ResultUtil;
 import elki.result.outlier.BasicOutlierScoreMeta;
 import elki.result.outlier.OutlierResult;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.pairs.Pair;
 
 /**
  * Incremental version of the {@link LOF} Algorithm, supports insertions and
  * removals.
+ * <p>
+ * In batch mode, the neighborhoods are not updated for every single object,
+ * but once for every insertion or deletion batch of the database (i.e., once
+ * per database event, see
+ * {@link elki.database.DatabaseEventManager#accumulateDataStoreEvents()}).
+ * The local reachability densities and LOF scores of the affected objects are
+ * recomputed in parallel.
+ * <p>
+ * Note that batch mode reconfigures the kNN preprocessors to accumulate their
+ * updates until the end of each database event. If the preprocessors were
+ * already present in the database, this also affects their other users. Call
+ * {@link #removeBatchListener()} to return them to updating every single
+ * object.
  *
  * @author Elke Achtert
  * @since 0.4.0
@@ -57,6 +83,21 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
    */
   private static final Logging LOG = Logging.getLogger(OnlineLOF.class);
 
+  /**
+   * Minimum number of objects per parallel task.
+   */
+  private static final int GRAIN = 256;
+
+  /**
+   * Process the updates of a database batch at once.
+   */
+  protected boolean batch;
+
+  /**
+   * Listener for batched updates of the last run, may be {@code null}.
+   */
+  private BatchListener batchListener;
+
   /**
    * Constructor.
    *
@@ -66,7 +107,21 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
    * @param reachabilityDistance the reachability distance function
    */
   public OnlineLOF(int krefer, int kreach, Distance<? super O> neighborhoodDistance, Distance<? super O> reachabilityDistance) {
+    this(krefer, kreach, neighborhoodDistance, reachabilityDistance, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param krefer The number of neighbors for reference
+   * @param kreach The number of neighbors for reachability distance
+   * @param neighborhoodDistance the neighborhood distance function
+   * @param reachabilityDistance the reachability distance function
+   * @param batch Process the updates of a database batch at once
+   */
+  public OnlineLOF(int krefer, int kreach, Distance<? super O> neighborhoodDistance, Distance<? super O> reachabilityDistance, boolean batch) {
     super(krefer, kreach, neighborhoodDistance, reachabilityDistance);
+    this.batch = batch;
   }
 
   /**
@@ -90,12 +145,39 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
 
     // add listener
     KNNListener l = new LOFKNNListener(lofResult);
-    ((MaterializeKNNPreprocessor<?>) ((PreprocessorKNNQuery) lofResult.getKNNRefer()).getPreprocessor()).addKNNListener(l);
-    ((MaterializeKNNPreprocessor<?>) ((PreprocessorKNNQuery) lofResult.getKNNReach()).getPreprocessor()).addKNNListener(l);
+    MaterializeKNNPreprocessor<?> p1 = (MaterializeKNNPreprocessor<?>) ((PreprocessorKNNQuery) lofResult.getKNNRefer()).getPreprocessor();
+    MaterializeKNNPreprocessor<?> p2 = (MaterializeKNNPreprocessor<?>) ((PreprocessorKNNQuery) lofResult.getKNNReach()).getPreprocessor();
+    p1.addKNNListener(l);
+    p2.addKNNListener(l);
 
+    if(batch) {
+      // Only the result of the most recent run is updated in batches.
+      removeBatchListener();
+      Database db = ResultUtil.findDatabase(relation);
+      if(db != null) {
+        batchListener = new BatchListener(db, p1, p2);
+        db.addDataStoreListener(batchListener);
+      }
+      else {
+        LOG.warning("Relation does not belong to a database, updates will not be batched.");
+      }
+    }
     return lofResult.getResult();
   }
 
+  /**
+   * Stop batching the updates of the last run in batch mode: the listener is
+   * removed from the database, pending updates are processed, and the kNN
+   * preprocessors return to updating every single object. The result remains
+   * up to date.
+   */
+  public void removeBatchListener() {
+    if(batchListener != null) {
+      batchListener.remove();
+      batchListener = null;
+    }
+  }
+
   /**
    * Get the kNN and rkNN queries for the algorithm.
    *
@@ -105,8 +187,10 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
    */
   private Pair<Pair<KNNSearcher<DBIDRef>, KNNSearcher<DBIDRef>>, Pair<RKNNSearcher<DBIDRef>, RKNNSearcher<DBIDRef>>> getKNNAndRkNNQueries(Relation<O> relation, StepProgress stepprog) {
     DistanceQuery<O> drefQ = new QueryBuilder<>(relation, referenceDistance).distanceQuery();
-    KNNSearcher<DBIDRef> kNNRefer = new QueryBuilder<>(drefQ).optimizedOnly().kNNByDBID(krefer);
+    // Query RkNN first: without an RkNN query, an optimized kNN query is not
+    // used, and the optimizer would attach a (usually static) index for it.
     RKNNSearcher<DBIDRef> rkNNRefer = new QueryBuilder<>(drefQ).optimizedOnly().rKNNByDBID(krefer);
+    KNNSearcher<DBIDRef> kNNRefer = rkNNRefer == null ? null : new QueryBuilder<>(drefQ).optimizedOnly().kNNByDBID(krefer);
 
     // No optimized kNN query or RkNN query - use a preprocessor!
     if(kNNRefer == null || rkNNRefer == null) {
@@ -126,8 +210,8 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
     }
 
     DistanceQuery<O> dreachQ = new QueryBuilder<>(relation, reachabilityDistance).distanceQuery();
-    KNNSearcher<DBIDRef> kNNReach = new QueryBuilder<>(dreachQ).optimizedOnly().kNNByDBID(kreach);
     RKNNSearcher<DBIDRef> rkNNReach = new QueryBuilder<>(dreachQ).optimizedOnly().rKNNByDBID(kreach);
+    KNNSearcher<DBIDRef> kNNReach = rkNNReach == null ? null : new QueryBuilder<>(dreachQ).optimizedOnly().kNNByDBID(kreach);
     if(kNNReach == null || rkNNReach == null) {
       if(stepprog != null) {
         stepprog.beginStep(2, "Materializing neighborhood w.r.t. reachability distance function.", LOG);
@@ -211,10 +295,14 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
       if(!e1.getType().equals(e2.getType())) {
         throw new UnsupportedOperationException("Event types do not fit: " + e1.getType() + " != " + e2.getType());
       }
-      if(!e1.getObjects().equals(e2.getObjects())) {
+      // Batches are collected by each preprocessor, so compare the contents
+      DBIDs o1 = e1.getObjects(), o2 = e2.getObjects();
+      if(!o1.equals(o2) && (o1.size() != o2.size() || DBIDUtil.intersectionSize(o1, o2) != o1.size())) {
         throw new UnsupportedOperationException("Objects do not fit: " + e1.getObjects() + " != " + e2.getObjects());
       }
 
+      final String prefix = OnlineLOF.class.getName();
+      Duration duration = LOG.isStatistics() ? LOG.newDuration(prefix + ".update-time").begin() : null;
       if(e1.getType().equals(KNNChangeEvent.Type.DELETE)) {
         kNNsRemoved(e1.getObjects(), e1.getUpdates(), e2.getUpdates(), lofResult);
       }
@@ -224,6 +312,10 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
       else {
         throw new UnsupportedOperationException("Unsupported event type: " + e1.getType());
       }
+      if(duration != null) {
+        LOG.statistics(new LongStatistic(prefix + ".batch-size", e1.getObjects().size()));
+        LOG.statistics(duration.end());
+      }
     }
 
     /**
@@ -249,25 +341,15 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
         affected_lrd_id_candidates.addDBIDs(lofResult.getRkNNReach().getRKNN(it, kreach));
       }
       affected_lrd_id_candidates.addDBIDs(lrd_ids);
-      WritableDoubleDataStore new_lrds = DataStoreUtil.makeDoubleStorage(affected_lrd_id_candidates, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
-      computeLRDs(lofResult.getKNNReach(), affected_lrd_id_candidates, new_lrds);
-
-      ArrayModifiableDBIDs affected_lrd_ids = DBIDUtil.newArray(affected_lrd_id_candidates.size());
-      for(DBIDIter iter = affected_lrd_id_candidates.iter(); iter.valid(); iter.advance()) {
-        double new_lrd = new_lrds.doubleValue(iter);
-        if(new_lrd != lofResult.getLrds().doubleValue(iter)) {
-          lofResult.getLrds().putDouble(iter, new_lrd);
-          affected_lrd_ids.add(iter);
-        }
-      }
+      DBIDs affected_lrd_ids = recomputeLRDs(affected_lrd_id_candidates, lofResult);
 
       // recompute lofs
       if(stepprog != null) {
         stepprog.beginStep(2, "Recompute LOFS.", LOG);
       }
-      ModifiableDBIDs affected_lof_ids = DBIDUtil.newHashSet(affected_lrd_ids.size() * kreach);
+      ModifiableDBIDs affected_lof_ids = DBIDUtil.newHashSet(affected_lrd_ids.size() * krefer);
       for(DBIDIter it = affected_lrd_ids.iter(); it.valid(); it.advance()) {
-        affected_lof_ids.addDBIDs(lofResult.getRkNNRefer().getRKNN(it, kreach));
+        affected_lof_ids.addDBIDs(lofResult.getRkNNRefer().getRKNN(it, krefer));
       }
       affected_lof_ids.addDBIDs(affected_lrd_ids);
       affected_lof_ids.addDBIDs(insertions);
@@ -313,16 +395,7 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
         affected_lrd_id_candidates.addDBIDs(lofResult.getRkNNReach().getRKNN(it, kreach));
       }
       affected_lrd_id_candidates.addDBIDs(updates2);
-      WritableDoubleDataStore new_lrds = DataStoreUtil.makeDoubleStorage(affected_lrd_id_candidates, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
-      computeLRDs(lofResult.getKNNReach(), affected_lrd_id_candidates, new_lrds);
-      ArrayModifiableDBIDs affected_lrd_ids = DBIDUtil.newArray(affected_lrd_id_candidates.size());
-      for(DBIDIter iter = affected_lrd_id_candidates.iter(); iter.valid(); iter.advance()) {
-        double new_lrd = new_lrds.doubleValue(iter);
-        if(new_lrd != lofResult.getLrds().doubleValue(iter)) {
-          lofResult.getLrds().putDouble(iter, new_lrd);
-          affected_lrd_ids.add(iter);
-        }
-      }
+      DBIDs affected_lrd_ids = recomputeLRDs(affected_lrd_id_candidates, lofResult);
 
       // recompute lofs
       if(stepprog != null) {
@@ -344,6 +417,33 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
       LOG.setCompleted(stepprog);
     }
 
+    /**
+     * Recomputes the lrds of the specified ids.
+     *
+     * @param ids the ids of the lrds to be recomputed
+     * @param lofResult the result of the former LOF run
+     * @return the ids whose lrd has changed
+     */
+    private DBIDs recomputeLRDs(DBIDs ids, LOFResult<O> lofResult) {
+      final KNNSearcher<DBIDRef> knnq = lofResult.getKNNReach();
+      ArrayDBIDs aids = DBIDUtil.newArray(ids);
+      double[] new_lrds = computeParallel(aids, id -> computeLRD(knnq, id));
+      WritableDoubleDataStore lrds = lofResult.getLrds();
+      ArrayModifiableDBIDs affected_lrd_ids = DBIDUtil.newArray(aids.size());
+      for(DBIDArrayIter iter = aids.iter(); iter.valid(); iter.advance()) {
+        double new_lrd = new_lrds[iter.getOffset()];
+        if(new_lrd != lrds.doubleValue(iter)) {
+          lrds.putDouble(iter, new_lrd);
+          affected_lrd_ids.add(iter);
+        }
+      }
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(OnlineLOF.class.getName() + ".recomputed-lrds", aids.size()));
+        LOG.statistics(new LongStatistic(OnlineLOF.class.getName() + ".changed-lrds", affected_lrd_ids.size()));
+      }
+      return affected_lrd_ids;
+    }
+
     /**
      * Recomputes the lofs of the specified ids.
      *
@@ -351,11 +451,18 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
      * @param lofResult the result of the former LOF run
      */
     private void recomputeLOFs(DBIDs ids, LOFResult<O> lofResult) {
-      WritableDoubleDataStore new_lofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+      final KNNSearcher<DBIDRef> knnq = lofResult.getKNNRefer();
+      final WritableDoubleDataStore lrds = lofResult.getLrds();
+      ArrayDBIDs aids = DBIDUtil.newArray(ids);
+      double[] new_lofs = computeParallel(aids, id -> computeLOF(knnq, id, lrds));
       DoubleMinMax new_lofminmax = new DoubleMinMax();
-      computeLOFs(lofResult.getKNNRefer(), ids, lofResult.getLrds(), new_lofs, new_lofminmax);
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        lofResult.getLofs().putDouble(iter, new_lofs.doubleValue(iter));
+      for(DBIDArrayIter iter = aids.iter(); iter.valid(); iter.advance()) {
+        final double lof = new_lofs[iter.getOffset()];
+        lofResult.getLofs().putDouble(iter, lof);
+        new_lofminmax.put(lof);
+      }
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(OnlineLOF.class.getName() + ".recomputed-lofs", aids.size()));
       }
       // Actualize meta info
       if(new_lofminmax.isValid()) {
@@ -371,15 +478,188 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
     }
   }
 
+  /**
+   * Processes the accumulated neighborhood updates once per database event,
+   * i.e., once for every insertion or deletion batch.
+   *
+   * @author Erich Schubert
+   */
+  private static class BatchListener implements DataStoreListener {
+    /**
+     * Database the listener is registered with.
+     */
+    private final Database db;
+
+    /**
+     * Preprocessors to update.
+     */
+    private final MaterializeKNNPreprocessor<?> p1, p2;
+
+    /**
+     * Constructor.
+     *
+     * @param db Database the listener is registered with
+     * @param p1 First preprocessor
+     * @param p2 Second preprocessor
+     */
+    public BatchListener(Database db, MaterializeKNNPreprocessor<?> p1, MaterializeKNNPreprocessor<?> p2) {
+      this.db = db;
+      this.p1 = p1;
+      this.p2 = p2;
+      accumulate();
+    }
+
+    /**
+     * Start accumulating the next batch.
+     */
+    private void accumulate() {
+      p1.accumulateKNNUpdates();
+      p2.accumulateKNNUpdates();
+    }
+
+    /**
+     * Process the pending updates.
+     */
+    private void flush() {
+      p1.flushKNNUpdates();
+      if(p2 != p1) {
+        p2.flushKNNUpdates();
+      }
+    }
+
+    @Override
+    public void contentChanged(DataStoreEvent e) {
+      flush();
+      accumulate();
+    }
+
+    /**
+     * Remove the listener from the database, and return the preprocessors to
+     * updating every single object.
+     */
+    void remove() {
+      db.removeDataStoreListener(this);
+      flush();
+    }
+  }
+
+  /**
+   * Compute a value for each object in parallel.
+   *
+   * @param ids Objects
+   * @param f Function to compute
+   * @return Values, in the order of the objects
+   */
+  private static double[] computeParallel(ArrayDBIDs ids, ToDoubleFunction<DBIDRef> f) {
+    final double[] values = new double[ids.size()];
+    ComputeTask task = new ComputeTask(ids, f, values, 0, values.length);
+    if(values.length <= GRAIN) {
+      task.compute();
+      return values;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      core.submit(task).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Updating the LOF scores failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Updating the LOF scores was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+    return values;
+  }
+
+  /**
+   * Compute a value for a range of objects, splitting the range recursively.
+   *
+   * @author Erich Schubert
+   */
+  private static class ComputeTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Objects to process.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Function to compute.
+     */
+    private final ToDoubleFunction<DBIDRef> f;
+
+    /**
+     * Output values.
+     */
+    private final double[] values;
+
+    /**
+     * Range of objects to process.
+     */
+    private final int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Objects to process
+     * @param f Function to compute
+     * @param values Output values
+     * @param start First offset
+     * @param end End offset (exclusive)
+     */
+    ComputeTask(ArrayDBIDs ids, ToDoubleFunction<DBIDRef> f, double[] values, int start, int end) {
+      this.ids = ids;
+      this.f = f;
+      this.values = values;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > GRAIN) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new ComputeTask(ids, f, values, start, mid), new ComputeTask(ids, f, values, mid, end));
+        return;
+      }
+      for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+        values[iter.getOffset()] = f.applyAsDouble(iter);
+      }
+    }
+  }
+
   /**
    * Parameterization class.
    *
    * @author Erich Schubert
    */
   public static class Par<O> extends FlexibleLOF.Par<O> {
+    /**
+     * Flag to process the updates of each database batch at once.
+     */
+    public static final OptionID BATCH_ID = new OptionID("onlinelof.batch", "Update the neighborhoods and scores once for every database insertion or deletion batch, instead of for every single object.");
+
+    /**
+     * Process the updates of a database batch at once.
+     */
+    protected boolean batch;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new Flag(BATCH_ID).grab(config, x -> batch = x);
+    }
+
     @Override
     public OnlineLOF<O> make() {
-      return new OnlineLOF<>(kreach, krefer, distance, reachabilityDistance);
+      return new OnlineLOF<>(kreach, krefer, distance, reachabilityDistance, batch);
     }
   }
 }
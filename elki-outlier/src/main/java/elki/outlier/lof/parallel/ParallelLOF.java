@@ -35,6 +35,8 @@ import elki.database.relation.MaterializedDoubleRelation;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
 import elki.math.DoubleMinMax;
 import elki.outlier.OutlierAlgorithm;
 import elki.outlier.lof.LOF;
@@ -76,6 +78,11 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
     url = "https://doi.org/10.1007/s10618-012-0300-z", //
     bibkey = "DBLP:journals/datamine/SchubertZK14")
 public class ParallelLOF<O> implements OutlierAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelLOF.class);
+
   /**
    * Distance function used.
    */
@@ -131,7 +138,9 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
       kdistm.connectOutput(kdistv);
       storem.connectInput(kdistv);
 
-      ParallelExecutor.run(ids, knnm, storek, kdistm, storem);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("kNN and k-distance", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, knnm, storek, kdistm, storem);
+      LOG.ensureCompleted(prog);
     }
 
     // Phase two: lrd
@@ -143,7 +152,9 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
 
       lrdm.connectOutput(lrdv);
       storelrd.connectInput(lrdv);
-      ParallelExecutor.run(ids, lrdm, storelrd);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Local Reachability Densities (LRD)", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, lrdm, storelrd);
+      LOG.ensureCompleted(prog);
     }
     kdists.destroy(); // No longer needed.
     kdists = null;
@@ -160,7 +171,9 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
       lofm.connectOutput(lofv);
       mmm.connectInput(lofv);
       storelof.connectInput(lofv);
-      ParallelExecutor.run(ids, lofm, storelof, mmm);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Local Outlier Factor (LOF) scores", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, lofm, storelof, mmm);
+      LOG.ensureCompleted(prog);
 
       minmax = mmm.getMinMax();
     }
@@ -36,6 +36,7 @@ import elki.database.UpdatableDatabase;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
+import elki.database.ids.ModifiableDBIDs;
 import elki.database.relation.DoubleRelation;
 import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
@@ -103,4 +104,90 @@ public class OnlineLOFTest extends AbstractOutlierAlgorithmTest {
       assertEquals("lof(" + DBIDUtil.toString(id) + ") != lof(" + DBIDUtil.toString(id) + "): " + lof1 + " != " + lof2, lof1, lof2, 1e-10);
     }
   }
+
+  @Test
+  public void testOnlineLOFBatch() throws IOException {
+    UpdatableDatabase db = new ELKIBuilder<>(HashmapDatabase.class) //
+        .with(FileBasedDatabaseConnection.Par.INPUT_ID, //
+            getClass().getClassLoader().getResource(UNITTEST + "3clusters-and-noise-2d.csv")) //
+        .build();
+    db.initialize();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    final int k = 5;
+
+    // 1. Run LOF on original data:
+    DoubleRelation scores1 = staticLOF(db, rep, k);
+
+    // 2. Run OnlineLOF in batch mode
+    OnlineLOF<DoubleVector> onlinelof = new ELKIBuilder<OnlineLOF<DoubleVector>>(OnlineLOF.class) //
+        .with(FlexibleLOF.Par.KREF_ID, k) //
+        .with(FlexibleLOF.Par.KREACH_ID, k) //
+        .with(FlexibleLOF.Par.REACHABILITY_DISTANCE_FUNCTION_ID, CosineDistance.class) //
+        .with(OnlineLOF.Par.BATCH_ID) //
+        .build();
+    OutlierResult result = onlinelof.autorun(db);
+
+    // Insert two bundles, processed as a single batch
+    int dim = RelationUtil.dimensionality(rep);
+    Random random = new Random(5);
+    db.accumulateDataStoreEvents();
+    ModifiableDBIDs inserted = DBIDUtil.newHashSet();
+    for(int b = 0; b < 2; b++) {
+      ArrayList<DoubleVector> insertions = new ArrayList<>();
+      for(int i = 0; i < 100; i++) {
+        insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, dim, random));
+      }
+      inserted.addDBIDs(db.insert(MultipleObjectsBundle.makeSimple(rep.getDataTypeInformation(), insertions)));
+    }
+    db.flushDataStoreEvents();
+    assertSameScores(staticLOF(db, rep, k), result.getScores());
+
+    // Delete the objects again
+    db.delete(inserted);
+    assertSameScores(scores1, result.getScores());
+
+    // Without the batch listener, objects are updated one at a time again
+    onlinelof.removeBatchListener();
+    ArrayList<DoubleVector> insertions = new ArrayList<>();
+    for(int i = 0; i < 10; i++) {
+      insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, dim, random));
+    }
+    DBIDs single = db.insert(MultipleObjectsBundle.makeSimple(rep.getDataTypeInformation(), insertions));
+    assertSameScores(staticLOF(db, rep, k), result.getScores());
+    db.delete(single);
+    assertSameScores(scores1, result.getScores());
+  }
+
+  /**
+   * Run the static LOF, and remove the indexes it added.
+   *
+   * @param db Database
+   * @param rep Relation
+   * @param k Neighborhood size
+   * @return LOF scores
+   */
+  private static DoubleRelation staticLOF(UpdatableDatabase db, Relation<DoubleVector> rep, int k) {
+    Hierarchy h = Metadata.hierarchyOf(rep);
+    ArrayList<Object> existing = new ArrayList<>();
+    h.iterChildren().forEach(existing::add);
+    FlexibleLOF<DoubleVector> lof = new FlexibleLOF<>(k, k, EuclideanDistance.STATIC, CosineDistance.STATIC);
+    DoubleRelation scores = lof.autorun(db).getScores();
+    ArrayList<Object> added = new ArrayList<>();
+    h.iterChildren().filter(KNNIndex.class).filter(x -> !existing.contains(x)).forEach(added::add);
+    added.forEach(h::removeChild);
+    return scores;
+  }
+
+  /**
+   * Compare the scores of the static and the online LOF.
+   *
+   * @param expected Static LOF scores
+   * @param actual OnlineLOF scores
+   */
+  private static void assertSameScores(DoubleRelation expected, DoubleRelation actual) {
+    assertEquals("Number of scores", expected.size(), actual.size());
+    for(DBIDIter id = expected.getDBIDs().iter(); id.valid(); id.advance()) {
+      assertEquals("lof(" + DBIDUtil.toString(id) + ")", expected.doubleValue(id), actual.doubleValue(id), 1e-10);
+    }
+  }
 }
@@ -0,0 +1,40 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Pages that reference other pages, e.g., directory nodes of a tree, so that a
+ * page cache can read the referenced pages ahead of time.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public interface ReadAheadPage extends Page {
+  /**
+   * Enumerate the ids of the pages referenced by this page, which are likely to
+   * be read next.
+   *
+   * @param action Action to invoke for each page id
+   */
+  void forEachChildPage(IntConsumer action);
+}
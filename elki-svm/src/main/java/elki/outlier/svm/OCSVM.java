@@ -51,6 +51,7 @@ import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -96,6 +97,16 @@ public class OCSVM<V> implements OutlierAlgorithm {
    */
   double nu = 0.05;
 
+  /**
+   * Compute long kernel columns in parallel.
+   */
+  boolean parallel = false;
+
+  /**
+   * Store the kernel cache with reduced precision.
+   */
+  boolean bfloat16 = false;
+
   /**
    * Constructor.
    * 
@@ -103,9 +114,34 @@ public class OCSVM<V> implements OutlierAlgorithm {
    * @param nu Nu parameter
    */
   public OCSVM(PrimitiveSimilarity<? super V> kernel, double nu) {
+    this(kernel, nu, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param kernel Kernel to use with SVM.
+   * @param nu Nu parameter
+   * @param bfloat16 Store the kernel cache with reduced (bfloat16) precision
+   */
+  public OCSVM(PrimitiveSimilarity<? super V> kernel, double nu, boolean bfloat16) {
+    this(kernel, nu, false, bfloat16);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param kernel Kernel to use with SVM.
+   * @param nu Nu parameter
+   * @param parallel Compute long kernel columns in parallel
+   * @param bfloat16 Store the kernel cache with reduced (bfloat16) precision
+   */
+  public OCSVM(PrimitiveSimilarity<? super V> kernel, double nu, boolean parallel, boolean bfloat16) {
     super();
+    this.parallel = parallel;
     this.kernel = kernel;
     this.nu = nu;
+    this.bfloat16 = bfloat16;
   }
 
   @Override
@@ -128,6 +164,7 @@ public class OCSVM<V> implements OutlierAlgorithm {
     }
     SimilarityQueryAdapter adapter = new SimilarityQueryAdapter(sim, ids);
     OneClassSVM svm = new OneClassSVM(1e-4, true, 1000 /* MB */, nu);
+    svm.set_cache_options(parallel, bfloat16);
     RegressionModel model = svm.train(adapter);
     LOG.statistics(new LongStatistic(getClass().getCanonicalName() + ".numsv", model.l));
 
@@ -171,6 +208,16 @@ public class OCSVM<V> implements OutlierAlgorithm {
      */
     public static final OptionID NU_ID = new OptionID("svm.nu", "SVM nu parameter.");
 
+    /**
+     * Flag to compute long kernel columns in parallel.
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("svm.parallel", "Compute long kernel columns in parallel.");
+
+    /**
+     * Flag to store the kernel cache with reduced precision.
+     */
+    public static final OptionID BFLOAT16_ID = new OptionID("svm.bfloat16", "Store cached kernel values with reduced (bfloat16) precision, to cache twice as many.");
+
     /**
      * Kernel in use.
      */
@@ -181,6 +228,16 @@ public class OCSVM<V> implements OutlierAlgorithm {
      */
     protected double nu = 0.05;
 
+    /**
+     * Compute long kernel columns in parallel.
+     */
+    protected boolean parallel = false;
+
+    /**
+     * Store the kernel cache with reduced precision.
+     */
+    protected boolean bfloat16 = false;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<PrimitiveSimilarity<? super V>>(KERNEL_ID, PrimitiveSimilarity.class, RadialBasisFunctionKernel.class) //
@@ -189,11 +246,13 @@ public class OCSVM<V> implements OutlierAlgorithm {
           .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
           .addConstraint(CommonConstraints.LESS_EQUAL_ONE_DOUBLE) //
           .grab(config, x -> nu = x);
+      new Flag(PARALLEL_ID).grab(config, x -> parallel = x);
+      new Flag(BFLOAT16_ID).grab(config, x -> bfloat16 = x);
     }
 
     @Override
     public OCSVM<V> make() {
-      return new OCSVM<>(kernel, nu);
+      return new OCSVM<>(kernel, nu, parallel, bfloat16);
     }
   }
 }
@@ -50,6 +50,7 @@ import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -86,6 +87,16 @@ public class SVDD<V> implements OutlierAlgorithm {
    */
   double C;
 
+  /**
+   * Compute long kernel columns in parallel.
+   */
+  boolean parallel = false;
+
+  /**
+   * Store the kernel cache with reduced precision.
+   */
+  boolean bfloat16 = false;
+
   /**
    * Constructor.
    * 
@@ -93,9 +104,34 @@ public class SVDD<V> implements OutlierAlgorithm {
    * @param C C parameter
    */
   public SVDD(PrimitiveSimilarity<? super V> kernel, double C) {
+    this(kernel, C, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param kernel Kernel to use with SVM.
+   * @param C C parameter
+   * @param bfloat16 Store the kernel cache with reduced (bfloat16) precision
+   */
+  public SVDD(PrimitiveSimilarity<? super V> kernel, double C, boolean bfloat16) {
+    this(kernel, C, false, bfloat16);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param kernel Kernel to use with SVM.
+   * @param C C parameter
+   * @param parallel Compute long kernel columns in parallel
+   * @param bfloat16 Store the kernel cache with reduced (bfloat16) precision
+   */
+  public SVDD(PrimitiveSimilarity<? super V> kernel, double C, boolean parallel, boolean bfloat16) {
     super();
+    this.parallel = parallel;
     this.kernel = kernel;
     this.C = C;
+    this.bfloat16 = bfloat16;
   }
 
   @Override
@@ -118,6 +154,7 @@ public class SVDD<V> implements OutlierAlgorithm {
     }
     SimilarityQueryAdapter adapter = new SimilarityQueryAdapter(sim, ids);
     elki.svm.SVDD svm = new elki.svm.SVDD(1e-4, true, 1000 /* MB */, C > 0 ? C : 20. / ids.size());
+    svm.set_cache_options(parallel, bfloat16);
     RegressionModel model = svm.train(adapter);
     LOG.statistics(new LongStatistic(getClass().getCanonicalName() + ".numsv", model.l));
 
@@ -171,6 +208,16 @@ public class SVDD<V> implements OutlierAlgorithm {
      */
     protected double C;
 
+    /**
+     * Compute long kernel columns in parallel.
+     */
+    protected boolean parallel = false;
+
+    /**
+     * Store the kernel cache with reduced precision.
+     */
+    protected boolean bfloat16 = false;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<PrimitiveSimilarity<? super V>>(KERNEL_ID, PrimitiveSimilarity.class, RadialBasisFunctionKernel.class) //
@@ -178,11 +225,13 @@ public class SVDD<V> implements OutlierAlgorithm {
       new DoubleParameter(C_ID, 0) //
           .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE) //
           .grab(config, x -> C = x);
+      new Flag(OCSVM.Par.PARALLEL_ID).grab(config, x -> parallel = x);
+      new Flag(OCSVM.Par.BFLOAT16_ID).grab(config, x -> bfloat16 = x);
     }
 
     @Override
     public SVDD<V> make() {
-      return new SVDD<>(kernel, C);
+      return new SVDD<>(kernel, C, parallel, bfloat16);
     }
   }
 }
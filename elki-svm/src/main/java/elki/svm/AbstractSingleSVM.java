@@ -25,6 +25,8 @@ import java.util.Random;
 
 import elki.logging.Logging;
 import elki.svm.data.DataSet;
+import elki.svm.qmatrix.CachedQMatrix;
+import elki.svm.qmatrix.QMatrix;
 import elki.svm.solver.Solver;
 import elki.utilities.datastructures.arrays.ArrayUtil;
 
@@ -37,12 +39,54 @@ public abstract class AbstractSingleSVM {
 
   protected double cache_size;
 
+  /**
+   * Compute long kernel columns in parallel (opt-in, see
+   * {@link #set_cache_options}).
+   */
+  protected boolean parallel = false;
+
+  /**
+   * Store cached kernel values with reduced (bfloat16) precision.
+   */
+  protected boolean bfloat16 = false;
+
   public AbstractSingleSVM(double eps, boolean shrinking, double cache_size) {
     this.eps = eps;
     this.shrinking = shrinking;
     this.cache_size = cache_size;
   }
 
+  /**
+   * Configure the kernel cache.
+   *
+   * @param parallel Compute long kernel columns in parallel
+   * @param bfloat16 Store cached values as bfloat16, to cache twice as many
+   */
+  public void set_cache_options(boolean parallel, boolean bfloat16) {
+    this.parallel = parallel;
+    this.bfloat16 = bfloat16;
+  }
+
+  /**
+   * Build the kernel cache for a Q matrix.
+   *
+   * @param l Number of columns
+   * @param inner Q matrix to cache
+   * @return Cached Q matrix
+   */
+  protected CachedQMatrix makeCache(int l, QMatrix inner) {
+    return new CachedQMatrix(l, cache_size, inner, parallel, bfloat16);
+  }
+
+  /**
+   * Log the cache statistics after training.
+   *
+   * @param Q Cached Q matrix
+   */
+  protected void logStatistics(CachedQMatrix Q) {
+    Q.logStatistics(getLogger(), getClass().getName() + ".");
+  }
+
   abstract protected Solver.SolutionInfo solve(DataSet x);
 
   protected Solver.SolutionInfo train_one(DataSet x) {
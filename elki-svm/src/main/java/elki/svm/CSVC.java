@@ -25,7 +25,6 @@ import java.util.Arrays;
 import elki.logging.Logging;
 import elki.svm.data.DataSet;
 import elki.svm.qmatrix.CachedQMatrix;
-import elki.svm.qmatrix.QMatrix;
 import elki.svm.qmatrix.SVC_Q;
 import elki.svm.solver.Solver;
 
@@ -57,9 +56,10 @@ public class CSVC extends AbstractSVC {
     for(int i = 0; i < l; i++) {
       y[i] = x.value(i) > 0 ? ONE : MONE;
     }
-    QMatrix Q = new CachedQMatrix(l, cache_size, new SVC_Q(x, y));
+    CachedQMatrix Q = makeCache(l, new SVC_Q(x, y));
     Q.initialize();
     Solver.SolutionInfo si = new Solver().solve(l, Q, minus_ones, y, alpha, Cp, Cn, eps, shrinking);
+    logStatistics(Q);
 
     if(Cp == Cn && LOG.isVerbose()) {
       double sum_alpha = 0;
@@ -3,7 +3,6 @@ package elki.svm;
 import elki.logging.Logging;
 import elki.svm.data.DataSet;
 import elki.svm.qmatrix.CachedQMatrix;
-import elki.svm.qmatrix.QMatrix;
 import elki.svm.qmatrix.SVC_Q;
 import elki.svm.solver.NuSolver;
 import elki.svm.solver.Solver;
@@ -41,10 +40,11 @@ public class NuSVC extends AbstractSVC {
 
     double[] zeros = new double[l];
 
-    QMatrix Q = new CachedQMatrix(l, cache_size, new SVC_Q(x, y));
+    CachedQMatrix Q = makeCache(l, new SVC_Q(x, y));
     Q.initialize();
     NuSolver solver = new NuSolver();
     Solver.SolutionInfo si = solver.solve(l, Q, zeros, y, alpha, 1., 1., eps, shrinking);
+    logStatistics(Q);
     final double ir = 1 / solver.r;
     LOG.verbose("C = " + ir);
 
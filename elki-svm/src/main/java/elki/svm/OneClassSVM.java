@@ -26,7 +26,6 @@ import elki.logging.Logging;
 import elki.svm.data.DataSet;
 import elki.svm.qmatrix.CachedQMatrix;
 import elki.svm.qmatrix.Kernel;
-import elki.svm.qmatrix.QMatrix;
 import elki.svm.solver.Solver;
 
 /**
@@ -55,9 +54,11 @@ public class OneClassSVM extends AbstractSVR {
     byte[] ones = new byte[l];
     Arrays.fill(ones, ONE);
 
-    QMatrix Q = new CachedQMatrix(l, cache_size, new Kernel(x));
+    CachedQMatrix Q = makeCache(l, new Kernel(x));
     Q.initialize();
-    return new Solver().solve(l, Q, zeros, ones, alpha, 1.0, 1.0, eps, shrinking);
+    Solver.SolutionInfo si = new Solver().solve(l, Q, zeros, ones, alpha, 1.0, 1.0, eps, shrinking);
+    logStatistics(Q);
+    return si;
   }
 
   @Override
@@ -6,7 +6,6 @@ import elki.logging.Logging;
 import elki.svm.data.DataSet;
 import elki.svm.qmatrix.CachedQMatrix;
 import elki.svm.qmatrix.Kernel;
-import elki.svm.qmatrix.QMatrix;
 import elki.svm.solver.Solver;
 
 /**
@@ -28,7 +27,7 @@ public class SVDD extends AbstractSVR {
   protected Solver.SolutionInfo solve(DataSet x) {
     final int l = x.size();
     double invl = 1.0 / l;
-    QMatrix Q = new CachedQMatrix(l, cache_size, new Kernel(x));
+    CachedQMatrix Q = makeCache(l, new Kernel(x));
     Q.initialize();
     double[] QD = Q.get_QD();
     double[] alpha = new double[l];
@@ -49,6 +48,7 @@ public class SVDD extends AbstractSVR {
       byte[] ones = new byte[l];
       Arrays.fill(ones, ONE);
       si = new Solver().solve(l, Q, linear_term, ones, alpha, C, C, eps, shrinking);
+      logStatistics(Q);
 
       // \bar{R} = 2(obj-rho) + sum K_{ii}*alpha_i
       // because rho = (a^Ta - \bar{R})/2
@@ -51,6 +51,19 @@ public class ByteWeightedArrayDataSet implements DataSet {
     ArrayUtil.swap(weight, i, j);
   }
 
+  @Override
+  public DataSet concurrentView() {
+    final DataSet view = inner.concurrentView();
+    if(view == inner) {
+      return this;
+    }
+    ByteWeightedArrayDataSet copy = new ByteWeightedArrayDataSet(view, 0);
+    copy.idx = idx;
+    copy.weight = weight;
+    copy.size = size;
+    return copy;
+  }
+
   public void add(int v, byte w) {
     if(size == idx.length) {
       final int newlen = idx.length << 1;
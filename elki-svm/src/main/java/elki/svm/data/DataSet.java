@@ -45,4 +45,15 @@ public interface DataSet {
    * @param j Second position
    */
   void swap(int i, int j);
+
+  /**
+   * Get a view for computing similarities in a worker thread, concurrently
+   * with other views (but not with swapping). Views share the data, and must
+   * not be swapped.
+   *
+   * @return View, or the data set itself if similarities are thread-safe
+   */
+  default DataSet concurrentView() {
+    return this;
+  }
 }
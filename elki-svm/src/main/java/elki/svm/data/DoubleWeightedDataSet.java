@@ -51,6 +51,19 @@ public class DoubleWeightedDataSet implements DataSet {
     ArrayUtil.swap(weight, i, j);
   }
 
+  @Override
+  public DataSet concurrentView() {
+    final DataSet view = inner.concurrentView();
+    if(view == inner) {
+      return this;
+    }
+    DoubleWeightedDataSet copy = new DoubleWeightedDataSet(view, 0);
+    copy.idx = idx;
+    copy.weight = weight;
+    copy.size = size;
+    return copy;
+  }
+
   public void add(int v, double w) {
     if(size == idx.length) {
       final int newlen = idx.length << 1;
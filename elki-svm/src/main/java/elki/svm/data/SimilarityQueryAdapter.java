@@ -48,10 +48,20 @@ public class SimilarityQueryAdapter implements DataSet {
   DBIDArrayIter i1, i2;
 
   public SimilarityQueryAdapter(SimilarityQuery<?> sim, DBIDs ids) {
+    this(sim, DBIDUtil.newArray(ids));
+  }
+
+  /**
+   * Constructor, sharing the ids.
+   *
+   * @param sim Similarity query
+   * @param ids Object ids, not copied
+   */
+  private SimilarityQueryAdapter(SimilarityQuery<?> sim, ArrayModifiableDBIDs ids) {
     this.sim = sim;
-    this.ids = DBIDUtil.newArray(ids);
-    this.i1 = this.ids.iter();
-    this.i2 = this.ids.iter();
+    this.ids = ids;
+    this.i1 = ids.iter();
+    this.i2 = ids.iter();
   }
 
   @Override
@@ -79,6 +89,12 @@ public class SimilarityQueryAdapter implements DataSet {
     ids.swap(i, j);
   }
 
+  @Override
+  public DataSet concurrentView() {
+    // Own iterators, on the same ids:
+    return new SimilarityQueryAdapter(sim, ids);
+  }
+
   public DBIDArrayIter iter() {
     return ids.iter();
   }
@@ -38,13 +38,24 @@
 package elki.svm.qmatrix;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
 
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
 import elki.utilities.datastructures.arrays.ArrayUtil;
+import elki.utilities.exceptions.AbortException;
 
 /**
  * This is the original cache from the libSVN implementation.
  * The code is very C stylish, and probably not half as effective on Java due to
  * garbage collection.
+ * <p>
+ * Long column segments can be computed in parallel, in blocks that each use
+ * their own {@link QMatrix#concurrentSimilarity()} function. Optionally, the columns are stored as bfloat16 values (the
+ * upper half of a float) to double the number of cached values, at the cost
+ * of precision.
  */
 public final class CachedQMatrix implements QMatrix {
   /**
@@ -53,7 +64,17 @@ public final class CachedQMatrix implements QMatrix {
   private static final long MEGABYTES = 1 << 20;
 
   /**
-   * Remaining memory (in floats)
+   * Minimum number of values to compute in parallel.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+  /**
+   * Block size for parallel computation.
+   */
+  private static final int BLOCK_SIZE = 1 << 10;
+
+  /**
+   * Remaining memory (in values)
    */
   private long size;
 
@@ -63,10 +84,30 @@ public final class CachedQMatrix implements QMatrix {
   private final QMatrix inner;
 
   /**
-   * Data storage
+   * Data storage, when using floats
    */
   private final float[][] data;
 
+  /**
+   * Data storage, when using bfloat16
+   */
+  private final short[][] half;
+
+  /**
+   * Compute long columns in parallel.
+   */
+  private final boolean parallel;
+
+  /**
+   * Cache statistics: full hits, partial hits, misses, and evictions.
+   */
+  private long hits, partial, misses, evictions;
+
+  /**
+   * Number of values computed.
+   */
+  private long computed;
+
   /**
    * Number of valid entries in each buffer
    */
@@ -83,23 +124,51 @@ public final class CachedQMatrix implements QMatrix {
   private final int[] chain;
 
   public CachedQMatrix(int l, double cache_size, QMatrix inner) {
-    this(l, (long) (cache_size * MEGABYTES), inner);
+    this(l, (long) (cache_size * MEGABYTES), inner, false, false);
   }
 
   public CachedQMatrix(int l, long size_, QMatrix inner) {
+    this(l, size_, inner, false, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param l Number of columns
+   * @param cache_size Cache size in megabytes
+   * @param inner Inner matrix
+   * @param parallel Compute long columns in parallel
+   * @param bfloat16 Store values as bfloat16
+   */
+  public CachedQMatrix(int l, double cache_size, QMatrix inner, boolean parallel, boolean bfloat16) {
+    this(l, (long) (cache_size * MEGABYTES), inner, parallel, bfloat16);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param l Number of columns
+   * @param size_ Cache size in bytes
+   * @param inner Inner matrix
+   * @param parallel Compute long columns in parallel
+   * @param bfloat16 Store values as bfloat16
+   */
+  public CachedQMatrix(int l, long size_, QMatrix inner, boolean parallel, boolean bfloat16) {
     this.inner = inner;
+    this.parallel = parallel;
     chain = new int[l << 1]; // zeros
     for(int i = 0; i < l; i++) {
       selflink(i);
     }
     len = new int[l];
-    data = new float[l][];
+    data = bfloat16 ? null : new float[l][];
+    half = bfloat16 ? new short[l][] : null;
     // Per entry: 8 bytes chain, 4 bytes len
     // data: each used entry will cost 24, too.
     // Each of these arrays: 24 bytes overhead (once)
     // This structure: ~32 bytes (note: for compressed pointers!)
     size = size_ - l * 36 - 24 * 4 - 32;
-    size >>= 2; // Bytes to floats.
+    size >>= bfloat16 ? 1 : 2; // Bytes to values.
     // Minimum feasible cache size is two columns:
     size = Math.max(size, l << 1);
   }
@@ -180,35 +249,168 @@ public final class CachedQMatrix implements QMatrix {
    */
   private final void discard(int h) {
     lru_delete(h);
-    size += data[h].length;
-    data[h] = null;
+    if(data != null) {
+      size += data[h].length;
+      data[h] = null;
+    }
+    else {
+      size += half[h].length;
+      half[h] = null;
+    }
     len[h] = 0;
+    ++evictions;
   }
 
+  /**
+   * Get the cached data of a column (float storage only).
+   *
+   * @param h Column
+   * @param len Number of values needed
+   * @return Cached data
+   */
   float[] get_data(int h, int len) {
+    assert data != null : "Only supported with float storage.";
+    load(h, len);
+    return data[h];
+  }
+
+  /**
+   * Ensure the first values of a column are in the cache.
+   *
+   * @param h Column
+   * @param len Number of values needed
+   */
+  private void load(int h, int len) {
     int hlen = this.len[h];
-    float[] hdata = data[h];
     if(hlen > 0) {
       lru_delete(h);
     }
     final int more = len - hlen;
     if(more > 0) {
+      if(hlen > 0) {
+        ++partial;
+      }
+      else {
+        ++misses;
+      }
       while(size < more) {
         discard(lru != h ? lru : h);
       }
-
-      size -= len - (hdata != null ? hdata.length : 0);
-      float[] new_data = hdata != null ? Arrays.copyOf(hdata, hlen) : new float[len];
-      for(int j = hlen; j < len; ++j) {
-        new_data[j] = (float) inner.similarity(h, j);
+      hlen = this.len[h]; // May have been discarded
+      if(data != null) {
+        float[] hdata = data[h];
+        size -= len - (hdata != null ? hdata.length : 0);
+        hdata = data[h] = hdata != null ? Arrays.copyOf(hdata, len) : new float[len];
+        compute(h, hdata, null, hlen, len);
+      }
+      else {
+        short[] hdata = half[h];
+        size -= len - (hdata != null ? hdata.length : 0);
+        hdata = half[h] = hdata != null ? Arrays.copyOf(hdata, len) : new short[len];
+        compute(h, null, hdata, hlen, len);
       }
-      hdata = data[h] = new_data;
       hlen = this.len[h] = len;
     }
+    else {
+      ++hits;
+    }
     if(hlen > 0) {
       lru_insert(h);
     }
-    return hdata;
+  }
+
+  /**
+   * Compute a segment of a column.
+   *
+   * @param h Column
+   * @param fout Float output, or {@code null}
+   * @param sout bfloat16 output, or {@code null}
+   * @param start First row
+   * @param end End row (exclusive)
+   */
+  private void compute(int h, float[] fout, short[] sout, int start, int end) {
+    computed += end - start;
+    if(!parallel || end - start < PARALLEL_THRESHOLD || ParallelCore.getCore().getParallelism() <= 1) {
+      fill(inner::similarity, h, fout, sout, start, end);
+      return;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      core.submit(new ColumnTask(h, fout, sout, start, end)).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Computing the kernel matrix failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Computing the kernel matrix was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Compute a segment of a column, serially.
+   *
+   * @param sim Similarity function
+   * @param h Column
+   * @param fout Float output, or {@code null}
+   * @param sout bfloat16 output, or {@code null}
+   * @param start First row
+   * @param end End row (exclusive)
+   */
+  private static void fill(Similarity sim, int h, float[] fout, short[] sout, int start, int end) {
+    if(fout != null) {
+      for(int j = start; j < end; ++j) {
+        fout[j] = (float) sim.similarity(h, j);
+      }
+    }
+    else {
+      for(int j = start; j < end; ++j) {
+        sout[j] = toBFloat16((float) sim.similarity(h, j));
+      }
+    }
+  }
+
+  /**
+   * Convert a float to bfloat16, rounding to nearest even.
+   *
+   * @param f Float value
+   * @return bfloat16 value
+   */
+  static short toBFloat16(float f) {
+    final int bits = Float.floatToRawIntBits(f);
+    if((bits & 0x7fffffff) > 0x7f800000) {
+      return (short) ((bits >>> 16) | 0x40); // Keep NaN a (quiet) NaN.
+    }
+    return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+  }
+
+  /**
+   * Convert a bfloat16 to float.
+   *
+   * @param s bfloat16 value
+   * @return Float value
+   */
+  static float fromBFloat16(short s) {
+    return Float.intBitsToFloat(s << 16);
+  }
+
+  /**
+   * Log the cache statistics.
+   *
+   * @param log Logger
+   * @param prefix Statistics prefix
+   */
+  public void logStatistics(Logging log, String prefix) {
+    if(log.isStatistics()) {
+      log.statistics(new LongStatistic(prefix + "cache.hits", hits));
+      log.statistics(new LongStatistic(prefix + "cache.partial-hits", partial));
+      log.statistics(new LongStatistic(prefix + "cache.misses", misses));
+      log.statistics(new LongStatistic(prefix + "cache.evictions", evictions));
+      log.statistics(new LongStatistic(prefix + "cache.computed-values", computed));
+    }
   }
 
   @Override
@@ -223,7 +425,12 @@ public final class CachedQMatrix implements QMatrix {
       j = tmp;
     }
     // Swap in index:
-    ArrayUtil.swap(data, i, j);
+    if(data != null) {
+      ArrayUtil.swap(data, i, j);
+    }
+    else {
+      ArrayUtil.swap(half, i, j);
+    }
     ArrayUtil.swap(len, i, j);
     // Update chain:
     int nei = next(i), pri = prev(i), nej = next(j), prj = prev(j);
@@ -263,7 +470,12 @@ public final class CachedQMatrix implements QMatrix {
       next = next(h); // could get trashed by discard below
       final int lenh = len[h];
       if(lenh > j) {
-        ArrayUtil.swap(data[h], i, j);
+        if(data != null) {
+          ArrayUtil.swap(data[h], i, j);
+        }
+        else {
+          ArrayUtil.swap(half[h], i, j);
+        }
       }
       else if(lenh > i /* but < j */) {
         discard(h); // Don't have the value for j.
@@ -279,9 +491,17 @@ public final class CachedQMatrix implements QMatrix {
 
   @Override
   public void get_Q(int column, int len, float[] out) {
-    float[] data = get_data(column, len);
-    if(out != null) { // Pre-cache only
-      System.arraycopy(data, 0, out, 0, len);
+    load(column, len);
+    if(out == null) { // Pre-cache only
+      return;
+    }
+    if(data != null) {
+      System.arraycopy(data[column], 0, out, 0, len);
+      return;
+    }
+    final short[] hdata = half[column];
+    for(int j = 0; j < len; j++) {
+      out[j] = fromBFloat16(hdata[j]);
     }
   }
 
@@ -295,4 +515,69 @@ public final class CachedQMatrix implements QMatrix {
   public double similarity(int i, int j) {
     return inner.similarity(i, j);
   }
+
+  @Override
+  public Similarity concurrentSimilarity() {
+    return inner.concurrentSimilarity();
+  }
+
+  /**
+   * Compute a segment of a column, splitting long segments into blocks.
+   *
+   * @author Erich Schubert
+   */
+  private class ColumnTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Column.
+     */
+    private final int h;
+
+    /**
+     * Float output, or {@code null}.
+     */
+    private final float[] fout;
+
+    /**
+     * bfloat16 output, or {@code null}.
+     */
+    private final short[] sout;
+
+    /**
+     * Row range.
+     */
+    private final int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param h Column
+     * @param fout Float output, or {@code null}
+     * @param sout bfloat16 output, or {@code null}
+     * @param start First row
+     * @param end End row (exclusive)
+     */
+    ColumnTask(int h, float[] fout, short[] sout, int start, int end) {
+      this.h = h;
+      this.fout = fout;
+      this.sout = sout;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > BLOCK_SIZE) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new ColumnTask(h, fout, sout, start, mid), new ColumnTask(h, fout, sout, mid, end));
+        return;
+      }
+      // Each block uses its own similarity function, for thread safety.
+      fill(inner.concurrentSimilarity(), h, fout, sout, start, end);
+    }
+  }
 }
@@ -47,9 +47,27 @@ public class Kernel implements QMatrix {
 
   @Override
   public double similarity(int i, int j) {
+    return similarity(x, i, j);
+  }
+
+  /**
+   * Compute the similarity of objects i and j.
+   *
+   * @param x Data set, or a concurrent view of it
+   * @param i First object
+   * @param j Second object
+   * @return Similarity
+   */
+  protected double similarity(DataSet x, int i, int j) {
     return x.similarity(i, j);
   }
 
+  @Override
+  public Similarity concurrentSimilarity() {
+    final DataSet view = x.concurrentView();
+    return (i, j) -> similarity(view, i, j);
+  }
+
   @Override
   public void swap_index(int i, int j) {
     if(i == j) {
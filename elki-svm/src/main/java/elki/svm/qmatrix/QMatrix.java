@@ -74,4 +74,31 @@ public interface QMatrix {
    * Initialize the Q Matrix.
    */
   void initialize();
+
+  /**
+   * Get a similarity function for a worker thread, to compute similarities
+   * concurrently with other workers (but not with swapping).
+   *
+   * @return Similarity function
+   */
+  default Similarity concurrentSimilarity() {
+    return this::similarity;
+  }
+
+  /**
+   * Similarity function of a worker thread.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  interface Similarity {
+    /**
+     * Compute the similarity of objects i and j.
+     *
+     * @param i First object
+     * @param j Second object
+     * @return Similarity
+     */
+    double similarity(int i, int j);
+  }
 }
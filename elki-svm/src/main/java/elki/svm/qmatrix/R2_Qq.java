@@ -34,7 +34,7 @@ public class R2_Qq extends Kernel {
   }
 
   @Override
-  public double similarity(int i, int j) {
+  protected double similarity(DataSet x, int i, int j) {
     return i != j ? x.similarity(i, j) : (x.similarity(i, j) + invC);
   }
 }
@@ -37,7 +37,7 @@ public class SVC_Q extends Kernel {
   }
 
   @Override
-  public double similarity(int i, int j) {
+  protected double similarity(DataSet x, int i, int j) {
     return y[i] * y[j] * x.similarity(i, j);
   }
 
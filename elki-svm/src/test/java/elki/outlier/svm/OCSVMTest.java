@@ -57,4 +57,30 @@ public class OCSVMTest extends AbstractOutlierAlgorithmTest {
     assertAUC(db, "Noise", result, 0.9567);
     assertSingleScore(result, 1293, 0.12765);
   }
+
+  @Test
+  public void testBFloat16() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    OutlierResult result = new ELKIBuilder<>(OCSVM.class) //
+        .with(OCSVM.Par.KERNEL_ID, RadialBasisFunctionKernel.class) //
+        .with(OCSVM.Par.NU_ID, .05) //
+        .with(RadialBasisFunctionKernel.Par.GAMMA_ID, 1 / 6.) //
+        .with(OCSVM.Par.BFLOAT16_ID) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.95684);
+    assertSingleScore(result, 1293, 0.12765);
+  }
+
+  @Test
+  public void testParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    OutlierResult result = new ELKIBuilder<>(OCSVM.class) //
+        .with(OCSVM.Par.KERNEL_ID, RadialBasisFunctionKernel.class) //
+        .with(OCSVM.Par.NU_ID, .05) //
+        .with(RadialBasisFunctionKernel.Par.GAMMA_ID, 1 / 6.) //
+        .with(OCSVM.Par.PARALLEL_ID) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.9567);
+    assertSingleScore(result, 1293, 0.12765);
+  }
 }
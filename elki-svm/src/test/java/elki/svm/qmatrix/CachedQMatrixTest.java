@@ -0,0 +1,115 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.svm.qmatrix;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the cached Q matrix.
+ *
+ * @author Erich Schubert
+ */
+public class CachedQMatrixTest {
+  /**
+   * Simple test matrix.
+   */
+  private static class TestMatrix implements QMatrix {
+    int[] idx;
+
+    TestMatrix(int l) {
+      idx = new int[l];
+      for(int i = 0; i < l; i++) {
+        idx[i] = i;
+      }
+    }
+
+    @Override
+    public double similarity(int i, int j) {
+      return Math.exp(-Math.abs(idx[i] - idx[j]) * 1e-3);
+    }
+
+    @Override
+    public double[] get_QD() {
+      return null;
+    }
+
+    @Override
+    public void swap_index(int i, int j) {
+      int tmp = idx[i];
+      idx[i] = idx[j];
+      idx[j] = tmp;
+    }
+
+    @Override
+    public void initialize() {
+    }
+  }
+
+  @Test
+  public void testParallel() {
+    final int l = 10000;
+    // Small enough to force evictions:
+    CachedQMatrix Q = new CachedQMatrix(l, 1000000L, new TestMatrix(l), true, false);
+    TestMatrix ref = new TestMatrix(l);
+    float[] buf = new float[l];
+    for(int c = 0; c < 200; c++) {
+      final int column = (c * 7919) % l, len = l - (c * 13) % 500;
+      Q.get_Q(column, len, buf);
+      for(int j = 0; j < len; j++) {
+        assertEquals("Column " + column + " row " + j, (float) ref.similarity(column, j), buf[j], 0.);
+      }
+      if(c % 10 == 0) {
+        Q.swap_index(c, l - 1 - c);
+        ref.swap_index(c, l - 1 - c);
+      }
+    }
+  }
+
+  @Test
+  public void testBFloat16() {
+    final int l = 10000;
+    CachedQMatrix Q = new CachedQMatrix(l, 1000000L, new TestMatrix(l), true, true);
+    TestMatrix ref = new TestMatrix(l);
+    float[] buf = new float[l];
+    for(int c = 0; c < 100; c++) {
+      final int column = (c * 7919) % l;
+      Q.get_Q(column, l, buf);
+      for(int j = 0; j < l; j++) {
+        final double exp = ref.similarity(column, j);
+        assertEquals("Column " + column + " row " + j, exp, buf[j], exp * 0x1p-8);
+      }
+    }
+  }
+
+  @Test
+  public void testConversion() {
+    assertEquals(1f, CachedQMatrix.fromBFloat16(CachedQMatrix.toBFloat16(1f)), 0.);
+    assertEquals(-2.5f, CachedQMatrix.fromBFloat16(CachedQMatrix.toBFloat16(-2.5f)), 0.);
+    assertEquals(0f, CachedQMatrix.fromBFloat16(CachedQMatrix.toBFloat16(0f)), 0.);
+    // Round to nearest:
+    assertEquals(1f, CachedQMatrix.fromBFloat16(CachedQMatrix.toBFloat16(1.001f)), 0.);
+    assertEquals(1.0078125f, CachedQMatrix.fromBFloat16(CachedQMatrix.toBFloat16(1.006f)), 0.);
+    assertEquals(Float.POSITIVE_INFINITY, CachedQMatrix.fromBFloat16(CachedQMatrix.toBFloat16(Float.POSITIVE_INFINITY)), 0.);
+    assertEquals(Float.NaN, CachedQMatrix.fromBFloat16(CachedQMatrix.toBFloat16(Float.NaN)), 0.);
+  }
+}
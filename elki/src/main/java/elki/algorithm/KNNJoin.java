@@ -21,9 +21,16 @@
 package elki.algorithm;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import elki.Algorithm;
+import elki.data.ModifiableHyperBoundingBox;
 import elki.data.spatial.SpatialComparable;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
@@ -36,20 +43,23 @@ import elki.database.relation.MaterializedRelation;
 import elki.database.relation.Relation;
 import elki.distance.SpatialPrimitiveDistance;
 import elki.distance.minkowski.EuclideanDistance;
-import elki.index.tree.LeafEntry;
+import elki.index.Index;
+import elki.index.tree.metrical.covertree.CoverTree;
 import elki.index.tree.spatial.SpatialEntry;
 import elki.index.tree.spatial.SpatialPointLeafEntry;
+import elki.index.tree.spatial.kd.SmallMemoryKDTree;
 import elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
-import elki.logging.progress.IndefiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
 import elki.result.Metadata;
 import elki.utilities.Priority;
-import elki.utilities.datastructures.heap.ComparableMinHeap;
 import elki.utilities.datastructures.iterator.It;
 import elki.utilities.documentation.Description;
 import elki.utilities.documentation.Title;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.exceptions.MissingPrerequisitesException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
@@ -61,13 +71,20 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
 /**
  * Joins in a given spatial database to each object its k-nearest neighbors.
  * This algorithm only supports spatial databases based on a spatial index
- * structure.
+ * structure: an R*-tree variant, a {@link SmallMemoryKDTree}, or a
+ * {@link CoverTree}. The leaves of the R*-tree, or blocks of spatially close
+ * objects of the other trees, are used as data pages.
  * <p>
- * Since this method compares the MBR of every single leaf with every other
- * leaf, it is essentially quadratic in the number of leaves, which may not be
+ * Since this method compares the MBR of every single page with every other
+ * page, it is essentially quadratic in the number of pages, which may not be
  * appropriate for large trees. It does currently not yet use the tree structure
  * for pruning.
  * <p>
+ * Page pairs that cannot be pruned are processed in parallel. Every worker
+ * collects the neighbors it finds in its own partition of kNN heaps, which are
+ * merged into the result at the end. The pruning distances of the pages are
+ * shared by all workers.
+ * <p>
  * TODO: exploit the tree structure.
  *
  * @author Elke Achtert
@@ -85,6 +102,11 @@ public class KNNJoin implements Algorithm {
    */
   private static final Logging LOG = Logging.getLogger(KNNJoin.class);
 
+  /**
+   * Maximum number of objects in a data page of a k-d-tree or cover tree.
+   */
+  private static final int BLOCKSIZE = 64;
+
   /**
    * Distance function used.
    */
@@ -139,15 +161,18 @@ public class KNNJoin implements Algorithm {
    * @return Data store
    */
   public WritableDataStore<KNNList> run(Relation<? extends SpatialComparable> relation, DBIDs ids) {
-    It<AbstractRStarTree<?, SpatialEntry, ?>> indexes = Metadata.hierarchyOf(relation).iterDescendants().filter(AbstractRStarTree.class);
+    It<Index> indexes = Metadata.hierarchyOf(relation).iterDescendants().filter(Index.class) //
+        .filter(x -> x instanceof AbstractRStarTree || x instanceof SmallMemoryKDTree || x instanceof CoverTree);
     if(!indexes.valid()) {
-      throw new MissingPrerequisitesException("KNNJoin found no spatial indexes, expected exactly one.");
+      throw new MissingPrerequisitesException("KNNJoin found no spatial indexes (R*-tree, k-d-tree, or cover tree), expected exactly one.");
     }
-    AbstractRStarTree<?, SpatialEntry, ?> index = indexes.get();
+    Index index = indexes.get();
     if(indexes.advance().valid()) {
       throw new MissingPrerequisitesException("KNNJoin found more than one spatial indexes, expected exactly one.");
     }
-    return run(index, ids);
+    return index instanceof AbstractRStarTree ? run((AbstractRStarTree<?, ?, ?>) index, ids) : //
+        run(index instanceof SmallMemoryKDTree ? ((SmallMemoryKDTree<?>) index).getBlocks(BLOCKSIZE) : //
+            ((CoverTree<?>) index).getBlocks(BLOCKSIZE), relation, ids);
   }
 
   /**
@@ -161,87 +186,89 @@ public class KNNJoin implements Algorithm {
   public WritableDataStore<KNNList> run(AbstractRStarTree<?, ?, ?> idx, DBIDs ids) {
     @SuppressWarnings("unchecked")
     AbstractRStarTree<?, SpatialEntry, ?> index = (AbstractRStarTree<?, SpatialEntry, ?>) idx;
-    List<? extends SpatialEntry> ps_candidates = index.getLeaves();
-    List<List<KNNHeap>> heaps = new ArrayList<>(ps_candidates.size());
-
-    // Initialize with the page self-pairing
-    for(int i = 0; i < ps_candidates.size(); i++) {
-      heaps.add(initHeaps(distance, index.getNode(ps_candidates.get(i))));
+    List<? extends SpatialEntry> leaves = index.getLeaves();
+    List<Page> pages = new ArrayList<>(leaves.size());
+    for(SpatialEntry leaf : leaves) {
+      AbstractRStarTreeNode<?, ?> node = index.getNode(leaf);
+      ArrayModifiableDBIDs pids = DBIDUtil.newArray(node.getNumEntries());
+      SpatialComparable[] objs = new SpatialComparable[node.getNumEntries()];
+      for(int j = 0; j < objs.length; j++) {
+        SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(j);
+        pids.add(entry.getDBID());
+        objs[j] = entry;
+      }
+      pages.add(new Page(leaf, pids, objs));
     }
+    return join(pages, ids);
+  }
 
-    // Build priority queue
-    final int sqsize = ps_candidates.size() * (ps_candidates.size() - 1) >>> 1;
-    ComparableMinHeap<Task> pq = new ComparableMinHeap<>(sqsize);
-    if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Number of leaves: " + ps_candidates.size() + " so " + sqsize + " MBR computations.");
-    }
-    FiniteProgress mprogress = LOG.isVerbose() ? new FiniteProgress("Comparing leaf MBRs", sqsize, LOG) : null;
-    for(int i = 0; i < ps_candidates.size(); i++) {
-      SpatialEntry pr_entry = ps_candidates.get(i);
-      AbstractRStarTreeNode<?, ?> pr = index.getNode(pr_entry);
-      List<KNNHeap> pr_heaps = heaps.get(i);
-      double pr_knn_distance = computeStopDistance(pr_heaps);
-
-      for(int j = i + 1; j < ps_candidates.size(); j++) {
-        SpatialEntry ps_entry = ps_candidates.get(j);
-        AbstractRStarTreeNode<?, ?> ps = index.getNode(ps_entry);
-        List<KNNHeap> ps_heaps = heaps.get(j);
-        double ps_knn_distance = computeStopDistance(ps_heaps);
-        double minDist = distance.minDist(pr_entry, ps_entry);
-        // Resolve immediately:
-        if(minDist <= 0.) {
-          processDataPages(distance, pr_heaps, ps_heaps, pr, ps);
+  /**
+   * Inner run method, using blocks of spatially close objects as data pages.
+   *
+   * @param blocks Blocks of objects, e.g., from a k-d-tree
+   * @param relation Data relation
+   * @param ids Object IDs
+   * @return Data store
+   */
+  public WritableDataStore<KNNList> run(List<? extends DBIDs> blocks, Relation<? extends SpatialComparable> relation, DBIDs ids) {
+    List<Page> pages = new ArrayList<>(blocks.size());
+    for(DBIDs block : blocks) {
+      ArrayDBIDs pids = DBIDUtil.ensureArray(block);
+      SpatialComparable[] objs = new SpatialComparable[pids.size()];
+      ModifiableHyperBoundingBox mbr = null;
+      for(DBIDArrayIter it = pids.iter(); it.valid(); it.advance()) {
+        SpatialComparable obj = objs[it.getOffset()] = relation.get(it);
+        if(mbr == null) {
+          mbr = new ModifiableHyperBoundingBox(obj);
         }
-        else if(minDist <= pr_knn_distance || minDist <= ps_knn_distance) {
-          pq.add(new Task(minDist, i, j));
+        else {
+          mbr.extend(obj);
         }
-        LOG.incrementProcessed(mprogress);
       }
-    }
-    LOG.ensureCompleted(mprogress);
-
-    // Process the queue
-    FiniteProgress qprogress = LOG.isVerbose() ? new FiniteProgress("Processing queue", pq.size(), LOG) : null;
-    IndefiniteProgress fprogress = LOG.isVerbose() ? new IndefiniteProgress("Full comparisons", LOG) : null;
-    while(!pq.isEmpty()) {
-      Task task = pq.poll();
-      List<KNNHeap> pr_heaps = heaps.get(task.i);
-      List<KNNHeap> ps_heaps = heaps.get(task.j);
-      double pr_knn_distance = computeStopDistance(pr_heaps);
-      double ps_knn_distance = computeStopDistance(ps_heaps);
-      boolean dor = task.mindist <= pr_knn_distance;
-      boolean dos = task.mindist <= ps_knn_distance;
-      if(dor || dos) {
-        AbstractRStarTreeNode<?, ?> pr = index.getNode(ps_candidates.get(task.i));
-        AbstractRStarTreeNode<?, ?> ps = index.getNode(ps_candidates.get(task.j));
-        if(dor && dos) {
-          processDataPages(distance, pr_heaps, ps_heaps, pr, ps);
-        }
-        else if(dor) {
-          processDataPages(distance, pr_heaps, null, pr, ps);
-        }
-        else /* if(dos) */ {
-          processDataPages(distance, ps_heaps, null, ps, pr);
-        }
-        LOG.incrementProcessed(fprogress);
+      if(mbr != null) {
+        pages.add(new Page(mbr, pids, objs));
       }
-      LOG.incrementProcessed(qprogress);
     }
-    LOG.ensureCompleted(qprogress);
-    LOG.setCompleted(fprogress);
+    return join(pages, ids);
+  }
 
-    WritableDataStore<KNNList> knnLists = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_STATIC, KNNList.class);
-    FiniteProgress pageprog = LOG.isVerbose() ? new FiniteProgress("Number of processed data pages", ps_candidates.size(), LOG) : null;
-    for(int i = 0; i < ps_candidates.size(); i++) {
-      AbstractRStarTreeNode<?, ?> pr = index.getNode(ps_candidates.get(i));
-      List<KNNHeap> pr_heaps = heaps.get(i);
+  /**
+   * Join the data pages.
+   *
+   * @param pages Data pages
+   * @param ids Object IDs
+   * @return Data store
+   */
+  private WritableDataStore<KNNList> join(List<Page> pages, DBIDs ids) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Number of pages: " + pages.size() + " so " + (pages.size() * (pages.size() - 1L) >>> 1) + " MBR computations.");
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      final int parallelism = core.getParallelism();
+      core.submit(ForkJoinTask.adapt(() -> process(pages, parallelism))).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("The kNN join failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("The kNN join was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
 
+    WritableDataStore<KNNList> knnLists = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_STATIC, KNNList.class);
+    FiniteProgress pageprog = LOG.isVerbose() ? new FiniteProgress("Number of processed data pages", pages.size(), LOG) : null;
+    for(int i = 0; i < pages.size(); i++) {
+      Page pr = pages.get(i);
       // Finalize lists
-      for(int j = 0; j < pr.getNumEntries(); j++) {
-        knnLists.put(((LeafEntry) pr.getEntry(j)).getDBID(), pr_heaps.get(j).toKNNList());
+      for(DBIDArrayIter it = pr.ids.iter(); it.valid(); it.advance()) {
+        knnLists.put(it, pr.heaps[it.getOffset()].toKNNList());
       }
-      // Forget heaps and pq
-      heaps.set(i, null);
+      // Forget heaps
+      pages.set(i, null);
       LOG.incrementProcessed(pageprog);
     }
     LOG.ensureCompleted(pageprog);
@@ -249,46 +276,77 @@ public class KNNJoin implements Algorithm {
   }
 
   /**
-   * Initialize the heaps.
+   * Process all page pairs, inside the fork-join pool.
    *
-   * @param distFunction Distance function
-   * @param pr Node to initialize for
-   * @return List of heaps
+   * @param pages Data pages
+   * @param parallelism Number of partitions
    */
-  private List<KNNHeap> initHeaps(SpatialPrimitiveDistance<?> distFunction, AbstractRStarTreeNode<?, ?> pr) {
-    List<KNNHeap> pr_heaps = new ArrayList<>(pr.getNumEntries());
-    // Create for each data object a knn heap
-    for(int j = 0; j < pr.getNumEntries(); j++) {
-      pr_heaps.add(DBIDUtil.newHeap(k));
-    }
+  private void process(List<Page> pages, int parallelism) {
     // Self-join first, as this is expected to improve most and cannot be
     // pruned.
-    processDataPages(distFunction, pr_heaps, null, pr, pr);
-    return pr_heaps;
+    new SelfJoin(pages, 0, pages.size()).invoke();
+    final double[] stop = new double[pages.size()];
+    for(int i = 0; i < stop.length; i++) {
+      stop[i] = computeStopDistance(pages.get(i), null);
+    }
+
+    // Find the page pairs that cannot be pruned, and sort them
+    List<Task> tasks = new Candidates(pages, stop, 0, pages.size()).invoke();
+    Collections.sort(tasks);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KNNJoin.class.getName() + ".pages", pages.size()));
+      LOG.statistics(new LongStatistic(KNNJoin.class.getName() + ".candidate-pairs", tasks.size()));
+    }
+
+    // Process the pairs, interleaved so every partition starts with the most
+    // promising pairs.
+    FiniteProgress qprogress = LOG.isVerbose() ? new FiniteProgress("Processing page pairs", tasks.size(), LOG) : null;
+    // Stop distances are non-negative, so their bits are ordered like doubles
+    AtomicLongArray shared = new AtomicLongArray(stop.length);
+    for(int i = 0; i < stop.length; i++) {
+      shared.set(i, Double.doubleToLongBits(stop[i]));
+    }
+    final int numpart = Math.max(1, Math.min(parallelism, tasks.size()));
+    List<Partition> partitions = new ArrayList<>(numpart);
+    for(int p = 0; p < numpart; p++) {
+      partitions.add(new Partition(pages, shared, tasks, p, numpart, qprogress));
+    }
+    ForkJoinTask.invokeAll(partitions);
+    LOG.ensureCompleted(qprogress);
+    if(LOG.isStatistics()) {
+      long processed = 0;
+      for(Partition p : partitions) {
+        processed += p.processed;
+      }
+      LOG.statistics(new LongStatistic(KNNJoin.class.getName() + ".processed-pairs", processed));
+    }
+
+    // Merge the partitions into the page heaps
+    new Merge(pages, partitions, 0, pages.size()).invoke();
   }
 
   /**
    * Processes the two data pages pr and ps and determines the k-nearest
    * neighbors of pr in ps.
    *
-   * @param df the distance function to use
    * @param pr the first data page
-   * @param ps the second data page
    * @param pr_heaps the knn lists for each data object
-   * @param ps_heaps the knn lists for each data object in ps
+   * @param ps the second data page
+   * @param ps_heaps the knn lists for each data object in ps, may be null
    */
-  private void processDataPages(SpatialPrimitiveDistance<?> df, List<KNNHeap> pr_heaps, List<KNNHeap> ps_heaps, AbstractRStarTreeNode<?, ?> pr, AbstractRStarTreeNode<?, ?> ps) {
+  private void processDataPages(Page pr, KNNHeap[] pr_heaps, Page ps, KNNHeap[] ps_heaps) {
+    final SpatialPrimitiveDistance<?> df = distance;
     // Compare pairwise
-    for(int j = 0; j < ps.getNumEntries(); j++) {
-      final SpatialPointLeafEntry s_e = (SpatialPointLeafEntry) ps.getEntry(j);
-      final KNNHeap hj = ps_heaps != null ? ps_heaps.get(j) : null;
-      final DBID s_id = s_e.getDBID();
-      for(int i = 0; i < pr.getNumEntries(); i++) {
-        final SpatialPointLeafEntry r_e = (SpatialPointLeafEntry) pr.getEntry(i);
-        double distance = df.minDist(s_e, r_e);
-        pr_heaps.get(i).insert(distance, s_id);
+    DBIDArrayIter s_id = ps.ids.iter(), r_id = pr.ids.iter();
+    for(; s_id.valid(); s_id.advance()) {
+      final SpatialComparable s_e = ps.objs[s_id.getOffset()];
+      final KNNHeap hj = ps_heaps != null ? ps_heaps[s_id.getOffset()] : null;
+      for(r_id.seek(0); r_id.valid(); r_id.advance()) {
+        final int i = r_id.getOffset();
+        double distance = df.minDist(s_e, pr.objs[i]);
+        pr_heaps[i].insert(distance, s_id);
         if(hj != null) {
-          hj.insert(distance, r_e.getDBID());
+          hj.insert(distance, r_id);
         }
       }
     }
@@ -297,26 +355,383 @@ public class KNNJoin implements Algorithm {
   /**
    * Compute the maximum stop distance.
    *
-   * @param heaps Heaps list
+   * @param page Data page
+   * @param local Additional heaps with neighbors, may be null
    * @return the k-nearest neighbor distance of pr in ps
    */
-  private double computeStopDistance(List<KNNHeap> heaps) {
+  private static double computeStopDistance(Page page, KNNHeap[] local) {
     // Update pruning distance
     double pr_knn_distance = Double.NaN;
-    for(KNNHeap knnList : heaps) {
+    for(int i = 0; i < page.heaps.length; i++) {
       // set kNN distance of r
-      double kdist = knnList.getKNNDistance();
+      double kdist = page.heaps[i].getKNNDistance();
+      if(local != null) {
+        // Both heaps contain true neighbors, so the smaller bound is valid
+        kdist = Math.min(kdist, local[i].getKNNDistance());
+      }
       pr_knn_distance = (kdist < pr_knn_distance) ? pr_knn_distance : kdist;
     }
     return pr_knn_distance != pr_knn_distance ? Double.POSITIVE_INFINITY : pr_knn_distance;
   }
 
+  /**
+   * Allocate kNN heaps for a data page.
+   *
+   * @param page Data page
+   * @return Heaps
+   */
+  private KNNHeap[] newHeaps(Page page) {
+    KNNHeap[] heaps = new KNNHeap[page.objs.length];
+    for(int j = 0; j < heaps.length; j++) {
+      heaps[j] = DBIDUtil.newHeap(k);
+    }
+    return heaps;
+  }
+
+  /**
+   * Data page of the join.
+   *
+   * @author Erich Schubert
+   */
+  private static class Page {
+    /**
+     * Bounding box of the page.
+     */
+    final SpatialComparable mbr;
+
+    /**
+     * Objects in the page.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Spatial representation of the objects.
+     */
+    final SpatialComparable[] objs;
+
+    /**
+     * kNN heaps of the objects.
+     */
+    KNNHeap[] heaps;
+
+    /**
+     * Constructor.
+     *
+     * @param mbr Bounding box
+     * @param ids Objects
+     * @param objs Spatial representation of the objects
+     */
+    Page(SpatialComparable mbr, ArrayDBIDs ids, SpatialComparable[] objs) {
+      this.mbr = mbr;
+      this.ids = ids;
+      this.objs = objs;
+    }
+  }
+
+  /**
+   * Self-join of a range of pages. Each page is only modified by one task.
+   *
+   * @author Erich Schubert
+   */
+  private class SelfJoin extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Data pages.
+     */
+    private final List<Page> pages;
+
+    /**
+     * Range of pages.
+     */
+    private final int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param pages Data pages
+     * @param start First page
+     * @param end End page (exclusive)
+     */
+    SelfJoin(List<Page> pages, int start, int end) {
+      this.pages = pages;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > 1) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new SelfJoin(pages, start, mid), new SelfJoin(pages, mid, end));
+        return;
+      }
+      for(int i = start; i < end; i++) {
+        Page pr = pages.get(i);
+        pr.heaps = newHeaps(pr);
+        processDataPages(pr, pr.heaps, pr, null);
+      }
+    }
+  }
+
+  /**
+   * Compare the bounding boxes of a range of pages to all later pages, and
+   * collect the pairs that cannot be pruned.
+   *
+   * @author Erich Schubert
+   */
+  private class Candidates extends RecursiveTask<List<Task>> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Data pages.
+     */
+    private final List<Page> pages;
+
+    /**
+     * Stop distances of the pages.
+     */
+    private final double[] stop;
+
+    /**
+     * Range of pages.
+     */
+    private final int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param pages Data pages
+     * @param stop Stop distances of the pages
+     * @param start First page
+     * @param end End page (exclusive)
+     */
+    Candidates(List<Page> pages, double[] stop, int start, int end) {
+      this.pages = pages;
+      this.stop = stop;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected List<Task> compute() {
+      if(end - start > 1) {
+        final int mid = (start + end) >>> 1;
+        Candidates left = new Candidates(pages, stop, start, mid);
+        Candidates right = new Candidates(pages, stop, mid, end);
+        invokeAll(left, right);
+        List<Task> tasks = left.join();
+        tasks.addAll(right.join());
+        return tasks;
+      }
+      List<Task> tasks = new ArrayList<>();
+      for(int i = start; i < end; i++) {
+        final SpatialComparable pr_mbr = pages.get(i).mbr;
+        for(int j = i + 1; j < pages.size(); j++) {
+          double minDist = distance.minDist(pr_mbr, pages.get(j).mbr);
+          if(minDist <= stop[i] || minDist <= stop[j]) {
+            tasks.add(new Task(minDist, i, j));
+          }
+        }
+      }
+      return tasks;
+    }
+  }
+
+  /**
+   * Process a share of the page pairs, collecting the neighbors found in a
+   * separate partition of kNN heaps.
+   *
+   * @author Erich Schubert
+   */
+  private class Partition extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Data pages.
+     */
+    private final List<Page> pages;
+
+    /**
+     * Stop distances of the pages, as bits, shared by all partitions.
+     */
+    private final AtomicLongArray stop;
+
+    /**
+     * Sorted page pairs.
+     */
+    private final List<Task> tasks;
+
+    /**
+     * First task, and step size.
+     */
+    private final int offset, stride;
+
+    /**
+     * Progress.
+     */
+    private final FiniteProgress progress;
+
+    /**
+     * kNN heaps of this partition, by page.
+     */
+    final KNNHeap[][] heaps;
+
+    /**
+     * Number of page pairs processed.
+     */
+    long processed;
+
+    /**
+     * Constructor.
+     *
+     * @param pages Data pages
+     * @param stop Shared stop distances of the pages
+     * @param tasks Sorted page pairs
+     * @param offset First task
+     * @param stride Step size
+     * @param progress Progress
+     */
+    Partition(List<Page> pages, AtomicLongArray stop, List<Task> tasks, int offset, int stride, FiniteProgress progress) {
+      this.pages = pages;
+      this.stop = stop;
+      this.tasks = tasks;
+      this.offset = offset;
+      this.stride = stride;
+      this.progress = progress;
+      this.heaps = new KNNHeap[pages.size()][];
+    }
+
+    @Override
+    protected void compute() {
+      for(int t = offset; t < tasks.size(); t += stride) {
+        Task task = tasks.get(t);
+        boolean dor = task.mindist <= Double.longBitsToDouble(stop.get(task.i));
+        boolean dos = task.mindist <= Double.longBitsToDouble(stop.get(task.j));
+        if(dor || dos) {
+          Page pr = pages.get(task.i), ps = pages.get(task.j);
+          if(dor && dos) {
+            processDataPages(pr, heaps(task.i), ps, heaps(task.j));
+            updateStop(task.i);
+            updateStop(task.j);
+          }
+          else if(dor) {
+            processDataPages(pr, heaps(task.i), ps, null);
+            updateStop(task.i);
+          }
+          else /* if(dos) */ {
+            processDataPages(ps, heaps(task.j), pr, null);
+            updateStop(task.j);
+          }
+          ++processed;
+        }
+        LOG.incrementProcessed(progress);
+      }
+    }
+
+    /**
+     * Publish the stop distance of a page, if improved by this partition.
+     *
+     * @param i Page number
+     */
+    private void updateStop(int i) {
+      final long bits = Double.doubleToLongBits(computeStopDistance(pages.get(i), heaps[i]));
+      stop.accumulateAndGet(i, bits, Math::min);
+    }
+
+    /**
+     * Get the heaps of a page, allocating them on demand.
+     *
+     * @param i Page number
+     * @return Heaps
+     */
+    private KNNHeap[] heaps(int i) {
+      KNNHeap[] h = heaps[i];
+      return h != null ? h : (heaps[i] = newHeaps(pages.get(i)));
+    }
+  }
+
+  /**
+   * Merge the partitions into the heaps of a range of pages.
+   *
+   * @author Erich Schubert
+   */
+  private static class Merge extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Data pages.
+     */
+    private final List<Page> pages;
+
+    /**
+     * Partitions to merge.
+     */
+    private final List<Partition> partitions;
+
+    /**
+     * Range of pages.
+     */
+    private final int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param pages Data pages
+     * @param partitions Partitions to merge
+     * @param start First page
+     * @param end End page (exclusive)
+     */
+    Merge(List<Page> pages, List<Partition> partitions, int start, int end) {
+      this.pages = pages;
+      this.partitions = partitions;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > 16) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new Merge(pages, partitions, start, mid), new Merge(pages, partitions, mid, end));
+        return;
+      }
+      for(int i = start; i < end; i++) {
+        final KNNHeap[] heaps = pages.get(i).heaps;
+        for(Partition p : partitions) {
+          final KNNHeap[] local = p.heaps[i];
+          if(local == null) {
+            continue;
+          }
+          for(int j = 0; j < heaps.length; j++) {
+            for(DoubleDBIDListIter it = local[j].toKNNList().iter(); it.valid(); it.advance()) {
+              heaps[j].insert(it.doubleValue(), it);
+            }
+          }
+          p.heaps[i] = null;
+        }
+      }
+    }
+  }
+
   /**
    * Task in the processing queue.
    *
    * @author Erich Schubert
    */
-  private class Task implements Comparable<Task> {
+  private static class Task implements Comparable<Task> {
     /**
      * Minimum distance.
      */
@@ -0,0 +1,504 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import elki.logging.Logging;
+import elki.logging.statistics.AtomicLongCounter;
+import elki.logging.statistics.Counter;
+import elki.utilities.exceptions.AbortException;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+/**
+ * A concurrent page cache, using lock striping and the CLOCK (second chance)
+ * replacement strategy.
+ * <p>
+ * Pages are partitioned by their id into a number of stripes, each with its own
+ * lock, so that concurrent readers of different pages (e.g., parallel queries
+ * on a disk-based tree) do not all serialize on a single lock as with
+ * {@link LRUCache}. Within each stripe, CLOCK approximates LRU without having
+ * to reorder a list on every access.
+ * <p>
+ * Optionally, when a page implementing {@link ReadAheadPage} is read from the
+ * backing file, its child pages are loaded into the cache asynchronously.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - - - PageFile
+ *
+ * @param <P> Page type
+ */
+public class ClockCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ClockCache.class);
+
+  /**
+   * Cache size in bytes.
+   */
+  protected long cacheSizeBytes;
+
+  /**
+   * Number of stripes requested.
+   */
+  protected int numstripes;
+
+  /**
+   * Read ahead child pages.
+   */
+  protected boolean readahead;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * The cache stripes.
+   */
+  private Stripe[] stripes;
+
+  /**
+   * Executor for read-ahead, created on demand.
+   */
+  private ExecutorService prefetcher;
+
+  /**
+   * Cache statistics.
+   */
+  private final Counter hits, misses, evictions, prefetched;
+
+  /**
+   * Initializes this cache with the specified parameters.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param numstripes number of lock stripes
+   * @param readahead read ahead child pages
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ClockCache(long cacheSizeBytes, int numstripes, boolean readahead, PageFile<P> file) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.numstripes = numstripes;
+    this.readahead = readahead;
+    final String prefix = getClass().getName();
+    final boolean stats = LOG.isStatistics();
+    this.hits = stats ? new AtomicLongCounter(prefix + ".hits") : null;
+    this.misses = stats ? new AtomicLongCounter(prefix + ".misses") : null;
+    this.evictions = stats ? new AtomicLongCounter(prefix + ".evictions") : null;
+    this.prefetched = stats && readahead ? new AtomicLongCounter(prefix + ".readahead") : null;
+  }
+
+  /**
+   * Get the stripe responsible for a page.
+   *
+   * @param pageID Page id
+   * @return Stripe
+   */
+  private Stripe stripe(int pageID) {
+    final int h = pageID * 0x9E3779B9; // Fibonacci hashing
+    return stripes[(int) (((h ^ (h >>> 16)) & 0xFFFFFFFFL) % stripes.length)];
+  }
+
+  /**
+   * Retrieves a page from the cache, or from the backing file.
+   *
+   * @param pageID the id of the page to be returned
+   * @return the page associated to the id
+   */
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    final Stripe stripe = stripe(pageID);
+    P page;
+    synchronized(stripe) {
+      page = stripe.get(pageID);
+      if(page != null) {
+        increment(hits);
+        return page;
+      }
+      increment(misses);
+      page = file.readPage(pageID);
+      if(page != null) {
+        stripe.put(pageID, page, true);
+      }
+    }
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Read from backing: " + pageID);
+    }
+    if(readahead && page instanceof ReadAheadPage) {
+      scheduleReadAhead((ReadAheadPage) page);
+    }
+    return page;
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    final Stripe stripe = stripe(pageID);
+    synchronized(stripe) {
+      stripe.put(pageID, page, true);
+    }
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to cache: " + pageID);
+    }
+  }
+
+  @Override
+  public synchronized void deletePage(int pageID) {
+    countWrite();
+    final Stripe stripe = stripe(pageID);
+    synchronized(stripe) {
+      stripe.remove(pageID);
+      file.deletePage(pageID);
+    }
+  }
+
+  /**
+   * Load the child pages of a page in the background.
+   *
+   * @param page Parent page
+   */
+  private void scheduleReadAhead(ReadAheadPage page) {
+    ExecutorService ex = prefetcher;
+    if(ex == null) {
+      synchronized(this) {
+        if((ex = prefetcher) == null) {
+          prefetcher = ex = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ELKI-readahead");
+            t.setDaemon(true);
+            return t;
+          });
+        }
+      }
+    }
+    ex.execute(() -> page.forEachChildPage(this::prefetch));
+  }
+
+  /**
+   * Load a page into the cache, unless already present.
+   *
+   * @param pageID Page id
+   */
+  private void prefetch(int pageID) {
+    final Stripe stripe = stripe(pageID);
+    synchronized(stripe) {
+      if(stripe.contains(pageID)) {
+        return;
+      }
+      try {
+        P page = file.readPage(pageID);
+        if(page != null) {
+          // Not referenced yet, so this will be evicted first if unused.
+          stripe.put(pageID, page, false);
+          increment(prefetched);
+        }
+      }
+      catch(RuntimeException e) {
+        LOG.debugFine("Read-ahead failed for page " + pageID, e);
+      }
+    }
+  }
+
+  /**
+   * Write page through to disk.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to backing:" + page.getPageID());
+    }
+    if(page.isDirty()) {
+      file.writePage(page);
+    }
+  }
+
+  /**
+   * Increment a counter, if statistics are enabled.
+   *
+   * @param counter Counter, may be {@code null}
+   */
+  private static void increment(Counter counter) {
+    if(counter != null) {
+      counter.increment();
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    final long cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0 || cacheSize > Integer.MAX_VALUE) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    final int n = (int) Math.min(Math.max(numstripes, 1), cacheSize);
+    final int perstripe = (int) (cacheSize / n);
+    if(LOG.isDebugging()) {
+      LOG.debug("CLOCK cache size is " + cacheSize + " pages in " + n + " stripes.");
+    }
+    stripes = (Stripe[]) new ClockCache<?>.Stripe[n];
+    for(int i = 0; i < n; i++) {
+      stripes[i] = new Stripe(perstripe + (i < cacheSize % n ? 1 : 0));
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    if(prefetcher != null) {
+      prefetcher.shutdown();
+      try {
+        prefetcher.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Stripe stripe : stripes) {
+      synchronized(stripe) {
+        stripe.flush();
+      }
+    }
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public void clear() {
+    for(Stripe stripe : stripes) {
+      synchronized(stripe) {
+        stripe.clear();
+      }
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+    }
+    if(prefetched != null) {
+      LOG.statistics(prefetched);
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single stripe of the cache, a CLOCK buffer. All access must be
+   * synchronized on the stripe.
+   *
+   * @author Erich Schubert
+   */
+  private class Stripe {
+    /**
+     * Map from page ids to slots.
+     */
+    final Int2IntOpenHashMap index;
+
+    /**
+     * Cached pages.
+     */
+    final Object[] pages;
+
+    /**
+     * Page ids of the slots.
+     */
+    final int[] ids;
+
+    /**
+     * Reference bits.
+     */
+    final boolean[] referenced;
+
+    /**
+     * Number of slots used so far, and the clock hand.
+     */
+    int used, hand;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Number of pages in this stripe
+     */
+    Stripe(int capacity) {
+      this.index = new Int2IntOpenHashMap(capacity);
+      this.index.defaultReturnValue(-1);
+      this.pages = new Object[capacity];
+      this.ids = new int[capacity];
+      this.referenced = new boolean[capacity];
+    }
+
+    /**
+     * Test if a page is cached.
+     *
+     * @param pageID Page id
+     * @return {@code true} if present
+     */
+    boolean contains(int pageID) {
+      return index.containsKey(pageID);
+    }
+
+    /**
+     * Get a page, and mark it as referenced.
+     *
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    P get(int pageID) {
+      final int slot = index.get(pageID);
+      if(slot < 0) {
+        return null;
+      }
+      referenced[slot] = true;
+      return (P) pages[slot];
+    }
+
+    /**
+     * Put a page into the cache, evicting another page if necessary.
+     *
+     * @param pageID Page id
+     * @param page Page
+     * @param ref Initial reference bit
+     */
+    void put(int pageID, P page, boolean ref) {
+      int slot = index.get(pageID);
+      if(slot < 0) {
+        slot = used < pages.length ? used++ : evict();
+        index.put(pageID, slot);
+        ids[slot] = pageID;
+      }
+      pages[slot] = page;
+      referenced[slot] = ref;
+    }
+
+    /**
+     * Find a slot to reuse, writing back the evicted page if necessary.
+     *
+     * @return Slot
+     */
+    @SuppressWarnings("unchecked")
+    int evict() {
+      while(true) {
+        final int slot = hand;
+        hand = hand + 1 < pages.length ? hand + 1 : 0;
+        if(pages[slot] == null) {
+          return slot; // Free slot after deletion
+        }
+        if(referenced[slot]) {
+          referenced[slot] = false; // Second chance
+          continue;
+        }
+        expirePage((P) pages[slot]);
+        index.remove(ids[slot]);
+        pages[slot] = null;
+        increment(evictions);
+        return slot;
+      }
+    }
+
+    /**
+     * Remove a page from the cache, without writing it back.
+     *
+     * @param pageID Page id
+     */
+    void remove(int pageID) {
+      final int slot = index.remove(pageID);
+      if(slot >= 0) {
+        pages[slot] = null;
+        referenced[slot] = false;
+      }
+    }
+
+    /**
+     * Write back all pages, and empty the cache.
+     */
+    @SuppressWarnings("unchecked")
+    void flush() {
+      for(int i = 0; i < used; i++) {
+        if(pages[i] != null) {
+          expirePage((P) pages[i]);
+        }
+      }
+      clear();
+    }
+
+    /**
+     * Empty the cache.
+     */
+    void clear() {
+      index.clear();
+      Arrays.fill(pages, null);
+      Arrays.fill(referenced, false);
+      used = hand = 0;
+    }
+  }
+}
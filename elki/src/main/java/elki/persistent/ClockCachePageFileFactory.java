@@ -0,0 +1,145 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.LongParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Page file factory for a concurrent CLOCK page cache.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - ClockCache
+ * @composed - - - PageFileFactory
+ *
+ * @param <P> Page type
+ */
+public class ClockCachePageFileFactory<P extends Page> implements PageFileFactory<P> {
+  /**
+   * Inner page file factory.
+   */
+  private PageFileFactory<P> pageFileFactory;
+
+  /**
+   * Cache size, in bytes.
+   */
+  private long cacheSize;
+
+  /**
+   * Number of lock stripes.
+   */
+  private int stripes;
+
+  /**
+   * Read ahead child pages.
+   */
+  private boolean readahead;
+
+  /**
+   * Constructor.
+   *
+   * @param pageFileFactory Inner page file
+   * @param cacheSize Size of cache, in bytes.
+   * @param stripes Number of lock stripes
+   * @param readahead Read ahead child pages
+   */
+  public ClockCachePageFileFactory(PageFileFactory<P> pageFileFactory, long cacheSize, int stripes, boolean readahead) {
+    super();
+    this.pageFileFactory = pageFileFactory;
+    this.cacheSize = cacheSize;
+    this.stripes = stripes;
+    this.readahead = readahead;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    PageFile<P> inner = pageFileFactory.newPageFile(cls);
+    return new ClockCache<>(cacheSize, stripes, readahead, inner);
+  }
+
+  @Override
+  public int getPageSize() {
+    return pageFileFactory.getPageSize();
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Number of lock stripes.
+     */
+    public static final OptionID STRIPES_ID = new OptionID("pagefile.stripes", "Number of independently locked partitions of the cache.");
+
+    /**
+     * Flag to enable read-ahead of child pages.
+     */
+    public static final OptionID READAHEAD_ID = new OptionID("pagefile.readahead", "Asynchronously load the child pages of directory pages read from disk.");
+
+    /**
+     * Inner page file factory.
+     */
+    PageFileFactory<Page> pageFileFactory;
+
+    /**
+     * Cache size, in bytes.
+     */
+    protected long cacheSize;
+
+    /**
+     * Number of lock stripes.
+     */
+    protected int stripes;
+
+    /**
+     * Read ahead child pages.
+     */
+    protected boolean readahead;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<PageFileFactory<Page>>(LRUCachePageFileFactory.Par.PAGEFILE_ID, PageFileFactory.class, PersistentPageFileFactory.class) //
+          .grab(config, x -> pageFileFactory = x);
+      new LongParameter(LRUCachePageFileFactory.Par.CACHE_SIZE_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> cacheSize = x);
+      new IntParameter(STRIPES_ID, 16) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> stripes = x);
+      new Flag(READAHEAD_ID).grab(config, x -> readahead = x);
+    }
+
+    @Override
+    public ClockCachePageFileFactory<Page> make() {
+      return new ClockCachePageFileFactory<>(pageFileFactory, cacheSize, stripes, readahead);
+    }
+  }
+}
@@ -21,6 +21,7 @@
 package elki.persistent;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
@@ -29,6 +30,7 @@ import java.nio.file.StandardOpenOption;
 
 import elki.index.tree.TreeIndexHeader;
 import elki.logging.Logging;
+import elki.utilities.io.ByteBufferInputStream;
 import elki.utilities.exceptions.AbortException;
 
 /**
@@ -60,6 +62,16 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    */
   private static final int FILLED_PAGE = 1;
 
+  /**
+   * Indicates a filled page, written directly by {@link ByteBufferPage}.
+   */
+  private static final int FILLED_BUFFER_PAGE = 2;
+
+  /**
+   * First bytes of a page written with Java object streams.
+   */
+  private static final int STREAM_MAGIC = (ObjectStreamConstants.STREAM_MAGIC << 16) | ObjectStreamConstants.STREAM_VERSION;
+
   /**
    * The file storing the pages.
    */
@@ -80,6 +92,16 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    */
   private boolean existed;
 
+  /**
+   * Pages can be written to buffers directly.
+   */
+  private final boolean direct;
+
+  /**
+   * Per-thread page buffer.
+   */
+  private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<>();
+
   /**
    * Creates a new PersistentPageFile from an existing file.
    * 
@@ -89,10 +111,11 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   public PersistentPageFile(int pageSize, Path filename, Class<P> pageclass) {
     super(pageSize);
     this.pageclass = pageclass;
+    this.direct = ByteBufferPage.class.isAssignableFrom(pageclass);
     // create from existing file
     existed = Files.exists(filename);
     try {
-      file = FileChannel.open(filename, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      file = FileChannel.open(filename, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
     }
     catch(IOException e) {
       throw new AbortException("IO error in loading persistent page file.", e);
@@ -110,12 +133,15 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
     try {
       countRead();
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
-      byte[] buffer = new byte[pageSize];
-      int read = file.read(ByteBuffer.wrap(buffer), offset);
-      if(read != pageSize) {
-        throw new IOException("Incomplete read at offset " + offset + " read " + read + " bytes, expected " + pageSize);
+      ByteBuffer buffer = readBuffer(offset);
+      final int type = buffer.getInt();
+      if(type == STREAM_MAGIC) { // Written with object streams
+        byte[] array = new byte[pageSize];
+        buffer.rewind();
+        buffer.get(array);
+        return byteArrayToPage(array);
       }
-      return byteArrayToPage(buffer);
+      return type == FILLED_BUFFER_PAGE ? bufferToPage(buffer) : null;
     }
     catch(IOException e) {
       throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
@@ -135,8 +161,14 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
 
       // delete from file
       countWrite();
-      byte[] array = pageToByteArray(null);
       long offset = (header.getReservedPages() + pageID) * (long) pageSize;
+      if(direct) {
+        ByteBuffer buffer = clearedBuffer();
+        buffer.putInt(EMPTY_PAGE);
+        writeBuffer(buffer, offset);
+        return;
+      }
+      byte[] array = pageToByteArray(null);
       int written = file.write(ByteBuffer.wrap(array), offset);
       if(written != pageSize) {
         throw new IOException("Incomplete write at offset " + offset + " wrote " + written + " bytes, expected " + array.length);
@@ -157,9 +189,22 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   public void writePage(int pageID, P page) {
     try {
       countWrite();
-      byte[] array = pageToByteArray(page);
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
       assert offset >= 0 : header.getReservedPages() + " " + pageID + " " + pageSize + " " + offset;
+      if(direct) {
+        ByteBuffer buffer = clearedBuffer();
+        try {
+          buffer.putInt(FILLED_BUFFER_PAGE);
+          ((ByteBufferPage) page).writeTo(buffer);
+        }
+        catch(BufferOverflowException e) {
+          throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize, e);
+        }
+        writeBuffer(buffer, offset);
+        page.setDirty(false);
+        return;
+      }
+      byte[] array = pageToByteArray(page);
       int written = file.write(ByteBuffer.wrap(array), offset);
       if(written != pageSize) {
         throw new IOException("Incomplete write at offset " + offset + " wrote " + written + " bytes, expected " + array.length);
@@ -177,12 +222,14 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   @Override
   public void close() {
     try {
-      super.close();
-      if(!emptyPages.isEmpty() && header instanceof TreeIndexHeader) {
-        // write the list of empty pages to the end of the file
-        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+      // Note: do not call super.close(), which would clear the file.
+      if(header instanceof TreeIndexHeader) {
+        if(!emptyPages.isEmpty()) {
+          // write the list of empty pages to the end of the file
+          ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+        }
+        ((TreeIndexHeader) header).setLargestPageID(nextPageID);
       }
-      ((TreeIndexHeader) header).setLargestPageID(nextPageID);
       header.writeHeader(file);
       file.close();
     }
@@ -204,6 +251,75 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
     }
   }
 
+  /**
+   * Get the page buffer of the current thread, cleared.
+   *
+   * @return Buffer
+   */
+  private ByteBuffer clearedBuffer() {
+    ByteBuffer buffer = buffers.get();
+    if(buffer == null || buffer.capacity() != pageSize) {
+      buffers.set(buffer = ByteBuffer.allocateDirect(pageSize));
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Read a page into the buffer of the current thread.
+   *
+   * @param offset File offset
+   * @return Buffer, positioned at the beginning of the page
+   * @throws IOException on read errors
+   */
+  private ByteBuffer readBuffer(long offset) throws IOException {
+    ByteBuffer buffer = clearedBuffer();
+    while(buffer.hasRemaining()) {
+      if(file.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Incomplete read at offset " + offset + " read " + buffer.position() + " bytes, expected " + pageSize);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Write the buffer as a full page, padded with zeros.
+   *
+   * @param buffer Buffer
+   * @param offset File offset
+   * @throws IOException on write errors
+   */
+  private void writeBuffer(ByteBuffer buffer, long offset) throws IOException {
+    while(buffer.remaining() >= 8) {
+      buffer.putLong(0L);
+    }
+    while(buffer.hasRemaining()) {
+      buffer.put((byte) 0);
+    }
+    buffer.flip();
+    while(buffer.hasRemaining()) {
+      file.write(buffer, offset + buffer.position());
+    }
+  }
+
+  /**
+   * Reconstruct a page written by {@link ByteBufferPage#writeTo}.
+   *
+   * @param buffer Buffer, positioned after the page type
+   * @return Page
+   */
+  private P bufferToPage(ByteBuffer buffer) {
+    try {
+      P page = pageclass.getDeclaredConstructor().newInstance();
+      ((ByteBufferPage) page).readFrom(buffer);
+      return page;
+    }
+    catch(ReflectiveOperationException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+  }
+
   /**
    * Reconstruct a serialized object from the specified byte array.
    * 
@@ -221,11 +337,10 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
       else if(type == FILLED_PAGE) {
         P page;
         try {
-          page = pageclass.newInstance();
+          page = pageclass.getDeclaredConstructor().newInstance();
           page.readExternal(ois);
         }
-        catch(InstantiationException | IllegalAccessException
-            | ClassNotFoundException e) {
+        catch(ReflectiveOperationException e) {
           throw new AbortException("Error instanciating an index page", e);
         }
         return page;
@@ -339,20 +454,18 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
         }
         else { // must scan complete file
           int i = 0;
-          while(file.position() + pageSize <= file.size()) {
-            long offset = ((long) (header.getReservedPages() + i)) * (long) pageSize;
-            byte[] buffer = new byte[pageSize];
-            if(file.read(ByteBuffer.wrap(buffer), offset) != pageSize) {
-              throw new IOException("Incomplete read at position " + offset);
+          long offset = header.getReservedPages() * (long) pageSize;
+          for(final long size = file.size(); offset + pageSize <= size; offset += pageSize) {
+            ByteBuffer buffer = readBuffer(offset);
+            int type = buffer.getInt();
+            if(type == STREAM_MAGIC) {
+              buffer.rewind();
+              type = new ObjectInputStream(new ByteBufferInputStream(buffer)).readInt();
             }
-
-            ByteArrayInputStream bais = new ByteArrayInputStream(buffer);
-            ObjectInputStream ois = new ObjectInputStream(bais);
-            int type = ois.readInt();
             if(type == EMPTY_PAGE) {
               emptyPages.add(i);
             }
-            else if(type == FILLED_PAGE) {
+            else if(type == FILLED_PAGE || type == FILLED_BUFFER_PAGE) {
               nextPageID = i + 1;
             }
             else {
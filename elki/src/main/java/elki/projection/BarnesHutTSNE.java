@@ -177,39 +177,77 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     }
   }
 
-  private void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad) {
-    final int dim3 = 3 * dim;
-    // Reset gradient / forces
-    for(int off = 0; off < grad.length; off += dim3) {
-      Arrays.fill(grad, off, off + dim, 0.);
-    }
+  /**
+   * Compute the gradients, using the Barnes-Hut approximation for the
+   * repulsive forces.
+   *
+   * @param pij Sparse affinity matrix
+   * @param solution Current solution coordinates
+   * @param grad Point metadata (gradient, momentum, learning rate)
+   */
+  protected void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad) {
+    final int size = solution.length;
+    DistanceCounter dc = new DistanceCounter();
     // Compute repulsive forces first:
     QuadTree tree = QuadTree.build(dim, solution);
+    final double z = -computeRepulsiveForces(grad, solution, tree, null, 0, size, dc);
+    // Normalize repulsive forces, and compute attractive forces second
+    computeAttractiveForces(grad, pij, solution, 1 / z, 0, size, dc);
+    projectedDistances += dc.getCount();
+  }
+
+  /**
+   * Compute the repulsive forces for a range of points, resetting their
+   * gradients first.
+   *
+   * @param grad Point metadata (gradient, momentum, learning rate)
+   * @param sol Current solution coordinates
+   * @param tree Quad tree
+   * @param zs Output force strength of each point, may be {@code null}
+   * @param start First point
+   * @param end End point (exclusive)
+   * @param dc Distance counter
+   * @return Sum of force strengths
+   */
+  protected double computeRepulsiveForces(double[] grad, double[][] sol, QuadTree tree, double[] zs, int start, int end, DistanceCounter dc) {
+    final int dim3 = 3 * dim;
     double z = 0.;
-    for(int i = 0, off = 0; i < solution.length; i++, off += dim3) {
-      z -= computeRepulsiveForces(grad, off, solution[i], tree);
-    }
-    // Normalize repulsive forces:
-    double s = 1 / z; // Scaling factor
-    for(int off = 0; off < grad.length; off += dim3) {
-      for(int j = 0; j < dim; j++) {
-        grad[off + j] *= s;
+    for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
+      Arrays.fill(grad, off, off + dim, 0.);
+      final double zi = computeRepulsiveForces(grad, off, sol[i], tree, dc);
+      if(zs != null) {
+        zs[i] = zi;
       }
+      z += zi;
     }
-    // Compute attractive forces second
-    computeAttractiveForces(grad, pij, solution);
+    return z;
   }
 
-  private void computeAttractiveForces(double[] attr, AffinityMatrix pij, double[][] sol) {
+  /**
+   * Normalize the repulsive forces, and add the attractive forces for a range
+   * of points.
+   *
+   * @param grad Point metadata (gradient, momentum, learning rate)
+   * @param pij Sparse affinity matrix
+   * @param sol Current solution coordinates
+   * @param s Scaling factor of the repulsive forces
+   * @param start First point
+   * @param end End point (exclusive)
+   * @param dc Distance counter
+   */
+  protected void computeAttractiveForces(double[] grad, AffinityMatrix pij, double[][] sol, double s, int start, int end, DistanceCounter dc) {
     final int dim3 = 3 * dim;
-    for(int i = 0, off = 0; off < attr.length; i++, off += dim3) {
+    for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
+      for(int k = 0; k < dim; k++) {
+        grad[off + k] *= s;
+      }
       final double[] sol_i = sol[i];
       for(int offj = pij.iter(i); pij.iterValid(i, offj); offj = pij.iterAdvance(i, offj)) {
         final double[] sol_j = sol[pij.iterDim(i, offj)];
         final double pij_ij = pij.iterValue(i, offj);
-        final double a = pij_ij / (1. + sqDist(sol_i, sol_j));
+        final double a = pij_ij / (1. + dc.sqDist(sol_i, sol_j));
         for(int k = 0; k < dim; k++) {
-          attr[off + k] += a * (sol_i[k] - sol_j[k]);
+          grad[off + k] += a * (sol_i[k] - sol_j[k]);
         }
       }
     }
@@ -222,11 +260,12 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
    * @param off Point offset
    * @param sol_i Solution vector
    * @param node Quad tree
+   * @param dc Distance counter
    * @return force strength
    */
-  private double computeRepulsiveForces(double[] rep_i, int off, double[] sol_i, QuadTree node) {
+  private double computeRepulsiveForces(double[] rep_i, int off, double[] sol_i, QuadTree node, DistanceCounter dc) {
     final double[] center = node.center;
-    double dist = sqDist(sol_i, center);
+    double dist = dc.sqDist(sol_i, center);
     // Barnes-Hut approximation:
     if(node.weight == 1 || node.squareSize / dist < sqtheta) {
       double u = 1. / (1. + dist);
@@ -243,7 +282,7 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     // Aggregate points in this node:
     if(node.points != null) {
       for(double[] point : node.points) {
-        double pdist = sqDist(sol_i, point);
+        double pdist = dc.sqDist(sol_i, point);
         double pz = 1. / (1. + pdist);
         double a = pz * pz;
         for(int k = 0; k < dim; k++) {
@@ -255,12 +294,58 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     // Recurse into subtrees:
     if(node.children != null) {
       for(QuadTree child : node.children) {
-        z += computeRepulsiveForces(rep_i, off, sol_i, child);
+        z += computeRepulsiveForces(rep_i, off, sol_i, child, dc);
       }
     }
     return z;
   }
 
+  /**
+   * Squared distances in projection space, counting the computations.
+   *
+   * @author Erich Schubert
+   */
+  protected static class DistanceCounter {
+    /**
+     * Number of distances computed.
+     */
+    private long count;
+
+    /**
+     * Constructor.
+     */
+    public DistanceCounter() {
+      super();
+    }
+
+    /**
+     * Squared distance, in projection space.
+     *
+     * @param v1 First vector
+     * @param v2 Second vector
+     * @return Squared distance
+     */
+    public double sqDist(double[] v1, double[] v2) {
+      assert (v1.length == v2.length) : "Lengths do not agree: " + v1.length + " " + v2.length;
+      double sum = 0;
+      for(int i = 0; i < v1.length; i++) {
+        final double diff = v1[i] - v2[i];
+        sum += diff * diff;
+      }
+      ++count;
+      return sum;
+    }
+
+    /**
+     * Get the number of distances computed.
+     *
+     * @return Count
+     */
+    public long getCount() {
+      return count;
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(affinity.getInputTypeRestriction());
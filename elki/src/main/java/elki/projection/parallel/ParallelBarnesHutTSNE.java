@@ -0,0 +1,209 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.projection.parallel;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveTask;
+
+import elki.projection.AffinityMatrix;
+import elki.projection.AffinityMatrixBuilder;
+import elki.projection.BarnesHutTSNE;
+import elki.parallel.ParallelCore;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Multi-threaded tSNE using Barnes-Hut-Approximation.
+ * <p>
+ * The quad tree is built serially in each iteration, then shared read-only by
+ * all threads to compute the repulsive forces of each point. The attractive
+ * forces over the sparse affinity matrix are also computed in parallel. Each
+ * point only writes its own gradient, and the normalization constant is summed
+ * in the same order as in {@link BarnesHutTSNE}, so the result is identical.
+ * <p>
+ * By default, this uses the {@link ParallelNearestNeighborAffinityMatrixBuilder}
+ * to also find the neighbors and optimize the perplexity in parallel.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelBarnesHutTSNE<O> extends BarnesHutTSNE<O> {
+  /**
+   * Minimum number of points per parallel block.
+   */
+  private static final int MIN_BLOCK = 1 << 8;
+
+  /**
+   * Per-point repulsive force normalization, to sum in a fixed order.
+   */
+  private double[] zs;
+
+  /**
+   * Constructor.
+   *
+   * @param affinity Affinity matrix builder
+   * @param dim Output dimensionality
+   * @param finalMomentum Final momentum
+   * @param learningRate Learning rate
+   * @param maxIterations Maximum number of iterations
+   * @param random Random generator
+   * @param keep Keep the original data (or remove it)
+   * @param theta Theta parameter
+   */
+  public ParallelBarnesHutTSNE(AffinityMatrixBuilder<? super O> affinity, int dim, double finalMomentum, double learningRate, int maxIterations, RandomFactory random, boolean keep, double theta) {
+    super(affinity, dim, finalMomentum, learningRate, maxIterations, random, keep, theta);
+  }
+
+  @Override
+  protected void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad) {
+    final int size = solution.length;
+    ParallelCore core = ParallelCore.getCore();
+    final int parallelism = core.getParallelism();
+    if(parallelism <= 1 || size < MIN_BLOCK << 1) {
+      super.computeGradient(pij, solution, grad);
+      return;
+    }
+    if(zs == null || zs.length != size) {
+      zs = new double[size];
+    }
+    final int grain = Math.max(MIN_BLOCK, size / (parallelism << 3));
+    final QuadTree tree = QuadTree.build(dim, solution);
+    core.connect();
+    try {
+      // Compute repulsive forces first:
+      projectedDistances += core.submit(new Block(0, size, grain, //
+          (start, end, dc) -> computeRepulsiveForces(grad, solution, tree, zs, start, end, dc))).get();
+      double z = 0.;
+      for(int i = 0; i < size; i++) {
+        z -= zs[i];
+      }
+      // Normalize repulsive forces, and compute attractive forces second
+      final double s = 1 / z; // Scaling factor
+      projectedDistances += core.submit(new Block(0, size, grain, //
+          (start, end, dc) -> computeAttractiveForces(grad, pij, solution, s, start, end, dc))).get();
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Computing the gradient failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Computing the gradient was interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Process a block of points.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  private interface BlockProcessor {
+    /**
+     * Process a block of points.
+     *
+     * @param start First point
+     * @param end End point (exclusive)
+     * @param dc Distance counter
+     */
+    void process(int start, int end, DistanceCounter dc);
+  }
+
+  /**
+   * Split a range of points into blocks.
+   *
+   * @author Erich Schubert
+   */
+  private static class Block extends RecursiveTask<Long> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Range of points.
+     */
+    private final int start, end;
+
+    /**
+     * Block size.
+     */
+    private final int grain;
+
+    /**
+     * Block processor.
+     */
+    private final BlockProcessor proc;
+
+    /**
+     * Constructor.
+     *
+     * @param start First point
+     * @param end End point (exclusive)
+     * @param grain Block size
+     * @param proc Block processor
+     */
+    Block(int start, int end, int grain, BlockProcessor proc) {
+      this.start = start;
+      this.end = end;
+      this.grain = grain;
+      this.proc = proc;
+    }
+
+    @Override
+    protected Long compute() {
+      if(end - start > grain) {
+        final int mid = (start + end) >>> 1;
+        Block left = new Block(start, mid, grain, proc);
+        left.fork();
+        final long right = new Block(mid, end, grain, proc).compute();
+        return left.join() + right;
+      }
+      DistanceCounter dc = new DistanceCounter();
+      proc.process(start, end, dc);
+      return dc.getCount();
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends BarnesHutTSNE.Par<O> {
+    @Override
+    protected Class<?> getDefaultAffinity() {
+      return ParallelNearestNeighborAffinityMatrixBuilder.class;
+    }
+
+    @Override
+    public ParallelBarnesHutTSNE<O> make() {
+      return new ParallelBarnesHutTSNE<>(affinity, dim, finalMomentum, learningRate, iterations, random, keep, theta);
+    }
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.projection.parallel;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import elki.database.ids.*;
+import elki.database.query.LinearScanQuery;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.BatchKNNSearcher;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.Duration;
+import elki.math.MathUtil;
+import elki.math.MeanVariance;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.projection.AffinityMatrix;
+import elki.projection.NearestNeighborAffinityMatrixBuilder;
+import elki.projection.SparseAffinityMatrix;
+import elki.utilities.datastructures.arraylike.DoubleArray;
+import elki.utilities.datastructures.arraylike.IntegerArray;
+import elki.utilities.exceptions.AbortException;
+
+import net.jafama.FastMath;
+
+/**
+ * Build a sparse affinity matrix using the nearest neighbors only, with
+ * multiple threads.
+ * <p>
+ * The nearest neighbors are found with batch kNN queries where available, and
+ * with parallel kNN queries otherwise. The binary search for the bandwidth of
+ * each point, and the symmetrization of the matrix are done in parallel. The
+ * sum of the matrix is computed serially, so the result is identical to
+ * {@link NearestNeighborAffinityMatrixBuilder}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelNearestNeighborAffinityMatrixBuilder<O> extends NearestNeighborAffinityMatrixBuilder<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNearestNeighborAffinityMatrixBuilder.class);
+
+  /**
+   * Number of queries per batch, to bound the memory used for kNN lists.
+   */
+  private static final int BATCH_SIZE = 1 << 14;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param perplexity Desired perplexity (will use 3*perplexity neighbors)
+   */
+  public ParallelNearestNeighborAffinityMatrixBuilder(Distance<? super O> distance, double perplexity) {
+    super(distance, perplexity);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param perplexity Desired perplexity
+   * @param neighbors Number of neighbors to use
+   */
+  public ParallelNearestNeighborAffinityMatrixBuilder(Distance<? super O> distance, double perplexity, int neighbors) {
+    super(distance, perplexity, neighbors);
+  }
+
+  @Override
+  public <T extends O> AffinityMatrix computeAffinityMatrix(Relation<T> relation, double initialScale) {
+    final QueryBuilder<T> qb = new QueryBuilder<>(relation, distance);
+    final int k = numberOfNeighbours + 1;
+    KNNSearcher<DBIDRef> knnq = qb.kNNByDBID(k);
+    if(knnq instanceof LinearScanQuery && numberOfNeighbours * numberOfNeighbours < relation.size()) {
+      LOG.warning("To accelerate Barnes-Hut tSNE, please use an index.");
+    }
+    if(!(relation.getDBIDs() instanceof DBIDRange)) {
+      throw new AbortException("Distance matrixes are currently only supported for DBID ranges (as used by static databases) for performance reasons (Patches welcome).");
+    }
+    final DBIDRange ids = (DBIDRange) relation.getDBIDs();
+    final int size = ids.size();
+    // Sparse affinity graph
+    final double[][] pij = new double[size][];
+    final int[][] indices = new int[size][];
+    final boolean square = !distance.isSquared();
+    Duration timer = LOG.newDuration(this.getClass().getName() + ".runtime.neighborspijmatrix").begin();
+    final double logPerp = FastMath.log(perplexity);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding neighbors and optimizing perplexity", size, LOG) : null;
+    final MeanVariance mv = LOG.isStatistics() ? new MeanVariance() : null;
+    if(knnq instanceof BatchKNNSearcher) {
+      // The batch searcher parallelizes internally.
+      final BatchKNNSearcher batch = (BatchKNNSearcher) knnq;
+      for(int start = 0; start < size; start += BATCH_SIZE) {
+        final int end = Math.min(start + BATCH_SIZE, size), first = start;
+        final List<? extends KNNList> knns = batch.getKNNForBulkDBIDs(ids.slice(start, end), k);
+        ParallelExecutor.run(ids.slice(start, end), new Calibration(ids, square, logPerp, pij, indices, mv, //
+            () -> id -> knns.get(ids.getOffset(id) - first)));
+        if(prog != null) {
+          prog.setProcessed(end, LOG);
+        }
+      }
+    }
+    else {
+      ParallelExecutor.run(ids, prog, LOG, new Calibration(ids, square, logPerp, pij, indices, mv, () -> {
+        final KNNSearcher<DBIDRef> q = qb.kNNByDBID(k);
+        return id -> q.getKNN(id, k);
+      }));
+    }
+    LOG.ensureCompleted(prog);
+    // Sum of the sparse affinity matrix:
+    double sum = 0.;
+    for(int i = 0; i < pij.length; i++) {
+      final double[] pij_i = pij[i];
+      for(int j = 0; j < pij_i.length; j++) {
+        sum += pij_i[j];
+      }
+    }
+    final double scale = initialScale / (2 * sum);
+    // Each entry, and each symmetric pair, is written by one row only.
+    ParallelExecutor.run(ids, new Processor() {
+      @Override
+      public Processor.Instance instantiate(Executor executor) {
+        return id -> symmetrize(ids.getOffset(id), pij, indices, scale);
+      }
+
+      @Override
+      public void cleanup(Processor.Instance inst) {
+        // Nothing to do.
+      }
+    });
+    LOG.statistics(timer.end());
+    if(mv != null && LOG.isStatistics()) {
+      LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.average", mv.getMean()));
+      LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.stddev", mv.getSampleStddev()));
+    }
+    return new SparseAffinityMatrix(pij, indices, ids);
+  }
+
+  /**
+   * Symmetrize and scale one row of the affinity matrix.
+   *
+   * @param i Row
+   * @param pij Affinity matrix
+   * @param indices Neighbor indexes
+   * @param scale Scaling factor
+   */
+  private static void symmetrize(int i, double[][] pij, int[][] indices, double scale) {
+    final double[] pij_i = pij[i];
+    for(int offi = 0; offi < pij_i.length; offi++) {
+      int j = indices[i][offi];
+      assert (i != j);
+      int offj = containsIndex(indices[j], i);
+      if(offj >= 0) { // Found
+        assert (indices[j][offj] == i);
+        // Exploit symmetry:
+        if(i < j) {
+          final double val = pij_i[offi] + pij[j][offj]; // Symmetrize
+          pij_i[offi] = pij[j][offj] = MathUtil.max(val * scale, MIN_PIJ);
+        }
+      }
+      else { // Not found
+        pij_i[offi] = MathUtil.max(pij_i[offi] * scale, MIN_PIJ);
+      }
+    }
+  }
+
+  /**
+   * Find the neighbors of each point, and optimize its bandwidth for the
+   * desired perplexity.
+   *
+   * @author Erich Schubert
+   */
+  private class Calibration implements Processor {
+    /**
+     * Point ids.
+     */
+    private final DBIDRange ids;
+
+    /**
+     * Use squared distances.
+     */
+    private final boolean square;
+
+    /**
+     * Log of the desired perplexity.
+     */
+    private final double logPerp;
+
+    /**
+     * Output affinities.
+     */
+    private final double[][] pij;
+
+    /**
+     * Output neighbor indexes.
+     */
+    private final int[][] indices;
+
+    /**
+     * Statistics on sigma, may be {@code null}.
+     */
+    private final MeanVariance mv;
+
+    /**
+     * Factory for per-thread neighbor sources.
+     */
+    private final Supplier<Function<DBIDRef, KNNList>> knns;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Point ids
+     * @param square Use squared distances
+     * @param logPerp Log of the desired perplexity
+     * @param pij Output affinities
+     * @param indices Output neighbor indexes
+     * @param mv Statistics on sigma, may be {@code null}
+     * @param knns Factory for per-thread neighbor sources
+     */
+    Calibration(DBIDRange ids, boolean square, double logPerp, double[][] pij, int[][] indices, MeanVariance mv, Supplier<Function<DBIDRef, KNNList>> knns) {
+      this.ids = ids;
+      this.square = square;
+      this.logPerp = logPerp;
+      this.pij = pij;
+      this.indices = indices;
+      this.mv = mv;
+      this.knns = knns;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance(knns.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      if(mv != null) {
+        synchronized(mv) {
+          // Safe cast: all instances were created by instantiate.
+          mv.put(((Instance) inst).mv);
+        }
+      }
+    }
+
+    /**
+     * Per-thread instance.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Neighbor source.
+       */
+      private final Function<DBIDRef, KNNList> knn;
+
+      /**
+       * Scratch arrays, resizable.
+       */
+      private final DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
+
+      /**
+       * Scratch arrays, resizable.
+       */
+      private final IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
+
+      /**
+       * Local statistics on sigma.
+       */
+      private final MeanVariance mv = new MeanVariance();
+
+      /**
+       * Constructor.
+       *
+       * @param knn Neighbor source
+       */
+      Instance(Function<DBIDRef, KNNList> knn) {
+        this.knn = knn;
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        final int i = ids.getOffset(id);
+        dists.clear();
+        inds.clear();
+        convertNeighbors(ids, id, square, knn.apply(id), dists, inds);
+        double beta = computeSigma(i, dists, perplexity, logPerp, pij[i] = new double[dists.size()]);
+        mv.put(beta > 0 ? Math.sqrt(.5 / beta) : 0.); // Sigma
+        indices[i] = inds.toArray();
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends NearestNeighborAffinityMatrixBuilder.Par<O> {
+    @Override
+    public ParallelNearestNeighborAffinityMatrixBuilder<O> make() {
+      return new ParallelNearestNeighborAffinityMatrixBuilder<>(distance, perplexity);
+    }
+  }
+}
@@ -28,12 +28,15 @@ import elki.index.Index;
 import elki.logging.Logging;
 import elki.logging.LoggingConfiguration;
 import elki.logging.statistics.Duration;
+import elki.parallel.ParallelCore;
 import elki.result.Metadata;
 import elki.utilities.datastructures.iterator.It;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectListParameter;
 
 /**
@@ -62,14 +65,30 @@ public class AlgorithmStep implements WorkflowStep {
    */
   private Object stepresult;
 
+  /**
+   * Parallel core to use, {@code null} for the default.
+   */
+  private ParallelCore core;
+
   /**
    * Constructor.
    *
    * @param algorithms
    */
   public AlgorithmStep(List<? extends Algorithm> algorithms) {
+    this(algorithms, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param algorithms Algorithms to run
+   * @param core Parallel core to use, {@code null} for the default
+   */
+  public AlgorithmStep(List<? extends Algorithm> algorithms, ParallelCore core) {
     super();
     this.algorithms = algorithms;
+    this.core = core;
   }
 
   /**
@@ -91,6 +110,26 @@ public class AlgorithmStep implements WorkflowStep {
     }
     stepresult = new Object();
     Metadata.of(stepresult).setLongName("Algorithm Step");
+    ParallelCore prevcore = core != null ? ParallelCore.setCore(core) : null;
+    try {
+      runEach(database, algorithms);
+    }
+    finally {
+      if(core != null) {
+        ParallelCore.setCore(prevcore);
+      }
+    }
+    Thread.currentThread().setName("AlgorithmStep finished.");
+    return stepresult;
+  }
+
+  /**
+   * Run each algorithm.
+   *
+   * @param database Database
+   * @param algorithms Algorithms to run
+   */
+  private static void runEach(Database database, List<? extends Algorithm> algorithms) {
     for(Algorithm algorithm : algorithms) {
       Thread.currentThread().setName(algorithm.toString());
       Duration duration = LOG.isStatistics() ? LOG.newDuration(algorithm.getClass().getName() + ".runtime").begin() : null;
@@ -113,8 +152,6 @@ public class AlgorithmStep implements WorkflowStep {
         Metadata.hierarchyOf(database).addChild(res);
       }
     }
-    Thread.currentThread().setName("AlgorithmStep finished.");
-    return stepresult;
   }
 
   /**
@@ -142,6 +179,11 @@ public class AlgorithmStep implements WorkflowStep {
      */
     protected List<? extends Algorithm> algorithms;
 
+    /**
+     * Number of threads to use, 0 for all processors.
+     */
+    protected int threads = 0;
+
     /**
      * Flag to allow verbose messages while running the application.
      */
@@ -152,12 +194,21 @@ public class AlgorithmStep implements WorkflowStep {
      */
     public static final OptionID ALGORITHM_ID = Algorithm.Utils.ALGORITHM_ID;
 
+    /**
+     * Parameter to limit the number of threads used by parallel algorithms.
+     */
+    public static final OptionID THREADS_ID = new OptionID("parallel.threads", "Number of threads to use for parallel algorithms. By default, all available processors are used.");
+
     @Override
     public void configure(Parameterization config) {
       new Flag(TIME_ID).grab(config, x -> time = x);
       // parameter algorithm
       new ObjectListParameter<Algorithm>(ALGORITHM_ID, Algorithm.class) //
           .grab(config, x -> algorithms = x);
+      new IntParameter(THREADS_ID) //
+          .setOptional(true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> threads = x);
     }
 
     @Override
@@ -165,7 +216,8 @@ public class AlgorithmStep implements WorkflowStep {
       if(time) {
         LoggingConfiguration.setStatistics();
       }
-      return new AlgorithmStep(algorithms);
+      // Shared by all steps using the same number of threads
+      return new AlgorithmStep(algorithms, threads > 0 ? ParallelCore.getCore("threads-" + threads, threads) : null);
     }
   }
 }
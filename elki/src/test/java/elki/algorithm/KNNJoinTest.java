@@ -20,6 +20,10 @@
  */
 package elki.algorithm;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
 import org.junit.Test;
 
 import elki.data.NumberVector;
@@ -28,18 +32,24 @@ import elki.database.Database;
 import elki.database.StaticArrayDatabase;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DoubleDBIDListIter;
 import elki.database.ids.KNNList;
 import elki.database.query.QueryBuilder;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
 import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.ManhattanDistance;
+import elki.index.Index;
+import elki.index.tree.metrical.covertree.CoverTree;
+import elki.index.tree.spatial.kd.SmallMemoryKDTree;
 import elki.index.tree.spatial.rstarvariants.deliclu.DeLiCluTree;
 import elki.index.tree.spatial.rstarvariants.deliclu.DeLiCluTreeFactory;
 import elki.index.tree.spatial.rstarvariants.rstar.RStarTree;
 import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
 import elki.math.MeanVariance;
 import elki.persistent.AbstractPageFileFactory;
+import elki.result.Metadata;
 import elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -129,6 +139,60 @@ public class KNNJoinTest {
     doKNNJoin(spatparams);
   }
 
+  /**
+   * Test {@link SmallMemoryKDTree} using a file based database connection.
+   */
+  @Test
+  public void testKNNJoinKDTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Par.INDEX_ID, SmallMemoryKDTree.Factory.class);
+    doKNNJoin(spatparams);
+  }
+
+  /**
+   * Test {@link CoverTree} using a file based database connection.
+   */
+  @Test
+  public void testKNNJoinCoverTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Par.INDEX_ID, CoverTree.Factory.class);
+    spatparams.addParameter(CoverTree.Factory.Par.DISTANCE_FUNCTION_ID, EuclideanDistance.class);
+    doKNNJoin(spatparams);
+  }
+
+  /**
+   * Test the join of many pages against a linear scan.
+   */
+  @Test
+  public void testKNNJoinLarge() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[5000][3];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    KNNSearcher<DBIDRef> knnq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(10);
+    SmallMemoryKDTree<NumberVector> kdtree = new SmallMemoryKDTree<>(relation, 4);
+    CoverTree<NumberVector> covertree = new CoverTree<>(relation, EuclideanDistance.STATIC);
+    for(Index index : new Index[] { kdtree, covertree }) {
+      index.initialize();
+      Metadata.hierarchyOf(relation).addChild(index);
+      Relation<KNNList> result = new KNNJoin(EuclideanDistance.STATIC, 10).run(relation);
+      Metadata.hierarchyOf(relation).removeChild(index);
+      for(DBIDIter id = relation.iterDBIDs(); id.valid(); id.advance()) {
+        KNNList expect = knnq.getKNN(id, 10), actual = result.get(id);
+        assertEquals("Wrong kNN size", expect.size(), actual.size());
+        for(DoubleDBIDListIter e = expect.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+          assertEquals("Wrong kNN distance", e.doubleValue(), a.doubleValue(), 0.);
+        }
+      }
+    }
+  }
+
   /**
    * Actual test routine.
    *
@@ -0,0 +1,198 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the concurrent CLOCK page cache.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ClockCacheTest {
+  /**
+   * Page size used.
+   */
+  private static final int PAGESIZE = 100;
+
+  @Test
+  public void testWriteBack() {
+    MemoryPageFile<TestPage> file = new MemoryPageFile<>(PAGESIZE);
+    ClockCache<TestPage> cache = new ClockCache<>(10 * PAGESIZE, 4, false, file);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < 100; i++) {
+      assertEquals("Page id", i, cache.writePage(new TestPage(i * 2)));
+    }
+    // Evicted pages must have been written back:
+    int inFile = 0;
+    for(int i = 0; i < 100; i++) {
+      inFile += file.readPage(i) != null ? 1 : 0;
+    }
+    assertTrue("Too many pages cached: " + (100 - inFile), 100 - inFile <= 10);
+    for(int i = 0; i < 100; i++) {
+      assertEquals("Page content", i * 2, cache.readPage(i).value);
+    }
+    cache.deletePage(5);
+    cache.flush();
+    for(int i = 0; i < 100; i++) {
+      TestPage p = file.readPage(i);
+      if(i == 5) {
+        assertEquals("Page not deleted", null, p);
+        continue;
+      }
+      assertNotNull("Page not written", p);
+      assertFalse("Page still dirty", p.isDirty());
+    }
+  }
+
+  @Test
+  public void testConcurrentReads() throws InterruptedException {
+    MemoryPageFile<TestPage> file = new MemoryPageFile<>(PAGESIZE);
+    ClockCache<TestPage> cache = new ClockCache<>(50 * PAGESIZE, 8, false, file);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < 200; i++) {
+      cache.writePage(new TestPage(i));
+    }
+    AtomicBoolean failed = new AtomicBoolean();
+    Thread[] threads = new Thread[4];
+    for(int t = 0; t < threads.length; t++) {
+      final int seed = t;
+      threads[t] = new Thread(() -> {
+        for(int i = 0; i < 20000; i++) {
+          int id = (i * 31 + seed * 7) % 200;
+          TestPage p = cache.readPage(id);
+          if(p == null || p.value != id) {
+            failed.set(true);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for(Thread t : threads) {
+      t.join();
+    }
+    assertFalse("Inconsistent page read.", failed.get());
+  }
+
+  @Test
+  public void testReadAhead() throws InterruptedException {
+    final AtomicInteger reads = new AtomicInteger();
+    MemoryPageFile<TestPage> file = new MemoryPageFile<TestPage>(PAGESIZE) {
+      @Override
+      public synchronized TestPage readPage(int pageID) {
+        reads.incrementAndGet();
+        return super.readPage(pageID);
+      }
+    };
+    file.initialize(new DefaultPageHeader(PAGESIZE));
+    file.writePage(new TestPage(0, 1, 2, 3));
+    for(int i = 1; i <= 3; i++) {
+      file.writePage(new TestPage(i));
+    }
+    ClockCache<TestPage> cache = new ClockCache<>(10 * PAGESIZE, 2, true, file);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    assertEquals("Root", 0, cache.readPage(0).value);
+    for(int i = 0; i < 1000 && reads.get() < 4; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals("Children not read ahead.", 4, reads.get());
+    for(int i = 1; i <= 3; i++) {
+      assertEquals("Child", i, cache.readPage(i).value);
+    }
+    assertEquals("Children were not cached.", 4, reads.get());
+    cache.close();
+  }
+
+  /**
+   * Minimal page for testing.
+   *
+   * @author Erich Schubert
+   */
+  private static class TestPage implements ReadAheadPage {
+    /**
+     * Page id.
+     */
+    int id = -1;
+
+    /**
+     * Dirty flag.
+     */
+    boolean dirty;
+
+    /**
+     * Page content.
+     */
+    int value;
+
+    /**
+     * Child pages.
+     */
+    int[] children;
+
+    /**
+     * Constructor.
+     *
+     * @param value Page content
+     * @param children Child page ids
+     */
+    TestPage(int value, int... children) {
+      this.value = value;
+      this.children = children;
+    }
+
+    @Override
+    public int getPageID() {
+      return id;
+    }
+
+    @Override
+    public void setPageID(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean isDirty() {
+      return dirty;
+    }
+
+    @Override
+    public void setDirty(boolean dirty) {
+      this.dirty = dirty;
+    }
+
+    @Override
+    public void forEachChildPage(IntConsumer action) {
+      for(int c : children) {
+        action.accept(c);
+      }
+    }
+  }
+}
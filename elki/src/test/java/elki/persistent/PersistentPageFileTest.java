@@ -0,0 +1,178 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import elki.data.ModifiableHyperBoundingBox;
+import elki.database.ids.DBIDUtil;
+import elki.index.tree.TreeIndexHeader;
+import elki.index.tree.metrical.mtreevariants.MTreeDirectoryEntry;
+import elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
+import elki.index.tree.metrical.mtreevariants.mtree.MTreeNode;
+import elki.index.tree.spatial.SpatialDirectoryEntry;
+import elki.index.tree.spatial.SpatialPointLeafEntry;
+import elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+
+/**
+ * Unit test for the persistent page file, using the buffer page format.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class PersistentPageFileTest {
+  /**
+   * Page size used.
+   */
+  private static final int PAGESIZE = 1024;
+
+  /**
+   * M-tree node class.
+   */
+  @SuppressWarnings("unchecked")
+  private static final Class<MTreeNode<Object>> MTREE_NODE = (Class<MTreeNode<Object>>) (Class<?>) MTreeNode.class;
+
+  @Test
+  public void testRStarTreeNodes() throws IOException {
+    Path path = Files.createTempFile("elki-pagefile", ".bin");
+    Files.delete(path);
+    try {
+      PersistentPageFile<RStarTreeNode> file = new PersistentPageFile<>(PAGESIZE, path, RStarTreeNode.class);
+      file.initialize(new TreeIndexHeader(PAGESIZE, 10, 10, 2, 2));
+      RStarTreeNode leaf = new RStarTreeNode(10, true);
+      for(int i = 0; i < 5; i++) {
+        leaf.addEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i + 7), new double[] { i, -i, i * .5 }));
+      }
+      RStarTreeNode dir = new RStarTreeNode(10, false);
+      dir.addEntry(new SpatialDirectoryEntry(0, new ModifiableHyperBoundingBox(new double[] { 0, -4, 0 }, new double[] { 4, 0, 2 })));
+      assertEquals(0, file.writePage(leaf));
+      assertEquals(1, file.writePage(dir));
+      file.deletePage(file.writePage(new RStarTreeNode(10, true)));
+      file.close();
+
+      file = new PersistentPageFile<>(PAGESIZE, path, RStarTreeNode.class);
+      assertTrue("File not found", file.initialize(new TreeIndexHeader()));
+      RStarTreeNode leaf2 = file.readPage(0);
+      assertTrue(leaf2.isLeaf());
+      assertEquals(5, leaf2.getNumEntries());
+      for(int i = 0; i < 5; i++) {
+        SpatialPointLeafEntry e = (SpatialPointLeafEntry) leaf2.getEntry(i);
+        assertEquals(i + 7, DBIDUtil.asInteger(e.getDBID()));
+        assertEquals(-i, e.doubleValue(1), 0.);
+        assertEquals(i * .5, e.doubleValue(2), 0.);
+      }
+      RStarTreeNode dir2 = file.readPage(1);
+      assertTrue(!dir2.isLeaf());
+      assertEquals(1, dir2.getNumEntries());
+      assertEquals(0, ((SpatialDirectoryEntry) dir2.getEntry(0)).getPageID());
+      assertEquals(-4, dir2.getEntry(0).getMin(1), 0.);
+      assertEquals(2, dir2.getEntry(0).getMax(2), 0.);
+      assertEquals("Deleted page", null, file.readPage(2));
+      file.close();
+    }
+    finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void testMTreeNodes() throws IOException {
+    Path path = Files.createTempFile("elki-pagefile", ".bin");
+    Files.delete(path);
+    try {
+      PersistentPageFile<MTreeNode<Object>> file = new PersistentPageFile<>(PAGESIZE, path, MTREE_NODE);
+      file.initialize(new TreeIndexHeader(PAGESIZE, 10, 10, 2, 2));
+      MTreeNode<Object> leaf = new MTreeNode<>(10, true);
+      leaf.addEntry(new MTreeLeafEntry(DBIDUtil.importInteger(3), 1.5));
+      leaf.addEntry(new MTreeLeafEntry(DBIDUtil.importInteger(4), 2.5));
+      MTreeNode<Object> dir = new MTreeNode<>(10, false);
+      dir.addEntry(new MTreeDirectoryEntry(DBIDUtil.importInteger(3), 0., 0, 2.5));
+      file.writePage(leaf);
+      file.writePage(dir);
+      file.close();
+
+      file = new PersistentPageFile<>(PAGESIZE, path, MTREE_NODE);
+      file.initialize(new TreeIndexHeader());
+      MTreeNode<Object> leaf2 = file.readPage(0);
+      assertEquals(2, leaf2.getNumEntries());
+      assertEquals(4, DBIDUtil.asInteger(leaf2.getEntry(1).getRoutingObjectID()));
+      assertEquals(2.5, leaf2.getEntry(1).getParentDistance(), 0.);
+      MTreeNode<Object> dir2 = file.readPage(1);
+      MTreeDirectoryEntry e = (MTreeDirectoryEntry) dir2.getEntry(0);
+      assertEquals(0, e.getPageID());
+      assertEquals(2.5, e.getCoveringRadius(), 0.);
+      file.close();
+    }
+    finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void testScanWithoutTreeHeader() throws IOException {
+    Path path = Files.createTempFile("elki-pagefile", ".bin");
+    Files.delete(path);
+    try {
+      PersistentPageFile<RStarTreeNode> file = new PersistentPageFile<>(PAGESIZE, path, RStarTreeNode.class);
+      file.initialize(new DefaultPageHeader(PAGESIZE));
+      for(int i = 0; i < 3; i++) {
+        file.writePage(new RStarTreeNode(10, true));
+      }
+      file.deletePage(1);
+      file.close();
+
+      file = new PersistentPageFile<>(PAGESIZE, path, RStarTreeNode.class);
+      assertTrue("File not found", file.initialize(new DefaultPageHeader()));
+      assertEquals("Empty page not reused", 1, file.writePage(new RStarTreeNode(10, true)));
+      assertEquals("Next page", 3, file.writePage(new RStarTreeNode(10, true)));
+      file.close();
+    }
+    finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPageTooLarge() throws IOException {
+    Path path = Files.createTempFile("elki-pagefile", ".bin");
+    Files.delete(path);
+    PersistentPageFile<RStarTreeNode> file = new PersistentPageFile<>(64, path, RStarTreeNode.class);
+    try {
+      file.initialize(new TreeIndexHeader(64, 10, 10, 2, 2));
+      RStarTreeNode leaf = new RStarTreeNode(10, true);
+      for(int i = 0; i < 5; i++) {
+        leaf.addEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i), new double[] { i, i, i }));
+      }
+      file.writePage(leaf);
+    }
+    finally {
+      file.getFile().close();
+      Files.deleteIfExists(path);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.projection.parallel;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.projection.BarnesHutTSNE;
+import elki.projection.NearestNeighborAffinityMatrixBuilder;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Regression test for the parallel Barnes-Hut tSNE.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelBarnesHutTSNETest {
+  @Test
+  public void testIdenticalToSerial() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[2000][5];
+    for(int i = 0; i < data.length; i++) {
+      for(int d = 0; d < data[i].length; d++) {
+        data[i][d] = rnd.nextGaussian() + (i % 4) * 3;
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Relation<DoubleVector> serial = new BarnesHutTSNE<NumberVector>( //
+        new NearestNeighborAffinityMatrixBuilder<>(SquaredEuclideanDistance.STATIC, 10), //
+        2, 0.8, 200, 100, new RandomFactory(0L), true, 0.5).run(db, rel);
+    Relation<DoubleVector> parallel = new ParallelBarnesHutTSNE<NumberVector>( //
+        new ParallelNearestNeighborAffinityMatrixBuilder<>(SquaredEuclideanDistance.STATIC, 10), //
+        2, 0.8, 200, 100, new RandomFactory(0L), true, 0.5).run(db, rel);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertArrayEquals(serial.get(it).toArray(), parallel.get(it).toArray(), 0.);
+    }
+  }
+}